@@ -0,0 +1,460 @@
+package com.zendeka.glesutils.gles20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Sub-allocates many small static meshes from a few large STATIC_DRAW buffers, so they can be drawn
+ * with one glBindBuffer per page instead of one per mesh, and batched. Each allocation is a range of
+ * one page; draw with allocation.getBuffer() bound and allocation.getOffset() added to the attribute
+ * or index offsets.
+ *
+ * Free space is kept as blocks sorted by size and allocations take the smallest block that fits
+ * (best fit). Freed ranges are merged with their free neighbours. A new page is created when no block
+ * fits. Allocations are aligned to the heap alignment, and can be at most a page.
+ *
+ * With a shadow copy the heap enables the shadow copy of every page buffer, and defragment() moves
+ * allocations towards the front of the heap by copying them within the shadows, a budget of bytes at a
+ * time, e.g. once per frame, and flushing each page once. Pages left empty at the end of the heap are
+ * deleted. A moved allocation keeps its identity but not its buffer and offset, so read them at draw time.
+ */
+public final class BufferHeap {
+    public static final class Allocation {
+        private final BufferHeap mHeap;
+        private Page mPage;
+        private int mOffset;
+        private int mSize;
+
+        private Allocation(final BufferHeap heap, final Page page, int offset, int size) {
+            mHeap = heap;
+            mPage = page;
+            mOffset = offset;
+            mSize = size;
+        }
+
+        public VertexBufferObject getBuffer() {
+            return mPage != null ? mPage.mBuffer : null;
+        }
+
+        /**
+         * Byte offset of the allocation in its buffer.
+         */
+        public int getOffset() {
+            return mOffset;
+        }
+
+        public int getSize() {
+            return mSize;
+        }
+
+        public boolean isValid() {
+            return mPage != null;
+        }
+
+        public BufferHeap getHeap() {
+            return mHeap;
+        }
+    }
+
+    private static final class Block {
+        final Page mPage;
+        final int mOffset;
+        final int mSize;
+
+        Block(final Page page, int offset, int size) {
+            mPage = page;
+            mOffset = offset;
+            mSize = size;
+        }
+    }
+
+    private static final class Page {
+        final int mIndex;
+        final VertexBufferObject mBuffer;
+        final TreeMap<Integer, Block> mFree = new TreeMap<Integer, Block>();
+        final TreeMap<Integer, Allocation> mAllocations = new TreeMap<Integer, Allocation>();
+
+        Page(int index, final VertexBufferObject buffer) {
+            mIndex = index;
+            mBuffer = buffer;
+        }
+    }
+
+    // Smallest block first, ties broken by position so blocks towards the front of the heap win
+    private static final Comparator<Block> BEST_FIT = new Comparator<Block>() {
+        @Override
+        public int compare(Block a, Block b) {
+            if (a.mSize != b.mSize) {
+                return a.mSize < b.mSize ? -1 : 1;
+            }
+
+            if (a.mPage.mIndex != b.mPage.mIndex) {
+                return a.mPage.mIndex < b.mPage.mIndex ? -1 : 1;
+            }
+
+            return a.mOffset < b.mOffset ? -1 : (a.mOffset == b.mOffset ? 0 : 1);
+        }
+    };
+
+    // Stands in for the page of a size-only search key, ahead of every real page
+    private static final Page NO_PAGE = new Page(-1, null);
+
+    private final VertexBufferObject.Target mTarget;
+    private final int mPageSize;
+    private final int mAlignment;
+    private final boolean mShadow;
+    private final List<Page> mPages = new ArrayList<Page>();
+    private final TreeSet<Block> mFree = new TreeSet<Block>(BEST_FIT);
+
+    private int mAllocationCount;
+    private long mUsedBytes;
+    private long mMovedBytes;
+    private int mMoveCount;
+
+    /**
+     * pageSize is the size of each buffer in bytes, alignment a power of two. shadow keeps a CPU copy
+     * of the pages, which defragment() needs.
+     */
+    public BufferHeap(final VertexBufferObject.Target target, int pageSize, int alignment, boolean shadow) throws IllegalArgumentException {
+        if (target == null) {
+            throw new IllegalArgumentException("Buffer target must not be null");
+        }
+
+        if (alignment < 1 || (alignment & (alignment - 1)) != 0) {
+            throw new IllegalArgumentException("Buffer heap alignment must be a power of two: " + alignment);
+        }
+
+        if (pageSize < alignment || pageSize % alignment != 0) {
+            throw new IllegalArgumentException("Invalid buffer heap page size: " + pageSize);
+        }
+
+        mTarget = target;
+        mPageSize = pageSize;
+        mAlignment = alignment;
+        mShadow = shadow;
+    }
+
+    public VertexBufferObject.Target getTarget() {
+        return mTarget;
+    }
+
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    public int getPageCount() {
+        return mPages.size();
+    }
+
+    public VertexBufferObject getPageBuffer(int page) {
+        return mPages.get(page).mBuffer;
+    }
+
+    /**
+     * Allocates size bytes and uploads data into them. data may be null to leave them undefined.
+     */
+    public Allocation allocate(int size, Buffer data) throws IllegalArgumentException, IllegalStateException {
+        if (size < 1 || size > mPageSize) {
+            throw new IllegalArgumentException("Invalid buffer heap allocation size: " + size + ", page size " + mPageSize);
+        }
+
+        int alignedSize = align(size);
+        Block block = mFree.ceiling(new Block(NO_PAGE, 0, alignedSize));
+
+        if (block == null) {
+            block = createPage();
+        }
+
+        Allocation allocation = new Allocation(this, block.mPage, block.mOffset, size);
+        take(block, alignedSize);
+        block.mPage.mAllocations.put(block.mOffset, allocation);
+
+        mAllocationCount++;
+        mUsedBytes += alignedSize;
+
+        if (data != null) {
+            update(allocation, 0, size, data);
+        }
+
+        return allocation;
+    }
+
+    /**
+     * Uploads size bytes of data at offset in allocation. The buffer is left bound.
+     */
+    public void update(final Allocation allocation, int offset, int size, Buffer data) throws IllegalArgumentException, IllegalStateException {
+        checkAllocation(allocation);
+
+        if (offset < 0 || size < 0 || offset + size > allocation.mSize) {
+            throw new IllegalArgumentException("Invalid range for buffer heap allocation: offset " + offset + ", size " + size + ", allocation size " + allocation.mSize);
+        }
+
+        VertexBufferObject buffer = allocation.mPage.mBuffer;
+        buffer.bind();
+        buffer.updateData(allocation.mOffset + offset, size, data);
+
+        // With a shadow copy updateData() only marks the range dirty
+        buffer.flush();
+    }
+
+    /**
+     * Returns the range of allocation to the heap. The allocation is invalid afterwards.
+     */
+    public void free(final Allocation allocation) throws IllegalArgumentException {
+        checkAllocation(allocation);
+
+        Page page = allocation.mPage;
+        int alignedSize = align(allocation.mSize);
+
+        page.mAllocations.remove(allocation.mOffset);
+        release(page, allocation.mOffset, alignedSize);
+
+        allocation.mPage = null;
+        mAllocationCount--;
+        mUsedBytes -= alignedSize;
+    }
+
+    /**
+     * Moves allocations from the back of the heap into free space nearer the front until about
+     * maxBytes have been re-uploaded, then deletes the empty pages at the end of the heap. Returns the
+     * number of bytes moved; 0 once the heap is compact or nothing more fits.
+     */
+    public int defragment(int maxBytes) throws IllegalStateException {
+        if (!mShadow) {
+            throw new IllegalStateException("Buffer heap has no shadow copy to defragment from");
+        }
+
+        int moved = 0;
+
+        for (int index = mPages.size() - 1; index >= 0 && moved < maxBytes; index--) {
+            Page page = mPages.get(index);
+
+            // Last allocation of the page first, so the page empties from the back
+            Map.Entry<Integer, Allocation> entry = page.mAllocations.lastEntry();
+
+            while (entry != null && moved < maxBytes) {
+                Allocation allocation = entry.getValue();
+                entry = page.mAllocations.lowerEntry(entry.getKey());
+
+                if (move(allocation)) {
+                    moved += allocation.mSize;
+                }
+            }
+        }
+
+        releaseEmptyPages();
+
+        for (final Page page : mPages) {
+            page.mBuffer.flush();
+        }
+
+        mMovedBytes += moved;
+        return moved;
+    }
+
+    /**
+     * Frees every allocation and deletes all pages.
+     */
+    public void deleteBuffers() {
+        for (final Page page : mPages) {
+            for (final Allocation allocation : page.mAllocations.values()) {
+                allocation.mPage = null;
+            }
+
+            page.mBuffer.deleteBuffer();
+        }
+
+        mPages.clear();
+        mFree.clear();
+        mAllocationCount = 0;
+        mUsedBytes = 0;
+    }
+
+    public int getAllocationCount() {
+        return mAllocationCount;
+    }
+
+    public long getCapacity() {
+        return (long) mPages.size() * mPageSize;
+    }
+
+    /**
+     * Bytes taken by allocations, including alignment padding.
+     */
+    public long getUsedBytes() {
+        return mUsedBytes;
+    }
+
+    public long getFreeBytes() {
+        return getCapacity() - mUsedBytes;
+    }
+
+    public int getLargestFreeBlock() {
+        int largest = 0;
+
+        // Best fit order ends with the largest block
+        if (!mFree.isEmpty()) {
+            largest = mFree.last().mSize;
+        }
+
+        return largest;
+    }
+
+    public int getFreeBlockCount() {
+        return mFree.size();
+    }
+
+    /**
+     * Fraction of the capacity taken by allocations.
+     */
+    public float getUtilization() {
+        long capacity = getCapacity();
+        return capacity > 0 ? (float) mUsedBytes / capacity : 0.0f;
+    }
+
+    /**
+     * Fraction of the free bytes outside the largest free block: 0 when all free space is one block.
+     */
+    public float getFragmentation() {
+        long free = getFreeBytes();
+        return free > 0 ? 1.0f - (float) getLargestFreeBlock() / free : 0.0f;
+    }
+
+    public long getMovedBytes() {
+        return mMovedBytes;
+    }
+
+    public int getMoveCount() {
+        return mMoveCount;
+    }
+
+    public void resetStatistics() {
+        mMovedBytes = 0;
+        mMoveCount = 0;
+    }
+
+    private boolean move(final Allocation allocation) {
+        Page page = allocation.mPage;
+        int alignedSize = align(allocation.mSize);
+        Block target = null;
+
+        // The best fit that lies before the allocation
+        for (final Block block : mFree.tailSet(new Block(NO_PAGE, 0, alignedSize))) {
+            if (block.mPage.mIndex < page.mIndex || (block.mPage == page && block.mOffset < allocation.mOffset)) {
+                target = block;
+                break;
+            }
+        }
+
+        if (target == null) {
+            return false;
+        }
+
+        Page targetPage = target.mPage;
+        int offset = target.mOffset;
+        take(target, alignedSize);
+
+        ByteBuffer source = page.mBuffer.getShadow().duplicate();
+        source.clear();
+        source.position(allocation.mOffset).limit(allocation.mOffset + allocation.mSize);
+
+        ByteBuffer destination = targetPage.mBuffer.getShadow().duplicate();
+        destination.clear();
+        destination.position(offset);
+        destination.put(source);
+
+        // Uploaded by the flush at the end of defragment()
+        targetPage.mBuffer.markDirty(offset, allocation.mSize);
+
+        page.mAllocations.remove(allocation.mOffset);
+        release(page, allocation.mOffset, alignedSize);
+
+        allocation.mPage = targetPage;
+        allocation.mOffset = offset;
+        targetPage.mAllocations.put(offset, allocation);
+
+        mMoveCount++;
+        return true;
+    }
+
+    private Block createPage() throws IllegalStateException {
+        VertexBufferObject buffer = new VertexBufferObject(mTarget, VertexBufferObject.Usage.STATIC_DRAW);
+        buffer.bind();
+        buffer.allocate(mPageSize);
+        buffer.setShadowEnabled(mShadow);
+
+        Page page = new Page(mPages.size(), buffer);
+        mPages.add(page);
+
+        Block block = new Block(page, 0, mPageSize);
+        page.mFree.put(0, block);
+        mFree.add(block);
+
+        return block;
+    }
+
+    private void releaseEmptyPages() {
+        for (int index = mPages.size() - 1; index > 0 && mPages.get(index).mAllocations.isEmpty(); index--) {
+            Page page = mPages.remove(index);
+            mFree.remove(page.mFree.get(0));
+            page.mBuffer.deleteBuffer();
+        }
+    }
+
+    /**
+     * Takes size bytes from the front of the free block.
+     */
+    private void take(final Block block, int size) {
+        Page page = block.mPage;
+        mFree.remove(block);
+        page.mFree.remove(block.mOffset);
+
+        if (block.mSize > size) {
+            Block rest = new Block(page, block.mOffset + size, block.mSize - size);
+            page.mFree.put(rest.mOffset, rest);
+            mFree.add(rest);
+        }
+    }
+
+    /**
+     * Returns a range to the free blocks of page, merging it with its free neighbours.
+     */
+    private void release(final Page page, int offset, int size) {
+        Map.Entry<Integer, Block> before = page.mFree.lowerEntry(offset);
+        Block next = page.mFree.get(offset + size);
+
+        if (before != null && before.getValue().mOffset + before.getValue().mSize == offset) {
+            Block previous = before.getValue();
+            mFree.remove(previous);
+            page.mFree.remove(previous.mOffset);
+            offset = previous.mOffset;
+            size += previous.mSize;
+        }
+
+        if (next != null) {
+            mFree.remove(next);
+            page.mFree.remove(next.mOffset);
+            size += next.mSize;
+        }
+
+        Block block = new Block(page, offset, size);
+        page.mFree.put(offset, block);
+        mFree.add(block);
+    }
+
+    private int align(int size) {
+        return (size + mAlignment - 1) & ~(mAlignment - 1);
+    }
+
+    private void checkAllocation(final Allocation allocation) throws IllegalArgumentException {
+        if (allocation == null || allocation.mHeap != this || allocation.mPage == null) {
+            throw new IllegalArgumentException("Allocation not valid in this buffer heap");
+        }
+    }
+}
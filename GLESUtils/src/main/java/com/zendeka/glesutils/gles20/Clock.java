@@ -0,0 +1,15 @@
+package com.zendeka.glesutils.gles20;
+
+/**
+ * Time source for code that works to a time budget, so it can be driven by a fake clock off-device.
+ */
+public interface Clock {
+    public static final Clock SYSTEM = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    public long nanoTime();
+}
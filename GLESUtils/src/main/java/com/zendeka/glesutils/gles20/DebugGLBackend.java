@@ -0,0 +1,1051 @@
+package com.zendeka.glesutils.gles20;
+
+import android.opengl.GLES20;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Backend decorator for debug builds. It calls glGetError() after every call and logs a failing call
+ * with its arguments, its error and the tag of the shader or program it concerns. It can also throw
+ * an IllegalStateException for the failing call. With tracing on, every call is logged.
+ *
+ * Shader and ShaderProgram label their GL objects with their tag through glObjectLabel(). Uniform,
+ * vertex attribute and draw calls are reported against the program in use.
+ *
+ * glGetError() forces the driver to finish the command stream, so this backend must not be used in
+ * release builds. The library's call path has no checks of its own. Choosing the backend on a
+ * compile-time constant, e.g.
+ *
+ *   new GLContext(BuildConfig.DEBUG ? new DebugGLBackend(new AndroidGLBackend()) : new AndroidGLBackend())
+ *
+ * lets javac drop the debug branch. Release builds then call AndroidGLBackend directly.
+ *
+ * Errors raised by GLES20 calls made around the backend are reported against the next call made
+ * through it. The error flags are cleared by the checks, so glGetError() through this backend always
+ * returns GL_NO_ERROR.
+ */
+public final class DebugGLBackend implements GLBackend {
+    // KHR_debug object identifiers for glObjectLabel(), GLES32 is not available at this API level
+    public static final int GL_BUFFER = 0x82E0;
+    public static final int GL_SHADER = 0x82E1;
+    public static final int GL_PROGRAM = 0x82E2;
+
+    private static final String TAG = "GLESUtils";
+    private static final int MAX_STRING_LENGTH = 64;
+    // Drivers with a lost context may report an error forever, so draining the flags gives up after this many
+    private static final int MAX_ERROR_FLAGS = 32;
+
+    private final GLBackend mDelegate;
+    private final SparseArray<String> mProgramLabels = new SparseArray<String>();
+    private final SparseArray<String> mShaderLabels = new SparseArray<String>();
+    private final StringBuilder mCall = new StringBuilder(128);
+    private boolean mThrowOnError;
+    private boolean mTracing;
+    private int mCurrentProgram;
+    private int mError;
+    private boolean mFirstArgument;
+    private boolean mClosed;
+    private long mErrorCount;
+
+    public DebugGLBackend(final GLBackend delegate) throws IllegalArgumentException {
+        if (delegate == null) {
+            throw new IllegalArgumentException("GL backend must not be null");
+        }
+
+        mDelegate = delegate;
+    }
+
+    public GLBackend getDelegate() {
+        return mDelegate;
+    }
+
+    public boolean isThrowOnError() {
+        return mThrowOnError;
+    }
+
+    /**
+     * Whether a failing call throws an IllegalStateException after it is logged.
+     */
+    public void setThrowOnError(boolean throwOnError) {
+        mThrowOnError = throwOnError;
+    }
+
+    public boolean isTracing() {
+        return mTracing;
+    }
+
+    /**
+     * Whether every call is logged, not only failing ones.
+     */
+    public void setTracing(boolean tracing) {
+        mTracing = tracing;
+    }
+
+    /**
+     * Number of failing calls since the last resetErrorCount().
+     */
+    public long getErrorCount() {
+        return mErrorCount;
+    }
+
+    public void resetErrorCount() {
+        mErrorCount = 0;
+    }
+
+    public static String getErrorString(int error) {
+        switch (error) {
+            case GLES20.GL_NO_ERROR:
+                return "GL_NO_ERROR";
+            case GLES20.GL_INVALID_ENUM:
+                return "GL_INVALID_ENUM";
+            case GLES20.GL_INVALID_VALUE:
+                return "GL_INVALID_VALUE";
+            case GLES20.GL_INVALID_OPERATION:
+                return "GL_INVALID_OPERATION";
+            case GLES20.GL_INVALID_FRAMEBUFFER_OPERATION:
+                return "GL_INVALID_FRAMEBUFFER_OPERATION";
+            case GLES20.GL_OUT_OF_MEMORY:
+                return "GL_OUT_OF_MEMORY";
+            default:
+                return "0x" + Integer.toHexString(error);
+        }
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        mDelegate.glActiveTexture(texture);
+
+        if (check()) {
+            begin("glActiveTexture").argEnum("texture", texture).end(null);
+        }
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        mDelegate.glAttachShader(program, shader);
+
+        if (check()) {
+            begin("glAttachShader").arg("program", program).arg("shader", shader).end(getOwner(program, shader));
+        }
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        mDelegate.glBindBuffer(target, buffer);
+
+        if (check()) {
+            begin("glBindBuffer").argEnum("target", target).arg("buffer", buffer).end(null);
+        }
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        mDelegate.glBindTexture(target, texture);
+
+        if (check()) {
+            begin("glBindTexture").argEnum("target", target).arg("texture", texture).end(null);
+        }
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        mDelegate.glBufferData(target, size, data, usage);
+
+        if (check()) {
+            begin("glBufferData").argEnum("target", target).arg("size", size).arg("data", data).argEnum("usage", usage).end(null);
+        }
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        mDelegate.glBufferSubData(target, offset, size, data);
+
+        if (check()) {
+            begin("glBufferSubData").argEnum("target", target).arg("offset", offset).arg("size", size).arg("data", data).end(null);
+        }
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        mDelegate.glCompileShader(shader);
+
+        if (check()) {
+            begin("glCompileShader").arg("shader", shader).end(getShaderLabel(shader));
+        }
+    }
+
+    @Override
+    public int glCreateProgram() {
+        int result = mDelegate.glCreateProgram();
+
+        if (check()) {
+            begin("glCreateProgram").result(result).end(null);
+        }
+
+        return result;
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        int result = mDelegate.glCreateShader(type);
+
+        if (check()) {
+            begin("glCreateShader").argEnum("type", type).result(result).end(null);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        mDelegate.glDeleteBuffers(n, buffers, offset);
+
+        if (check()) {
+            begin("glDeleteBuffers").arg("n", n).arg("buffers", buffers).arg("offset", offset).end(null);
+        }
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, IntBuffer buffers) {
+        mDelegate.glDeleteBuffers(n, buffers);
+
+        if (check()) {
+            begin("glDeleteBuffers").arg("n", n).arg("buffers", buffers).end(null);
+        }
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        mDelegate.glDeleteProgram(program);
+
+        if (check()) {
+            begin("glDeleteProgram").arg("program", program).end(getProgramLabel(program));
+        }
+
+        mProgramLabels.remove(program);
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        mDelegate.glDeleteShader(shader);
+
+        if (check()) {
+            begin("glDeleteShader").arg("shader", shader).end(getShaderLabel(shader));
+        }
+
+        mShaderLabels.remove(shader);
+    }
+
+    @Override
+    public void glDetachShader(int program, int shader) {
+        mDelegate.glDetachShader(program, shader);
+
+        if (check()) {
+            begin("glDetachShader").arg("program", program).arg("shader", shader).end(getOwner(program, shader));
+        }
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        mDelegate.glDisableVertexAttribArray(index);
+
+        if (check()) {
+            begin("glDisableVertexAttribArray").arg("index", index).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        mDelegate.glDrawArrays(mode, first, count);
+
+        if (check()) {
+            begin("glDrawArrays").argEnum("mode", mode).arg("first", first).arg("count", count).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        mDelegate.glDrawElements(mode, count, type, offset);
+
+        if (check()) {
+            begin("glDrawElements").argEnum("mode", mode).arg("count", count).argEnum("type", type).arg("offset", offset).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices) {
+        mDelegate.glDrawElements(mode, count, type, indices);
+
+        if (check()) {
+            begin("glDrawElements").argEnum("mode", mode).arg("count", count).argEnum("type", type).arg("indices", indices).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        mDelegate.glEnableVertexAttribArray(index);
+
+        if (check()) {
+            begin("glEnableVertexAttribArray").arg("index", index).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        mDelegate.glGenBuffers(n, buffers, offset);
+
+        if (check()) {
+            begin("glGenBuffers").arg("n", n).arg("buffers", buffers).arg("offset", offset).end(null);
+        }
+    }
+
+    @Override
+    public void glGenBuffers(int n, IntBuffer buffers) {
+        mDelegate.glGenBuffers(n, buffers);
+
+        if (check()) {
+            begin("glGenBuffers").arg("n", n).arg("buffers", buffers).end(null);
+        }
+    }
+
+    @Override
+    public void glGetActiveAttrib(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset) {
+        mDelegate.glGetActiveAttrib(program, index, bufsize, length, lengthOffset, size, sizeOffset, type, typeOffset, name, nameOffset);
+
+        if (check()) {
+            begin("glGetActiveAttrib").arg("program", program).arg("index", index).arg("bufsize", bufsize).arg("length", length).arg("lengthOffset", lengthOffset).arg("size", size).arg("sizeOffset", sizeOffset).arg("type", type).arg("typeOffset", typeOffset).arg("name", name).arg("nameOffset", nameOffset).end(getProgramLabel(program));
+        }
+    }
+
+    @Override
+    public void glGetActiveUniform(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset) {
+        mDelegate.glGetActiveUniform(program, index, bufsize, length, lengthOffset, size, sizeOffset, type, typeOffset, name, nameOffset);
+
+        if (check()) {
+            begin("glGetActiveUniform").arg("program", program).arg("index", index).arg("bufsize", bufsize).arg("length", length).arg("lengthOffset", lengthOffset).arg("size", size).arg("sizeOffset", sizeOffset).arg("type", type).arg("typeOffset", typeOffset).arg("name", name).arg("nameOffset", nameOffset).end(getProgramLabel(program));
+        }
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        int result = mDelegate.glGetAttribLocation(program, name);
+
+        if (check()) {
+            begin("glGetAttribLocation").arg("program", program).arg("name", name).result(result).end(getProgramLabel(program));
+        }
+
+        return result;
+    }
+
+    @Override
+    public int glGetError() {
+        return mDelegate.glGetError();
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset) {
+        mDelegate.glGetIntegerv(pname, params, offset);
+
+        if (check()) {
+            begin("glGetIntegerv").argEnum("pname", pname).arg("params", params).arg("offset", offset).end(null);
+        }
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, IntBuffer length, IntBuffer binaryFormat, Buffer binary) {
+        mDelegate.glGetProgramBinary(program, bufSize, length, binaryFormat, binary);
+
+        if (check()) {
+            begin("glGetProgramBinary").arg("program", program).arg("bufSize", bufSize).arg("length", length).arg("binaryFormat", binaryFormat).arg("binary", binary).end(getProgramLabel(program));
+        }
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        mDelegate.glGetProgramiv(program, pname, params, offset);
+
+        if (check()) {
+            begin("glGetProgramiv").arg("program", program).argEnum("pname", pname).arg("params", params).arg("offset", offset).end(getProgramLabel(program));
+        }
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        String result = mDelegate.glGetProgramInfoLog(program);
+
+        if (check()) {
+            begin("glGetProgramInfoLog").arg("program", program).result(result).end(getProgramLabel(program));
+        }
+
+        return result;
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        mDelegate.glGetShaderiv(shader, pname, params, offset);
+
+        if (check()) {
+            begin("glGetShaderiv").arg("shader", shader).argEnum("pname", pname).arg("params", params).arg("offset", offset).end(getShaderLabel(shader));
+        }
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        String result = mDelegate.glGetShaderInfoLog(shader);
+
+        if (check()) {
+            begin("glGetShaderInfoLog").arg("shader", shader).result(result).end(getShaderLabel(shader));
+        }
+
+        return result;
+    }
+
+    @Override
+    public String glGetString(int name) {
+        String result = mDelegate.glGetString(name);
+
+        if (check()) {
+            begin("glGetString").argEnum("name", name).result(result).end(null);
+        }
+
+        return result;
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        int result = mDelegate.glGetUniformLocation(program, name);
+
+        if (check()) {
+            begin("glGetUniformLocation").arg("program", program).arg("name", name).result(result).end(getProgramLabel(program));
+        }
+
+        return result;
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        mDelegate.glLinkProgram(program);
+
+        if (check()) {
+            begin("glLinkProgram").arg("program", program).end(getProgramLabel(program));
+        }
+    }
+
+    @Override
+    public void glObjectLabel(int identifier, int name, int length, String label) {
+        mDelegate.glObjectLabel(identifier, name, length, label);
+
+        if (check()) {
+            begin("glObjectLabel").argEnum("identifier", identifier).arg("name", name).arg("length", length).arg("label", label).end(null);
+        }
+
+        setLabel(identifier, name, label);
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+        mDelegate.glProgramBinary(program, binaryFormat, binary, length);
+
+        if (check()) {
+            begin("glProgramBinary").arg("program", program).argEnum("binaryFormat", binaryFormat).arg("binary", binary).arg("length", length).end(getProgramLabel(program));
+        }
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pname, int value) {
+        mDelegate.glProgramParameteri(program, pname, value);
+
+        if (check()) {
+            begin("glProgramParameteri").arg("program", program).argEnum("pname", pname).arg("value", value).end(getProgramLabel(program));
+        }
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string) {
+        mDelegate.glShaderSource(shader, string);
+
+        if (check()) {
+            begin("glShaderSource").arg("shader", shader).arg("string", string).end(getShaderLabel(shader));
+        }
+    }
+
+    @Override
+    public void glUniform1f(int location, float x) {
+        mDelegate.glUniform1f(location, x);
+
+        if (check()) {
+            begin("glUniform1f").arg("location", location).arg("x", x).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform1fv(int location, int count, FloatBuffer v) {
+        mDelegate.glUniform1fv(location, count, v);
+
+        if (check()) {
+            begin("glUniform1fv").arg("location", location).arg("count", count).arg("v", v).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform1fv(int location, int count, float[] v, int offset) {
+        mDelegate.glUniform1fv(location, count, v, offset);
+
+        if (check()) {
+            begin("glUniform1fv").arg("location", location).arg("count", count).arg("v", v).arg("offset", offset).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        mDelegate.glUniform1i(location, x);
+
+        if (check()) {
+            begin("glUniform1i").arg("location", location).arg("x", x).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform1iv(int location, int count, IntBuffer v) {
+        mDelegate.glUniform1iv(location, count, v);
+
+        if (check()) {
+            begin("glUniform1iv").arg("location", location).arg("count", count).arg("v", v).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform1iv(int location, int count, int[] v, int offset) {
+        mDelegate.glUniform1iv(location, count, v, offset);
+
+        if (check()) {
+            begin("glUniform1iv").arg("location", location).arg("count", count).arg("v", v).arg("offset", offset).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform2f(int location, float x, float y) {
+        mDelegate.glUniform2f(location, x, y);
+
+        if (check()) {
+            begin("glUniform2f").arg("location", location).arg("x", x).arg("y", y).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform2fv(int location, int count, FloatBuffer v) {
+        mDelegate.glUniform2fv(location, count, v);
+
+        if (check()) {
+            begin("glUniform2fv").arg("location", location).arg("count", count).arg("v", v).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform2fv(int location, int count, float[] v, int offset) {
+        mDelegate.glUniform2fv(location, count, v, offset);
+
+        if (check()) {
+            begin("glUniform2fv").arg("location", location).arg("count", count).arg("v", v).arg("offset", offset).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform2i(int location, int x, int y) {
+        mDelegate.glUniform2i(location, x, y);
+
+        if (check()) {
+            begin("glUniform2i").arg("location", location).arg("x", x).arg("y", y).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform2iv(int location, int count, IntBuffer v) {
+        mDelegate.glUniform2iv(location, count, v);
+
+        if (check()) {
+            begin("glUniform2iv").arg("location", location).arg("count", count).arg("v", v).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform2iv(int location, int count, int[] v, int offset) {
+        mDelegate.glUniform2iv(location, count, v, offset);
+
+        if (check()) {
+            begin("glUniform2iv").arg("location", location).arg("count", count).arg("v", v).arg("offset", offset).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform3f(int location, float x, float y, float z) {
+        mDelegate.glUniform3f(location, x, y, z);
+
+        if (check()) {
+            begin("glUniform3f").arg("location", location).arg("x", x).arg("y", y).arg("z", z).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform3fv(int location, int count, FloatBuffer v) {
+        mDelegate.glUniform3fv(location, count, v);
+
+        if (check()) {
+            begin("glUniform3fv").arg("location", location).arg("count", count).arg("v", v).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform3fv(int location, int count, float[] v, int offset) {
+        mDelegate.glUniform3fv(location, count, v, offset);
+
+        if (check()) {
+            begin("glUniform3fv").arg("location", location).arg("count", count).arg("v", v).arg("offset", offset).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform3i(int location, int x, int y, int z) {
+        mDelegate.glUniform3i(location, x, y, z);
+
+        if (check()) {
+            begin("glUniform3i").arg("location", location).arg("x", x).arg("y", y).arg("z", z).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform3iv(int location, int count, IntBuffer v) {
+        mDelegate.glUniform3iv(location, count, v);
+
+        if (check()) {
+            begin("glUniform3iv").arg("location", location).arg("count", count).arg("v", v).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform3iv(int location, int count, int[] v, int offset) {
+        mDelegate.glUniform3iv(location, count, v, offset);
+
+        if (check()) {
+            begin("glUniform3iv").arg("location", location).arg("count", count).arg("v", v).arg("offset", offset).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        mDelegate.glUniform4f(location, x, y, z, w);
+
+        if (check()) {
+            begin("glUniform4f").arg("location", location).arg("x", x).arg("y", y).arg("z", z).arg("w", w).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, FloatBuffer v) {
+        mDelegate.glUniform4fv(location, count, v);
+
+        if (check()) {
+            begin("glUniform4fv").arg("location", location).arg("count", count).arg("v", v).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        mDelegate.glUniform4fv(location, count, v, offset);
+
+        if (check()) {
+            begin("glUniform4fv").arg("location", location).arg("count", count).arg("v", v).arg("offset", offset).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform4i(int location, int x, int y, int z, int w) {
+        mDelegate.glUniform4i(location, x, y, z, w);
+
+        if (check()) {
+            begin("glUniform4i").arg("location", location).arg("x", x).arg("y", y).arg("z", z).arg("w", w).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform4iv(int location, int count, IntBuffer v) {
+        mDelegate.glUniform4iv(location, count, v);
+
+        if (check()) {
+            begin("glUniform4iv").arg("location", location).arg("count", count).arg("v", v).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniform4iv(int location, int count, int[] v, int offset) {
+        mDelegate.glUniform4iv(location, count, v, offset);
+
+        if (check()) {
+            begin("glUniform4iv").arg("location", location).arg("count", count).arg("v", v).arg("offset", offset).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniformMatrix2fv(int location, int count, boolean transpose, FloatBuffer value) {
+        mDelegate.glUniformMatrix2fv(location, count, transpose, value);
+
+        if (check()) {
+            begin("glUniformMatrix2fv").arg("location", location).arg("count", count).arg("transpose", transpose).arg("value", value).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniformMatrix2fv(int location, int count, boolean transpose, float[] value, int offset) {
+        mDelegate.glUniformMatrix2fv(location, count, transpose, value, offset);
+
+        if (check()) {
+            begin("glUniformMatrix2fv").arg("location", location).arg("count", count).arg("transpose", transpose).arg("value", value).arg("offset", offset).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniformMatrix3fv(int location, int count, boolean transpose, FloatBuffer value) {
+        mDelegate.glUniformMatrix3fv(location, count, transpose, value);
+
+        if (check()) {
+            begin("glUniformMatrix3fv").arg("location", location).arg("count", count).arg("transpose", transpose).arg("value", value).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniformMatrix3fv(int location, int count, boolean transpose, float[] value, int offset) {
+        mDelegate.glUniformMatrix3fv(location, count, transpose, value, offset);
+
+        if (check()) {
+            begin("glUniformMatrix3fv").arg("location", location).arg("count", count).arg("transpose", transpose).arg("value", value).arg("offset", offset).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, FloatBuffer value) {
+        mDelegate.glUniformMatrix4fv(location, count, transpose, value);
+
+        if (check()) {
+            begin("glUniformMatrix4fv").arg("location", location).arg("count", count).arg("transpose", transpose).arg("value", value).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        mDelegate.glUniformMatrix4fv(location, count, transpose, value, offset);
+
+        if (check()) {
+            begin("glUniformMatrix4fv").arg("location", location).arg("count", count).arg("transpose", transpose).arg("value", value).arg("offset", offset).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        mDelegate.glUseProgram(program);
+        mCurrentProgram = program;
+
+        if (check()) {
+            begin("glUseProgram").arg("program", program).end(getProgramLabel(program));
+        }
+    }
+
+    @Override
+    public void glValidateProgram(int program) {
+        mDelegate.glValidateProgram(program);
+
+        if (check()) {
+            begin("glValidateProgram").arg("program", program).end(getProgramLabel(program));
+        }
+    }
+
+    @Override
+    public void glVertexAttrib1f(int indx, float x) {
+        mDelegate.glVertexAttrib1f(indx, x);
+
+        if (check()) {
+            begin("glVertexAttrib1f").arg("indx", indx).arg("x", x).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glVertexAttrib1fv(int indx, FloatBuffer values) {
+        mDelegate.glVertexAttrib1fv(indx, values);
+
+        if (check()) {
+            begin("glVertexAttrib1fv").arg("indx", indx).arg("values", values).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glVertexAttrib1fv(int indx, float[] values, int offset) {
+        mDelegate.glVertexAttrib1fv(indx, values, offset);
+
+        if (check()) {
+            begin("glVertexAttrib1fv").arg("indx", indx).arg("values", values).arg("offset", offset).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glVertexAttrib2f(int indx, float x, float y) {
+        mDelegate.glVertexAttrib2f(indx, x, y);
+
+        if (check()) {
+            begin("glVertexAttrib2f").arg("indx", indx).arg("x", x).arg("y", y).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glVertexAttrib2fv(int indx, FloatBuffer values) {
+        mDelegate.glVertexAttrib2fv(indx, values);
+
+        if (check()) {
+            begin("glVertexAttrib2fv").arg("indx", indx).arg("values", values).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glVertexAttrib2fv(int indx, float[] values, int offset) {
+        mDelegate.glVertexAttrib2fv(indx, values, offset);
+
+        if (check()) {
+            begin("glVertexAttrib2fv").arg("indx", indx).arg("values", values).arg("offset", offset).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glVertexAttrib3f(int indx, float x, float y, float z) {
+        mDelegate.glVertexAttrib3f(indx, x, y, z);
+
+        if (check()) {
+            begin("glVertexAttrib3f").arg("indx", indx).arg("x", x).arg("y", y).arg("z", z).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glVertexAttrib3fv(int indx, FloatBuffer values) {
+        mDelegate.glVertexAttrib3fv(indx, values);
+
+        if (check()) {
+            begin("glVertexAttrib3fv").arg("indx", indx).arg("values", values).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glVertexAttrib3fv(int indx, float[] values, int offset) {
+        mDelegate.glVertexAttrib3fv(indx, values, offset);
+
+        if (check()) {
+            begin("glVertexAttrib3fv").arg("indx", indx).arg("values", values).arg("offset", offset).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glVertexAttrib4f(int indx, float x, float y, float z, float w) {
+        mDelegate.glVertexAttrib4f(indx, x, y, z, w);
+
+        if (check()) {
+            begin("glVertexAttrib4f").arg("indx", indx).arg("x", x).arg("y", y).arg("z", z).arg("w", w).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glVertexAttrib4fv(int indx, FloatBuffer values) {
+        mDelegate.glVertexAttrib4fv(indx, values);
+
+        if (check()) {
+            begin("glVertexAttrib4fv").arg("indx", indx).arg("values", values).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glVertexAttrib4fv(int indx, float[] values, int offset) {
+        mDelegate.glVertexAttrib4fv(indx, values, offset);
+
+        if (check()) {
+            begin("glVertexAttrib4fv").arg("indx", indx).arg("values", values).arg("offset", offset).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glVertexAttribPointer(int indx, int size, int type, boolean normalized, int stride, int offset) {
+        mDelegate.glVertexAttribPointer(indx, size, type, normalized, stride, offset);
+
+        if (check()) {
+            begin("glVertexAttribPointer").arg("indx", indx).arg("size", size).argEnum("type", type).arg("normalized", normalized).arg("stride", stride).arg("offset", offset).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    @Override
+    public void glVertexAttribPointer(int indx, int size, int type, boolean normalized, int stride, Buffer ptr) {
+        mDelegate.glVertexAttribPointer(indx, size, type, normalized, stride, ptr);
+
+        if (check()) {
+            begin("glVertexAttribPointer").arg("indx", indx).arg("size", size).argEnum("type", type).arg("normalized", normalized).arg("stride", stride).arg("ptr", ptr).end(getProgramLabel(mCurrentProgram));
+        }
+    }
+
+    /**
+     * Reads the error of the last call. Returns whether the call has to be reported.
+     */
+    private boolean check() {
+        mError = mDelegate.glGetError();
+
+        if (mError != GLES20.GL_NO_ERROR) {
+            // Several error flags may be set, the first one is reported
+            for (int i = 1; i < MAX_ERROR_FLAGS && mDelegate.glGetError() != GLES20.GL_NO_ERROR; i++) {
+            }
+
+            return true;
+        }
+
+        return mTracing;
+    }
+
+    private DebugGLBackend begin(final String function) {
+        mCall.setLength(0);
+        mCall.append(function).append('(');
+        mFirstArgument = true;
+        mClosed = false;
+
+        return this;
+    }
+
+    private StringBuilder appendName(final String name) {
+        if (!mFirstArgument) {
+            mCall.append(", ");
+        }
+
+        mFirstArgument = false;
+        return mCall.append(name).append('=');
+    }
+
+    private DebugGLBackend arg(final String name, int value) {
+        appendName(name).append(value);
+        return this;
+    }
+
+    private DebugGLBackend arg(final String name, float value) {
+        appendName(name).append(value);
+        return this;
+    }
+
+    private DebugGLBackend arg(final String name, boolean value) {
+        appendName(name).append(value);
+        return this;
+    }
+
+    private DebugGLBackend arg(final String name, final Object value) {
+        StringBuilder call = appendName(name);
+
+        if (value instanceof String) {
+            String string = (String) value;
+
+            if (string.length() > MAX_STRING_LENGTH) {
+                call.append('"').append(string, 0, MAX_STRING_LENGTH).append("\"...");
+            } else {
+                call.append('"').append(string).append('"');
+            }
+        } else if (value instanceof int[]) {
+            call.append("int[").append(((int[]) value).length).append(']');
+        } else if (value instanceof float[]) {
+            call.append("float[").append(((float[]) value).length).append(']');
+        } else if (value instanceof byte[]) {
+            call.append("byte[").append(((byte[]) value).length).append(']');
+        } else {
+            call.append(value);
+        }
+
+        return this;
+    }
+
+    private DebugGLBackend argEnum(final String name, int value) {
+        appendName(name).append("0x").append(Integer.toHexString(value));
+        return this;
+    }
+
+    private DebugGLBackend result(int value) {
+        mCall.append(") = ").append(value);
+        mClosed = true;
+        return this;
+    }
+
+    private DebugGLBackend result(final String value) {
+        mCall.append(") = \"").append(value).append('"');
+        mClosed = true;
+        return this;
+    }
+
+    /**
+     * Logs the call, and throws if it failed and throwing is enabled. owner may be null.
+     */
+    private void end(final String owner) throws IllegalStateException {
+        StringBuilder call = mCall;
+
+        if (!mClosed) {
+            call.append(')');
+        }
+
+        if (owner != null) {
+            call.append(" [").append(owner).append(']');
+        }
+
+        if (mError == GLES20.GL_NO_ERROR) {
+            Log.d(TAG, call.toString());
+            return;
+        }
+
+        call.append(": ").append(getErrorString(mError));
+        mErrorCount++;
+
+        String message = call.toString();
+        Log.e(TAG, message);
+
+        if (mThrowOnError) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private String getProgramLabel(int program) {
+        return program != 0 ? mProgramLabels.get(program) : null;
+    }
+
+    private String getShaderLabel(int shader) {
+        return mShaderLabels.get(shader);
+    }
+
+    private String getOwner(int program, int shader) {
+        String programLabel = getProgramLabel(program);
+        String shaderLabel = getShaderLabel(shader);
+
+        if (programLabel == null || shaderLabel == null || programLabel.equals(shaderLabel)) {
+            return programLabel != null ? programLabel : shaderLabel;
+        }
+
+        return programLabel + ", " + shaderLabel;
+    }
+
+    private void setLabel(int identifier, int name, final String label) {
+        SparseArray<String> labels;
+
+        switch (identifier) {
+            case GL_PROGRAM:
+                labels = mProgramLabels;
+                break;
+            case GL_SHADER:
+                labels = mShaderLabels;
+                break;
+            default:
+                return;
+        }
+
+        if (label != null) {
+            labels.put(name, label);
+        } else {
+            labels.remove(name);
+        }
+    }
+}
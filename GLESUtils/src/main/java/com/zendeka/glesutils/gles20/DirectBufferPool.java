@@ -0,0 +1,339 @@
+package com.zendeka.glesutils.gles20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Recycles native-order direct buffers for uploads, so loading code does not allocate a new direct
+ * buffer for every upload and leave it for the garbage collector to free. Direct memory is invisible
+ * to the Java heap, so a loader churning through short-lived direct buffers can run out of native
+ * memory long before the heap fills up.
+ *
+ * Sizes are rounded up to power of two size classes between the minimum and maximum class size, and
+ * each class keeps a free list of released buffers. Requests larger than the maximum class are
+ * allocated exactly and freed on release. Released buffers are kept until the retained limit is
+ * reached; beyond it they are dropped. If a native allocation fails, all free buffers are dropped
+ * and the allocation is tried once more.
+ *
+ * acquire() hands out a buffer cleared to the requested size. The float, short and int variants hand
+ * out a view of such a buffer, without copying; pass the buffer or the view back to release() exactly
+ * once and do not use it afterwards.
+ *
+ * The pool makes no GL calls and is safe to use from loader threads.
+ */
+public final class DirectBufferPool {
+    public static final int DEFAULT_MIN_SIZE = 256;
+    public static final int DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+    public static final int DEFAULT_MAX_RETAINED = 32 * 1024 * 1024;
+
+    private final int mMinShift;
+    private final int mMaxShift;
+    private final long mMaxRetained;
+    private final ArrayDeque<ByteBuffer>[] mFree;
+
+    // Buffers and views handed out, mapped to the buffer they came from
+    private final Map<Buffer, ByteBuffer> mLeases = new IdentityHashMap<Buffer, ByteBuffer>();
+    private final Map<ByteBuffer, Integer> mRequested = new IdentityHashMap<ByteBuffer, Integer>();
+
+    private long mAllocatedBytes;
+    private long mRetainedBytes;
+    private long mLeasedBytes;
+    private long mRequestedBytes;
+    private long mAllocatedHighWater;
+    private long mLeasedHighWater;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mDropCount;
+
+    public DirectBufferPool() {
+        this(DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_MAX_RETAINED);
+    }
+
+    /**
+     * minSize and maxSize are the smallest and largest size class and are rounded up to powers of two.
+     * maxRetained is the number of bytes released buffers may hold on to.
+     */
+    public DirectBufferPool(int minSize, int maxSize, long maxRetained) throws IllegalArgumentException {
+        if (minSize < 1 || maxSize < minSize || maxSize > 1 << 30) {
+            throw new IllegalArgumentException("Invalid size classes: " + minSize + " to " + maxSize);
+        }
+
+        if (maxRetained < 0) {
+            throw new IllegalArgumentException("Invalid retained size: " + maxRetained);
+        }
+
+        mMinShift = getShift(minSize);
+        mMaxShift = getShift(maxSize);
+        mMaxRetained = maxRetained;
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        ArrayDeque<ByteBuffer>[] free = new ArrayDeque[mMaxShift - mMinShift + 1];
+        mFree = free;
+
+        for (int i = 0; i < mFree.length; i++) {
+            mFree[i] = new ArrayDeque<ByteBuffer>();
+        }
+    }
+
+    public int getMinSize() {
+        return 1 << mMinShift;
+    }
+
+    public int getMaxSize() {
+        return 1 << mMaxShift;
+    }
+
+    public long getMaxRetained() {
+        return mMaxRetained;
+    }
+
+    /**
+     * Capacity of the buffer acquire(size) hands out.
+     */
+    public int getClassSize(int size) throws IllegalArgumentException {
+        checkSize(size);
+        return size > 1 << mMaxShift ? size : 1 << Math.max(getShift(size), mMinShift);
+    }
+
+    /**
+     * Returns a native-order direct buffer with position 0 and limit size. Its contents are undefined.
+     */
+    public synchronized ByteBuffer acquire(int size) throws IllegalArgumentException {
+        checkSize(size);
+
+        ByteBuffer buffer = null;
+        int shift = getShift(size);
+
+        if (shift <= mMaxShift) {
+            ArrayDeque<ByteBuffer> free = mFree[Math.max(shift, mMinShift) - mMinShift];
+            buffer = free.pollFirst();
+
+            if (buffer != null) {
+                mRetainedBytes -= buffer.capacity();
+                mHitCount++;
+            }
+        }
+
+        if (buffer == null) {
+            buffer = allocate(getClassSize(size));
+            mMissCount++;
+        }
+
+        // The previous user may have changed the byte order
+        buffer.clear();
+        buffer.order(ByteOrder.nativeOrder());
+        buffer.limit(size);
+
+        mLeases.put(buffer, buffer);
+        mRequested.put(buffer, size);
+        mLeasedBytes += buffer.capacity();
+        mRequestedBytes += size;
+        mLeasedHighWater = Math.max(mLeasedHighWater, mLeasedBytes);
+
+        return buffer;
+    }
+
+    /**
+     * Returns a view of count floats of a pooled buffer.
+     */
+    public synchronized FloatBuffer acquireFloats(int count) throws IllegalArgumentException {
+        checkCount(count, 4);
+
+        ByteBuffer buffer = acquire(count * 4);
+        FloatBuffer view = buffer.asFloatBuffer();
+        mLeases.put(view, buffer);
+
+        return view;
+    }
+
+    /**
+     * Returns a view of count shorts of a pooled buffer.
+     */
+    public synchronized ShortBuffer acquireShorts(int count) throws IllegalArgumentException {
+        checkCount(count, 2);
+
+        ByteBuffer buffer = acquire(count * 2);
+        ShortBuffer view = buffer.asShortBuffer();
+        mLeases.put(view, buffer);
+
+        return view;
+    }
+
+    /**
+     * Returns a view of count ints of a pooled buffer.
+     */
+    public synchronized IntBuffer acquireInts(int count) throws IllegalArgumentException {
+        checkCount(count, 4);
+
+        ByteBuffer buffer = acquire(count * 4);
+        IntBuffer view = buffer.asIntBuffer();
+        mLeases.put(view, buffer);
+
+        return view;
+    }
+
+    /**
+     * Returns a buffer, or a view, handed out by this pool.
+     */
+    public synchronized void release(final Buffer buffer) throws IllegalArgumentException {
+        ByteBuffer owner = mLeases.remove(buffer);
+
+        if (owner == null) {
+            throw new IllegalArgumentException("Buffer not acquired from this pool or already released");
+        }
+
+        if (owner != buffer) {
+            mLeases.remove(owner);
+        }
+
+        int capacity = owner.capacity();
+        mLeasedBytes -= capacity;
+        mRequestedBytes -= mRequested.remove(owner);
+
+        if (capacity > 1 << mMaxShift || mRetainedBytes + capacity > mMaxRetained) {
+            mAllocatedBytes -= capacity;
+            mDropCount++;
+            return;
+        }
+
+        mFree[getShift(capacity) - mMinShift].addFirst(owner);
+        mRetainedBytes += capacity;
+    }
+
+    /**
+     * Drops all released buffers, leaving them to be freed by the garbage collector.
+     */
+    public synchronized void trim() {
+        for (final ArrayDeque<ByteBuffer> free : mFree) {
+            free.clear();
+        }
+
+        mAllocatedBytes -= mRetainedBytes;
+        mRetainedBytes = 0;
+    }
+
+    /**
+     * Bytes of direct memory the pool allocated and has not dropped, whether handed out or free.
+     */
+    public synchronized long getAllocatedBytes() {
+        return mAllocatedBytes;
+    }
+
+    /**
+     * Bytes held by released buffers waiting to be reused.
+     */
+    public synchronized long getRetainedBytes() {
+        return mRetainedBytes;
+    }
+
+    /**
+     * Capacity of the buffers handed out and not released yet.
+     */
+    public synchronized long getLeasedBytes() {
+        return mLeasedBytes;
+    }
+
+    /**
+     * Bytes asked for by the buffers handed out and not released yet.
+     */
+    public synchronized long getRequestedBytes() {
+        return mRequestedBytes;
+    }
+
+    public synchronized int getLeaseCount() {
+        return mRequested.size();
+    }
+
+    public synchronized long getAllocatedHighWater() {
+        return mAllocatedHighWater;
+    }
+
+    public synchronized long getLeasedHighWater() {
+        return mLeasedHighWater;
+    }
+
+    /**
+     * Fraction of the capacity of the buffers handed out lost to rounding up to size classes.
+     */
+    public synchronized float getInternalFragmentation() {
+        return mLeasedBytes > 0 ? 1.0f - (float) mRequestedBytes / mLeasedBytes : 0.0f;
+    }
+
+    /**
+     * Fraction of the allocated direct memory sitting unused in free lists.
+     */
+    public synchronized float getExternalFragmentation() {
+        return mAllocatedBytes > 0 ? (float) mRetainedBytes / mAllocatedBytes : 0.0f;
+    }
+
+    /**
+     * Number of acquires served from a free list.
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Number of acquires that allocated a new buffer.
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Number of released buffers not kept for reuse.
+     */
+    public synchronized long getDropCount() {
+        return mDropCount;
+    }
+
+    public synchronized void resetStatistics() {
+        mHitCount = 0;
+        mMissCount = 0;
+        mDropCount = 0;
+        mAllocatedHighWater = mAllocatedBytes;
+        mLeasedHighWater = mLeasedBytes;
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        ByteBuffer buffer;
+
+        try {
+            buffer = ByteBuffer.allocateDirect(capacity);
+        } catch (OutOfMemoryError e) {
+            // Native memory is freed only once the dropped buffers are collected
+            trim();
+            System.gc();
+            buffer = ByteBuffer.allocateDirect(capacity);
+        }
+
+        mAllocatedBytes += capacity;
+        mAllocatedHighWater = Math.max(mAllocatedHighWater, mAllocatedBytes);
+
+        return buffer.order(ByteOrder.nativeOrder());
+    }
+
+    private static int getShift(int size) {
+        return size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    private static void checkSize(int size) throws IllegalArgumentException {
+        if (size < 0) {
+            throw new IllegalArgumentException("Invalid buffer size: " + size);
+        }
+    }
+
+    private static void checkCount(int count, int elementSize) throws IllegalArgumentException {
+        if (count < 0 || count > Integer.MAX_VALUE / elementSize) {
+            throw new IllegalArgumentException("Invalid element count: " + count);
+        }
+    }
+}
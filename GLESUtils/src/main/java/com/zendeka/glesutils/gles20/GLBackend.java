@@ -0,0 +1,97 @@
+package com.zendeka.glesutils.gles20;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * The OpenGL ES 2.0 entry points used by the library. Method names and signatures follow
+ * android.opengl.GLES20, so AndroidGLBackend is a plain delegation; other implementations stand in
+ * for the driver where there is none, e.g. in tests and benchmarks on a desktop JVM.
+ */
+public interface GLBackend {
+    public void glActiveTexture(int texture);
+    public void glAttachShader(int program, int shader);
+    public void glBindBuffer(int target, int buffer);
+    public void glBindTexture(int target, int texture);
+    public void glBufferData(int target, int size, Buffer data, int usage);
+    public void glBufferSubData(int target, int offset, int size, Buffer data);
+    public void glCompileShader(int shader);
+    public int glCreateProgram();
+    public int glCreateShader(int type);
+    public void glDeleteBuffers(int n, int[] buffers, int offset);
+    public void glDeleteBuffers(int n, IntBuffer buffers);
+    public void glDeleteProgram(int program);
+    public void glDeleteShader(int shader);
+    public void glDetachShader(int program, int shader);
+    public void glDisableVertexAttribArray(int index);
+    public void glDrawArrays(int mode, int first, int count);
+    public void glDrawElements(int mode, int count, int type, int offset);
+    public void glDrawElements(int mode, int count, int type, Buffer indices);
+    public void glEnableVertexAttribArray(int index);
+    public void glGenBuffers(int n, int[] buffers, int offset);
+    public void glGenBuffers(int n, IntBuffer buffers);
+    public void glGetActiveAttrib(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset);
+    public void glGetActiveUniform(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset);
+    public int glGetAttribLocation(int program, String name);
+    public int glGetError();
+    public void glGetIntegerv(int pname, int[] params, int offset);
+    public void glGetProgramBinary(int program, int bufSize, IntBuffer length, IntBuffer binaryFormat, Buffer binary);
+    public void glGetProgramiv(int program, int pname, int[] params, int offset);
+    public String glGetProgramInfoLog(int program);
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset);
+    public String glGetShaderInfoLog(int shader);
+    public String glGetString(int name);
+    public int glGetUniformLocation(int program, String name);
+    public void glLinkProgram(int program);
+    public void glObjectLabel(int identifier, int name, int length, String label);
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length);
+    public void glProgramParameteri(int program, int pname, int value);
+    public void glShaderSource(int shader, String string);
+    public void glUniform1f(int location, float x);
+    public void glUniform1fv(int location, int count, FloatBuffer v);
+    public void glUniform1fv(int location, int count, float[] v, int offset);
+    public void glUniform1i(int location, int x);
+    public void glUniform1iv(int location, int count, IntBuffer v);
+    public void glUniform1iv(int location, int count, int[] v, int offset);
+    public void glUniform2f(int location, float x, float y);
+    public void glUniform2fv(int location, int count, FloatBuffer v);
+    public void glUniform2fv(int location, int count, float[] v, int offset);
+    public void glUniform2i(int location, int x, int y);
+    public void glUniform2iv(int location, int count, IntBuffer v);
+    public void glUniform2iv(int location, int count, int[] v, int offset);
+    public void glUniform3f(int location, float x, float y, float z);
+    public void glUniform3fv(int location, int count, FloatBuffer v);
+    public void glUniform3fv(int location, int count, float[] v, int offset);
+    public void glUniform3i(int location, int x, int y, int z);
+    public void glUniform3iv(int location, int count, IntBuffer v);
+    public void glUniform3iv(int location, int count, int[] v, int offset);
+    public void glUniform4f(int location, float x, float y, float z, float w);
+    public void glUniform4fv(int location, int count, FloatBuffer v);
+    public void glUniform4fv(int location, int count, float[] v, int offset);
+    public void glUniform4i(int location, int x, int y, int z, int w);
+    public void glUniform4iv(int location, int count, IntBuffer v);
+    public void glUniform4iv(int location, int count, int[] v, int offset);
+    public void glUniformMatrix2fv(int location, int count, boolean transpose, FloatBuffer value);
+    public void glUniformMatrix2fv(int location, int count, boolean transpose, float[] value, int offset);
+    public void glUniformMatrix3fv(int location, int count, boolean transpose, FloatBuffer value);
+    public void glUniformMatrix3fv(int location, int count, boolean transpose, float[] value, int offset);
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, FloatBuffer value);
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+    public void glUseProgram(int program);
+    public void glValidateProgram(int program);
+    public void glVertexAttrib1f(int indx, float x);
+    public void glVertexAttrib1fv(int indx, FloatBuffer values);
+    public void glVertexAttrib1fv(int indx, float[] values, int offset);
+    public void glVertexAttrib2f(int indx, float x, float y);
+    public void glVertexAttrib2fv(int indx, FloatBuffer values);
+    public void glVertexAttrib2fv(int indx, float[] values, int offset);
+    public void glVertexAttrib3f(int indx, float x, float y, float z);
+    public void glVertexAttrib3fv(int indx, FloatBuffer values);
+    public void glVertexAttrib3fv(int indx, float[] values, int offset);
+    public void glVertexAttrib4f(int indx, float x, float y, float z, float w);
+    public void glVertexAttrib4fv(int indx, FloatBuffer values);
+    public void glVertexAttrib4fv(int indx, float[] values, int offset);
+    public void glVertexAttribPointer(int indx, int size, int type, boolean normalized, int stride, int offset);
+    public void glVertexAttribPointer(int indx, int size, int type, boolean normalized, int stride, Buffer ptr);
+}
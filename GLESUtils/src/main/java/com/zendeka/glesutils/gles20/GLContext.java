@@ -0,0 +1,338 @@
+package com.zendeka.glesutils.gles20;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.util.Arrays;
+
+/**
+ * Tracks the GL state of an OpenGL ES context so that redundant program, buffer, texture and vertex
+ * attribute array changes never reach the driver.
+ *
+ * The tracker only knows about changes made through it. Call invalidate() after the context was
+ * (re)created or after state was changed through GLES20 directly.
+ *
+ * Shaders, programs and buffers bind to the context that is current when they are created and make
+ * all of their GL calls through its GLBackend. Unless another context is made current first, the
+ * current context calls GLES20 through an AndroidGLBackend.
+ */
+public final class GLContext {
+    private static final int UNKNOWN = -1;
+    private static final byte ATTRIBUTE_UNKNOWN = -1;
+    private static final byte ATTRIBUTE_DISABLED = 0;
+    private static final byte ATTRIBUTE_ENABLED = 1;
+    private static final int POINTER_BUFFER = 0;
+    private static final int POINTER_SIZE = 1;
+    private static final int POINTER_TYPE = 2;
+    private static final int POINTER_NORMALIZED = 3;
+    private static final int POINTER_STRIDE = 4;
+    private static final int POINTER_OFFSET = 5;
+    private static final int POINTER_FIELDS = 6;
+
+    private static GLContext sCurrent;
+
+    private final GLBackend mBackend;
+    private final RenderMetrics mMetrics = new RenderMetrics();
+    private int mProgram = UNKNOWN;
+    private final int[] mBuffers = new int[VertexBufferObject.Target.values().length];
+    private byte[] mAttributeArrays = new byte[16];
+    private int[] mAttributePointers = new int[16 * POINTER_FIELDS];
+    private int mMaxVertexAttribs = UNKNOWN;
+    private int mActiveTextureUnit = UNKNOWN;
+    private int[] mTextures2D = new int[8];
+    private int[] mTexturesCubeMap = new int[8];
+    private int[] mScratchNames = new int[16];
+
+    public GLContext() {
+        this(new AndroidGLBackend());
+    }
+
+    public GLContext(final GLBackend backend) throws IllegalArgumentException {
+        if (backend == null) {
+            throw new IllegalArgumentException("GL backend must not be null");
+        }
+
+        mBackend = backend;
+        invalidate();
+    }
+
+    public static GLContext getCurrent() {
+        if (sCurrent == null) {
+            sCurrent = new GLContext();
+        }
+
+        return sCurrent;
+    }
+
+    public static void setCurrent(final GLContext context) throws IllegalArgumentException {
+        if (context == null) {
+            throw new IllegalArgumentException("GL context must not be null");
+        }
+
+        sCurrent = context;
+    }
+
+    public GLBackend getBackend() {
+        return mBackend;
+    }
+
+    /**
+     * Counters of the driver work done through this context, see RenderMetrics.
+     */
+    public RenderMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    public void invalidate() {
+        mProgram = UNKNOWN;
+        Arrays.fill(mBuffers, UNKNOWN);
+        Arrays.fill(mAttributeArrays, ATTRIBUTE_UNKNOWN);
+        Arrays.fill(mAttributePointers, UNKNOWN);
+        mMaxVertexAttribs = UNKNOWN;
+        mActiveTextureUnit = UNKNOWN;
+        Arrays.fill(mTextures2D, UNKNOWN);
+        Arrays.fill(mTexturesCubeMap, UNKNOWN);
+    }
+
+    public int getCurrentProgram() {
+        return mProgram;
+    }
+
+    public void useProgram(int program) {
+        if (mProgram == program) {
+            return;
+        }
+
+        mBackend.glUseProgram(program);
+        mProgram = program;
+        mMetrics.increment(RenderMetrics.Counter.PROGRAM_SWITCHES);
+    }
+
+    public int getBoundBuffer(final VertexBufferObject.Target target) {
+        return mBuffers[target.ordinal()];
+    }
+
+    public void bindBuffer(final VertexBufferObject.Target target, int buffer) {
+        int index = target.ordinal();
+
+        if (mBuffers[index] == buffer) {
+            return;
+        }
+
+        mBackend.glBindBuffer(target.getTarget(), buffer);
+        mBuffers[index] = buffer;
+        mMetrics.increment(RenderMetrics.Counter.BUFFER_BINDS);
+    }
+
+    public int genBuffer() {
+        mBackend.glGenBuffers(1, mScratchNames, 0);
+        return mScratchNames[0];
+    }
+
+    public void genBuffers(int n, int[] buffers, int offset) {
+        mBackend.glGenBuffers(n, buffers, offset);
+    }
+
+    public void deleteBuffer(int buffer) {
+        mScratchNames[0] = buffer;
+        mBackend.glDeleteBuffers(1, mScratchNames, 0);
+        onBufferDeleted(buffer);
+    }
+
+    public void deleteBuffers(int n, int[] buffers, int offset) {
+        if (n == 0) {
+            return;
+        }
+
+        mBackend.glDeleteBuffers(n, buffers, offset);
+
+        for (int i = 0; i < n; i++) {
+            onBufferDeleted(buffers[offset + i]);
+        }
+    }
+
+    /**
+     * Deleting a buffer unbinds it from every target and vertex attribute it is bound to.
+     */
+    public void onBufferDeleted(int buffer) {
+        for (int i = 0; i < mBuffers.length; i++) {
+            if (mBuffers[i] == buffer) {
+                mBuffers[i] = 0;
+            }
+        }
+
+        for (int i = POINTER_BUFFER; i < mAttributePointers.length; i += POINTER_FIELDS) {
+            if (mAttributePointers[i] == buffer) {
+                mAttributePointers[i] = UNKNOWN;
+            }
+        }
+    }
+
+    public int getBoundTexture(int unit, int target) throws IllegalArgumentException {
+        int[] textures = getTextureBindings(target);
+        return unit < textures.length ? textures[unit] : UNKNOWN;
+    }
+
+    /**
+     * Binds a GL_TEXTURE_2D or GL_TEXTURE_CUBE_MAP texture to a texture unit, counted from 0.
+     */
+    public void bindTexture(int unit, int target, int texture) throws IllegalArgumentException {
+        int[] textures = getTextureBindings(target);
+
+        if (unit >= textures.length) {
+            mTextures2D = grow(mTextures2D, unit + 1);
+            mTexturesCubeMap = grow(mTexturesCubeMap, unit + 1);
+            textures = getTextureBindings(target);
+        }
+
+        if (textures[unit] == texture) {
+            return;
+        }
+
+        if (mActiveTextureUnit != unit) {
+            mBackend.glActiveTexture(GLES20.GL_TEXTURE0 + unit);
+            mActiveTextureUnit = unit;
+        }
+
+        mBackend.glBindTexture(target, texture);
+        textures[unit] = texture;
+    }
+
+    public boolean isVertexAttribArrayEnabled(int index) {
+        return index < mAttributeArrays.length && mAttributeArrays[index] == ATTRIBUTE_ENABLED;
+    }
+
+    public void enableVertexAttribArray(int index) {
+        ensureAttributeCapacity(index);
+
+        if (mAttributeArrays[index] == ATTRIBUTE_ENABLED) {
+            return;
+        }
+
+        mBackend.glEnableVertexAttribArray(index);
+        mAttributeArrays[index] = ATTRIBUTE_ENABLED;
+    }
+
+    public void disableVertexAttribArray(int index) {
+        ensureAttributeCapacity(index);
+
+        if (mAttributeArrays[index] == ATTRIBUTE_DISABLED) {
+            return;
+        }
+
+        mBackend.glDisableVertexAttribArray(index);
+        mAttributeArrays[index] = ATTRIBUTE_DISABLED;
+    }
+
+    /**
+     * Enables exactly the vertex attribute arrays whose bit is set in mask and disables every other
+     * array the context supports.
+     */
+    public void setVertexAttribArrays(int mask) {
+        int count = Math.min(getMaxVertexAttribs(), 32);
+        ensureAttributeCapacity(count - 1);
+
+        for (int index = 0; index < count; index++) {
+            if ((mask & (1 << index)) != 0) {
+                enableVertexAttribArray(index);
+            } else {
+                disableVertexAttribArray(index);
+            }
+        }
+    }
+
+    /**
+     * Points a vertex attribute at the buffer bound to GL_ARRAY_BUFFER. The call is skipped if the
+     * attribute already points at the same data of the same buffer.
+     */
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        ensureAttributeCapacity(index);
+
+        int buffer = mBuffers[VertexBufferObject.Target.ARRAY_BUFFER.ordinal()];
+        int normalizedFlag = normalized ? 1 : 0;
+        int[] pointers = mAttributePointers;
+        int base = index * POINTER_FIELDS;
+
+        if (buffer != UNKNOWN && pointers[base + POINTER_BUFFER] == buffer && pointers[base + POINTER_OFFSET] == offset
+                && pointers[base + POINTER_STRIDE] == stride && pointers[base + POINTER_SIZE] == size
+                && pointers[base + POINTER_TYPE] == type && pointers[base + POINTER_NORMALIZED] == normalizedFlag) {
+            return;
+        }
+
+        mBackend.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+        mMetrics.increment(RenderMetrics.Counter.ATTRIBUTE_POINTERS);
+
+        pointers[base + POINTER_BUFFER] = buffer;
+        pointers[base + POINTER_SIZE] = size;
+        pointers[base + POINTER_TYPE] = type;
+        pointers[base + POINTER_NORMALIZED] = normalizedFlag;
+        pointers[base + POINTER_STRIDE] = stride;
+        pointers[base + POINTER_OFFSET] = offset;
+    }
+
+    /**
+     * Points a vertex attribute at client memory. This is never skipped, as the contents of ptr may
+     * have changed.
+     */
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr) {
+        ensureAttributeCapacity(index);
+
+        mBackend.glVertexAttribPointer(index, size, type, normalized, stride, ptr);
+        mMetrics.increment(RenderMetrics.Counter.ATTRIBUTE_POINTERS);
+        mAttributePointers[index * POINTER_FIELDS + POINTER_BUFFER] = UNKNOWN;
+    }
+
+    public int getMaxVertexAttribs() {
+        if (mMaxVertexAttribs == UNKNOWN) {
+            int[] params = getScratchNames(1);
+            mBackend.glGetIntegerv(GLES20.GL_MAX_VERTEX_ATTRIBS, params, 0);
+            mMaxVertexAttribs = params[0];
+        }
+
+        return mMaxVertexAttribs;
+    }
+
+    /**
+     * Scratch array for passing object names to the backend. Its contents are only valid until the next call.
+     */
+    int[] getScratchNames(int capacity) {
+        if (mScratchNames.length < capacity) {
+            mScratchNames = new int[Math.max(capacity, mScratchNames.length * 2)];
+        }
+
+        return mScratchNames;
+    }
+
+    private int[] getTextureBindings(int target) throws IllegalArgumentException {
+        switch (target) {
+            case GLES20.GL_TEXTURE_2D:
+                return mTextures2D;
+            case GLES20.GL_TEXTURE_CUBE_MAP:
+                return mTexturesCubeMap;
+            default:
+                throw new IllegalArgumentException("Unsupported texture target " + target);
+        }
+    }
+
+    private static int[] grow(int[] bindings, int capacity) {
+        int length = bindings.length;
+        int[] grown = Arrays.copyOf(bindings, Math.max(capacity, length * 2));
+        Arrays.fill(grown, length, grown.length, UNKNOWN);
+
+        return grown;
+    }
+
+    private void ensureAttributeCapacity(int index) {
+        if (index < mAttributeArrays.length) {
+            return;
+        }
+
+        int length = mAttributeArrays.length;
+        mAttributeArrays = Arrays.copyOf(mAttributeArrays, Math.max(index + 1, length * 2));
+        Arrays.fill(mAttributeArrays, length, mAttributeArrays.length, ATTRIBUTE_UNKNOWN);
+
+        int pointersLength = mAttributePointers.length;
+        mAttributePointers = Arrays.copyOf(mAttributePointers, mAttributeArrays.length * POINTER_FIELDS);
+        Arrays.fill(mAttributePointers, pointersLength, mAttributePointers.length, UNKNOWN);
+    }
+}
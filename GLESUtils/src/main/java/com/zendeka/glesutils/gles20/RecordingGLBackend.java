@@ -0,0 +1,818 @@
+package com.zendeka.glesutils.gles20;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Backend decorator that records every call as a command stream with start time, duration and up to
+ * two integer arguments (names, targets, locations), and keeps a call count per command.
+ *
+ * Wrapping the AndroidGLBackend measures the real driver calls on a device; the default constructor
+ * wraps a StubGLBackend, so command streams can be captured on a plain JVM without a GPU.
+ */
+public final class RecordingGLBackend implements GLBackend {
+    public enum Command {
+        ACTIVE_TEXTURE,
+        ATTACH_SHADER,
+        BIND_BUFFER,
+        BIND_TEXTURE,
+        BUFFER_DATA,
+        BUFFER_SUB_DATA,
+        COMPILE_SHADER,
+        CREATE_PROGRAM,
+        CREATE_SHADER,
+        DELETE_BUFFERS,
+        DELETE_PROGRAM,
+        DELETE_SHADER,
+        DETACH_SHADER,
+        DISABLE_VERTEX_ATTRIB_ARRAY,
+        DRAW_ARRAYS,
+        DRAW_ELEMENTS,
+        ENABLE_VERTEX_ATTRIB_ARRAY,
+        GEN_BUFFERS,
+        GET_ACTIVE_ATTRIB,
+        GET_ACTIVE_UNIFORM,
+        GET_ATTRIB_LOCATION,
+        GET_ERROR,
+        GET_INTEGERV,
+        GET_PROGRAMIV,
+        GET_PROGRAM_BINARY,
+        GET_PROGRAM_INFO_LOG,
+        GET_SHADERIV,
+        GET_SHADER_INFO_LOG,
+        GET_STRING,
+        GET_UNIFORM_LOCATION,
+        LINK_PROGRAM,
+        OBJECT_LABEL,
+        PROGRAM_BINARY,
+        PROGRAM_PARAMETERI,
+        SHADER_SOURCE,
+        UNIFORM_1F,
+        UNIFORM_1FV,
+        UNIFORM_1I,
+        UNIFORM_1IV,
+        UNIFORM_2F,
+        UNIFORM_2FV,
+        UNIFORM_2I,
+        UNIFORM_2IV,
+        UNIFORM_3F,
+        UNIFORM_3FV,
+        UNIFORM_3I,
+        UNIFORM_3IV,
+        UNIFORM_4F,
+        UNIFORM_4FV,
+        UNIFORM_4I,
+        UNIFORM_4IV,
+        UNIFORM_MATRIX_2FV,
+        UNIFORM_MATRIX_3FV,
+        UNIFORM_MATRIX_4FV,
+        USE_PROGRAM,
+        VALIDATE_PROGRAM,
+        VERTEX_ATTRIB_1F,
+        VERTEX_ATTRIB_1FV,
+        VERTEX_ATTRIB_2F,
+        VERTEX_ATTRIB_2FV,
+        VERTEX_ATTRIB_3F,
+        VERTEX_ATTRIB_3FV,
+        VERTEX_ATTRIB_4F,
+        VERTEX_ATTRIB_4FV,
+        VERTEX_ATTRIB_POINTER
+    }
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final GLBackend mDelegate;
+    private final long[] mCallCounts = new long[Command.values().length];
+    private final long[] mCallDurations = new long[Command.values().length];
+    private boolean mCapturing = true;
+
+    private int mCommandCount;
+    private int[] mCommands = new int[INITIAL_CAPACITY];
+    private long[] mStartTimes = new long[INITIAL_CAPACITY];
+    private long[] mDurations = new long[INITIAL_CAPACITY];
+    private int[] mArguments = new int[INITIAL_CAPACITY * 2];
+
+    public RecordingGLBackend() {
+        this(new StubGLBackend());
+    }
+
+    public RecordingGLBackend(final GLBackend delegate) {
+        mDelegate = delegate;
+    }
+
+    public GLBackend getDelegate() {
+        return mDelegate;
+    }
+
+    public boolean isCapturing() {
+        return mCapturing;
+    }
+
+    /**
+     * Whether calls are appended to the command stream. Call counts and durations are kept either way.
+     */
+    public void setCapturing(boolean capturing) {
+        mCapturing = capturing;
+    }
+
+    public int getCommandCount() {
+        return mCommandCount;
+    }
+
+    public Command getCommand(int index) {
+        checkIndex(index);
+        return Command.values()[mCommands[index]];
+    }
+
+    public long getCommandStartTime(int index) {
+        checkIndex(index);
+        return mStartTimes[index];
+    }
+
+    public long getCommandDuration(int index) {
+        checkIndex(index);
+        return mDurations[index];
+    }
+
+    public int getCommandArgument(int index, int argument) {
+        checkIndex(index);
+
+        if (argument < 0 || argument > 1) {
+            throw new IllegalArgumentException("Only the first two integer arguments are recorded");
+        }
+
+        return mArguments[index * 2 + argument];
+    }
+
+    public long getCallCount(final Command command) {
+        return mCallCounts[command.ordinal()];
+    }
+
+    public long getCallDuration(final Command command) {
+        return mCallDurations[command.ordinal()];
+    }
+
+    public long getTotalCallCount() {
+        long total = 0;
+
+        for (long count : mCallCounts) {
+            total += count;
+        }
+
+        return total;
+    }
+
+    public long getTotalCallDuration() {
+        long total = 0;
+
+        for (long duration : mCallDurations) {
+            total += duration;
+        }
+
+        return total;
+    }
+
+    /**
+     * Clears the command stream, e.g. at the start of a frame. Call counts and durations are kept.
+     */
+    public void clearCommands() {
+        mCommandCount = 0;
+    }
+
+    public void reset() {
+        mCommandCount = 0;
+        Arrays.fill(mCallCounts, 0);
+        Arrays.fill(mCallDurations, 0);
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        long start = System.nanoTime();
+        mDelegate.glActiveTexture(texture);
+        record(Command.ACTIVE_TEXTURE, start, texture, 0);
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        long start = System.nanoTime();
+        mDelegate.glAttachShader(program, shader);
+        record(Command.ATTACH_SHADER, start, program, shader);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        long start = System.nanoTime();
+        mDelegate.glBindBuffer(target, buffer);
+        record(Command.BIND_BUFFER, start, target, buffer);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        long start = System.nanoTime();
+        mDelegate.glBindTexture(target, texture);
+        record(Command.BIND_TEXTURE, start, target, texture);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        long start = System.nanoTime();
+        mDelegate.glBufferData(target, size, data, usage);
+        record(Command.BUFFER_DATA, start, target, size);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        long start = System.nanoTime();
+        mDelegate.glBufferSubData(target, offset, size, data);
+        record(Command.BUFFER_SUB_DATA, start, target, offset);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        long start = System.nanoTime();
+        mDelegate.glCompileShader(shader);
+        record(Command.COMPILE_SHADER, start, shader, 0);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        long start = System.nanoTime();
+        int result = mDelegate.glCreateProgram();
+        record(Command.CREATE_PROGRAM, start, result, 0);
+        return result;
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        long start = System.nanoTime();
+        int result = mDelegate.glCreateShader(type);
+        record(Command.CREATE_SHADER, start, type, result);
+        return result;
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glDeleteBuffers(n, buffers, offset);
+        record(Command.DELETE_BUFFERS, start, n, buffers[offset]);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, IntBuffer buffers) {
+        long start = System.nanoTime();
+        mDelegate.glDeleteBuffers(n, buffers);
+        record(Command.DELETE_BUFFERS, start, n, buffers.get(buffers.position()));
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        long start = System.nanoTime();
+        mDelegate.glDeleteProgram(program);
+        record(Command.DELETE_PROGRAM, start, program, 0);
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        long start = System.nanoTime();
+        mDelegate.glDeleteShader(shader);
+        record(Command.DELETE_SHADER, start, shader, 0);
+    }
+
+    @Override
+    public void glDetachShader(int program, int shader) {
+        long start = System.nanoTime();
+        mDelegate.glDetachShader(program, shader);
+        record(Command.DETACH_SHADER, start, program, shader);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        long start = System.nanoTime();
+        mDelegate.glDisableVertexAttribArray(index);
+        record(Command.DISABLE_VERTEX_ATTRIB_ARRAY, start, index, 0);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        long start = System.nanoTime();
+        mDelegate.glDrawArrays(mode, first, count);
+        record(Command.DRAW_ARRAYS, start, mode, first);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glDrawElements(mode, count, type, offset);
+        record(Command.DRAW_ELEMENTS, start, mode, count);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices) {
+        long start = System.nanoTime();
+        mDelegate.glDrawElements(mode, count, type, indices);
+        record(Command.DRAW_ELEMENTS, start, mode, count);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        long start = System.nanoTime();
+        mDelegate.glEnableVertexAttribArray(index);
+        record(Command.ENABLE_VERTEX_ATTRIB_ARRAY, start, index, 0);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glGenBuffers(n, buffers, offset);
+        record(Command.GEN_BUFFERS, start, n, buffers[offset]);
+    }
+
+    @Override
+    public void glGenBuffers(int n, IntBuffer buffers) {
+        long start = System.nanoTime();
+        mDelegate.glGenBuffers(n, buffers);
+        record(Command.GEN_BUFFERS, start, n, buffers.get(buffers.position()));
+    }
+
+    @Override
+    public void glGetActiveAttrib(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset) {
+        long start = System.nanoTime();
+        mDelegate.glGetActiveAttrib(program, index, bufsize, length, lengthOffset, size, sizeOffset, type, typeOffset, name, nameOffset);
+        record(Command.GET_ACTIVE_ATTRIB, start, program, index);
+    }
+
+    @Override
+    public void glGetActiveUniform(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset) {
+        long start = System.nanoTime();
+        mDelegate.glGetActiveUniform(program, index, bufsize, length, lengthOffset, size, sizeOffset, type, typeOffset, name, nameOffset);
+        record(Command.GET_ACTIVE_UNIFORM, start, program, index);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        long start = System.nanoTime();
+        int result = mDelegate.glGetAttribLocation(program, name);
+        record(Command.GET_ATTRIB_LOCATION, start, program, result);
+        return result;
+    }
+
+    @Override
+    public int glGetError() {
+        long start = System.nanoTime();
+        int result = mDelegate.glGetError();
+        record(Command.GET_ERROR, start, result, 0);
+        return result;
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glGetIntegerv(pname, params, offset);
+        record(Command.GET_INTEGERV, start, pname, offset);
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, IntBuffer length, IntBuffer binaryFormat, Buffer binary) {
+        long start = System.nanoTime();
+        mDelegate.glGetProgramBinary(program, bufSize, length, binaryFormat, binary);
+        record(Command.GET_PROGRAM_BINARY, start, program, bufSize);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glGetProgramiv(program, pname, params, offset);
+        record(Command.GET_PROGRAMIV, start, program, pname);
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        long start = System.nanoTime();
+        String result = mDelegate.glGetProgramInfoLog(program);
+        record(Command.GET_PROGRAM_INFO_LOG, start, program, 0);
+        return result;
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glGetShaderiv(shader, pname, params, offset);
+        record(Command.GET_SHADERIV, start, shader, pname);
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        long start = System.nanoTime();
+        String result = mDelegate.glGetShaderInfoLog(shader);
+        record(Command.GET_SHADER_INFO_LOG, start, shader, 0);
+        return result;
+    }
+
+    @Override
+    public String glGetString(int name) {
+        long start = System.nanoTime();
+        String result = mDelegate.glGetString(name);
+        record(Command.GET_STRING, start, name, 0);
+        return result;
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        long start = System.nanoTime();
+        int result = mDelegate.glGetUniformLocation(program, name);
+        record(Command.GET_UNIFORM_LOCATION, start, program, result);
+        return result;
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        long start = System.nanoTime();
+        mDelegate.glLinkProgram(program);
+        record(Command.LINK_PROGRAM, start, program, 0);
+    }
+
+    @Override
+    public void glObjectLabel(int identifier, int name, int length, String label) {
+        long start = System.nanoTime();
+        mDelegate.glObjectLabel(identifier, name, length, label);
+        record(Command.OBJECT_LABEL, start, identifier, name);
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+        long start = System.nanoTime();
+        mDelegate.glProgramBinary(program, binaryFormat, binary, length);
+        record(Command.PROGRAM_BINARY, start, program, binaryFormat);
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pname, int value) {
+        long start = System.nanoTime();
+        mDelegate.glProgramParameteri(program, pname, value);
+        record(Command.PROGRAM_PARAMETERI, start, program, pname);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string) {
+        long start = System.nanoTime();
+        mDelegate.glShaderSource(shader, string);
+        record(Command.SHADER_SOURCE, start, shader, 0);
+    }
+
+    @Override
+    public void glUniform1f(int location, float x) {
+        long start = System.nanoTime();
+        mDelegate.glUniform1f(location, x);
+        record(Command.UNIFORM_1F, start, location, 0);
+    }
+
+    @Override
+    public void glUniform1fv(int location, int count, FloatBuffer v) {
+        long start = System.nanoTime();
+        mDelegate.glUniform1fv(location, count, v);
+        record(Command.UNIFORM_1FV, start, location, count);
+    }
+
+    @Override
+    public void glUniform1fv(int location, int count, float[] v, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glUniform1fv(location, count, v, offset);
+        record(Command.UNIFORM_1FV, start, location, count);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        long start = System.nanoTime();
+        mDelegate.glUniform1i(location, x);
+        record(Command.UNIFORM_1I, start, location, x);
+    }
+
+    @Override
+    public void glUniform1iv(int location, int count, IntBuffer v) {
+        long start = System.nanoTime();
+        mDelegate.glUniform1iv(location, count, v);
+        record(Command.UNIFORM_1IV, start, location, count);
+    }
+
+    @Override
+    public void glUniform1iv(int location, int count, int[] v, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glUniform1iv(location, count, v, offset);
+        record(Command.UNIFORM_1IV, start, location, count);
+    }
+
+    @Override
+    public void glUniform2f(int location, float x, float y) {
+        long start = System.nanoTime();
+        mDelegate.glUniform2f(location, x, y);
+        record(Command.UNIFORM_2F, start, location, 0);
+    }
+
+    @Override
+    public void glUniform2fv(int location, int count, FloatBuffer v) {
+        long start = System.nanoTime();
+        mDelegate.glUniform2fv(location, count, v);
+        record(Command.UNIFORM_2FV, start, location, count);
+    }
+
+    @Override
+    public void glUniform2fv(int location, int count, float[] v, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glUniform2fv(location, count, v, offset);
+        record(Command.UNIFORM_2FV, start, location, count);
+    }
+
+    @Override
+    public void glUniform2i(int location, int x, int y) {
+        long start = System.nanoTime();
+        mDelegate.glUniform2i(location, x, y);
+        record(Command.UNIFORM_2I, start, location, x);
+    }
+
+    @Override
+    public void glUniform2iv(int location, int count, IntBuffer v) {
+        long start = System.nanoTime();
+        mDelegate.glUniform2iv(location, count, v);
+        record(Command.UNIFORM_2IV, start, location, count);
+    }
+
+    @Override
+    public void glUniform2iv(int location, int count, int[] v, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glUniform2iv(location, count, v, offset);
+        record(Command.UNIFORM_2IV, start, location, count);
+    }
+
+    @Override
+    public void glUniform3f(int location, float x, float y, float z) {
+        long start = System.nanoTime();
+        mDelegate.glUniform3f(location, x, y, z);
+        record(Command.UNIFORM_3F, start, location, 0);
+    }
+
+    @Override
+    public void glUniform3fv(int location, int count, FloatBuffer v) {
+        long start = System.nanoTime();
+        mDelegate.glUniform3fv(location, count, v);
+        record(Command.UNIFORM_3FV, start, location, count);
+    }
+
+    @Override
+    public void glUniform3fv(int location, int count, float[] v, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glUniform3fv(location, count, v, offset);
+        record(Command.UNIFORM_3FV, start, location, count);
+    }
+
+    @Override
+    public void glUniform3i(int location, int x, int y, int z) {
+        long start = System.nanoTime();
+        mDelegate.glUniform3i(location, x, y, z);
+        record(Command.UNIFORM_3I, start, location, x);
+    }
+
+    @Override
+    public void glUniform3iv(int location, int count, IntBuffer v) {
+        long start = System.nanoTime();
+        mDelegate.glUniform3iv(location, count, v);
+        record(Command.UNIFORM_3IV, start, location, count);
+    }
+
+    @Override
+    public void glUniform3iv(int location, int count, int[] v, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glUniform3iv(location, count, v, offset);
+        record(Command.UNIFORM_3IV, start, location, count);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        long start = System.nanoTime();
+        mDelegate.glUniform4f(location, x, y, z, w);
+        record(Command.UNIFORM_4F, start, location, 0);
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, FloatBuffer v) {
+        long start = System.nanoTime();
+        mDelegate.glUniform4fv(location, count, v);
+        record(Command.UNIFORM_4FV, start, location, count);
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glUniform4fv(location, count, v, offset);
+        record(Command.UNIFORM_4FV, start, location, count);
+    }
+
+    @Override
+    public void glUniform4i(int location, int x, int y, int z, int w) {
+        long start = System.nanoTime();
+        mDelegate.glUniform4i(location, x, y, z, w);
+        record(Command.UNIFORM_4I, start, location, x);
+    }
+
+    @Override
+    public void glUniform4iv(int location, int count, IntBuffer v) {
+        long start = System.nanoTime();
+        mDelegate.glUniform4iv(location, count, v);
+        record(Command.UNIFORM_4IV, start, location, count);
+    }
+
+    @Override
+    public void glUniform4iv(int location, int count, int[] v, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glUniform4iv(location, count, v, offset);
+        record(Command.UNIFORM_4IV, start, location, count);
+    }
+
+    @Override
+    public void glUniformMatrix2fv(int location, int count, boolean transpose, FloatBuffer value) {
+        long start = System.nanoTime();
+        mDelegate.glUniformMatrix2fv(location, count, transpose, value);
+        record(Command.UNIFORM_MATRIX_2FV, start, location, count);
+    }
+
+    @Override
+    public void glUniformMatrix2fv(int location, int count, boolean transpose, float[] value, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glUniformMatrix2fv(location, count, transpose, value, offset);
+        record(Command.UNIFORM_MATRIX_2FV, start, location, count);
+    }
+
+    @Override
+    public void glUniformMatrix3fv(int location, int count, boolean transpose, FloatBuffer value) {
+        long start = System.nanoTime();
+        mDelegate.glUniformMatrix3fv(location, count, transpose, value);
+        record(Command.UNIFORM_MATRIX_3FV, start, location, count);
+    }
+
+    @Override
+    public void glUniformMatrix3fv(int location, int count, boolean transpose, float[] value, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glUniformMatrix3fv(location, count, transpose, value, offset);
+        record(Command.UNIFORM_MATRIX_3FV, start, location, count);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, FloatBuffer value) {
+        long start = System.nanoTime();
+        mDelegate.glUniformMatrix4fv(location, count, transpose, value);
+        record(Command.UNIFORM_MATRIX_4FV, start, location, count);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glUniformMatrix4fv(location, count, transpose, value, offset);
+        record(Command.UNIFORM_MATRIX_4FV, start, location, count);
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        long start = System.nanoTime();
+        mDelegate.glUseProgram(program);
+        record(Command.USE_PROGRAM, start, program, 0);
+    }
+
+    @Override
+    public void glValidateProgram(int program) {
+        long start = System.nanoTime();
+        mDelegate.glValidateProgram(program);
+        record(Command.VALIDATE_PROGRAM, start, program, 0);
+    }
+
+    @Override
+    public void glVertexAttrib1f(int indx, float x) {
+        long start = System.nanoTime();
+        mDelegate.glVertexAttrib1f(indx, x);
+        record(Command.VERTEX_ATTRIB_1F, start, indx, 0);
+    }
+
+    @Override
+    public void glVertexAttrib1fv(int indx, FloatBuffer values) {
+        long start = System.nanoTime();
+        mDelegate.glVertexAttrib1fv(indx, values);
+        record(Command.VERTEX_ATTRIB_1FV, start, indx, 0);
+    }
+
+    @Override
+    public void glVertexAttrib1fv(int indx, float[] values, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glVertexAttrib1fv(indx, values, offset);
+        record(Command.VERTEX_ATTRIB_1FV, start, indx, offset);
+    }
+
+    @Override
+    public void glVertexAttrib2f(int indx, float x, float y) {
+        long start = System.nanoTime();
+        mDelegate.glVertexAttrib2f(indx, x, y);
+        record(Command.VERTEX_ATTRIB_2F, start, indx, 0);
+    }
+
+    @Override
+    public void glVertexAttrib2fv(int indx, FloatBuffer values) {
+        long start = System.nanoTime();
+        mDelegate.glVertexAttrib2fv(indx, values);
+        record(Command.VERTEX_ATTRIB_2FV, start, indx, 0);
+    }
+
+    @Override
+    public void glVertexAttrib2fv(int indx, float[] values, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glVertexAttrib2fv(indx, values, offset);
+        record(Command.VERTEX_ATTRIB_2FV, start, indx, offset);
+    }
+
+    @Override
+    public void glVertexAttrib3f(int indx, float x, float y, float z) {
+        long start = System.nanoTime();
+        mDelegate.glVertexAttrib3f(indx, x, y, z);
+        record(Command.VERTEX_ATTRIB_3F, start, indx, 0);
+    }
+
+    @Override
+    public void glVertexAttrib3fv(int indx, FloatBuffer values) {
+        long start = System.nanoTime();
+        mDelegate.glVertexAttrib3fv(indx, values);
+        record(Command.VERTEX_ATTRIB_3FV, start, indx, 0);
+    }
+
+    @Override
+    public void glVertexAttrib3fv(int indx, float[] values, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glVertexAttrib3fv(indx, values, offset);
+        record(Command.VERTEX_ATTRIB_3FV, start, indx, offset);
+    }
+
+    @Override
+    public void glVertexAttrib4f(int indx, float x, float y, float z, float w) {
+        long start = System.nanoTime();
+        mDelegate.glVertexAttrib4f(indx, x, y, z, w);
+        record(Command.VERTEX_ATTRIB_4F, start, indx, 0);
+    }
+
+    @Override
+    public void glVertexAttrib4fv(int indx, FloatBuffer values) {
+        long start = System.nanoTime();
+        mDelegate.glVertexAttrib4fv(indx, values);
+        record(Command.VERTEX_ATTRIB_4FV, start, indx, 0);
+    }
+
+    @Override
+    public void glVertexAttrib4fv(int indx, float[] values, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glVertexAttrib4fv(indx, values, offset);
+        record(Command.VERTEX_ATTRIB_4FV, start, indx, offset);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int indx, int size, int type, boolean normalized, int stride, int offset) {
+        long start = System.nanoTime();
+        mDelegate.glVertexAttribPointer(indx, size, type, normalized, stride, offset);
+        record(Command.VERTEX_ATTRIB_POINTER, start, indx, size);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int indx, int size, int type, boolean normalized, int stride, Buffer ptr) {
+        long start = System.nanoTime();
+        mDelegate.glVertexAttribPointer(indx, size, type, normalized, stride, ptr);
+        record(Command.VERTEX_ATTRIB_POINTER, start, indx, size);
+    }
+
+    private void record(final Command command, long start, int argument0, int argument1) {
+        long duration = System.nanoTime() - start;
+        int ordinal = command.ordinal();
+
+        mCallCounts[ordinal]++;
+        mCallDurations[ordinal] += duration;
+
+        if (!mCapturing) {
+            return;
+        }
+
+        if (mCommandCount == mCommands.length) {
+            int capacity = mCommandCount * 2;
+            mCommands = Arrays.copyOf(mCommands, capacity);
+            mStartTimes = Arrays.copyOf(mStartTimes, capacity);
+            mDurations = Arrays.copyOf(mDurations, capacity);
+            mArguments = Arrays.copyOf(mArguments, capacity * 2);
+        }
+
+        int index = mCommandCount++;
+        mCommands[index] = ordinal;
+        mStartTimes[index] = start;
+        mDurations[index] = duration;
+        mArguments[index * 2] = argument0;
+        mArguments[index * 2 + 1] = argument1;
+    }
+
+    private void checkIndex(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= mCommandCount) {
+            throw new IndexOutOfBoundsException("Command index " + index + " out of range, " + mCommandCount + " commands recorded");
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.zendeka.glesutils.gles20;
+
+import java.util.Arrays;
+
+/**
+ * Per-frame counters of the driver work done through a GLContext: program switches, buffer binds,
+ * vertex attribute pointer setups, uniform uploads by type, buffer uploads and their size, shader
+ * compiles and program links with the time spent linking.
+ *
+ * Only calls that reach the backend are counted, i.e. not those GLContext or the uniform cache skip.
+ * Counting is an array increment and never allocates, so the metrics stay on in production builds.
+ *
+ * Call endFrame() once per frame. It makes the counts of the frame available through
+ * getLastFrameCount() and adds them to a rolling window of frames, from which the maximum, average
+ * and a log2 histogram of the per-frame totals are available.
+ */
+public final class RenderMetrics {
+    public enum Counter {
+        PROGRAM_SWITCHES,
+        BUFFER_BINDS,
+        ATTRIBUTE_POINTERS,
+        UNIFORM_FLOAT,
+        UNIFORM_VEC2,
+        UNIFORM_VEC3,
+        UNIFORM_VEC4,
+        UNIFORM_INT,
+        UNIFORM_IVEC2,
+        UNIFORM_IVEC3,
+        UNIFORM_IVEC4,
+        UNIFORM_MAT2,
+        UNIFORM_MAT3,
+        UNIFORM_MAT4,
+        BUFFER_UPLOADS,
+        BYTES_UPLOADED,
+        SHADER_COMPILES,
+        PROGRAM_LINKS,
+        LINK_TIME_NANOS
+    }
+
+    public static final int DEFAULT_WINDOW = 120;
+
+    /**
+     * Bucket 0 counts frames with a total of 0, bucket k > 0 those with a total of 2^(k-1) to 2^k - 1.
+     */
+    public static final int BUCKET_COUNT = 65;
+
+    private static final int COUNTER_COUNT = Counter.values().length;
+
+    private final Clock mClock;
+    private final int mWindow;
+    private final long[] mCounts = new long[COUNTER_COUNT];
+    private final long[] mLastFrame = new long[COUNTER_COUNT];
+    private final long[] mTotals = new long[COUNTER_COUNT];
+    private final long[] mHistory;
+    private final int[] mBuckets = new int[COUNTER_COUNT * BUCKET_COUNT];
+    private int mHistoryFrame;
+    private int mHistoryCount;
+    private long mFrameCount;
+
+    public RenderMetrics() {
+        this(DEFAULT_WINDOW, Clock.SYSTEM);
+    }
+
+    /**
+     * window is the number of frames the window statistics and histograms cover.
+     */
+    public RenderMetrics(int window, final Clock clock) throws IllegalArgumentException {
+        if (window < 1) {
+            throw new IllegalArgumentException("Invalid metrics window: " + window);
+        }
+
+        if (clock == null) {
+            throw new IllegalArgumentException("Clock must not be null");
+        }
+
+        mWindow = window;
+        mClock = clock;
+        mHistory = new long[window * COUNTER_COUNT];
+    }
+
+    public Clock getClock() {
+        return mClock;
+    }
+
+    public int getWindow() {
+        return mWindow;
+    }
+
+    public void increment(final Counter counter) {
+        mCounts[counter.ordinal()]++;
+    }
+
+    public void add(final Counter counter, long amount) {
+        mCounts[counter.ordinal()] += amount;
+    }
+
+    /**
+     * Adds the time since start, a value of getClock().nanoTime(), to counter.
+     */
+    public void addTimeSince(final Counter counter, long start) {
+        mCounts[counter.ordinal()] += mClock.nanoTime() - start;
+    }
+
+    /**
+     * Count of the frame in progress.
+     */
+    public long getCount(final Counter counter) {
+        return mCounts[counter.ordinal()];
+    }
+
+    public long getLastFrameCount(final Counter counter) {
+        return mLastFrame[counter.ordinal()];
+    }
+
+    /**
+     * Sum over all frames ended since the last reset().
+     */
+    public long getTotalCount(final Counter counter) {
+        return mTotals[counter.ordinal()];
+    }
+
+    /**
+     * Number of uniform uploads of every type in the last frame.
+     */
+    public long getLastFrameUniformUploadCount() {
+        long count = 0;
+
+        for (int i = Counter.UNIFORM_FLOAT.ordinal(); i <= Counter.UNIFORM_MAT4.ordinal(); i++) {
+            count += mLastFrame[i];
+        }
+
+        return count;
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Number of frames in the window, up to getWindow().
+     */
+    public int getWindowFrameCount() {
+        return mHistoryCount;
+    }
+
+    /**
+     * Ends the frame: its counts become the last frame counts and enter the window, and the counts
+     * of the next frame start at zero.
+     */
+    public void endFrame() {
+        long[] counts = mCounts;
+        long[] history = mHistory;
+        int[] buckets = mBuckets;
+        int base = mHistoryFrame * COUNTER_COUNT;
+        boolean full = mHistoryCount == mWindow;
+
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            long count = counts[i];
+
+            if (full) {
+                buckets[i * BUCKET_COUNT + getBucket(history[base + i])]--;
+            }
+
+            history[base + i] = count;
+            buckets[i * BUCKET_COUNT + getBucket(count)]++;
+            mTotals[i] += count;
+            mLastFrame[i] = count;
+            counts[i] = 0;
+        }
+
+        mHistoryFrame = (mHistoryFrame + 1) % mWindow;
+
+        if (!full) {
+            mHistoryCount++;
+        }
+
+        mFrameCount++;
+    }
+
+    public long getWindowMax(final Counter counter) {
+        long max = 0;
+
+        for (int frame = 0; frame < mHistoryCount; frame++) {
+            max = Math.max(max, mHistory[frame * COUNTER_COUNT + counter.ordinal()]);
+        }
+
+        return max;
+    }
+
+    public double getWindowAverage(final Counter counter) {
+        if (mHistoryCount == 0) {
+            return 0;
+        }
+
+        long sum = 0;
+
+        for (int frame = 0; frame < mHistoryCount; frame++) {
+            sum += mHistory[frame * COUNTER_COUNT + counter.ordinal()];
+        }
+
+        return (double) sum / mHistoryCount;
+    }
+
+    /**
+     * Upper bound of the histogram bucket that holds the given fraction of the frames in the window,
+     * e.g. 0.99 for the 99th percentile. Exact to within a factor of two.
+     */
+    public long getWindowPercentile(final Counter counter, double fraction) throws IllegalArgumentException {
+        if (fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("Invalid percentile fraction: " + fraction);
+        }
+
+        if (mHistoryCount == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(fraction * mHistoryCount));
+        int base = counter.ordinal() * BUCKET_COUNT;
+        long seen = 0;
+
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += mBuckets[base + bucket];
+
+            if (seen >= rank) {
+                return getBucketUpperBound(bucket);
+            }
+        }
+
+        return getBucketUpperBound(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Number of frames in the window whose total of counter falls into bucket.
+     */
+    public int getHistogramCount(final Counter counter, int bucket) throws IllegalArgumentException {
+        if (bucket < 0 || bucket >= BUCKET_COUNT) {
+            throw new IllegalArgumentException("Invalid histogram bucket: " + bucket);
+        }
+
+        return mBuckets[counter.ordinal() * BUCKET_COUNT + bucket];
+    }
+
+    /**
+     * Copies the BUCKET_COUNT histogram buckets of counter into buckets at offset.
+     */
+    public void getHistogram(final Counter counter, final int[] buckets, int offset) {
+        System.arraycopy(mBuckets, counter.ordinal() * BUCKET_COUNT, buckets, offset, BUCKET_COUNT);
+    }
+
+    public static int getBucket(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    public static long getBucketUpperBound(int bucket) {
+        if (bucket == 0) {
+            return 0;
+        }
+
+        return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    /**
+     * Clears the counts of the frame in progress, the last frame, the totals and the window.
+     */
+    public void reset() {
+        Arrays.fill(mCounts, 0);
+        Arrays.fill(mLastFrame, 0);
+        Arrays.fill(mTotals, 0);
+        Arrays.fill(mBuckets, 0);
+        mHistoryFrame = 0;
+        mHistoryCount = 0;
+        mFrameCount = 0;
+    }
+}
@@ -0,0 +1,134 @@
+package com.zendeka.glesutils.gles20;
+
+import java.nio.Buffer;
+
+/**
+ * Stream buffer for geometry that changes every frame. Each frame writes into the next of a ring of
+ * STREAM_DRAW buffers, sub-allocating from it linearly, so the GPU can still read the buffers of the
+ * previous frames while the current one is filled. If a frame outgrows its buffer, the buffer is
+ * orphaned and writing continues at the start of fresh storage instead of overwriting data a pending
+ * draw call may still read.
+ *
+ * With a single buffer, beginFrame() orphans it whenever the previous frame wrote to it, which is the
+ * classic discard-on-wrap stream buffer.
+ */
+public final class StreamingVertexBufferObject {
+    private static final int ALIGNMENT = 4;
+
+    private final VertexBufferObject[] mBuffers;
+    private final int mCapacity;
+
+    private int mCurrent;
+    private int mOffset;
+    private long mBytesWritten;
+    private long mWriteCount;
+    private long mOrphanCount;
+
+    public StreamingVertexBufferObject(final VertexBufferObject.Target target, int capacity, int bufferCount) throws IllegalArgumentException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid stream buffer capacity: " + capacity);
+        }
+
+        if (bufferCount < 1) {
+            throw new IllegalArgumentException("Invalid stream buffer count: " + bufferCount);
+        }
+
+        mCapacity = capacity;
+        mBuffers = new VertexBufferObject[bufferCount];
+
+        VertexBufferObject.createBuffers(target, VertexBufferObject.Usage.STREAM_DRAW, mBuffers, 0, bufferCount);
+
+        for (final VertexBufferObject buffer : mBuffers) {
+            buffer.bind();
+            buffer.allocate(capacity);
+        }
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public int getBufferCount() {
+        return mBuffers.length;
+    }
+
+    public VertexBufferObject getCurrentBuffer() {
+        return mBuffers[mCurrent];
+    }
+
+    /**
+     * Bytes still available in the current buffer before it has to be orphaned.
+     */
+    public int getRemaining() {
+        return Math.max(0, mCapacity - mOffset);
+    }
+
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    public long getWriteCount() {
+        return mWriteCount;
+    }
+
+    public long getOrphanCount() {
+        return mOrphanCount;
+    }
+
+    public void resetStatistics() {
+        mBytesWritten = 0;
+        mWriteCount = 0;
+        mOrphanCount = 0;
+    }
+
+    /**
+     * Moves on to the next buffer of the ring. Call once per frame before the first write().
+     */
+    public void beginFrame() throws IllegalStateException {
+        int next = (mCurrent + 1) % mBuffers.length;
+
+        // A single buffer wraps onto the storage of the previous frame, which pending draws may still read
+        if (next == mCurrent && mOffset > 0) {
+            VertexBufferObject buffer = mBuffers[next];
+            buffer.bind();
+            buffer.allocate(mCapacity);
+            mOrphanCount++;
+        }
+
+        mCurrent = next;
+        mOffset = 0;
+    }
+
+    /**
+     * Uploads size bytes of data behind everything written to the current buffer this frame. The
+     * buffer is left bound; the returned byte offset is where the data starts in it, e.g. for
+     * ShaderProgram.setAttributePointer().
+     */
+    public int write(Buffer data, int size) throws IllegalArgumentException, IllegalStateException {
+        if (size < 0 || size > mCapacity) {
+            throw new IllegalArgumentException("Stream buffer capacity exceeded: " + size + " > " + mCapacity);
+        }
+
+        VertexBufferObject buffer = mBuffers[mCurrent];
+        buffer.bind();
+
+        if (mOffset + size > mCapacity) {
+            buffer.allocate(mCapacity);
+            mOffset = 0;
+            mOrphanCount++;
+        }
+
+        int offset = mOffset;
+        buffer.updateData(offset, size, data);
+
+        mOffset = (offset + size + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+        mBytesWritten += size;
+        mWriteCount++;
+
+        return offset;
+    }
+
+    public void deleteBuffers() {
+        VertexBufferObject.deleteBuffers(mBuffers, 0, mBuffers.length);
+    }
+}
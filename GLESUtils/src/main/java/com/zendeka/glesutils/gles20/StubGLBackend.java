@@ -0,0 +1,1553 @@
+package com.zendeka.glesutils.gles20;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pure JVM stand-in for the driver. It hands out object names, "compiles" shaders by scanning their
+ * uniform and attribute declarations, assigns locations on link and keeps buffer contents and
+ * uniform values so they can be inspected. Nothing is rendered.
+ *
+ * A shader fails to compile if its source is empty or contains an #error directive, and a program
+ * fails to link unless it has a compiled vertex and fragment shader attached. Errors are reported
+ * through glGetError() for the misuse the library is expected to guard against.
+ *
+ * Unless turned off, the stub poses as an OpenGL ES 3.0 context with one program binary format. Its
+ * program binaries hold the shader sources a program was linked from.
+ */
+public final class StubGLBackend implements GLBackend {
+    private static final int MAX_VERTEX_ATTRIBS = 16;
+    private static final int MAX_UNIFORM_COMPONENTS = 16;
+    private static final int MAX_TEXTURE_UNITS = 8;
+    private static final int PROGRAM_BINARY_FORMAT = 0x5354;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Pattern COMMENTS = Pattern.compile("//[^\\n]*|/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern DECLARATION = Pattern.compile("\\b(uniform|attribute)\\s+(?:(?:lowp|mediump|highp)\\s+)?(\\w+)\\s+([^;]+);");
+    private static final Pattern DECLARATOR = Pattern.compile("\\s*(\\w+)\\s*(?:\\[\\s*(\\d+)\\s*\\])?\\s*");
+    private static final Pattern ERROR_DIRECTIVE = Pattern.compile("(?m)^\\s*#\\s*error\\b(.*)$");
+
+    private static final class Variable {
+        final String mName;
+        final int mType;
+        final int mSize;
+        final boolean mArray;
+        int mLocation;
+
+        Variable(final String name, int type, int size, boolean array) {
+            mName = name;
+            mType = type;
+            mSize = size;
+            mArray = array;
+        }
+
+        String getActiveName() {
+            return mArray ? mName + "[0]" : mName;
+        }
+    }
+
+    private static final class ShaderObject {
+        final int mType;
+        String mSource = "";
+        boolean mCompiled;
+        String mInfoLog = "";
+        final List<Variable> mUniforms = new ArrayList<Variable>();
+        final List<Variable> mAttributes = new ArrayList<Variable>();
+
+        ShaderObject(int type) {
+            mType = type;
+        }
+    }
+
+    private static final class ProgramObject {
+        final List<ShaderObject> mAttachedShaders = new ArrayList<ShaderObject>();
+        boolean mLinked;
+        boolean mValidated;
+        String mInfoLog = "";
+        final List<Variable> mUniforms = new ArrayList<Variable>();
+        final List<Variable> mAttributes = new ArrayList<Variable>();
+        float[] mUniformValues = new float[0];
+        byte[] mBinary = new byte[0];
+    }
+
+    private final Map<Integer, ShaderObject> mShaders = new HashMap<Integer, ShaderObject>();
+    private final Map<Integer, ProgramObject> mPrograms = new HashMap<Integer, ProgramObject>();
+    private final Map<Integer, ByteBuffer> mBuffers = new HashMap<Integer, ByteBuffer>();
+    private final Map<Integer, Integer> mBufferSizes = new HashMap<Integer, Integer>();
+
+    private int mNextObjectName = 1;
+    private int mNextBufferName = 1;
+    private int mError = GLES20.GL_NO_ERROR;
+    private boolean mProgramBinarySupported = true;
+    private int mProgramBinaryFormat = PROGRAM_BINARY_FORMAT;
+    private String mRenderer = "GLESUtils Stub";
+    private int mCompileCount;
+    private int mLinkCount;
+
+    private int mCurrentProgram;
+    private ProgramObject mCurrentProgramObject;
+    private int mArrayBuffer;
+    private int mElementArrayBuffer;
+    private final boolean[] mEnabledAttributeArrays = new boolean[MAX_VERTEX_ATTRIBS];
+    private int mActiveTexture;
+    private final int[] mTextures2D = new int[MAX_TEXTURE_UNITS];
+
+    public int getCurrentProgram() {
+        return mCurrentProgram;
+    }
+
+    public int getBoundBuffer(int target) {
+        switch (target) {
+            case GLES20.GL_ARRAY_BUFFER:
+                return mArrayBuffer;
+            case GLES20.GL_ELEMENT_ARRAY_BUFFER:
+                return mElementArrayBuffer;
+            default:
+                throw new IllegalArgumentException("Unknown buffer target " + target);
+        }
+    }
+
+    public int getBoundTexture2D(int unit) {
+        return mTextures2D[unit];
+    }
+
+    public boolean isVertexAttribArrayEnabled(int index) {
+        return index >= 0 && index < MAX_VERTEX_ATTRIBS && mEnabledAttributeArrays[index];
+    }
+
+    public int getShaderCount() {
+        return mShaders.size();
+    }
+
+    public int getProgramCount() {
+        return mPrograms.size();
+    }
+
+    /**
+     * Number of glCompileShader() and glLinkProgram() calls, which a program binary cache is meant to avoid.
+     */
+    public int getCompileCount() {
+        return mCompileCount;
+    }
+
+    public int getLinkCount() {
+        return mLinkCount;
+    }
+
+    /**
+     * Without program binary support the stub reports an OpenGL ES 2.0 context without binary formats.
+     */
+    public void setProgramBinarySupported(boolean supported) {
+        mProgramBinarySupported = supported;
+    }
+
+    /**
+     * Changes the binary format the stub writes and accepts, as a driver update would. Binaries in
+     * any other format fail to load.
+     */
+    public void setProgramBinaryFormat(int format) {
+        mProgramBinaryFormat = format;
+    }
+
+    /**
+     * Changes the GL_RENDERER string, as running on another device or driver would.
+     */
+    public void setRenderer(final String renderer) {
+        mRenderer = renderer;
+    }
+
+    public int getBufferCount() {
+        return mBufferSizes.size();
+    }
+
+    public String getShaderSource(int shader) {
+        ShaderObject object = mShaders.get(shader);
+        return object != null ? object.mSource : null;
+    }
+
+    public int getBufferSize(int buffer) {
+        Integer size = mBufferSizes.get(buffer);
+        return size != null ? size : 0;
+    }
+
+    /**
+     * Read-only view of a buffer's storage in native byte order, or null if the buffer has none.
+     */
+    public ByteBuffer getBufferContents(int buffer) {
+        ByteBuffer contents = mBuffers.get(buffer);
+
+        if (contents == null) {
+            return null;
+        }
+
+        ByteBuffer view = contents.asReadOnlyBuffer();
+        view.limit(getBufferSize(buffer));
+
+        return view.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Component of the value last set for a uniform location; integer uniforms are stored as floats.
+     */
+    public float getUniformValue(int program, int location, int component) {
+        ProgramObject object = mPrograms.get(program);
+
+        if (object == null || !object.mLinked) {
+            throw new IllegalArgumentException("Program " + program + " is not linked");
+        }
+
+        return object.mUniformValues[location * MAX_UNIFORM_COMPONENTS + component];
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        if (texture < GLES20.GL_TEXTURE0 || texture >= GLES20.GL_TEXTURE0 + MAX_TEXTURE_UNITS) {
+            setError(GLES20.GL_INVALID_ENUM);
+            return;
+        }
+
+        mActiveTexture = texture - GLES20.GL_TEXTURE0;
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        ProgramObject programObject = mPrograms.get(program);
+        ShaderObject shaderObject = mShaders.get(shader);
+
+        if (programObject == null || shaderObject == null || programObject.mAttachedShaders.contains(shaderObject)) {
+            setError(GLES20.GL_INVALID_OPERATION);
+            return;
+        }
+
+        programObject.mAttachedShaders.add(shaderObject);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        if (buffer != 0 && !mBufferSizes.containsKey(buffer)) {
+            // Binding an unused name creates the buffer
+            mBufferSizes.put(buffer, 0);
+        }
+
+        switch (target) {
+            case GLES20.GL_ARRAY_BUFFER:
+                mArrayBuffer = buffer;
+                break;
+            case GLES20.GL_ELEMENT_ARRAY_BUFFER:
+                mElementArrayBuffer = buffer;
+                break;
+            default:
+                setError(GLES20.GL_INVALID_ENUM);
+                break;
+        }
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        if (target != GLES20.GL_TEXTURE_2D && target != GLES20.GL_TEXTURE_CUBE_MAP) {
+            setError(GLES20.GL_INVALID_ENUM);
+            return;
+        }
+
+        if (target == GLES20.GL_TEXTURE_2D) {
+            mTextures2D[mActiveTexture] = texture;
+        }
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        int buffer = getBoundBufferOrError(target);
+
+        if (buffer == 0) {
+            return;
+        }
+
+        if (size < 0) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+
+        ByteBuffer contents = mBuffers.get(buffer);
+
+        if (contents == null || contents.capacity() < size) {
+            contents = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+            mBuffers.put(buffer, contents);
+        }
+
+        mBufferSizes.put(buffer, size);
+
+        if (data != null) {
+            copy(data, contents, 0, size);
+        }
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        int buffer = getBoundBufferOrError(target);
+
+        if (buffer == 0) {
+            return;
+        }
+
+        if (offset < 0 || size < 0 || offset + size > getBufferSize(buffer)) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+
+        copy(data, mBuffers.get(buffer), offset, size);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        ShaderObject object = getShader(shader);
+
+        if (object == null) {
+            return;
+        }
+
+        mCompileCount++;
+        compile(object);
+    }
+
+    private static void compile(final ShaderObject object) {
+        object.mUniforms.clear();
+        object.mAttributes.clear();
+
+        String source = COMMENTS.matcher(object.mSource).replaceAll(" ");
+        Matcher error = ERROR_DIRECTIVE.matcher(source);
+
+        if (source.trim().length() == 0) {
+            object.mCompiled = false;
+            object.mInfoLog = "ERROR: 0:1: '' : empty shader source\n";
+            return;
+        }
+
+        if (error.find()) {
+            object.mCompiled = false;
+            object.mInfoLog = "ERROR: 0:1: '#error' :" + error.group(1) + "\n";
+            return;
+        }
+
+        Matcher declaration = DECLARATION.matcher(source);
+
+        while (declaration.find()) {
+            int type = getVariableType(declaration.group(2));
+
+            if (type == 0) {
+                continue;
+            }
+
+            List<Variable> variables = declaration.group(1).equals("uniform") ? object.mUniforms : object.mAttributes;
+
+            for (String declarator : declaration.group(3).split(",")) {
+                Matcher matcher = DECLARATOR.matcher(declarator);
+
+                if (matcher.matches()) {
+                    boolean array = matcher.group(2) != null;
+                    int size = array ? Integer.parseInt(matcher.group(2)) : 1;
+                    variables.add(new Variable(matcher.group(1), type, size, array));
+                }
+            }
+        }
+
+        object.mCompiled = true;
+        object.mInfoLog = "";
+    }
+
+    @Override
+    public int glCreateProgram() {
+        int name = mNextObjectName++;
+        mPrograms.put(name, new ProgramObject());
+
+        return name;
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        if (type != GLES20.GL_VERTEX_SHADER && type != GLES20.GL_FRAGMENT_SHADER) {
+            setError(GLES20.GL_INVALID_ENUM);
+            return 0;
+        }
+
+        int name = mNextObjectName++;
+        mShaders.put(name, new ShaderObject(type));
+
+        return name;
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        if (n < 0) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+
+        for (int i = 0; i < n; i++) {
+            deleteBuffer(buffers[offset + i]);
+        }
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, IntBuffer buffers) {
+        if (n < 0) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+
+        int position = buffers.position();
+
+        for (int i = 0; i < n; i++) {
+            deleteBuffer(buffers.get(position + i));
+        }
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        if (program == 0) {
+            return;
+        }
+
+        if (getProgram(program) != null) {
+            mPrograms.remove(program);
+        }
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        if (shader == 0) {
+            return;
+        }
+
+        if (getShader(shader) != null) {
+            mShaders.remove(shader);
+        }
+    }
+
+    @Override
+    public void glDetachShader(int program, int shader) {
+        ProgramObject programObject = mPrograms.get(program);
+        ShaderObject shaderObject = mShaders.get(shader);
+
+        if (programObject == null || shaderObject == null || !programObject.mAttachedShaders.remove(shaderObject)) {
+            setError(GLES20.GL_INVALID_OPERATION);
+        }
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        if (index < 0 || index >= MAX_VERTEX_ATTRIBS) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+
+        mEnabledAttributeArrays[index] = false;
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        if (first < 0 || count < 0) {
+            setError(GLES20.GL_INVALID_VALUE);
+        }
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        if (count < 0) {
+            setError(GLES20.GL_INVALID_VALUE);
+        } else if (mElementArrayBuffer == 0) {
+            setError(GLES20.GL_INVALID_OPERATION);
+        }
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices) {
+        if (count < 0) {
+            setError(GLES20.GL_INVALID_VALUE);
+        }
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        if (index < 0 || index >= MAX_VERTEX_ATTRIBS) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+
+        mEnabledAttributeArrays[index] = true;
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        if (n < 0) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+
+        for (int i = 0; i < n; i++) {
+            buffers[offset + i] = genBuffer();
+        }
+    }
+
+    @Override
+    public void glGenBuffers(int n, IntBuffer buffers) {
+        if (n < 0) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+
+        int position = buffers.position();
+
+        for (int i = 0; i < n; i++) {
+            buffers.put(position + i, genBuffer());
+        }
+    }
+
+    @Override
+    public void glGetActiveAttrib(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset) {
+        getActive(getLinkedProgram(program), false, index, bufsize, length, lengthOffset, size, sizeOffset, type, typeOffset, name, nameOffset);
+    }
+
+    @Override
+    public void glGetActiveUniform(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset) {
+        getActive(getLinkedProgram(program), true, index, bufsize, length, lengthOffset, size, sizeOffset, type, typeOffset, name, nameOffset);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        ProgramObject object = getLinkedProgram(program);
+
+        if (object == null) {
+            return -1;
+        }
+
+        for (final Variable attribute : object.mAttributes) {
+            if (attribute.mName.equals(name)) {
+                return attribute.mLocation;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int glGetError() {
+        int error = mError;
+        mError = GLES20.GL_NO_ERROR;
+
+        return error;
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset) {
+        switch (pname) {
+            case GLES20.GL_CURRENT_PROGRAM:
+                params[offset] = mCurrentProgram;
+                break;
+            case GLES20.GL_ARRAY_BUFFER_BINDING:
+                params[offset] = mArrayBuffer;
+                break;
+            case GLES20.GL_ELEMENT_ARRAY_BUFFER_BINDING:
+                params[offset] = mElementArrayBuffer;
+                break;
+            case GLES20.GL_MAX_VERTEX_ATTRIBS:
+                params[offset] = MAX_VERTEX_ATTRIBS;
+                break;
+            case GLES30.GL_NUM_PROGRAM_BINARY_FORMATS:
+                params[offset] = mProgramBinarySupported ? 1 : 0;
+                break;
+            case GLES30.GL_PROGRAM_BINARY_FORMATS:
+                if (mProgramBinarySupported) {
+                    params[offset] = mProgramBinaryFormat;
+                }
+                break;
+            case GLES20.GL_MAX_VERTEX_UNIFORM_VECTORS:
+            case GLES20.GL_MAX_FRAGMENT_UNIFORM_VECTORS:
+                params[offset] = 256;
+                break;
+            default:
+                setError(GLES20.GL_INVALID_ENUM);
+                break;
+        }
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, IntBuffer length, IntBuffer binaryFormat, Buffer binary) {
+        ProgramObject object = getLinkedProgram(program);
+
+        if (object == null) {
+            return;
+        }
+
+        if (!mProgramBinarySupported || !(binary instanceof ByteBuffer) || bufSize < object.mBinary.length) {
+            setError(GLES20.GL_INVALID_OPERATION);
+            return;
+        }
+
+        ByteBuffer bytes = ((ByteBuffer) binary).duplicate();
+        bytes.put(object.mBinary);
+
+        if (length != null) {
+            length.put(length.position(), object.mBinary.length);
+        }
+
+        binaryFormat.put(binaryFormat.position(), mProgramBinaryFormat);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        ProgramObject object = getProgram(program);
+
+        if (object == null) {
+            return;
+        }
+
+        switch (pname) {
+            case GLES20.GL_LINK_STATUS:
+                params[offset] = object.mLinked ? GLES20.GL_TRUE : GLES20.GL_FALSE;
+                break;
+            case GLES20.GL_VALIDATE_STATUS:
+                params[offset] = object.mValidated ? GLES20.GL_TRUE : GLES20.GL_FALSE;
+                break;
+            case GLES20.GL_DELETE_STATUS:
+                params[offset] = GLES20.GL_FALSE;
+                break;
+            case GLES20.GL_INFO_LOG_LENGTH:
+                params[offset] = object.mInfoLog.length() > 0 ? object.mInfoLog.length() + 1 : 0;
+                break;
+            case GLES30.GL_PROGRAM_BINARY_LENGTH:
+                params[offset] = object.mBinary.length;
+                break;
+            case GLES20.GL_ATTACHED_SHADERS:
+                params[offset] = object.mAttachedShaders.size();
+                break;
+            case GLES20.GL_ACTIVE_UNIFORMS:
+                params[offset] = object.mUniforms.size();
+                break;
+            case GLES20.GL_ACTIVE_UNIFORM_MAX_LENGTH:
+                params[offset] = getMaxActiveNameLength(object.mUniforms);
+                break;
+            case GLES20.GL_ACTIVE_ATTRIBUTES:
+                params[offset] = object.mAttributes.size();
+                break;
+            case GLES20.GL_ACTIVE_ATTRIBUTE_MAX_LENGTH:
+                params[offset] = getMaxActiveNameLength(object.mAttributes);
+                break;
+            default:
+                setError(GLES20.GL_INVALID_ENUM);
+                break;
+        }
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        ProgramObject object = getProgram(program);
+        return object != null ? object.mInfoLog : "";
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        ShaderObject object = getShader(shader);
+
+        if (object == null) {
+            return;
+        }
+
+        switch (pname) {
+            case GLES20.GL_SHADER_TYPE:
+                params[offset] = object.mType;
+                break;
+            case GLES20.GL_COMPILE_STATUS:
+                params[offset] = object.mCompiled ? GLES20.GL_TRUE : GLES20.GL_FALSE;
+                break;
+            case GLES20.GL_DELETE_STATUS:
+                params[offset] = GLES20.GL_FALSE;
+                break;
+            case GLES20.GL_INFO_LOG_LENGTH:
+                params[offset] = object.mInfoLog.length() > 0 ? object.mInfoLog.length() + 1 : 0;
+                break;
+            case GLES20.GL_SHADER_SOURCE_LENGTH:
+                params[offset] = object.mSource.length() > 0 ? object.mSource.length() + 1 : 0;
+                break;
+            default:
+                setError(GLES20.GL_INVALID_ENUM);
+                break;
+        }
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        ShaderObject object = getShader(shader);
+        return object != null ? object.mInfoLog : "";
+    }
+
+    @Override
+    public String glGetString(int name) {
+        switch (name) {
+            case GLES20.GL_VENDOR:
+                return "GLESUtils";
+            case GLES20.GL_RENDERER:
+                return mRenderer;
+            case GLES20.GL_VERSION:
+                return mProgramBinarySupported ? "OpenGL ES 3.0 GLESUtils Stub" : "OpenGL ES 2.0 GLESUtils Stub";
+            case GLES20.GL_SHADING_LANGUAGE_VERSION:
+                return "OpenGL ES GLSL ES 1.00";
+            case GLES20.GL_EXTENSIONS:
+                return "";
+            default:
+                setError(GLES20.GL_INVALID_ENUM);
+                return null;
+        }
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        ProgramObject object = getLinkedProgram(program);
+
+        if (object == null) {
+            return -1;
+        }
+
+        String baseName = name;
+        int element = 0;
+        int bracket = name.indexOf('[');
+
+        if (bracket > 0 && name.endsWith("]")) {
+            baseName = name.substring(0, bracket);
+
+            try {
+                element = Integer.parseInt(name.substring(bracket + 1, name.length() - 1));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        for (final Variable uniform : object.mUniforms) {
+            if (uniform.mName.equals(baseName)) {
+                if (element >= uniform.mSize || (bracket > 0 && !uniform.mArray)) {
+                    return -1;
+                }
+
+                return uniform.mLocation + element;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        ProgramObject object = getProgram(program);
+
+        if (object == null) {
+            return;
+        }
+
+        mLinkCount++;
+        link(object, object.mAttachedShaders);
+    }
+
+    private void link(final ProgramObject object, final List<ShaderObject> shaders) {
+        object.mLinked = false;
+        object.mValidated = false;
+        object.mUniforms.clear();
+        object.mAttributes.clear();
+        object.mBinary = new byte[0];
+
+        boolean hasVertexShader = false;
+        boolean hasFragmentShader = false;
+
+        for (final ShaderObject shader : shaders) {
+            if (!shader.mCompiled) {
+                object.mInfoLog = "ERROR: Attached shader is not compiled\n";
+                return;
+            }
+
+            hasVertexShader |= shader.mType == GLES20.GL_VERTEX_SHADER;
+            hasFragmentShader |= shader.mType == GLES20.GL_FRAGMENT_SHADER;
+        }
+
+        if (!hasVertexShader || !hasFragmentShader) {
+            object.mInfoLog = "ERROR: Program needs a vertex and a fragment shader\n";
+            return;
+        }
+
+        int uniformLocation = 0;
+        int attributeLocation = 0;
+
+        for (final ShaderObject shader : shaders) {
+            for (final Variable uniform : shader.mUniforms) {
+                if (findVariable(object.mUniforms, uniform.mName) == null) {
+                    Variable linked = new Variable(uniform.mName, uniform.mType, uniform.mSize, uniform.mArray);
+                    linked.mLocation = uniformLocation;
+                    uniformLocation += uniform.mSize;
+                    object.mUniforms.add(linked);
+                }
+            }
+
+            for (final Variable attribute : shader.mAttributes) {
+                if (findVariable(object.mAttributes, attribute.mName) == null) {
+                    Variable linked = new Variable(attribute.mName, attribute.mType, attribute.mSize, attribute.mArray);
+                    linked.mLocation = attributeLocation++;
+                    object.mAttributes.add(linked);
+                }
+            }
+        }
+
+        object.mUniformValues = new float[uniformLocation * MAX_UNIFORM_COMPONENTS];
+        object.mBinary = createProgramBinary(shaders);
+        object.mLinked = true;
+        object.mInfoLog = "";
+    }
+
+    @Override
+    public void glObjectLabel(int identifier, int name, int length, String label) {
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+        ProgramObject object = getProgram(program);
+
+        if (object == null) {
+            return;
+        }
+
+        if (!mProgramBinarySupported || !(binary instanceof ByteBuffer)) {
+            setError(GLES20.GL_INVALID_ENUM);
+            return;
+        }
+
+        List<ShaderObject> shaders = binaryFormat == mProgramBinaryFormat ? readProgramBinary((ByteBuffer) binary, length) : null;
+
+        if (shaders == null) {
+            // A rejected binary is not an error, it just leaves the program unlinked
+            object.mLinked = false;
+            object.mValidated = false;
+            object.mBinary = new byte[0];
+            object.mInfoLog = "ERROR: Invalid program binary\n";
+            return;
+        }
+
+        link(object, shaders);
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pname, int value) {
+        if (getProgram(program) != null && pname != GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT) {
+            setError(GLES20.GL_INVALID_ENUM);
+        }
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string) {
+        ShaderObject object = getShader(shader);
+
+        if (object != null) {
+            object.mSource = string != null ? string : "";
+        }
+    }
+
+    @Override
+    public void glUniform1f(int location, float x) {
+        uniform(location, 1, x, 0, 0, 0);
+    }
+
+    @Override
+    public void glUniform1fv(int location, int count, FloatBuffer v) {
+        uniform(location, count, 1, v);
+    }
+
+    @Override
+    public void glUniform1fv(int location, int count, float[] v, int offset) {
+        uniform(location, count, 1, v, offset);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        uniform(location, 1, x, 0, 0, 0);
+    }
+
+    @Override
+    public void glUniform1iv(int location, int count, IntBuffer v) {
+        uniform(location, count, 1, v);
+    }
+
+    @Override
+    public void glUniform1iv(int location, int count, int[] v, int offset) {
+        uniform(location, count, 1, v, offset);
+    }
+
+    @Override
+    public void glUniform2f(int location, float x, float y) {
+        uniform(location, 2, x, y, 0, 0);
+    }
+
+    @Override
+    public void glUniform2fv(int location, int count, FloatBuffer v) {
+        uniform(location, count, 2, v);
+    }
+
+    @Override
+    public void glUniform2fv(int location, int count, float[] v, int offset) {
+        uniform(location, count, 2, v, offset);
+    }
+
+    @Override
+    public void glUniform2i(int location, int x, int y) {
+        uniform(location, 2, x, y, 0, 0);
+    }
+
+    @Override
+    public void glUniform2iv(int location, int count, IntBuffer v) {
+        uniform(location, count, 2, v);
+    }
+
+    @Override
+    public void glUniform2iv(int location, int count, int[] v, int offset) {
+        uniform(location, count, 2, v, offset);
+    }
+
+    @Override
+    public void glUniform3f(int location, float x, float y, float z) {
+        uniform(location, 3, x, y, z, 0);
+    }
+
+    @Override
+    public void glUniform3fv(int location, int count, FloatBuffer v) {
+        uniform(location, count, 3, v);
+    }
+
+    @Override
+    public void glUniform3fv(int location, int count, float[] v, int offset) {
+        uniform(location, count, 3, v, offset);
+    }
+
+    @Override
+    public void glUniform3i(int location, int x, int y, int z) {
+        uniform(location, 3, x, y, z, 0);
+    }
+
+    @Override
+    public void glUniform3iv(int location, int count, IntBuffer v) {
+        uniform(location, count, 3, v);
+    }
+
+    @Override
+    public void glUniform3iv(int location, int count, int[] v, int offset) {
+        uniform(location, count, 3, v, offset);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        uniform(location, 4, x, y, z, w);
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, FloatBuffer v) {
+        uniform(location, count, 4, v);
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        uniform(location, count, 4, v, offset);
+    }
+
+    @Override
+    public void glUniform4i(int location, int x, int y, int z, int w) {
+        uniform(location, 4, x, y, z, w);
+    }
+
+    @Override
+    public void glUniform4iv(int location, int count, IntBuffer v) {
+        uniform(location, count, 4, v);
+    }
+
+    @Override
+    public void glUniform4iv(int location, int count, int[] v, int offset) {
+        uniform(location, count, 4, v, offset);
+    }
+
+    @Override
+    public void glUniformMatrix2fv(int location, int count, boolean transpose, FloatBuffer value) {
+        if (transpose) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+
+        uniform(location, count, 4, value);
+    }
+
+    @Override
+    public void glUniformMatrix2fv(int location, int count, boolean transpose, float[] value, int offset) {
+        if (transpose) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+
+        uniform(location, count, 4, value, offset);
+    }
+
+    @Override
+    public void glUniformMatrix3fv(int location, int count, boolean transpose, FloatBuffer value) {
+        if (transpose) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+
+        uniform(location, count, 9, value);
+    }
+
+    @Override
+    public void glUniformMatrix3fv(int location, int count, boolean transpose, float[] value, int offset) {
+        if (transpose) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+
+        uniform(location, count, 9, value, offset);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, FloatBuffer value) {
+        if (transpose) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+
+        uniform(location, count, 16, value);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        if (transpose) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+
+        uniform(location, count, 16, value, offset);
+    }
+    @Override
+    public void glUseProgram(int program) {
+        if (program == 0) {
+            mCurrentProgram = 0;
+            mCurrentProgramObject = null;
+            return;
+        }
+
+        ProgramObject object = getProgram(program);
+
+        if (object == null) {
+            return;
+        }
+
+        if (!object.mLinked) {
+            setError(GLES20.GL_INVALID_OPERATION);
+            return;
+        }
+
+        mCurrentProgram = program;
+        mCurrentProgramObject = object;
+    }
+
+    @Override
+    public void glValidateProgram(int program) {
+        ProgramObject object = getProgram(program);
+
+        if (object != null) {
+            object.mValidated = object.mLinked;
+            object.mInfoLog = object.mLinked ? "" : "ERROR: Program is not linked\n";
+        }
+    }
+
+    @Override
+    public void glVertexAttrib1f(int indx, float x) {
+        checkAttributeIndex(indx);
+    }
+
+    @Override
+    public void glVertexAttrib1fv(int indx, FloatBuffer values) {
+        checkAttributeIndex(indx);
+    }
+
+    @Override
+    public void glVertexAttrib1fv(int indx, float[] values, int offset) {
+        checkAttributeIndex(indx);
+    }
+
+    @Override
+    public void glVertexAttrib2f(int indx, float x, float y) {
+        checkAttributeIndex(indx);
+    }
+
+    @Override
+    public void glVertexAttrib2fv(int indx, FloatBuffer values) {
+        checkAttributeIndex(indx);
+    }
+
+    @Override
+    public void glVertexAttrib2fv(int indx, float[] values, int offset) {
+        checkAttributeIndex(indx);
+    }
+
+    @Override
+    public void glVertexAttrib3f(int indx, float x, float y, float z) {
+        checkAttributeIndex(indx);
+    }
+
+    @Override
+    public void glVertexAttrib3fv(int indx, FloatBuffer values) {
+        checkAttributeIndex(indx);
+    }
+
+    @Override
+    public void glVertexAttrib3fv(int indx, float[] values, int offset) {
+        checkAttributeIndex(indx);
+    }
+
+    @Override
+    public void glVertexAttrib4f(int indx, float x, float y, float z, float w) {
+        checkAttributeIndex(indx);
+    }
+
+    @Override
+    public void glVertexAttrib4fv(int indx, FloatBuffer values) {
+        checkAttributeIndex(indx);
+    }
+
+    @Override
+    public void glVertexAttrib4fv(int indx, float[] values, int offset) {
+        checkAttributeIndex(indx);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int indx, int size, int type, boolean normalized, int stride, int offset) {
+        if (checkAttributeIndex(indx) && (size < 1 || size > 4 || stride < 0)) {
+            setError(GLES20.GL_INVALID_VALUE);
+        }
+    }
+
+    @Override
+    public void glVertexAttribPointer(int indx, int size, int type, boolean normalized, int stride, Buffer ptr) {
+        if (checkAttributeIndex(indx) && (size < 1 || size > 4 || stride < 0)) {
+            setError(GLES20.GL_INVALID_VALUE);
+        }
+    }
+
+    /**
+     * The stub's program binary is simply the type and source of every shader the program was linked from.
+     */
+    private static byte[] createProgramBinary(final List<ShaderObject> shaders) {
+        byte[][] sources = new byte[shaders.size()][];
+        int size = 4;
+
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = shaders.get(i).mSource.getBytes(UTF_8);
+            size += 8 + sources[i].length;
+        }
+
+        ByteBuffer binary = ByteBuffer.allocate(size);
+        binary.putInt(sources.length);
+
+        for (int i = 0; i < sources.length; i++) {
+            binary.putInt(shaders.get(i).mType);
+            binary.putInt(sources[i].length);
+            binary.put(sources[i]);
+        }
+
+        return binary.array();
+    }
+
+    private static List<ShaderObject> readProgramBinary(final ByteBuffer binary, int length) {
+        ByteBuffer bytes = binary.duplicate().order(ByteOrder.BIG_ENDIAN);
+
+        if (length < 4 || bytes.remaining() < length) {
+            return null;
+        }
+
+        bytes.limit(bytes.position() + length);
+
+        List<ShaderObject> shaders = new ArrayList<ShaderObject>();
+        int count = bytes.getInt();
+
+        for (int i = 0; i < count; i++) {
+            if (bytes.remaining() < 8) {
+                return null;
+            }
+
+            int type = bytes.getInt();
+            int sourceLength = bytes.getInt();
+
+            if (sourceLength < 0 || bytes.remaining() < sourceLength) {
+                return null;
+            }
+
+            byte[] source = new byte[sourceLength];
+            bytes.get(source);
+
+            ShaderObject shader = new ShaderObject(type);
+            shader.mSource = new String(source, UTF_8);
+            compile(shader);
+            shaders.add(shader);
+        }
+
+        return bytes.hasRemaining() ? null : shaders;
+    }
+
+    private void setError(int error) {
+        if (mError == GLES20.GL_NO_ERROR) {
+            mError = error;
+        }
+    }
+
+    private ShaderObject getShader(int shader) {
+        ShaderObject object = mShaders.get(shader);
+
+        if (object == null) {
+            setError(mPrograms.containsKey(shader) ? GLES20.GL_INVALID_OPERATION : GLES20.GL_INVALID_VALUE);
+        }
+
+        return object;
+    }
+
+    private ProgramObject getProgram(int program) {
+        ProgramObject object = mPrograms.get(program);
+
+        if (object == null) {
+            setError(mShaders.containsKey(program) ? GLES20.GL_INVALID_OPERATION : GLES20.GL_INVALID_VALUE);
+        }
+
+        return object;
+    }
+
+    private ProgramObject getLinkedProgram(int program) {
+        ProgramObject object = getProgram(program);
+
+        if (object != null && !object.mLinked) {
+            setError(GLES20.GL_INVALID_OPERATION);
+            return null;
+        }
+
+        return object;
+    }
+
+    private int getBoundBufferOrError(int target) {
+        int buffer;
+
+        switch (target) {
+            case GLES20.GL_ARRAY_BUFFER:
+                buffer = mArrayBuffer;
+                break;
+            case GLES20.GL_ELEMENT_ARRAY_BUFFER:
+                buffer = mElementArrayBuffer;
+                break;
+            default:
+                setError(GLES20.GL_INVALID_ENUM);
+                return 0;
+        }
+
+        if (buffer == 0) {
+            setError(GLES20.GL_INVALID_OPERATION);
+        }
+
+        return buffer;
+    }
+
+    private int genBuffer() {
+        int name = mNextBufferName++;
+        mBufferSizes.put(name, 0);
+
+        return name;
+    }
+
+    private void deleteBuffer(int buffer) {
+        if (buffer == 0) {
+            return;
+        }
+
+        mBuffers.remove(buffer);
+        mBufferSizes.remove(buffer);
+
+        if (mArrayBuffer == buffer) {
+            mArrayBuffer = 0;
+        }
+
+        if (mElementArrayBuffer == buffer) {
+            mElementArrayBuffer = 0;
+        }
+    }
+
+    private boolean checkAttributeIndex(int index) {
+        if (index < 0 || index >= MAX_VERTEX_ATTRIBS) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return false;
+        }
+
+        return true;
+    }
+
+    private void getActive(final ProgramObject object, boolean uniforms, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset) {
+        if (object == null) {
+            return;
+        }
+
+        List<Variable> variables = uniforms ? object.mUniforms : object.mAttributes;
+
+        if (index < 0 || index >= variables.size() || bufsize < 0) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+
+        Variable variable = variables.get(index);
+        String activeName = variable.getActiveName();
+        int count = Math.max(0, Math.min(activeName.length(), bufsize - 1));
+
+        for (int i = 0; i < count; i++) {
+            name[nameOffset + i] = (byte) activeName.charAt(i);
+        }
+
+        if (count < bufsize) {
+            name[nameOffset + count] = 0;
+        }
+
+        length[lengthOffset] = count;
+        size[sizeOffset] = variable.mSize;
+        type[typeOffset] = variable.mType;
+    }
+
+    private void uniform(int location, int components, float x, float y, float z, float w) {
+        int offset = getUniformOffset(location, 1);
+
+        if (offset < 0) {
+            return;
+        }
+
+        float[] values = mCurrentProgramObject.mUniformValues;
+        values[offset] = x;
+
+        if (components > 1) {
+            values[offset + 1] = y;
+        }
+
+        if (components > 2) {
+            values[offset + 2] = z;
+        }
+
+        if (components > 3) {
+            values[offset + 3] = w;
+        }
+    }
+
+    private void uniform(int location, int count, int components, float[] v, int vOffset) {
+        int offset = getUniformOffset(location, count);
+
+        if (offset < 0) {
+            return;
+        }
+
+        float[] values = mCurrentProgramObject.mUniformValues;
+        count = Math.min(count, values.length / MAX_UNIFORM_COMPONENTS - location);
+
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < components; j++) {
+                values[offset + i * MAX_UNIFORM_COMPONENTS + j] = v[vOffset + i * components + j];
+            }
+        }
+    }
+
+    private void uniform(int location, int count, int components, FloatBuffer v) {
+        int offset = getUniformOffset(location, count);
+
+        if (offset < 0) {
+            return;
+        }
+
+        float[] values = mCurrentProgramObject.mUniformValues;
+        int position = v.position();
+        count = Math.min(count, values.length / MAX_UNIFORM_COMPONENTS - location);
+
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < components; j++) {
+                values[offset + i * MAX_UNIFORM_COMPONENTS + j] = v.get(position + i * components + j);
+            }
+        }
+    }
+
+    private void uniform(int location, int count, int components, int[] v, int vOffset) {
+        int offset = getUniformOffset(location, count);
+
+        if (offset < 0) {
+            return;
+        }
+
+        float[] values = mCurrentProgramObject.mUniformValues;
+        count = Math.min(count, values.length / MAX_UNIFORM_COMPONENTS - location);
+
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < components; j++) {
+                values[offset + i * MAX_UNIFORM_COMPONENTS + j] = v[vOffset + i * components + j];
+            }
+        }
+    }
+
+    private void uniform(int location, int count, int components, IntBuffer v) {
+        int offset = getUniformOffset(location, count);
+
+        if (offset < 0) {
+            return;
+        }
+
+        float[] values = mCurrentProgramObject.mUniformValues;
+        int position = v.position();
+        count = Math.min(count, values.length / MAX_UNIFORM_COMPONENTS - location);
+
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < components; j++) {
+                values[offset + i * MAX_UNIFORM_COMPONENTS + j] = v.get(position + i * components + j);
+            }
+        }
+    }
+
+    /**
+     * Offset of a location in the current program's uniform values, or -1 if the upload is ignored.
+     */
+    private int getUniformOffset(int location, int count) {
+        if (location == -1) {
+            return -1;
+        }
+
+        if (mCurrentProgramObject == null) {
+            setError(GLES20.GL_INVALID_OPERATION);
+            return -1;
+        }
+
+        if (count < 0) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return -1;
+        }
+
+        if (location < 0 || location * MAX_UNIFORM_COMPONENTS >= mCurrentProgramObject.mUniformValues.length) {
+            setError(GLES20.GL_INVALID_OPERATION);
+            return -1;
+        }
+
+        return location * MAX_UNIFORM_COMPONENTS;
+    }
+
+    private static Variable findVariable(final List<Variable> variables, final String name) {
+        for (final Variable variable : variables) {
+            if (variable.mName.equals(name)) {
+                return variable;
+            }
+        }
+
+        return null;
+    }
+
+    private static int getMaxActiveNameLength(final List<Variable> variables) {
+        int length = 0;
+
+        for (final Variable variable : variables) {
+            length = Math.max(length, variable.getActiveName().length() + 1);
+        }
+
+        return length;
+    }
+
+    private static int getVariableType(final String type) {
+        if (type.equals("float")) {
+            return GLES20.GL_FLOAT;
+        } else if (type.equals("vec2")) {
+            return GLES20.GL_FLOAT_VEC2;
+        } else if (type.equals("vec3")) {
+            return GLES20.GL_FLOAT_VEC3;
+        } else if (type.equals("vec4")) {
+            return GLES20.GL_FLOAT_VEC4;
+        } else if (type.equals("int")) {
+            return GLES20.GL_INT;
+        } else if (type.equals("ivec2")) {
+            return GLES20.GL_INT_VEC2;
+        } else if (type.equals("ivec3")) {
+            return GLES20.GL_INT_VEC3;
+        } else if (type.equals("ivec4")) {
+            return GLES20.GL_INT_VEC4;
+        } else if (type.equals("bool")) {
+            return GLES20.GL_BOOL;
+        } else if (type.equals("bvec2")) {
+            return GLES20.GL_BOOL_VEC2;
+        } else if (type.equals("bvec3")) {
+            return GLES20.GL_BOOL_VEC3;
+        } else if (type.equals("bvec4")) {
+            return GLES20.GL_BOOL_VEC4;
+        } else if (type.equals("mat2")) {
+            return GLES20.GL_FLOAT_MAT2;
+        } else if (type.equals("mat3")) {
+            return GLES20.GL_FLOAT_MAT3;
+        } else if (type.equals("mat4")) {
+            return GLES20.GL_FLOAT_MAT4;
+        } else if (type.equals("sampler2D")) {
+            return GLES20.GL_SAMPLER_2D;
+        } else if (type.equals("samplerCube")) {
+            return GLES20.GL_SAMPLER_CUBE;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Copies size bytes from the remaining elements of a buffer, the way the JNI bindings read them.
+     */
+    private static void copy(final Buffer data, final ByteBuffer contents, int offset, int size) throws IllegalArgumentException {
+        int position = data.position();
+
+        if (data instanceof ByteBuffer) {
+            ByteBuffer source = (ByteBuffer) data;
+            checkRemaining(data, size, 1);
+
+            for (int i = 0; i < size; i++) {
+                contents.put(offset + i, source.get(position + i));
+            }
+        } else if (data instanceof ShortBuffer) {
+            ShortBuffer source = (ShortBuffer) data;
+            checkRemaining(data, size, 2);
+
+            for (int i = 0; i < size / 2; i++) {
+                contents.putShort(offset + i * 2, source.get(position + i));
+            }
+        } else if (data instanceof IntBuffer) {
+            IntBuffer source = (IntBuffer) data;
+            checkRemaining(data, size, 4);
+
+            for (int i = 0; i < size / 4; i++) {
+                contents.putInt(offset + i * 4, source.get(position + i));
+            }
+        } else if (data instanceof FloatBuffer) {
+            FloatBuffer source = (FloatBuffer) data;
+            checkRemaining(data, size, 4);
+
+            for (int i = 0; i < size / 4; i++) {
+                contents.putFloat(offset + i * 4, source.get(position + i));
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported buffer type " + data.getClass().getName());
+        }
+    }
+
+    private static void checkRemaining(final Buffer data, int size, int elementSize) throws IllegalArgumentException {
+        if ((long) data.remaining() * elementSize < size) {
+            throw new IllegalArgumentException("remaining() < size < needed");
+        }
+    }
+}
@@ -3,12 +3,20 @@ package com.zendeka.glesutils.gles20;
 import android.opengl.GLES20;
 
 import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
 
 /**
  * Created by Lawrence on 8/8/13.
  */
 public class VertexBufferObject {
+    public static final int DEFAULT_GAP_THRESHOLD = 256;
+    public static final float DEFAULT_ORPHAN_THRESHOLD = 0.5f;
+
     public enum Target {
         ARRAY_BUFFER(GLES20.GL_ARRAY_BUFFER),
         ELEMENT_ARRAY_BUFFER(GLES20.GL_ELEMENT_ARRAY_BUFFER);
@@ -40,34 +48,98 @@ public class VertexBufferObject {
         }
     }
 
+    private final GLContext mContext = GLContext.getCurrent();
+    private final GLBackend mGL = mContext.getBackend();
+    private final RenderMetrics mMetrics = mContext.getMetrics();
     private final Target mTarget;
     private final Usage mUsage;
 
     private int mName;
     private int mSize;
 
+    // CPU copy of the buffer and the sorted, disjoint byte ranges of it not uploaded yet
+    private ByteBuffer mShadow;
+    private ByteBuffer mShadowView;
+    private int[] mDirtyStarts;
+    private int[] mDirtyEnds;
+    private int mDirtyCount;
+    private int mGapThreshold = DEFAULT_GAP_THRESHOLD;
+    private float mOrphanThreshold = DEFAULT_ORPHAN_THRESHOLD;
+    private long mFlushUploadCount;
+
     public VertexBufferObject(final Target target, final Usage usage) {
         mTarget = target;
         mUsage = usage;
-
-        IntBuffer buffers = IntBuffer.allocate(1);
-        buffers.put(mName);
-        GLES20.glGenBuffers(1, buffers);
+        mName = mContext.genBuffer();
     }
 
     public VertexBufferObject(final Target target, final Usage usage, Buffer data, int size) throws IllegalStateException {
         mTarget = target;
         mUsage = usage;
-
-        IntBuffer buffers = IntBuffer.allocate(1);
-        buffers.put(mName);
-        GLES20.glGenBuffers(1, buffers);
+        mName = mContext.genBuffer();
 
         bind();
 
         allocateAndBufferData(size, data);
     }
 
+    private VertexBufferObject(final Target target, final Usage usage, int name) {
+        mTarget = target;
+        mUsage = usage;
+        mName = name;
+    }
+
+    /**
+     * Creates count buffers with a single glGenBuffers call and stores them in buffers, starting at offset.
+     */
+    public static void createBuffers(final Target target, final Usage usage, final VertexBufferObject[] buffers, int offset, int count) throws IllegalArgumentException {
+        checkRange(buffers, offset, count);
+
+        GLContext context = GLContext.getCurrent();
+        int[] names = context.getScratchNames(count);
+        context.genBuffers(count, names, 0);
+
+        for (int i = 0; i < count; i++) {
+            buffers[offset + i] = new VertexBufferObject(target, usage, names[i]);
+        }
+    }
+
+    /**
+     * Deletes count buffers with a single glDeleteBuffers call. Buffers that are null or already deleted are skipped.
+     */
+    public static void deleteBuffers(final VertexBufferObject[] buffers, int offset, int count) throws IllegalArgumentException {
+        checkRange(buffers, offset, count);
+
+        GLContext context = GLContext.getCurrent();
+
+        // Check every buffer first, so a foreign one cannot leave the others half deleted
+        for (int i = 0; i < count; i++) {
+            VertexBufferObject buffer = buffers[offset + i];
+
+            if (buffer != null && buffer.mName != 0 && buffer.mContext != context) {
+                throw new IllegalArgumentException("Vertex buffer " + buffer.mName + " belongs to a different GL context");
+            }
+        }
+
+        int[] names = context.getScratchNames(count);
+        int n = 0;
+
+        for (int i = 0; i < count; i++) {
+            VertexBufferObject buffer = buffers[offset + i];
+
+            if (buffer == null || buffer.mName == 0) {
+                continue;
+            }
+
+            names[n++] = buffer.mName;
+            buffer.mName = 0;
+            buffer.mSize = 0;
+            buffer.dropShadow();
+        }
+
+        context.deleteBuffers(n, names, 0);
+    }
+
     public Target getBufferTarget() {
         return mTarget;
     }
@@ -89,10 +161,10 @@ public class VertexBufferObject {
             throw new IllegalStateException("Vertex buffer not initialized");
         }
 
-        IntBuffer buffers = IntBuffer.allocate(1);
-        buffers.put(mName);
-
-        GLES20.glDeleteBuffers(1, buffers);
+        mContext.deleteBuffer(mName);
+        mName = 0;
+        mSize = 0;
+        dropShadow();
     }
 
     public void allocate(int size) throws IllegalStateException {
@@ -105,9 +177,26 @@ public class VertexBufferObject {
         }
 
         mSize = size;
-        GLES20.glBufferData(mTarget.getTarget(), size, data, mUsage.getUsage());
+        mGL.glBufferData(mTarget.getTarget(), size, data, mUsage.getUsage());
+
+        if (data != null) {
+            mMetrics.increment(RenderMetrics.Counter.BUFFER_UPLOADS);
+            mMetrics.add(RenderMetrics.Counter.BYTES_UPLOADED, size);
+        }
+
+        if (mShadow != null) {
+            createShadow();
+
+            if (data != null) {
+                copy(data, mShadow, 0, size);
+            }
+        }
     }
 
+    /**
+     * Uploads size bytes of data at offset. With a shadow copy the data only goes into the shadow,
+     * and is uploaded by the next flush().
+     */
     public void updateData(int offset, int size, Buffer data) throws IllegalStateException, IllegalArgumentException {
         if (mName == 0) {
             throw new IllegalStateException("Vertex buffer not initialized");
@@ -117,7 +206,205 @@ public class VertexBufferObject {
             throw new IllegalArgumentException("Vertex buffer size exceeded: offset + size > internal size: " + offset + " + " + size + " > " + mSize);
         }
 
-        GLES20.glBufferSubData(mTarget.getTarget(), offset, size, data);
+        if (mShadow != null) {
+            copy(data, mShadow, offset, size);
+            markDirty(offset, size);
+            return;
+        }
+
+        mGL.glBufferSubData(mTarget.getTarget(), offset, size, data);
+        mMetrics.increment(RenderMetrics.Counter.BUFFER_UPLOADS);
+        mMetrics.add(RenderMetrics.Counter.BYTES_UPLOADED, size);
+    }
+
+    public boolean isShadowEnabled() {
+        return mShadow != null;
+    }
+
+    /**
+     * Keeps a CPU copy of the buffer, so that many small updateData() calls can be collected and
+     * uploaded together by flush(). The shadow starts out with undefined contents; enabling it before
+     * allocateAndBufferData() fills it with the data. Disabling it flushes first.
+     */
+    public void setShadowEnabled(boolean enabled) throws IllegalStateException {
+        if (enabled == (mShadow != null)) {
+            return;
+        }
+
+        if (enabled) {
+            createShadow();
+        } else {
+            flush();
+            dropShadow();
+        }
+    }
+
+    /**
+     * The shadow copy, for writing into directly followed by markDirty(), or null without one.
+     */
+    public ByteBuffer getShadow() {
+        return mShadow;
+    }
+
+    /**
+     * Largest gap in bytes between dirty ranges that flush() uploads along with them to save a call.
+     */
+    public int getGapThreshold() {
+        return mGapThreshold;
+    }
+
+    public void setGapThreshold(int gapThreshold) throws IllegalArgumentException {
+        if (gapThreshold < 0) {
+            throw new IllegalArgumentException("Invalid gap threshold: " + gapThreshold);
+        }
+
+        mGapThreshold = gapThreshold;
+    }
+
+    /**
+     * Fraction of the buffer that, once dirty, makes flush() orphan and respecify the whole buffer
+     * with glBufferData() instead of updating ranges of it.
+     */
+    public float getOrphanThreshold() {
+        return mOrphanThreshold;
+    }
+
+    public void setOrphanThreshold(float orphanThreshold) throws IllegalArgumentException {
+        if (!(orphanThreshold >= 0.0f && orphanThreshold <= 1.0f)) {
+            throw new IllegalArgumentException("Invalid orphan threshold: " + orphanThreshold);
+        }
+
+        mOrphanThreshold = orphanThreshold;
+    }
+
+    /**
+     * Marks size bytes of the shadow copy at offset as changed.
+     */
+    public void markDirty(int offset, int size) throws IllegalStateException, IllegalArgumentException {
+        if (mShadow == null) {
+            throw new IllegalStateException("Vertex buffer " + mName + " has no shadow copy");
+        }
+
+        if (offset < 0 || size < 0 || offset + size > mSize) {
+            throw new IllegalArgumentException("Invalid dirty range: offset " + offset + ", size " + size + ", buffer size " + mSize);
+        }
+
+        if (size == 0) {
+            return;
+        }
+
+        int start = offset;
+        int end = offset + size;
+        int[] starts = mDirtyStarts;
+        int[] ends = mDirtyEnds;
+
+        // First range that ends at or after start, and one past the last that begins at or before end
+        int first = lowerBound(ends, mDirtyCount, start);
+        int last = first;
+
+        while (last < mDirtyCount && starts[last] <= end) {
+            start = Math.min(start, starts[last]);
+            end = Math.max(end, ends[last]);
+            last++;
+        }
+
+        int removed = last - first;
+
+        if (removed == 0) {
+            if (mDirtyCount == starts.length) {
+                mDirtyStarts = starts = Arrays.copyOf(starts, starts.length * 2);
+                mDirtyEnds = ends = Arrays.copyOf(ends, ends.length * 2);
+            }
+
+            System.arraycopy(starts, first, starts, first + 1, mDirtyCount - first);
+            System.arraycopy(ends, first, ends, first + 1, mDirtyCount - first);
+            mDirtyCount++;
+        } else if (removed > 1) {
+            System.arraycopy(starts, last, starts, first + 1, mDirtyCount - last);
+            System.arraycopy(ends, last, ends, first + 1, mDirtyCount - last);
+            mDirtyCount -= removed - 1;
+        }
+
+        starts[first] = start;
+        ends[first] = end;
+    }
+
+    public int getDirtyRangeCount() {
+        return mDirtyCount;
+    }
+
+    public int getDirtyBytes() {
+        int bytes = 0;
+
+        for (int i = 0; i < mDirtyCount; i++) {
+            bytes += mDirtyEnds[i] - mDirtyStarts[i];
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Uploads the dirty ranges of the shadow copy, merging ranges separated by at most the gap
+     * threshold into one glBufferSubData() call each, or orphaning the whole buffer with one
+     * glBufferData() call if enough of it is dirty. The buffer is bound. Returns the number of upload
+     * calls made.
+     */
+    public int flush() throws IllegalStateException {
+        if (mShadow == null || mDirtyCount == 0) {
+            return 0;
+        }
+
+        bind();
+
+        int[] starts = mDirtyStarts;
+        int[] ends = mDirtyEnds;
+        int runs = 0;
+        int bytes = 0;
+
+        for (int i = 0; i < mDirtyCount; i++) {
+            if (runs > 0 && starts[i] - ends[runs - 1] <= mGapThreshold) {
+                ends[runs - 1] = ends[i];
+            } else {
+                starts[runs] = starts[i];
+                ends[runs] = ends[i];
+                runs++;
+            }
+        }
+
+        for (int i = 0; i < runs; i++) {
+            bytes += ends[i] - starts[i];
+        }
+
+        mDirtyCount = 0;
+        ByteBuffer view = mShadowView;
+
+        if (bytes >= mOrphanThreshold * mSize) {
+            view.clear();
+            mGL.glBufferData(mTarget.getTarget(), mSize, view, mUsage.getUsage());
+            mMetrics.increment(RenderMetrics.Counter.BUFFER_UPLOADS);
+            mMetrics.add(RenderMetrics.Counter.BYTES_UPLOADED, mSize);
+            mFlushUploadCount++;
+            return 1;
+        }
+
+        for (int i = 0; i < runs; i++) {
+            int size = ends[i] - starts[i];
+            view.clear();
+            view.position(starts[i]);
+            mGL.glBufferSubData(mTarget.getTarget(), starts[i], size, view);
+            mMetrics.increment(RenderMetrics.Counter.BUFFER_UPLOADS);
+            mMetrics.add(RenderMetrics.Counter.BYTES_UPLOADED, size);
+        }
+
+        mFlushUploadCount += runs;
+        return runs;
+    }
+
+    /**
+     * Number of upload calls made by flush().
+     */
+    public long getFlushUploadCount() {
+        return mFlushUploadCount;
     }
 
     public void bind() throws IllegalStateException {
@@ -125,6 +412,85 @@ public class VertexBufferObject {
             throw new IllegalStateException("Vertex buffer not initialized");
         }
 
-        GLES20.glBindBuffer(mTarget.getTarget(), mName);
+        mContext.bindBuffer(mTarget, mName);
+    }
+
+    /**
+     * Sizes the shadow copy to the buffer, reusing the current one if it is large enough.
+     */
+    private void createShadow() {
+        if (mShadow == null || mShadow.capacity() < mSize) {
+            mShadow = ByteBuffer.allocateDirect(mSize).order(ByteOrder.nativeOrder());
+            mShadowView = mShadow.duplicate();
+        }
+
+        mShadow.clear();
+        mShadow.limit(mSize);
+
+        if (mDirtyStarts == null) {
+            mDirtyStarts = new int[8];
+            mDirtyEnds = new int[8];
+        }
+
+        mDirtyCount = 0;
+    }
+
+    private void dropShadow() {
+        mShadow = null;
+        mShadowView = null;
+        mDirtyCount = 0;
+    }
+
+    private static int lowerBound(final int[] values, int count, int value) {
+        int low = 0;
+        int high = count;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (values[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Copies size bytes of data, from its position, into shadow at offset, in the byte order of shadow.
+     */
+    private static void copy(final Buffer data, final ByteBuffer shadow, int offset, int size) throws IllegalArgumentException {
+        ByteBuffer target = shadow.duplicate();
+        target.clear();
+        target.position(offset).limit(offset + size);
+        target = target.slice().order(shadow.order());
+
+        if (data instanceof ByteBuffer) {
+            ByteBuffer source = ((ByteBuffer) data).duplicate();
+            source.limit(source.position() + size);
+            target.put(source);
+        } else if (data instanceof FloatBuffer) {
+            FloatBuffer source = ((FloatBuffer) data).duplicate();
+            source.limit(source.position() + size / 4);
+            target.asFloatBuffer().put(source);
+        } else if (data instanceof ShortBuffer) {
+            ShortBuffer source = ((ShortBuffer) data).duplicate();
+            source.limit(source.position() + size / 2);
+            target.asShortBuffer().put(source);
+        } else if (data instanceof IntBuffer) {
+            IntBuffer source = ((IntBuffer) data).duplicate();
+            source.limit(source.position() + size / 4);
+            target.asIntBuffer().put(source);
+        } else {
+            throw new IllegalArgumentException("Unsupported buffer type for a shadow copy: " + data.getClass().getName());
+        }
+    }
+
+    private static void checkRange(final VertexBufferObject[] buffers, int offset, int count) throws IllegalArgumentException {
+        if (offset < 0 || count < 0 || offset + count > buffers.length) {
+            throw new IllegalArgumentException("Invalid range: offset " + offset + ", count " + count + ", length " + buffers.length);
+        }
     }
 }
@@ -0,0 +1,177 @@
+package com.zendeka.glesutils.gles20;
+
+import android.opengl.GLES20;
+
+import java.util.Arrays;
+
+/**
+ * Immutable description of the attributes of an interleaved vertex. Apply it with
+ * ShaderProgram.bindVertexFormat(), which resolves the attribute names once per program and then
+ * enables and points every attribute in a single call.
+ *
+ * Unless given explicitly, the stride is the end of the last attribute rounded up to 4 bytes.
+ *
+ * Formats and attributes compare by value, so the formats of separately built meshes with the same
+ * layout share their resolved locations.
+ */
+public final class VertexFormat {
+    private static final int ALIGNMENT = 4;
+
+    public static final class Attribute {
+        private final String mName;
+        private final int mSize;
+        private final int mType;
+        private final boolean mNormalized;
+        private final int mOffset;
+
+        public Attribute(final String name, int size, int type, boolean normalized, int offset) throws IllegalArgumentException {
+            if (name == null) {
+                throw new IllegalArgumentException("Vertex attribute name must not be null");
+            }
+
+            if (size < 1 || size > 4) {
+                throw new IllegalArgumentException("Invalid component count for vertex attribute " + name + ": " + size);
+            }
+
+            if (offset < 0) {
+                throw new IllegalArgumentException("Invalid offset for vertex attribute " + name + ": " + offset);
+            }
+
+            getComponentSize(type);
+
+            mName = name;
+            mSize = size;
+            mType = type;
+            mNormalized = normalized;
+            mOffset = offset;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public int getSize() {
+            return mSize;
+        }
+
+        public int getType() {
+            return mType;
+        }
+
+        public boolean isNormalized() {
+            return mNormalized;
+        }
+
+        public int getOffset() {
+            return mOffset;
+        }
+
+        public int getByteSize() {
+            return mSize * getComponentSize(mType);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Attribute)) {
+                return false;
+            }
+
+            Attribute attribute = (Attribute) o;
+            return mSize == attribute.mSize && mType == attribute.mType && mNormalized == attribute.mNormalized && mOffset == attribute.mOffset && mName.equals(attribute.mName);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = mName.hashCode();
+            hash = 31 * hash + mSize;
+            hash = 31 * hash + mType;
+            hash = 31 * hash + (mNormalized ? 1 : 0);
+            return 31 * hash + mOffset;
+        }
+    }
+
+    private final Attribute[] mAttributes;
+    private final int mStride;
+    private final int mHash;
+
+    public VertexFormat(final Attribute... attributes) throws IllegalArgumentException {
+        this(-1, attributes);
+    }
+
+    public VertexFormat(int stride, final Attribute... attributes) throws IllegalArgumentException {
+        if (attributes == null || attributes.length == 0) {
+            throw new IllegalArgumentException("Vertex format needs at least one attribute");
+        }
+
+        int end = 0;
+
+        for (final Attribute attribute : attributes) {
+            if (attribute == null) {
+                throw new IllegalArgumentException("Vertex attribute must not be null");
+            }
+
+            end = Math.max(end, attribute.getOffset() + attribute.getByteSize());
+        }
+
+        if (stride < 0) {
+            stride = (end + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+        } else if (stride < end) {
+            throw new IllegalArgumentException("Vertex stride " + stride + " is smaller than the vertex size " + end);
+        }
+
+        mAttributes = attributes.clone();
+        mStride = stride;
+        mHash = 31 * Arrays.hashCode(mAttributes) + stride;
+    }
+
+    public int getStride() {
+        return mStride;
+    }
+
+    public int getAttributeCount() {
+        return mAttributes.length;
+    }
+
+    public Attribute getAttribute(int index) {
+        return mAttributes[index];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof VertexFormat)) {
+            return false;
+        }
+
+        VertexFormat format = (VertexFormat) o;
+        return mHash == format.mHash && mStride == format.mStride && Arrays.equals(mAttributes, format.mAttributes);
+    }
+
+    @Override
+    public int hashCode() {
+        return mHash;
+    }
+
+    public static int getComponentSize(int type) throws IllegalArgumentException {
+        switch (type) {
+            case GLES20.GL_BYTE:
+            case GLES20.GL_UNSIGNED_BYTE:
+                return 1;
+            case GLES20.GL_SHORT:
+            case GLES20.GL_UNSIGNED_SHORT:
+                return 2;
+            case GLES20.GL_FIXED:
+            case GLES20.GL_FLOAT:
+                return 4;
+            default:
+                throw new IllegalArgumentException("Unsupported vertex attribute type " + type);
+        }
+    }
+}
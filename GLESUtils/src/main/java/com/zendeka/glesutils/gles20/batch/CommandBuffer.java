@@ -0,0 +1,258 @@
+package com.zendeka.glesutils.gles20.batch;
+
+import com.zendeka.glesutils.gles20.VertexBufferObject;
+import com.zendeka.glesutils.gles20.VertexFormat;
+import com.zendeka.glesutils.gles20.shader.ShaderProgram;
+
+import java.util.Arrays;
+
+/**
+ * Records draw packets on one worker thread for a CommandQueue to sort and replay on the GL thread.
+ * Recording makes no GL calls and, once the arrays have grown to the size of a frame, allocates
+ * nothing: packets are encoded into parallel primitive arrays and the programs, formats and buffers
+ * they use are stored as plain references.
+ *
+ * Uniforms set with the uniform methods belong to the next draw packet and are set, through the
+ * uniform cache of its program, right before it is drawn. Use uniform handles resolved on the GL
+ * thread beforehand.
+ *
+ * Only the owning thread may record. finish() hands the buffer over to the GL thread; it can be
+ * recorded into again once CommandQueue.execute() has replayed it.
+ */
+public final class CommandBuffer {
+    static final int KIND_FLOAT = 1;
+    static final int KIND_VEC2 = 2;
+    static final int KIND_VEC3 = 3;
+    static final int KIND_VEC4 = 4;
+    static final int KIND_INT = 5;
+    static final int KIND_MAT4 = 16;
+
+    // Ints per packet: vertex offset, mode, first vertex or index offset, count, index type, first uniform, end of uniforms
+    static final int PACKET_SIZE = 7;
+    // Ints per uniform: handle, kind, value offset or int value
+    static final int UNIFORM_SIZE = 3;
+
+    static final int MAX_PACKETS = 1 << 24;
+
+    long[] mKeys;
+    ShaderProgram[] mPrograms;
+    VertexFormat[] mFormats;
+    VertexBufferObject[] mVertexBuffers;
+    VertexBufferObject[] mIndexBuffers;
+    int[] mPackets;
+    int mPacketCount;
+
+    int[] mUniforms;
+    int mUniformCount;
+    float[] mValues;
+    int mValueCount;
+    private int mPendingUniforms;
+
+    private volatile boolean mFinished;
+
+    CommandBuffer(int capacity) {
+        mKeys = new long[capacity];
+        mPrograms = new ShaderProgram[capacity];
+        mFormats = new VertexFormat[capacity];
+        mVertexBuffers = new VertexBufferObject[capacity];
+        mIndexBuffers = new VertexBufferObject[capacity];
+        mPackets = new int[capacity * PACKET_SIZE];
+        mUniforms = new int[capacity * UNIFORM_SIZE];
+        mValues = new float[capacity * 4];
+    }
+
+    public int getPacketCount() {
+        return mPacketCount;
+    }
+
+    public boolean isFinished() {
+        return mFinished;
+    }
+
+    /**
+     * Hands the recorded packets over to the GL thread. Uniforms recorded after the last draw packet
+     * belong to no packet and are rejected.
+     */
+    public void finish() throws IllegalStateException {
+        if (mPendingUniforms != mUniformCount) {
+            throw new IllegalStateException((mUniformCount - mPendingUniforms) + " uniforms were recorded after the last draw packet");
+        }
+
+        mFinished = true;
+    }
+
+    public void uniform(int handle, float x) throws IllegalStateException {
+        int values = addUniform(handle, KIND_FLOAT, 1);
+        mValues[values] = x;
+    }
+
+    public void uniform(int handle, float x, float y) throws IllegalStateException {
+        int values = addUniform(handle, KIND_VEC2, 2);
+        mValues[values] = x;
+        mValues[values + 1] = y;
+    }
+
+    public void uniform(int handle, float x, float y, float z) throws IllegalStateException {
+        int values = addUniform(handle, KIND_VEC3, 3);
+        mValues[values] = x;
+        mValues[values + 1] = y;
+        mValues[values + 2] = z;
+    }
+
+    public void uniform(int handle, float x, float y, float z, float w) throws IllegalStateException {
+        int values = addUniform(handle, KIND_VEC4, 4);
+        mValues[values] = x;
+        mValues[values + 1] = y;
+        mValues[values + 2] = z;
+        mValues[values + 3] = w;
+    }
+
+    public void uniform(int handle, int x) throws IllegalStateException {
+        addUniform(handle, KIND_INT, 0);
+        mUniforms[(mUniformCount - 1) * UNIFORM_SIZE + 2] = x;
+    }
+
+    /**
+     * Records a column-major 4x4 matrix, copied from m at offset.
+     */
+    public void uniformMatrix4(int handle, float[] m, int offset) throws IllegalStateException {
+        int values = addUniform(handle, KIND_MAT4, 16);
+        System.arraycopy(m, offset, mValues, values, 16);
+    }
+
+    /**
+     * Records a glDrawArrays() of count vertices starting at first, with the attributes of format
+     * pointing at offset in vertexBuffer. Packets are ordered by program, vertex buffer and depth,
+     * ascending; negate depth to draw back to front.
+     */
+    public void drawArrays(final ShaderProgram program, final VertexFormat format, final VertexBufferObject vertexBuffer, int offset, int mode, int first, int count, float depth) throws IllegalArgumentException, IllegalStateException {
+        int packet = addPacket(program, format, vertexBuffer, null, offset, depth);
+        int[] packets = mPackets;
+        int i = packet * PACKET_SIZE;
+
+        packets[i + 1] = mode;
+        packets[i + 2] = first;
+        packets[i + 3] = count;
+        packets[i + 4] = 0;
+    }
+
+    /**
+     * Records a glDrawElements() of count indices of indexType, starting at byte indexOffset in
+     * indexBuffer, see drawArrays().
+     */
+    public void drawElements(final ShaderProgram program, final VertexFormat format, final VertexBufferObject vertexBuffer, int offset, final VertexBufferObject indexBuffer, int mode, int count, int indexType, int indexOffset, float depth) throws IllegalArgumentException, IllegalStateException {
+        int packet = addPacket(program, format, vertexBuffer, indexBuffer, offset, depth);
+        int[] packets = mPackets;
+        int i = packet * PACKET_SIZE;
+
+        packets[i + 1] = mode;
+        packets[i + 2] = indexOffset;
+        packets[i + 3] = count;
+        packets[i + 4] = indexType;
+    }
+
+    /**
+     * Sort key of a packet: 16 bits of program name, 16 bits of vertex buffer name and the depth,
+     * mapped to an unsigned int that sorts like the float.
+     */
+    static long getKey(int program, int vertexBuffer, float depth) {
+        int bits = Float.floatToIntBits(depth);
+        int sortable = bits ^ ((bits >> 31) | 0x80000000);
+
+        return ((long) (program & 0xFFFF) << 48) | ((long) (vertexBuffer & 0xFFFF) << 32) | (sortable & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Empties the buffer and returns it to its owner. Called by CommandQueue.execute().
+     */
+    void reset() {
+        Arrays.fill(mPrograms, 0, mPacketCount, null);
+        Arrays.fill(mFormats, 0, mPacketCount, null);
+        Arrays.fill(mVertexBuffers, 0, mPacketCount, null);
+        Arrays.fill(mIndexBuffers, 0, mPacketCount, null);
+
+        mPacketCount = 0;
+        mUniformCount = 0;
+        mValueCount = 0;
+        mPendingUniforms = 0;
+        mFinished = false;
+    }
+
+    private int addPacket(final ShaderProgram program, final VertexFormat format, final VertexBufferObject vertexBuffer, final VertexBufferObject indexBuffer, int offset, float depth) throws IllegalArgumentException, IllegalStateException {
+        checkRecording();
+
+        if (program == null || format == null || vertexBuffer == null) {
+            throw new IllegalArgumentException("Draw packet needs a program, a vertex format and a vertex buffer");
+        }
+
+        int packet = mPacketCount;
+
+        if (packet == mKeys.length) {
+            if (packet == MAX_PACKETS) {
+                throw new IllegalStateException("Command buffer is full: " + MAX_PACKETS + " packets");
+            }
+
+            growPackets();
+        }
+
+        mKeys[packet] = getKey(program.getName(), vertexBuffer.getName(), depth);
+        mPrograms[packet] = program;
+        mFormats[packet] = format;
+        mVertexBuffers[packet] = vertexBuffer;
+        mIndexBuffers[packet] = indexBuffer;
+
+        int i = packet * PACKET_SIZE;
+        mPackets[i] = offset;
+        mPackets[i + 5] = mPendingUniforms;
+        mPackets[i + 6] = mUniformCount;
+
+        mPendingUniforms = mUniformCount;
+        mPacketCount = packet + 1;
+
+        return packet;
+    }
+
+    /**
+     * Adds a uniform record and returns the offset of its values.
+     */
+    private int addUniform(int handle, int kind, int valueCount) throws IllegalStateException {
+        checkRecording();
+
+        if ((mUniformCount + 1) * UNIFORM_SIZE > mUniforms.length) {
+            mUniforms = Arrays.copyOf(mUniforms, Math.max(mUniforms.length * 2, 16 * UNIFORM_SIZE));
+        }
+
+        if (mValueCount + valueCount > mValues.length) {
+            mValues = Arrays.copyOf(mValues, Math.max(mValues.length * 2, mValueCount + valueCount));
+        }
+
+        int values = mValueCount;
+        int i = mUniformCount * UNIFORM_SIZE;
+
+        mUniforms[i] = handle;
+        mUniforms[i + 1] = kind;
+        mUniforms[i + 2] = values;
+
+        mUniformCount++;
+        mValueCount += valueCount;
+
+        return values;
+    }
+
+    private void growPackets() {
+        int capacity = Math.min(Math.max(mKeys.length * 2, 16), MAX_PACKETS);
+
+        mKeys = Arrays.copyOf(mKeys, capacity);
+        mPrograms = Arrays.copyOf(mPrograms, capacity);
+        mFormats = Arrays.copyOf(mFormats, capacity);
+        mVertexBuffers = Arrays.copyOf(mVertexBuffers, capacity);
+        mIndexBuffers = Arrays.copyOf(mIndexBuffers, capacity);
+        mPackets = Arrays.copyOf(mPackets, capacity * PACKET_SIZE);
+    }
+
+    private void checkRecording() throws IllegalStateException {
+        if (mFinished) {
+            throw new IllegalStateException("Command buffer is finished and waiting to be executed");
+        }
+    }
+}
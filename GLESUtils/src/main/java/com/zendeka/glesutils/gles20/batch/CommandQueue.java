@@ -0,0 +1,309 @@
+package com.zendeka.glesutils.gles20.batch;
+
+import com.zendeka.glesutils.gles20.GLBackend;
+import com.zendeka.glesutils.gles20.GLContext;
+import com.zendeka.glesutils.gles20.VertexBufferObject;
+import com.zendeka.glesutils.gles20.VertexFormat;
+import com.zendeka.glesutils.gles20.shader.ShaderProgram;
+
+import java.util.Arrays;
+
+/**
+ * Lets worker threads record draws in parallel and replays them on the GL thread. Each worker owns one
+ * of the queue's CommandBuffers and records into it without locking; when done, it calls finish().
+ * execute() on the GL thread merges the packets of all finished buffers, radix sorts them by their
+ * 64 bit keys (program, vertex buffer, depth) and draws them, changing program, buffer and vertex
+ * format only where consecutive packets differ. Packets with equal keys keep their recording order.
+ *
+ * Buffers not finished yet are left alone and replayed by a later execute(), so wait for the workers
+ * of a frame, e.g. on their futures, before executing it.
+ */
+public final class CommandQueue {
+    private static final int MAX_BUFFERS = 256;
+    private static final int PACKET_BITS = 24;
+    private static final int PACKET_MASK = (1 << PACKET_BITS) - 1;
+
+    private final GLContext mContext = GLContext.getCurrent();
+    private final GLBackend mGL = mContext.getBackend();
+    private final CommandBuffer[] mBuffers;
+    private final boolean[] mMerged;
+
+    // Merged packets as keys and buffer/packet references, and the radix sort scratch arrays
+    private long[] mKeys = new long[0];
+    private int[] mRefs = new int[0];
+    private long[] mSortKeys = new long[0];
+    private int[] mSortRefs = new int[0];
+    private final int[] mCounts = new int[256];
+
+    private long mPacketCount;
+    private long mDrawCallCount;
+    private long mProgramChanges;
+    private long mVertexBufferChanges;
+    private long mExecuteCount;
+
+    /**
+     * Creates bufferCount command buffers, one for each recording thread, with room for capacity
+     * packets each before they grow.
+     */
+    public CommandQueue(int bufferCount, int capacity) throws IllegalArgumentException {
+        if (bufferCount < 1 || bufferCount > MAX_BUFFERS) {
+            throw new IllegalArgumentException("Command buffer count must be between 1 and " + MAX_BUFFERS + ": " + bufferCount);
+        }
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid command buffer capacity: " + capacity);
+        }
+
+        mBuffers = new CommandBuffer[bufferCount];
+        mMerged = new boolean[bufferCount];
+
+        for (int i = 0; i < bufferCount; i++) {
+            mBuffers[i] = new CommandBuffer(capacity);
+        }
+    }
+
+    public int getBufferCount() {
+        return mBuffers.length;
+    }
+
+    public CommandBuffer getBuffer(int index) {
+        return mBuffers[index];
+    }
+
+    /**
+     * Sorts and draws the packets of every finished buffer, then hands the buffers back to their
+     * threads. Returns the number of packets drawn.
+     */
+    public int execute() throws IllegalStateException {
+        int count = merge();
+
+        if (count == 0) {
+            releaseMerged();
+            return 0;
+        }
+
+        sort(count);
+
+        int[] refs = mRefs;
+        ShaderProgram currentProgram = null;
+        VertexBufferObject currentVertexBuffer = null;
+        VertexFormat currentFormat = null;
+        int currentOffset = 0;
+
+        for (int i = 0; i < count; i++) {
+            int ref = refs[i];
+            CommandBuffer buffer = mBuffers[ref >>> PACKET_BITS];
+            int packet = ref & PACKET_MASK;
+            int[] packets = buffer.mPackets;
+            int p = packet * CommandBuffer.PACKET_SIZE;
+
+            ShaderProgram program = buffer.mPrograms[packet];
+
+            if (program != currentProgram) {
+                program.use();
+                currentProgram = program;
+                currentFormat = null;
+                mProgramChanges++;
+            }
+
+            setUniforms(program, buffer, packets[p + 5], packets[p + 6]);
+
+            VertexBufferObject vertexBuffer = buffer.mVertexBuffers[packet];
+            VertexFormat format = buffer.mFormats[packet];
+            int offset = packets[p];
+
+            if (vertexBuffer != currentVertexBuffer || format != currentFormat || offset != currentOffset) {
+                if (vertexBuffer != currentVertexBuffer) {
+                    mVertexBufferChanges++;
+                }
+
+                vertexBuffer.bind();
+                program.bindVertexFormat(format, offset);
+                currentVertexBuffer = vertexBuffer;
+                currentFormat = format;
+                currentOffset = offset;
+            }
+
+            VertexBufferObject indexBuffer = buffer.mIndexBuffers[packet];
+
+            if (indexBuffer != null) {
+                indexBuffer.bind();
+                mGL.glDrawElements(packets[p + 1], packets[p + 3], packets[p + 4], packets[p + 2]);
+            } else {
+                mGL.glDrawArrays(packets[p + 1], packets[p + 2], packets[p + 3]);
+            }
+
+            mDrawCallCount++;
+        }
+
+        releaseMerged();
+
+        mPacketCount += count;
+        mExecuteCount++;
+
+        return count;
+    }
+
+    public long getPacketCount() {
+        return mPacketCount;
+    }
+
+    public long getDrawCallCount() {
+        return mDrawCallCount;
+    }
+
+    public long getProgramChangeCount() {
+        return mProgramChanges;
+    }
+
+    public long getVertexBufferChangeCount() {
+        return mVertexBufferChanges;
+    }
+
+    public long getExecuteCount() {
+        return mExecuteCount;
+    }
+
+    public void resetStatistics() {
+        mPacketCount = 0;
+        mDrawCallCount = 0;
+        mProgramChanges = 0;
+        mVertexBufferChanges = 0;
+        mExecuteCount = 0;
+    }
+
+    /**
+     * Gathers the keys of the finished buffers, in buffer order, and returns their number. Buffers
+     * finishing meanwhile are left for the next execute().
+     */
+    private int merge() {
+        int count = 0;
+
+        for (int b = 0; b < mBuffers.length; b++) {
+            mMerged[b] = mBuffers[b].isFinished();
+
+            if (mMerged[b]) {
+                count += mBuffers[b].mPacketCount;
+            }
+        }
+
+        if (count > mKeys.length) {
+            mKeys = new long[count];
+            mRefs = new int[count];
+            mSortKeys = new long[count];
+            mSortRefs = new int[count];
+        }
+
+        int n = 0;
+
+        for (int b = 0; b < mBuffers.length; b++) {
+            CommandBuffer buffer = mBuffers[b];
+
+            if (!mMerged[b]) {
+                continue;
+            }
+
+            int packets = buffer.mPacketCount;
+            System.arraycopy(buffer.mKeys, 0, mKeys, n, packets);
+
+            for (int packet = 0; packet < packets; packet++) {
+                mRefs[n + packet] = (b << PACKET_BITS) | packet;
+            }
+
+            n += packets;
+        }
+
+        return n;
+    }
+
+    private void releaseMerged() {
+        for (int b = 0; b < mBuffers.length; b++) {
+            if (mMerged[b]) {
+                mBuffers[b].reset();
+            }
+        }
+    }
+
+    /**
+     * Stable LSD radix sort of the first count keys and their references, a byte at a time. Bytes
+     * that are the same in every key are skipped.
+     */
+    private void sort(int count) {
+        long[] keys = mKeys;
+        int[] refs = mRefs;
+        long[] sortKeys = mSortKeys;
+        int[] sortRefs = mSortRefs;
+        int[] counts = mCounts;
+
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(counts, 0);
+
+            for (int i = 0; i < count; i++) {
+                counts[(int) (keys[i] >>> shift) & 0xFF]++;
+            }
+
+            if (counts[(int) (keys[0] >>> shift) & 0xFF] == count) {
+                continue;
+            }
+
+            int sum = 0;
+
+            for (int digit = 0; digit < 256; digit++) {
+                int digitCount = counts[digit];
+                counts[digit] = sum;
+                sum += digitCount;
+            }
+
+            for (int i = 0; i < count; i++) {
+                int position = counts[(int) (keys[i] >>> shift) & 0xFF]++;
+                sortKeys[position] = keys[i];
+                sortRefs[position] = refs[i];
+            }
+
+            long[] swapKeys = keys;
+            keys = sortKeys;
+            sortKeys = swapKeys;
+
+            int[] swapRefs = refs;
+            refs = sortRefs;
+            sortRefs = swapRefs;
+        }
+
+        mKeys = keys;
+        mRefs = refs;
+        mSortKeys = sortKeys;
+        mSortRefs = sortRefs;
+    }
+
+    private static void setUniforms(final ShaderProgram program, final CommandBuffer buffer, int start, int end) throws IllegalStateException {
+        int[] uniforms = buffer.mUniforms;
+        float[] values = buffer.mValues;
+
+        for (int u = start; u < end; u++) {
+            int i = u * CommandBuffer.UNIFORM_SIZE;
+            int handle = uniforms[i];
+            int v = uniforms[i + 2];
+
+            switch (uniforms[i + 1]) {
+                case CommandBuffer.KIND_FLOAT:
+                    program.setUniform(handle, values[v]);
+                    break;
+                case CommandBuffer.KIND_VEC2:
+                    program.setUniform(handle, values[v], values[v + 1]);
+                    break;
+                case CommandBuffer.KIND_VEC3:
+                    program.setUniform(handle, values[v], values[v + 1], values[v + 2]);
+                    break;
+                case CommandBuffer.KIND_VEC4:
+                    program.setUniform(handle, values[v], values[v + 1], values[v + 2], values[v + 3]);
+                    break;
+                case CommandBuffer.KIND_INT:
+                    program.setUniform(handle, v);
+                    break;
+                case CommandBuffer.KIND_MAT4:
+                    program.setUniformMatrix4fv(handle, 1, false, values, v);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.zendeka.glesutils.gles20.batch;
+
+import android.opengl.GLES20;
+
+import com.zendeka.glesutils.gles20.GLBackend;
+import com.zendeka.glesutils.gles20.GLContext;
+import com.zendeka.glesutils.gles20.StreamingVertexBufferObject;
+import com.zendeka.glesutils.gles20.VertexBufferObject;
+import com.zendeka.glesutils.gles20.VertexFormat;
+import com.zendeka.glesutils.gles20.shader.ShaderProgram;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Collects textured, colored quads and draws them with as few draw calls as possible. All quads of a
+ * flush go into one interleaved vertex upload and share a static index buffer; quads are drawn with
+ * one glDrawElements per run of quads using the same program and texture.
+ *
+ * With sorting enabled (the default) quads are grouped by program and texture before they are drawn,
+ * keeping submission order within a group. Disable it where overlapping translucent quads have to be
+ * drawn in submission order.
+ *
+ * Each vertex is a vec2 position, a vec2 texture coordinate and a normalized RGBA color, read by the
+ * attributes named by setAttributeNames(). Colors are packed with red in the lowest byte (0xAABBGGRR).
+ * Uniforms such as the projection matrix and the sampler unit are left to the caller.
+ */
+public final class QuadBatch {
+    public static final int MAX_CAPACITY = 16384;
+
+    private static final int VERTEX_SIZE = 5;
+    private static final int VERTEX_STRIDE = VERTEX_SIZE * 4;
+    private static final int QUAD_SIZE = VERTEX_SIZE * 4;
+    private static final int INDICES_PER_QUAD = 6;
+    private static final int STREAM_BUFFER_COUNT = 3;
+    private static final int MAX_STATES = 0xFFFF;
+
+    private final GLContext mContext = GLContext.getCurrent();
+    private final GLBackend mGL = mContext.getBackend();
+    private final int mCapacity;
+    private final VertexBufferObject mIndices;
+    private final StreamingVertexBufferObject mVertices;
+    private final IntBuffer mVertexData;
+
+    private final int[] mQuads;
+    private final long[] mSortKeys;
+    private int mQuadCount;
+
+    private ShaderProgram[] mPrograms = new ShaderProgram[4];
+    private int mProgramCount;
+    private int[] mTextures = new int[16];
+    private int mTextureCount;
+
+    private VertexFormat mVertexFormat = createVertexFormat("aPosition", "aTexCoord", "aColor");
+    private int mTextureUnit;
+    private boolean mSorting = true;
+
+    private long mFlushCount;
+    private long mDrawCallCount;
+    private long mQuadsDrawn;
+    private long mProgramChanges;
+    private long mTextureChanges;
+
+    public QuadBatch(int capacity) throws IllegalArgumentException {
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Quad batch capacity must be between 1 and " + MAX_CAPACITY + ": " + capacity);
+        }
+
+        mCapacity = capacity;
+        mQuads = new int[capacity * QUAD_SIZE];
+        mSortKeys = new long[capacity];
+
+        int vertexBytes = capacity * QUAD_SIZE * 4;
+        mVertexData = ByteBuffer.allocateDirect(vertexBytes).order(ByteOrder.nativeOrder()).asIntBuffer();
+        mVertices = new StreamingVertexBufferObject(VertexBufferObject.Target.ARRAY_BUFFER, vertexBytes, STREAM_BUFFER_COUNT);
+
+        int indexBytes = capacity * INDICES_PER_QUAD * 2;
+        ShortBuffer indices = ByteBuffer.allocateDirect(indexBytes).order(ByteOrder.nativeOrder()).asShortBuffer();
+
+        for (int quad = 0; quad < capacity; quad++) {
+            int vertex = quad * 4;
+            indices.put((short) vertex);
+            indices.put((short) (vertex + 1));
+            indices.put((short) (vertex + 2));
+            indices.put((short) (vertex + 2));
+            indices.put((short) (vertex + 3));
+            indices.put((short) vertex);
+        }
+
+        indices.flip();
+        mIndices = new VertexBufferObject(VertexBufferObject.Target.ELEMENT_ARRAY_BUFFER, VertexBufferObject.Usage.STATIC_DRAW, indices, indexBytes);
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public int getQuadCount() {
+        return mQuadCount;
+    }
+
+    public void setAttributeNames(final String position, final String texCoord, final String color) throws IllegalArgumentException {
+        mVertexFormat = createVertexFormat(position, texCoord, color);
+    }
+
+    public VertexFormat getVertexFormat() {
+        return mVertexFormat;
+    }
+
+    public void setTextureUnit(int unit) {
+        mTextureUnit = unit;
+    }
+
+    public boolean isSortingEnabled() {
+        return mSorting;
+    }
+
+    public void setSortingEnabled(boolean sorting) {
+        mSorting = sorting;
+    }
+
+    /**
+     * Starts a new frame. The vertex data of every frame goes into the next buffer of a small ring,
+     * so uploads never wait for the GPU to finish drawing the previous frame.
+     */
+    public void begin() {
+        mVertices.beginFrame();
+    }
+
+    /**
+     * Draws everything collected since the last flush. draw() flushes by itself when the batch is full.
+     */
+    public void end() {
+        flush();
+    }
+
+    public void draw(final ShaderProgram program, int texture, float x0, float y0, float x1, float y1, float u0, float v0, float u1, float v1, int color) {
+        int offset = add(program, texture);
+        int[] quads = mQuads;
+
+        offset = putVertex(quads, offset, x0, y0, u0, v0, color);
+        offset = putVertex(quads, offset, x1, y0, u1, v0, color);
+        offset = putVertex(quads, offset, x1, y1, u1, v1, color);
+        putVertex(quads, offset, x0, y1, u0, v1, color);
+    }
+
+    /**
+     * Draws an arbitrary quad given by four corners, x and y interleaved, in counter-clockwise order
+     * starting with the corner that gets the texture coordinate (u0, v0).
+     */
+    public void draw(final ShaderProgram program, int texture, float[] corners, int cornersOffset, float u0, float v0, float u1, float v1, int color) {
+        int offset = add(program, texture);
+        int[] quads = mQuads;
+        int i = cornersOffset;
+
+        offset = putVertex(quads, offset, corners[i], corners[i + 1], u0, v0, color);
+        offset = putVertex(quads, offset, corners[i + 2], corners[i + 3], u1, v0, color);
+        offset = putVertex(quads, offset, corners[i + 4], corners[i + 5], u1, v1, color);
+        putVertex(quads, offset, corners[i + 6], corners[i + 7], u0, v1, color);
+    }
+
+    public void flush() {
+        if (mQuadCount == 0) {
+            return;
+        }
+
+        int quadCount = mQuadCount;
+        long[] keys = mSortKeys;
+
+        if (mSorting) {
+            Arrays.sort(keys, 0, quadCount);
+        }
+
+        IntBuffer vertexData = mVertexData;
+        vertexData.clear();
+
+        for (int i = 0; i < quadCount; i++) {
+            int quad = (int) keys[i];
+            vertexData.put(mQuads, quad * QUAD_SIZE, QUAD_SIZE);
+        }
+
+        vertexData.flip();
+
+        int vertexOffset = mVertices.write(vertexData, quadCount * QUAD_SIZE * 4);
+        mIndices.bind();
+
+        int runStart = 0;
+        int runState = (int) (keys[0] >>> 32);
+        int currentProgram = -1;
+
+        for (int i = 1; i <= quadCount; i++) {
+            int state = i < quadCount ? (int) (keys[i] >>> 32) : -1;
+
+            if (state == runState) {
+                continue;
+            }
+
+            int programSlot = runState >>> 16;
+
+            if (programSlot != currentProgram) {
+                bindProgram(mPrograms[programSlot], vertexOffset);
+                currentProgram = programSlot;
+                mProgramChanges++;
+            }
+
+            int texture = mTextures[runState & 0xFFFF];
+
+            if (mContext.getBoundTexture(mTextureUnit, GLES20.GL_TEXTURE_2D) != texture) {
+                mContext.bindTexture(mTextureUnit, GLES20.GL_TEXTURE_2D, texture);
+                mTextureChanges++;
+            }
+
+            // The vertices of the run start at quad runStart of this upload, which the vertex attribute
+            // pointers already account for, so the indices are offset by the same amount.
+            mGL.glDrawElements(GLES20.GL_TRIANGLES, (i - runStart) * INDICES_PER_QUAD, GLES20.GL_UNSIGNED_SHORT, runStart * INDICES_PER_QUAD * 2);
+            mDrawCallCount++;
+
+            runStart = i;
+            runState = state;
+        }
+
+        mFlushCount++;
+        mQuadsDrawn += quadCount;
+
+        Arrays.fill(mPrograms, 0, mProgramCount, null);
+        mQuadCount = 0;
+        mProgramCount = 0;
+        mTextureCount = 0;
+    }
+
+    public long getFlushCount() {
+        return mFlushCount;
+    }
+
+    public long getDrawCallCount() {
+        return mDrawCallCount;
+    }
+
+    public long getQuadsDrawn() {
+        return mQuadsDrawn;
+    }
+
+    public long getProgramChangeCount() {
+        return mProgramChanges;
+    }
+
+    public long getTextureChangeCount() {
+        return mTextureChanges;
+    }
+
+    public void resetStatistics() {
+        mFlushCount = 0;
+        mDrawCallCount = 0;
+        mQuadsDrawn = 0;
+        mProgramChanges = 0;
+        mTextureChanges = 0;
+    }
+
+    public void delete() {
+        mVertices.deleteBuffers();
+        mIndices.deleteBuffer();
+    }
+
+    /**
+     * Reserves the next quad and returns the offset of its first vertex in the quad data.
+     */
+    private int add(final ShaderProgram program, int texture) {
+        if (mQuadCount == mCapacity) {
+            flush();
+        }
+
+        int programSlot = getProgramSlot(program);
+        int textureSlot = getTextureSlot(texture);
+
+        if (programSlot >= MAX_STATES || textureSlot >= MAX_STATES) {
+            flush();
+            programSlot = getProgramSlot(program);
+            textureSlot = getTextureSlot(texture);
+        }
+
+        int quad = mQuadCount++;
+        mSortKeys[quad] = ((long) programSlot << 48) | ((long) textureSlot << 32) | quad;
+
+        return quad * QUAD_SIZE;
+    }
+
+    private int getProgramSlot(final ShaderProgram program) {
+        for (int i = 0; i < mProgramCount; i++) {
+            if (mPrograms[i] == program) {
+                return i;
+            }
+        }
+
+        if (mProgramCount == mPrograms.length) {
+            mPrograms = Arrays.copyOf(mPrograms, mProgramCount * 2);
+        }
+
+        mPrograms[mProgramCount] = program;
+        return mProgramCount++;
+    }
+
+    private int getTextureSlot(int texture) {
+        for (int i = mTextureCount - 1; i >= 0; i--) {
+            if (mTextures[i] == texture) {
+                return i;
+            }
+        }
+
+        if (mTextureCount == mTextures.length) {
+            mTextures = Arrays.copyOf(mTextures, mTextureCount * 2);
+        }
+
+        mTextures[mTextureCount] = texture;
+        return mTextureCount++;
+    }
+
+    private void bindProgram(final ShaderProgram program, int vertexOffset) {
+        program.use();
+        mVertices.getCurrentBuffer().bind();
+        program.bindVertexFormat(mVertexFormat, vertexOffset);
+    }
+
+    private static VertexFormat createVertexFormat(final String position, final String texCoord, final String color) throws IllegalArgumentException {
+        return new VertexFormat(VERTEX_STRIDE,
+                new VertexFormat.Attribute(position, 2, GLES20.GL_FLOAT, false, 0),
+                new VertexFormat.Attribute(texCoord, 2, GLES20.GL_FLOAT, false, 8),
+                new VertexFormat.Attribute(color, 4, GLES20.GL_UNSIGNED_BYTE, true, 16));
+    }
+
+    private static int putVertex(int[] quads, int offset, float x, float y, float u, float v, int color) {
+        quads[offset] = Float.floatToRawIntBits(x);
+        quads[offset + 1] = Float.floatToRawIntBits(y);
+        quads[offset + 2] = Float.floatToRawIntBits(u);
+        quads[offset + 3] = Float.floatToRawIntBits(v);
+        quads[offset + 4] = color;
+
+        return offset + VERTEX_SIZE;
+    }
+}
@@ -0,0 +1,478 @@
+package com.zendeka.glesutils.gles20.mesh;
+
+import android.opengl.GLES20;
+
+import com.zendeka.glesutils.gles20.DirectBufferPool;
+import com.zendeka.glesutils.gles20.VertexBufferObject;
+import com.zendeka.glesutils.gles20.VertexFormat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Builds indexed meshes straight into native-order direct buffers, immediate mode style: normal(),
+ * texCoord() and color() set the current values and vertex() appends a vertex with them. Vertices are
+ * interleaved as a vec3 position followed by whichever of a vec3 normal, a vec2 texture coordinate
+ * and a normalized RGBA color the builder was created with. Colors are packed with red in the lowest
+ * byte (0xAABBGGRR).
+ *
+ * The storage grows by doubling and is handed to glBufferData() as it is, so a mesh is never copied
+ * between building and uploading. With a DirectBufferPool the storage is acquired from and released
+ * to the pool; call release() once the builder is no longer needed.
+ *
+ * 16 bit indices address at most 65536 vertices, 32 bit indices need OES_element_index_uint.
+ */
+public final class MeshBuilder {
+    private static final int INITIAL_VERTEX_CAPACITY = 64;
+    private static final int INITIAL_INDEX_CAPACITY = 192;
+    private static final int MAX_SHORT_VERTICES = 0x10000;
+
+    public enum IndexType {
+        UNSIGNED_SHORT(GLES20.GL_UNSIGNED_SHORT, 2),
+        UNSIGNED_INT(GLES20.GL_UNSIGNED_INT, 4);
+
+        private final int mType;
+        private final int mSize;
+
+        IndexType(int type, int size) {
+            mType = type;
+            mSize = size;
+        }
+
+        public int getType() {
+            return mType;
+        }
+
+        public int getSize() {
+            return mSize;
+        }
+    }
+
+    private final boolean mNormals;
+    private final boolean mTexCoords;
+    private final boolean mColors;
+    private IndexType mIndexType;
+    private final DirectBufferPool mPool;
+
+    private final int mNormalOffset;
+    private final int mTexCoordOffset;
+    private final int mColorOffset;
+    private final int mStride;
+
+    private ByteBuffer mVertices;
+    private ByteBuffer mIndices;
+    private int mVertexCount;
+    private int mIndexCount;
+
+    private float mNormalX;
+    private float mNormalY;
+    private float mNormalZ = 1.0f;
+    private float mTexCoordU;
+    private float mTexCoordV;
+    private int mColor = 0xFFFFFFFF;
+
+    private VertexFormat mVertexFormat;
+
+    public MeshBuilder(boolean normals, boolean texCoords, boolean colors, final IndexType indexType) throws IllegalArgumentException {
+        this(normals, texCoords, colors, indexType, null);
+    }
+
+    /**
+     * pool may be null, in which case the storage is allocated directly.
+     */
+    public MeshBuilder(boolean normals, boolean texCoords, boolean colors, final IndexType indexType, final DirectBufferPool pool) throws IllegalArgumentException {
+        if (indexType == null) {
+            throw new IllegalArgumentException("Index type must not be null");
+        }
+
+        mNormals = normals;
+        mTexCoords = texCoords;
+        mColors = colors;
+        mIndexType = indexType;
+        mPool = pool;
+
+        int offset = 12;
+        mNormalOffset = offset;
+        offset += normals ? 12 : 0;
+        mTexCoordOffset = offset;
+        offset += texCoords ? 8 : 0;
+        mColorOffset = offset;
+        offset += colors ? 4 : 0;
+        mStride = offset;
+
+        setAttributeNames("aPosition", "aNormal", "aTexCoord", "aColor");
+    }
+
+    public boolean hasNormals() {
+        return mNormals;
+    }
+
+    public boolean hasTexCoords() {
+        return mTexCoords;
+    }
+
+    public boolean hasColors() {
+        return mColors;
+    }
+
+    public IndexType getIndexType() {
+        return mIndexType;
+    }
+
+    public int getStride() {
+        return mStride;
+    }
+
+    public int getVertexCount() {
+        return mVertexCount;
+    }
+
+    public int getIndexCount() {
+        return mIndexCount;
+    }
+
+    public int getVertexDataSize() {
+        return mVertexCount * mStride;
+    }
+
+    public int getIndexDataSize() {
+        return mIndexCount * mIndexType.getSize();
+    }
+
+    /**
+     * Names of the attributes in the vertex format. Names of attributes the builder does not write are ignored.
+     */
+    public void setAttributeNames(final String position, final String normal, final String texCoord, final String color) throws IllegalArgumentException {
+        VertexFormat.Attribute[] attributes = new VertexFormat.Attribute[1 + (mNormals ? 1 : 0) + (mTexCoords ? 1 : 0) + (mColors ? 1 : 0)];
+        int n = 0;
+
+        attributes[n++] = new VertexFormat.Attribute(position, 3, GLES20.GL_FLOAT, false, 0);
+
+        if (mNormals) {
+            attributes[n++] = new VertexFormat.Attribute(normal, 3, GLES20.GL_FLOAT, false, mNormalOffset);
+        }
+
+        if (mTexCoords) {
+            attributes[n++] = new VertexFormat.Attribute(texCoord, 2, GLES20.GL_FLOAT, false, mTexCoordOffset);
+        }
+
+        if (mColors) {
+            attributes[n++] = new VertexFormat.Attribute(color, 4, GLES20.GL_UNSIGNED_BYTE, true, mColorOffset);
+        }
+
+        mVertexFormat = new VertexFormat(mStride, attributes);
+    }
+
+    public VertexFormat getVertexFormat() {
+        return mVertexFormat;
+    }
+
+    public void normal(float x, float y, float z) {
+        mNormalX = x;
+        mNormalY = y;
+        mNormalZ = z;
+    }
+
+    public void texCoord(float u, float v) {
+        mTexCoordU = u;
+        mTexCoordV = v;
+    }
+
+    public void color(int color) {
+        mColor = color;
+    }
+
+    /**
+     * Appends a vertex at the given position with the current normal, texture coordinate and color.
+     * Returns its index.
+     */
+    public int vertex(float x, float y, float z) throws IllegalStateException {
+        if (mIndexType == IndexType.UNSIGNED_SHORT && mVertexCount == MAX_SHORT_VERTICES) {
+            throw new IllegalStateException("16 bit indices address at most " + MAX_SHORT_VERTICES + " vertices");
+        }
+
+        int offset = mVertexCount * mStride;
+        ByteBuffer vertices = reserveVertices(offset + mStride);
+
+        vertices.putFloat(offset, x);
+        vertices.putFloat(offset + 4, y);
+        vertices.putFloat(offset + 8, z);
+
+        if (mNormals) {
+            vertices.putFloat(offset + mNormalOffset, mNormalX);
+            vertices.putFloat(offset + mNormalOffset + 4, mNormalY);
+            vertices.putFloat(offset + mNormalOffset + 8, mNormalZ);
+        }
+
+        if (mTexCoords) {
+            vertices.putFloat(offset + mTexCoordOffset, mTexCoordU);
+            vertices.putFloat(offset + mTexCoordOffset + 4, mTexCoordV);
+        }
+
+        if (mColors) {
+            vertices.putInt(offset + mColorOffset, mColor);
+        }
+
+        return mVertexCount++;
+    }
+
+    public void index(int index) throws IllegalArgumentException {
+        checkIndex(index);
+
+        int size = mIndexType.getSize();
+        int offset = mIndexCount * size;
+        ByteBuffer indices = reserveIndices(offset + size);
+
+        if (size == 2) {
+            indices.putShort(offset, (short) index);
+        } else {
+            indices.putInt(offset, index);
+        }
+
+        mIndexCount++;
+    }
+
+    public void triangle(int a, int b, int c) throws IllegalArgumentException {
+        checkIndex(a);
+        checkIndex(b);
+        checkIndex(c);
+
+        int size = mIndexType.getSize();
+        int offset = mIndexCount * size;
+        ByteBuffer indices = reserveIndices(offset + 3 * size);
+
+        if (size == 2) {
+            indices.putShort(offset, (short) a);
+            indices.putShort(offset + 2, (short) b);
+            indices.putShort(offset + 4, (short) c);
+        } else {
+            indices.putInt(offset, a);
+            indices.putInt(offset + 4, b);
+            indices.putInt(offset + 8, c);
+        }
+
+        mIndexCount += 3;
+    }
+
+    /**
+     * Appends the quad a, b, c, d as the triangles a, b, c and c, d, a.
+     */
+    public void quad(int a, int b, int c, int d) throws IllegalArgumentException {
+        triangle(a, b, c);
+        triangle(c, d, a);
+    }
+
+    /**
+     * Makes room for vertexCount more vertices and indexCount more indices, to avoid growing in steps.
+     */
+    public void ensureCapacity(int vertexCount, int indexCount) throws IllegalArgumentException {
+        if (vertexCount < 0 || indexCount < 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + vertexCount + " vertices, " + indexCount + " indices");
+        }
+
+        reserveVertices((mVertexCount + vertexCount) * mStride);
+        reserveIndices((mIndexCount + indexCount) * mIndexType.getSize());
+    }
+
+    /**
+     * The vertex data, positioned at 0 and limited to the vertices built so far. It shares the
+     * storage of the builder and is valid until the builder grows, is reset or released.
+     */
+    public ByteBuffer getVertexData() {
+        return view(reserveVertices(0), getVertexDataSize());
+    }
+
+    /**
+     * The index data, see getVertexData().
+     */
+    public ByteBuffer getIndexData() {
+        return view(reserveIndices(0), getIndexDataSize());
+    }
+
+    public float getPosition(int vertex, int component) throws IllegalArgumentException {
+        if (vertex < 0 || vertex >= mVertexCount || component < 0 || component > 2) {
+            throw new IllegalArgumentException("Invalid vertex " + vertex + " component " + component);
+        }
+
+        return mVertices.getFloat(vertex * mStride + component * 4);
+    }
+
+    public int getIndex(int index) throws IllegalArgumentException {
+        if (index < 0 || index >= mIndexCount) {
+            throw new IllegalArgumentException("Invalid index " + index);
+        }
+
+        return mIndexType.getSize() == 2 ? mIndices.getShort(index * 2) & 0xFFFF : mIndices.getInt(index * 4);
+    }
+
+    /**
+     * Creates a vertex buffer holding the vertices. It is left bound.
+     */
+    public VertexBufferObject createVertexBuffer(final VertexBufferObject.Usage usage) throws IllegalStateException {
+        return new VertexBufferObject(VertexBufferObject.Target.ARRAY_BUFFER, usage, getVertexData(), getVertexDataSize());
+    }
+
+    /**
+     * Creates an index buffer holding the indices. It is left bound.
+     */
+    public VertexBufferObject createIndexBuffer(final VertexBufferObject.Usage usage) throws IllegalStateException {
+        return new VertexBufferObject(VertexBufferObject.Target.ELEMENT_ARRAY_BUFFER, usage, getIndexData(), getIndexDataSize());
+    }
+
+    /**
+     * Replaces the contents of buffer with the vertices, or with the indices for an element array
+     * buffer. The buffer is left bound.
+     */
+    public void upload(final VertexBufferObject buffer) throws IllegalStateException {
+        buffer.bind();
+
+        if (buffer.getBufferTarget() == VertexBufferObject.Target.ARRAY_BUFFER) {
+            buffer.allocateAndBufferData(getVertexDataSize(), getVertexData());
+        } else {
+            buffer.allocateAndBufferData(getIndexDataSize(), getIndexData());
+        }
+    }
+
+    /**
+     * Switches 32 bit indices to 16 bit ones if every vertex can be addressed with them. Returns
+     * whether the indices are 16 bit.
+     */
+    public boolean narrowIndices() {
+        if (mIndexType == IndexType.UNSIGNED_SHORT) {
+            return true;
+        }
+
+        if (mVertexCount > MAX_SHORT_VERTICES) {
+            return false;
+        }
+
+        // Each 16 bit index goes at or before the 32 bit index it is read from
+        ByteBuffer indices = mIndices;
+
+        for (int i = 0; i < mIndexCount; i++) {
+            indices.putShort(i * 2, (short) indices.getInt(i * 4));
+        }
+
+        mIndexType = IndexType.UNSIGNED_SHORT;
+        return true;
+    }
+
+    /**
+     * Starts a new mesh, keeping the storage.
+     */
+    public void reset() {
+        mVertexCount = 0;
+        mIndexCount = 0;
+    }
+
+    /**
+     * Starts a new mesh and gives the storage back to the pool.
+     */
+    public void release() {
+        reset();
+
+        if (mPool != null) {
+            if (mVertices != null) {
+                mPool.release(mVertices);
+            }
+
+            if (mIndices != null) {
+                mPool.release(mIndices);
+            }
+        }
+
+        mVertices = null;
+        mIndices = null;
+    }
+
+    /**
+     * Copies the indices into indices, which must hold getIndexCount() of them.
+     */
+    void getIndices(final int[] indices) {
+        for (int i = 0; i < mIndexCount; i++) {
+            indices[i] = getIndex(i);
+        }
+    }
+
+    /**
+     * Replaces the indices with count indices into the first vertexCount vertices, which the caller
+     * has already rearranged in the vertex storage.
+     */
+    void setMesh(int vertexCount, final int[] indices, int count) {
+        mVertexCount = vertexCount;
+        mIndexCount = 0;
+
+        int size = mIndexType.getSize();
+        ByteBuffer storage = reserveIndices(count * size);
+
+        for (int i = 0; i < count; i++) {
+            if (size == 2) {
+                storage.putShort(i * 2, (short) indices[i]);
+            } else {
+                storage.putInt(i * 4, indices[i]);
+            }
+        }
+
+        mIndexCount = count;
+    }
+
+    /**
+     * The vertex storage itself, or null if nothing was built yet.
+     */
+    ByteBuffer getVertexStorage() {
+        return mVertices;
+    }
+
+    private void checkIndex(int index) throws IllegalArgumentException {
+        if (index < 0 || index >= mVertexCount) {
+            throw new IllegalArgumentException("Invalid vertex index " + index + ", vertex count " + mVertexCount);
+        }
+    }
+
+    private ByteBuffer reserveVertices(int size) {
+        if (mVertices == null || mVertices.capacity() < size) {
+            mVertices = grow(mVertices, size, getVertexDataSize(), INITIAL_VERTEX_CAPACITY * mStride);
+        }
+
+        return mVertices;
+    }
+
+    private ByteBuffer reserveIndices(int size) {
+        if (mIndices == null || mIndices.capacity() < size) {
+            mIndices = grow(mIndices, size, getIndexDataSize(), INITIAL_INDEX_CAPACITY * mIndexType.getSize());
+        }
+
+        return mIndices;
+    }
+
+    private ByteBuffer grow(final ByteBuffer buffer, int size, int used, int initialCapacity) {
+        int capacity = buffer != null ? buffer.capacity() : initialCapacity;
+
+        while (capacity < size) {
+            capacity = capacity > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : capacity * 2;
+        }
+
+        ByteBuffer grown = mPool != null ? mPool.acquire(capacity) : ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        grown.clear();
+
+        if (buffer != null) {
+            ByteBuffer source = view(buffer, used);
+            grown.put(source);
+            grown.clear();
+
+            if (mPool != null) {
+                mPool.release(buffer);
+            }
+        }
+
+        return grown;
+    }
+
+    private static ByteBuffer view(final ByteBuffer buffer, int size) {
+        ByteBuffer view = buffer.duplicate().order(buffer.order());
+        view.clear();
+        view.limit(size);
+
+        return view;
+    }
+}
@@ -0,0 +1,366 @@
+package com.zendeka.glesutils.gles20.mesh;
+
+import com.zendeka.glesutils.gles20.DirectBufferPool;
+import com.zendeka.glesutils.gles20.VertexBufferObject;
+import com.zendeka.glesutils.gles20.VertexFormat;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads meshes without stalling the GL thread. Each submitted Source runs on a worker thread of the
+ * given executor, where it decodes, transforms and packs its mesh into a MeshBuilder, that is into
+ * direct buffers. Finished meshes wait in a bounded queue; update(), called once per frame on the GL
+ * thread, uploads them into vertex and index buffers until the per-frame byte budget is used up, but
+ * always at least one.
+ *
+ * When the queue is full, workers block until the GL thread catches up, so memory held by packed but
+ * not yet uploaded meshes stays bounded. The time workers spend blocked and the depth of the queue
+ * are measured, to tune the queue size and the budget.
+ *
+ * submit() returns a future that completes on the GL thread once the buffers are created, or fails
+ * with the exception of the source. A mesh cancelled before it is uploaded is dropped.
+ */
+public final class MeshLoader {
+    public interface Source {
+        /**
+         * Builds the mesh. Runs on a worker thread and must not make GL calls; pool may be null.
+         */
+        public MeshBuilder load(DirectBufferPool pool) throws Exception;
+    }
+
+    public static final class Mesh {
+        private final VertexBufferObject mVertexBuffer;
+        private final VertexBufferObject mIndexBuffer;
+        private final VertexFormat mVertexFormat;
+        private final int mVertexCount;
+        private final int mIndexCount;
+        private final MeshBuilder.IndexType mIndexType;
+
+        Mesh(final VertexBufferObject vertexBuffer, final VertexBufferObject indexBuffer, final MeshBuilder builder) {
+            mVertexBuffer = vertexBuffer;
+            mIndexBuffer = indexBuffer;
+            mVertexFormat = builder.getVertexFormat();
+            mVertexCount = builder.getVertexCount();
+            mIndexCount = builder.getIndexCount();
+            mIndexType = builder.getIndexType();
+        }
+
+        public VertexBufferObject getVertexBuffer() {
+            return mVertexBuffer;
+        }
+
+        /**
+         * The index buffer, or null for a mesh without indices.
+         */
+        public VertexBufferObject getIndexBuffer() {
+            return mIndexBuffer;
+        }
+
+        public VertexFormat getVertexFormat() {
+            return mVertexFormat;
+        }
+
+        public int getVertexCount() {
+            return mVertexCount;
+        }
+
+        public int getIndexCount() {
+            return mIndexCount;
+        }
+
+        public MeshBuilder.IndexType getIndexType() {
+            return mIndexType;
+        }
+    }
+
+    private static final Runnable NO_TASK = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private static final class LoadFuture extends FutureTask<Mesh> {
+        LoadFuture() {
+            super(NO_TASK, null);
+        }
+
+        void complete(final Mesh mesh) {
+            set(mesh);
+        }
+
+        void fail(final Throwable t) {
+            setException(t);
+        }
+    }
+
+    private static final class Ready {
+        final MeshBuilder mBuilder;
+        final LoadFuture mFuture;
+
+        Ready(final MeshBuilder builder, final LoadFuture future) {
+            mBuilder = builder;
+            mFuture = future;
+        }
+    }
+
+    private final Executor mExecutor;
+    private final DirectBufferPool mPool;
+    private final BlockingQueue<Ready> mReady;
+    private final VertexBufferObject.Usage mUsage;
+    private long mBudget;
+    private int mCacheSize;
+
+    private final AtomicInteger mPendingCount = new AtomicInteger();
+    private final AtomicInteger mMaxQueueDepth = new AtomicInteger();
+    private final AtomicLong mBlockedNanos = new AtomicLong();
+    private final AtomicInteger mBlockedCount = new AtomicInteger();
+    private final AtomicInteger mFailedCount = new AtomicInteger();
+
+    private long mBytesUploaded;
+    private long mLastUpdateBytes;
+    private int mLoadedCount;
+
+    /**
+     * executor runs the sources; pool, which may be null, provides the direct buffers they pack into.
+     * queueCapacity is the number of packed meshes that may wait for upload before workers block.
+     */
+    public MeshLoader(final Executor executor, final DirectBufferPool pool, int queueCapacity, long budgetBytes, final VertexBufferObject.Usage usage) throws IllegalArgumentException {
+        if (executor == null || usage == null) {
+            throw new IllegalArgumentException("Executor and buffer usage must not be null");
+        }
+
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Invalid mesh queue capacity: " + queueCapacity);
+        }
+
+        mExecutor = executor;
+        mPool = pool;
+        mReady = new ArrayBlockingQueue<Ready>(queueCapacity);
+        mUsage = usage;
+        setBudget(budgetBytes);
+    }
+
+    public long getBudget() {
+        return mBudget;
+    }
+
+    /**
+     * Bytes update() uploads per call before it stops, see update().
+     */
+    public void setBudget(long budgetBytes) throws IllegalArgumentException {
+        if (budgetBytes < 0) {
+            throw new IllegalArgumentException("Invalid upload budget: " + budgetBytes);
+        }
+
+        mBudget = budgetBytes;
+    }
+
+    /**
+     * Vertex cache size to optimize meshes for on the worker with MeshOptimizer, or 0, the default,
+     * to upload them as built.
+     */
+    public void setOptimization(int cacheSize) throws IllegalArgumentException {
+        if (cacheSize != 0 && cacheSize < 3) {
+            throw new IllegalArgumentException("Invalid vertex cache size: " + cacheSize);
+        }
+
+        mCacheSize = cacheSize;
+    }
+
+    public Future<Mesh> submit(final Source source) throws IllegalArgumentException {
+        if (source == null) {
+            throw new IllegalArgumentException("Mesh source must not be null");
+        }
+
+        final LoadFuture future = new LoadFuture();
+        final int cacheSize = mCacheSize;
+        mPendingCount.incrementAndGet();
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                load(source, future, cacheSize);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Uploads packed meshes until the budget is used up or none are waiting, and completes their
+     * futures. Call once per frame on the GL thread. Returns the number of meshes uploaded.
+     *
+     * A failed upload fails the future of its mesh; an Error is rethrown after that.
+     */
+    public int update() {
+        long bytes = 0;
+        int count = 0;
+
+        while (bytes < mBudget || count == 0) {
+            Ready ready = mReady.poll();
+
+            if (ready == null) {
+                break;
+            }
+
+            MeshBuilder builder = ready.mBuilder;
+            LoadFuture future = ready.mFuture;
+            VertexBufferObject vertexBuffer = null;
+
+            try {
+                if (!future.isCancelled()) {
+                    vertexBuffer = builder.createVertexBuffer(mUsage);
+                    VertexBufferObject indexBuffer = builder.getIndexCount() > 0 ? builder.createIndexBuffer(mUsage) : null;
+
+                    future.complete(new Mesh(vertexBuffer, indexBuffer, builder));
+                    bytes += builder.getVertexDataSize() + builder.getIndexDataSize();
+                    count++;
+                    mLoadedCount++;
+                }
+            } catch (Throwable t) {
+                if (vertexBuffer != null) {
+                    vertexBuffer.deleteBuffer();
+                }
+
+                future.fail(t);
+                mFailedCount.incrementAndGet();
+
+                if (t instanceof Error) {
+                    throw (Error) t;
+                }
+            } finally {
+                builder.release();
+                mPendingCount.decrementAndGet();
+            }
+        }
+
+        mLastUpdateBytes = bytes;
+        mBytesUploaded += bytes;
+
+        return count;
+    }
+
+    /**
+     * Number of submitted meshes not uploaded, failed or dropped yet.
+     */
+    public int getPendingCount() {
+        return mPendingCount.get();
+    }
+
+    /**
+     * Number of packed meshes waiting for update().
+     */
+    public int getQueueDepth() {
+        return mReady.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return mMaxQueueDepth.get();
+    }
+
+    /**
+     * Number of times a worker found the queue full and had to wait.
+     */
+    public int getBlockedCount() {
+        return mBlockedCount.get();
+    }
+
+    /**
+     * Total time workers spent waiting for room in the queue.
+     */
+    public long getBlockedNanos() {
+        return mBlockedNanos.get();
+    }
+
+    public long getBytesUploaded() {
+        return mBytesUploaded;
+    }
+
+    public long getLastUpdateBytes() {
+        return mLastUpdateBytes;
+    }
+
+    public int getLoadedCount() {
+        return mLoadedCount;
+    }
+
+    public int getFailedCount() {
+        return mFailedCount.get();
+    }
+
+    public void resetStatistics() {
+        mMaxQueueDepth.set(mReady.size());
+        mBlockedNanos.set(0);
+        mBlockedCount.set(0);
+        mBytesUploaded = 0;
+        mLastUpdateBytes = 0;
+        mLoadedCount = 0;
+        mFailedCount.set(0);
+    }
+
+    /**
+     * Runs source on a worker thread and queues the result for upload.
+     */
+    private void load(final Source source, final LoadFuture future, int cacheSize) {
+        if (future.isCancelled()) {
+            mPendingCount.decrementAndGet();
+            return;
+        }
+
+        MeshBuilder builder = null;
+
+        try {
+            builder = source.load(mPool);
+
+            if (builder == null) {
+                throw new IllegalStateException("Mesh source returned no mesh");
+            }
+
+            if (cacheSize > 0) {
+                MeshOptimizer.optimize(builder, cacheSize);
+            }
+
+            Ready ready = new Ready(builder, future);
+
+            if (!mReady.offer(ready)) {
+                long start = System.nanoTime();
+                mBlockedCount.incrementAndGet();
+                mReady.put(ready);
+                mBlockedNanos.addAndGet(System.nanoTime() - start);
+            }
+        } catch (Throwable t) {
+            if (builder != null) {
+                builder.release();
+            }
+
+            if (t instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+
+            future.fail(t);
+            mFailedCount.incrementAndGet();
+            mPendingCount.decrementAndGet();
+
+            // Errors still reach the executor, after the future has been failed
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+
+            return;
+        }
+
+        int depth = mReady.size();
+
+        for (int max = mMaxQueueDepth.get(); depth > max; max = mMaxQueueDepth.get()) {
+            if (mMaxQueueDepth.compareAndSet(max, depth)) {
+                break;
+            }
+        }
+    }
+}
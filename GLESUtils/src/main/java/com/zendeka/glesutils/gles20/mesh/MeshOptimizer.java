@@ -0,0 +1,381 @@
+package com.zendeka.glesutils.gles20.mesh;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Load-time passes that make indexed triangle lists cheaper to draw:
+ *
+ * weld() merges vertices whose bytes are identical, so triangles sharing a corner share its vertex.
+ * optimizeVertexCache() reorders triangles for the post-transform vertex cache with Tipsify (Sander,
+ * Nehab and Barczak, "Fast Triangle Reordering for Vertex Locality and Reduced Overdraw"), so fewer
+ * vertices go through the vertex shader more than once. optimizeVertexFetch() then renumbers vertices
+ * in the order the triangles first use them, so vertex fetches walk the buffer front to back, and
+ * drops vertices no triangle uses.
+ *
+ * getAcmr() and getAtvr() simulate a FIFO vertex cache to measure the result: ACMR is the number of
+ * vertices transformed per triangle (0.5 at best for a large regular grid, 3 at worst), ATVR the
+ * number of vertices transformed per vertex referenced (1 at best).
+ *
+ * Vertices are given as a buffer of vertexCount vertices of stride bytes starting at index 0, and
+ * indices as triangle lists in an int[]. optimize() runs every pass on a MeshBuilder and narrows its
+ * indices to 16 bits if the remaining vertices allow.
+ */
+public final class MeshOptimizer {
+    public static final int DEFAULT_CACHE_SIZE = 16;
+
+    private MeshOptimizer() {
+    }
+
+    /**
+     * Welds, reorders for the vertex cache and for vertex fetch, then narrows the indices of builder.
+     */
+    public static void optimize(final MeshBuilder builder, int cacheSize) throws IllegalArgumentException {
+        int indexCount = builder.getIndexCount();
+        int vertexCount = builder.getVertexCount();
+        ByteBuffer vertices = builder.getVertexStorage();
+
+        if (vertexCount == 0 || indexCount == 0) {
+            return;
+        }
+
+        int[] indices = new int[indexCount];
+        builder.getIndices(indices);
+
+        vertexCount = weld(vertices, builder.getStride(), vertexCount, indices, indexCount);
+        optimizeVertexCache(indices, indexCount, vertexCount, cacheSize);
+        vertexCount = optimizeVertexFetch(vertices, builder.getStride(), vertexCount, indices, indexCount);
+
+        builder.setMesh(vertexCount, indices, indexCount);
+        builder.narrowIndices();
+    }
+
+    /**
+     * Merges vertices with identical bytes, moving the remaining ones to the front of vertices and
+     * rewriting indices to match. Returns the number of remaining vertices.
+     */
+    public static int weld(final ByteBuffer vertices, int stride, int vertexCount, final int[] indices, int indexCount) throws IllegalArgumentException {
+        checkMesh(vertices, stride, vertexCount, indices, indexCount);
+
+        byte[] data = new byte[vertexCount * stride];
+        ByteBuffer source = vertices.duplicate();
+        source.clear();
+        source.get(data);
+
+        int tableSize = Integer.highestOneBit(Math.max(vertexCount, 1) * 2 - 1) << 1;
+        int[] table = new int[tableSize];
+        Arrays.fill(table, -1);
+
+        int[] remap = new int[vertexCount];
+        int unique = 0;
+
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            int offset = vertex * stride;
+            int slot = hash(data, offset, stride) & (tableSize - 1);
+
+            while (table[slot] != -1 && !equals(data, table[slot] * stride, offset, stride)) {
+                slot = (slot + 1) & (tableSize - 1);
+            }
+
+            if (table[slot] == -1) {
+                // Unique vertices only ever move towards the front, over ones already read
+                System.arraycopy(data, offset, data, unique * stride, stride);
+                table[slot] = unique;
+                remap[vertex] = unique++;
+            } else {
+                remap[vertex] = table[slot];
+            }
+        }
+
+        for (int i = 0; i < indexCount; i++) {
+            indices[i] = remap[indices[i]];
+        }
+
+        ByteBuffer target = vertices.duplicate();
+        target.clear();
+        target.put(data, 0, unique * stride);
+
+        return unique;
+    }
+
+    /**
+     * Reorders the triangles of indices for a vertex cache of cacheSize entries. Triangles are kept
+     * intact, with their winding.
+     */
+    public static void optimizeVertexCache(final int[] indices, int indexCount, int vertexCount, int cacheSize) throws IllegalArgumentException {
+        checkIndices(indices, indexCount, vertexCount);
+
+        if (cacheSize < 3) {
+            throw new IllegalArgumentException("Invalid vertex cache size: " + cacheSize);
+        }
+
+        int triangleCount = indexCount / 3;
+
+        // Triangles of each vertex, as a compact adjacency list
+        int[] live = new int[vertexCount];
+        int[] start = new int[vertexCount + 1];
+
+        for (int i = 0; i < triangleCount * 3; i++) {
+            live[indices[i]]++;
+        }
+
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            start[vertex + 1] = start[vertex] + live[vertex];
+        }
+
+        int[] triangles = new int[triangleCount * 3];
+        int[] fill = Arrays.copyOf(start, vertexCount);
+
+        for (int i = 0; i < triangleCount * 3; i++) {
+            triangles[fill[indices[i]]++] = i / 3;
+        }
+
+        int[] cacheTime = new int[vertexCount];
+        boolean[] emitted = new boolean[triangleCount];
+        int[] deadEnd = new int[triangleCount * 3];
+        int deadEndCount = 0;
+        int[] candidates = new int[triangleCount * 3];
+        int[] output = new int[triangleCount * 3];
+        int outputCount = 0;
+
+        int time = cacheSize + 1;
+        int cursor = 1;
+        int fanning = vertexCount > 0 ? 0 : -1;
+
+        while (fanning >= 0) {
+            int candidateCount = 0;
+
+            for (int t = start[fanning]; t < start[fanning + 1]; t++) {
+                int triangle = triangles[t];
+
+                if (emitted[triangle]) {
+                    continue;
+                }
+
+                emitted[triangle] = true;
+
+                for (int corner = 0; corner < 3; corner++) {
+                    int vertex = indices[triangle * 3 + corner];
+                    output[outputCount++] = vertex;
+                    deadEnd[deadEndCount++] = vertex;
+                    candidates[candidateCount++] = vertex;
+                    live[vertex]--;
+
+                    if (time - cacheTime[vertex] > cacheSize) {
+                        cacheTime[vertex] = time++;
+                    }
+                }
+            }
+
+            // The candidate that stays in the cache longest without being evicted by its own fan
+            fanning = -1;
+            int bestPriority = -1;
+
+            for (int i = 0; i < candidateCount; i++) {
+                int vertex = candidates[i];
+
+                if (live[vertex] > 0) {
+                    int priority = 0;
+
+                    if (time - cacheTime[vertex] + 2 * live[vertex] <= cacheSize) {
+                        priority = time - cacheTime[vertex];
+                    }
+
+                    if (priority > bestPriority) {
+                        bestPriority = priority;
+                        fanning = vertex;
+                    }
+                }
+            }
+
+            if (fanning == -1) {
+                while (deadEndCount > 0) {
+                    int vertex = deadEnd[--deadEndCount];
+
+                    if (live[vertex] > 0) {
+                        fanning = vertex;
+                        break;
+                    }
+                }
+            }
+
+            if (fanning == -1) {
+                while (cursor < vertexCount) {
+                    if (live[cursor++] > 0) {
+                        fanning = cursor - 1;
+                        break;
+                    }
+                }
+            }
+        }
+
+        System.arraycopy(output, 0, indices, 0, outputCount);
+    }
+
+    /**
+     * Renumbers vertices in the order indices first reference them and moves them accordingly,
+     * dropping vertices that are never referenced. Returns the number of remaining vertices.
+     */
+    public static int optimizeVertexFetch(final ByteBuffer vertices, int stride, int vertexCount, final int[] indices, int indexCount) throws IllegalArgumentException {
+        checkMesh(vertices, stride, vertexCount, indices, indexCount);
+
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+        int next = 0;
+
+        for (int i = 0; i < indexCount; i++) {
+            int vertex = indices[i];
+
+            if (remap[vertex] == -1) {
+                remap[vertex] = next++;
+            }
+
+            indices[i] = remap[vertex];
+        }
+
+        byte[] data = new byte[vertexCount * stride];
+        ByteBuffer source = vertices.duplicate();
+        source.clear();
+        source.get(data);
+
+        ByteBuffer target = vertices.duplicate();
+
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            if (remap[vertex] != -1) {
+                target.clear();
+                target.position(remap[vertex] * stride);
+                target.put(data, vertex * stride, stride);
+            }
+        }
+
+        return next;
+    }
+
+    /**
+     * Average cache miss ratio: vertices transformed per triangle with a FIFO cache of cacheSize entries.
+     */
+    public static float getAcmr(final int[] indices, int indexCount, int cacheSize) throws IllegalArgumentException {
+        int triangleCount = indexCount / 3;
+        return triangleCount > 0 ? (float) getTransformCount(indices, indexCount, cacheSize) / triangleCount : 0.0f;
+    }
+
+    /**
+     * Average transform to vertex ratio: vertices transformed per distinct vertex referenced, with a
+     * FIFO cache of cacheSize entries.
+     */
+    public static float getAtvr(final int[] indices, int indexCount, int cacheSize) throws IllegalArgumentException {
+        int referenced = getReferencedCount(indices, indexCount);
+        return referenced > 0 ? (float) getTransformCount(indices, indexCount, cacheSize) / referenced : 0.0f;
+    }
+
+    public static float getAcmr(final MeshBuilder builder, int cacheSize) throws IllegalArgumentException {
+        int[] indices = new int[builder.getIndexCount()];
+        builder.getIndices(indices);
+        return getAcmr(indices, indices.length, cacheSize);
+    }
+
+    public static float getAtvr(final MeshBuilder builder, int cacheSize) throws IllegalArgumentException {
+        int[] indices = new int[builder.getIndexCount()];
+        builder.getIndices(indices);
+        return getAtvr(indices, indices.length, cacheSize);
+    }
+
+    /**
+     * Number of vertices a FIFO cache of cacheSize entries misses while drawing the whole triangles of indices.
+     */
+    public static int getTransformCount(final int[] indices, int indexCount, int cacheSize) throws IllegalArgumentException {
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("Invalid vertex cache size: " + cacheSize);
+        }
+
+        if (indexCount < 0 || indexCount > indices.length) {
+            throw new IllegalArgumentException("Invalid index count: " + indexCount);
+        }
+
+        int[] cache = new int[cacheSize];
+        Arrays.fill(cache, -1);
+        int head = 0;
+        int misses = 0;
+
+        for (int i = 0; i < indexCount / 3 * 3; i++) {
+            int vertex = indices[i];
+            boolean hit = false;
+
+            for (int entry = 0; entry < cacheSize; entry++) {
+                if (cache[entry] == vertex) {
+                    hit = true;
+                    break;
+                }
+            }
+
+            if (!hit) {
+                cache[head] = vertex;
+                head = (head + 1) % cacheSize;
+                misses++;
+            }
+        }
+
+        return misses;
+    }
+
+    private static int getReferencedCount(final int[] indices, int indexCount) {
+        int max = -1;
+
+        for (int i = 0; i < indexCount; i++) {
+            max = Math.max(max, indices[i]);
+        }
+
+        boolean[] referenced = new boolean[max + 1];
+        int count = 0;
+
+        for (int i = 0; i < indexCount; i++) {
+            if (!referenced[indices[i]]) {
+                referenced[indices[i]] = true;
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static int hash(final byte[] data, int offset, int length) {
+        // FNV-1a
+        int hash = 0x811C9DC5;
+
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (data[i] & 0xFF)) * 0x01000193;
+        }
+
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(final byte[] data, int a, int b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (data[a + i] != data[b + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static void checkMesh(final ByteBuffer vertices, int stride, int vertexCount, final int[] indices, int indexCount) throws IllegalArgumentException {
+        if (stride < 1 || vertexCount < 0 || (long) stride * vertexCount > vertices.capacity()) {
+            throw new IllegalArgumentException("Invalid vertex data: " + vertexCount + " vertices of " + stride + " bytes in " + vertices.capacity() + " bytes");
+        }
+
+        checkIndices(indices, indexCount, vertexCount);
+    }
+
+    private static void checkIndices(final int[] indices, int indexCount, int vertexCount) throws IllegalArgumentException {
+        if (indexCount < 0 || indexCount > indices.length || indexCount % 3 != 0) {
+            throw new IllegalArgumentException("Invalid triangle list index count: " + indexCount);
+        }
+
+        for (int i = 0; i < indexCount; i++) {
+            if (indices[i] < 0 || indices[i] >= vertexCount) {
+                throw new IllegalArgumentException("Invalid vertex index " + indices[i] + ", vertex count " + vertexCount);
+            }
+        }
+    }
+}
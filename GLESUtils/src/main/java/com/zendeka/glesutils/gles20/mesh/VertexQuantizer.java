@@ -0,0 +1,278 @@
+package com.zendeka.glesutils.gles20.mesh;
+
+import android.opengl.GLES20;
+
+import com.zendeka.glesutils.gles20.VertexFormat;
+import com.zendeka.glesutils.gles20.shader.ShaderProgram;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Packs float vertex streams into compact attribute formats OpenGL ES 2.0 can read directly:
+ *
+ * positions into four normalized shorts with a per-mesh, per-axis scale and bias (8 bytes instead of 12),
+ * normals and tangents into four normalized bytes (4 instead of 12 or 16),
+ * texture coordinates into two normalized unsigned shorts with a per-mesh scale and bias (4 instead of 8),
+ * colors into four normalized unsigned bytes (4 instead of 16).
+ *
+ * Every encoder writes count attributes into a buffer, at a stride so streams can be interleaved, and
+ * returns an Encoding with the arguments for ShaderProgram.setAttributePointer() and the vec4 scale
+ * and bias that turn the attribute back into the original values in the shader, e.g.
+ * "vec4 position = aPosition * uPositionScale + uPositionBias;". Positions decode with w = 1.
+ *
+ * Normalized signed values decode as (2c + 1) / (2^b - 1) in OpenGL ES 2.0, so zero is not exactly
+ * representable; getMaxError() reports the largest error of the encoded data after decoding that way.
+ */
+public final class VertexQuantizer {
+    private static final int SHORT_MAX = 0xFFFF;
+    private static final int BYTE_MAX = 0xFF;
+
+    public static final class Encoding {
+        private final int mSize;
+        private final int mType;
+        private final boolean mNormalized;
+        private final float[] mScale;
+        private final float[] mBias;
+        private final float mMaxError;
+
+        Encoding(int size, int type, final float[] scale, final float[] bias, float maxError) {
+            mSize = size;
+            mType = type;
+            mNormalized = true;
+            mScale = scale;
+            mBias = bias;
+            mMaxError = maxError;
+        }
+
+        public int getSize() {
+            return mSize;
+        }
+
+        public int getType() {
+            return mType;
+        }
+
+        public boolean isNormalized() {
+            return mNormalized;
+        }
+
+        public int getByteSize() {
+            return mSize * VertexFormat.getComponentSize(mType);
+        }
+
+        public float getScale(int component) {
+            return mScale[component];
+        }
+
+        public float getBias(int component) {
+            return mBias[component];
+        }
+
+        /**
+         * Largest absolute difference between an input value and its decoded value.
+         */
+        public float getMaxError() {
+            return mMaxError;
+        }
+
+        public VertexFormat.Attribute createAttribute(final String name, int offset) throws IllegalArgumentException {
+            return new VertexFormat.Attribute(name, mSize, mType, mNormalized, offset);
+        }
+
+        public void setAttributePointer(final ShaderProgram program, final String name, int stride, int offset) throws IllegalStateException {
+            program.setAttributePointer(name, mSize, mType, mNormalized, stride, offset);
+        }
+
+        /**
+         * Sets the vec4 dequantization uniforms of program, which must be in use.
+         */
+        public void setUniforms(final ShaderProgram program, final String scaleName, final String biasName) throws IllegalStateException {
+            program.setUniform(scaleName, mScale[0], mScale[1], mScale[2], mScale[3]);
+            program.setUniform(biasName, mBias[0], mBias[1], mBias[2], mBias[3]);
+        }
+    }
+
+    private VertexQuantizer() {
+    }
+
+    /**
+     * Encodes count positions of components (1 to 3) floats each from src into normalized shorts.
+     */
+    public static Encoding encodePositions(final float[] src, int srcOffset, int components, int count, final ByteBuffer dst, int dstOffset, int dstStride) throws IllegalArgumentException {
+        checkStream(src, srcOffset, components, 3, count, dst, dstOffset, dstStride, 8);
+
+        float[] scale = { 0.0f, 0.0f, 0.0f, 0.0f };
+        float[] bias = { 0.0f, 0.0f, 0.0f, 1.0f };
+
+        for (int c = 0; c < components; c++) {
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+
+            for (int i = 0; i < count; i++) {
+                float value = src[srcOffset + i * components + c];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+
+            if (count > 0) {
+                scale[c] = (max - min) * 0.5f;
+                bias[c] = (max + min) * 0.5f;
+            }
+        }
+
+        float maxError = 0.0f;
+
+        for (int i = 0; i < count; i++) {
+            int offset = dstOffset + i * dstStride;
+
+            for (int c = 0; c < 4; c++) {
+                int code = 0;
+
+                if (c < components) {
+                    float value = src[srcOffset + i * components + c];
+                    float normalized = scale[c] != 0.0f ? (value - bias[c]) / scale[c] : 0.0f;
+                    code = encodeSigned(normalized, SHORT_MAX);
+                    maxError = Math.max(maxError, Math.abs(decodeSigned(code, SHORT_MAX) * scale[c] + bias[c] - value));
+                }
+
+                dst.putShort(offset + c * 2, (short) code);
+            }
+        }
+
+        return new Encoding(4, GLES20.GL_SHORT, scale, bias, maxError);
+    }
+
+    /**
+     * Encodes count unit vectors of components (3, or 4 for tangents with a handedness sign in w)
+     * floats each from src into normalized bytes. The scale is 1 and the bias 0, except that the
+     * scale of w is 0 for 3 components.
+     */
+    public static Encoding encodeNormals(final float[] src, int srcOffset, int components, int count, final ByteBuffer dst, int dstOffset, int dstStride) throws IllegalArgumentException {
+        if (components < 3) {
+            throw new IllegalArgumentException("Normals need 3 or 4 components: " + components);
+        }
+
+        checkStream(src, srcOffset, components, 4, count, dst, dstOffset, dstStride, 4);
+
+        float maxError = 0.0f;
+
+        for (int i = 0; i < count; i++) {
+            int offset = dstOffset + i * dstStride;
+
+            for (int c = 0; c < 4; c++) {
+                int code = 0;
+
+                if (c < components) {
+                    float value = Math.max(-1.0f, Math.min(1.0f, src[srcOffset + i * components + c]));
+                    code = encodeSigned(value, BYTE_MAX);
+                    maxError = Math.max(maxError, Math.abs(decodeSigned(code, BYTE_MAX) - src[srcOffset + i * components + c]));
+                }
+
+                dst.put(offset + c, (byte) code);
+            }
+        }
+
+        // Without a w component the unused byte must still decode to 0
+        return new Encoding(4, GLES20.GL_BYTE, new float[] { 1.0f, 1.0f, 1.0f, components == 4 ? 1.0f : 0.0f }, new float[4], maxError);
+    }
+
+    /**
+     * Encodes count texture coordinates of 2 floats each from src into normalized unsigned shorts.
+     * Coordinates outside [0, 1], e.g. of tiled textures, are covered by the scale and bias.
+     */
+    public static Encoding encodeTexCoords(final float[] src, int srcOffset, int count, final ByteBuffer dst, int dstOffset, int dstStride) throws IllegalArgumentException {
+        checkStream(src, srcOffset, 2, 2, count, dst, dstOffset, dstStride, 4);
+
+        float[] scale = { 0.0f, 0.0f, 1.0f, 1.0f };
+        float[] bias = new float[4];
+
+        for (int c = 0; c < 2; c++) {
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+
+            for (int i = 0; i < count; i++) {
+                float value = src[srcOffset + i * 2 + c];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+
+            if (count > 0) {
+                scale[c] = max - min;
+                bias[c] = min;
+            }
+        }
+
+        float maxError = 0.0f;
+
+        for (int i = 0; i < count; i++) {
+            int offset = dstOffset + i * dstStride;
+
+            for (int c = 0; c < 2; c++) {
+                float value = src[srcOffset + i * 2 + c];
+                float normalized = scale[c] != 0.0f ? (value - bias[c]) / scale[c] : 0.0f;
+                int code = encodeUnsigned(normalized, SHORT_MAX);
+
+                maxError = Math.max(maxError, Math.abs((float) code / SHORT_MAX * scale[c] + bias[c] - value));
+                dst.putShort(offset + c * 2, (short) code);
+            }
+        }
+
+        return new Encoding(2, GLES20.GL_UNSIGNED_SHORT, scale, bias, maxError);
+    }
+
+    /**
+     * Encodes count colors of components (3 or 4) floats in [0, 1] each from src into RGBA8. A
+     * missing alpha is 1. The scale is 1 and the bias 0.
+     */
+    public static Encoding encodeColors(final float[] src, int srcOffset, int components, int count, final ByteBuffer dst, int dstOffset, int dstStride) throws IllegalArgumentException {
+        if (components < 3) {
+            throw new IllegalArgumentException("Colors need 3 or 4 components: " + components);
+        }
+
+        checkStream(src, srcOffset, components, 4, count, dst, dstOffset, dstStride, 4);
+
+        float maxError = 0.0f;
+
+        for (int i = 0; i < count; i++) {
+            int offset = dstOffset + i * dstStride;
+
+            for (int c = 0; c < 4; c++) {
+                float value = c < components ? src[srcOffset + i * components + c] : 1.0f;
+                int code = encodeUnsigned(value, BYTE_MAX);
+
+                maxError = Math.max(maxError, Math.abs((float) code / BYTE_MAX - value));
+                dst.put(offset + c, (byte) code);
+            }
+        }
+
+        return new Encoding(4, GLES20.GL_UNSIGNED_BYTE, new float[] { 1.0f, 1.0f, 1.0f, 1.0f }, new float[4], maxError);
+    }
+
+    private static int encodeSigned(float value, int max) {
+        // Inverse of the OpenGL ES 2.0 conversion (2c + 1) / max
+        int code = Math.round((value * max - 1.0f) * 0.5f);
+        return Math.max(-(max + 1) / 2, Math.min(max / 2, code));
+    }
+
+    private static float decodeSigned(int code, int max) {
+        return (2.0f * code + 1.0f) / max;
+    }
+
+    private static int encodeUnsigned(float value, int max) {
+        return Math.max(0, Math.min(max, Math.round(value * max)));
+    }
+
+    private static void checkStream(final float[] src, int srcOffset, int components, int maxComponents, int count, final ByteBuffer dst, int dstOffset, int dstStride, int size) throws IllegalArgumentException {
+        if (components < 1 || components > maxComponents) {
+            throw new IllegalArgumentException("Invalid component count: " + components);
+        }
+
+        if (count < 0 || srcOffset < 0 || srcOffset + (long) count * components > src.length) {
+            throw new IllegalArgumentException("Invalid source range: offset " + srcOffset + ", count " + count + ", length " + src.length);
+        }
+
+        if (dstStride < size || dstOffset < 0 || (count > 0 && dstOffset + (long) (count - 1) * dstStride + size > dst.limit())) {
+            throw new IllegalArgumentException("Invalid destination range: offset " + dstOffset + ", stride " + dstStride + ", count " + count + ", limit " + dst.limit());
+        }
+    }
+}
@@ -0,0 +1,482 @@
+package com.zendeka.glesutils.gles20.shader;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import com.zendeka.glesutils.gles20.GLBackend;
+import com.zendeka.glesutils.gles20.GLContext;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Disk cache of linked program binaries, used by ShaderProgram.build(ProgramBinaryCache). Binaries are
+ * keyed by a hash of the shader sources and the vendor, renderer and version strings of the driver, so
+ * a driver update misses the cache instead of loading binaries the new driver may not accept.
+ *
+ * Each program is stored in its own file with a versioned header and a checksum of the binary. Files
+ * are written under a temporary name and renamed into place, and loaded by memory-mapping them. A file
+ * that is damaged or rejected by the driver is deleted and the program is built from source.
+ *
+ * The files of a driver go into a subdirectory named after a hash of the driver strings; the first
+ * load or store deletes the subdirectories of every other driver. Binaries of shaders that changed
+ * are never looked up again, so call prune() once the programs of a run are built to delete the files
+ * that were neither loaded nor stored since the cache was opened.
+ *
+ * Program binaries need an OpenGL ES 3.0 context; Android's Java bindings do not expose
+ * GL_OES_get_program_binary on OpenGL ES 2.0. Without support the cache does nothing.
+ */
+public final class ProgramBinaryCache {
+    private static final String TAG = "ProgramBinaryCache";
+    private static final int MAGIC = 0x474C5042;
+    private static final int VERSION = 1;
+    private static final int DIGEST_LENGTH = 20;
+    private static final int HEADER_SIZE = 4 + 4 + DIGEST_LENGTH + 4 + 4 + 8;
+    private static final String SUFFIX = ".bin";
+    private static final String TEMPORARY_SUFFIX = SUFFIX + ".tmp";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final int UNKNOWN = -1;
+
+    private final GLContext mContext = GLContext.getCurrent();
+    private final GLBackend mGL = mContext.getBackend();
+    private final File mDirectory;
+    private final MessageDigest mDigest;
+    private final CRC32 mChecksum = new CRC32();
+    private final byte[] mChecksumBuffer = new byte[4096];
+    private final int[] mParams = new int[1];
+    private final IntBuffer mBinaryLength = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder()).asIntBuffer();
+    private final IntBuffer mBinaryFormat = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder()).asIntBuffer();
+
+    private int mSupported = UNKNOWN;
+    private byte[] mDriver;
+    private File mDriverDirectory;
+    private final Set<String> mUsedFiles = new HashSet<String>();
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mRejectCount;
+    private int mStoreCount;
+
+    public ProgramBinaryCache(final File directory) throws IllegalArgumentException, IllegalStateException {
+        if (directory == null) {
+            throw new IllegalArgumentException("Program binary cache directory must not be null");
+        }
+
+        mDirectory = directory;
+
+        try {
+            mDigest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * Whether the current context can save and load program binaries.
+     */
+    public boolean isSupported() {
+        if (mSupported == UNKNOWN) {
+            mSupported = querySupported() ? 1 : 0;
+        }
+
+        return mSupported == 1;
+    }
+
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Cache files that existed but could not be used, e.g. after they were damaged or the driver changed.
+     */
+    public int getRejectCount() {
+        return mRejectCount;
+    }
+
+    public int getStoreCount() {
+        return mStoreCount;
+    }
+
+    public void resetStatistics() {
+        mHitCount = 0;
+        mMissCount = 0;
+        mRejectCount = 0;
+        mStoreCount = 0;
+    }
+
+    /**
+     * Deletes every cached binary, of every driver.
+     */
+    public void clear() {
+        deleteDriverDirectories(null);
+        mUsedFiles.clear();
+    }
+
+    /**
+     * Deletes the binaries of the current driver that were neither loaded nor stored since the cache
+     * was opened, e.g. those of shaders that have changed. Call on the GL thread once every program
+     * in use has been built. Returns the number of files deleted.
+     */
+    public int prune() {
+        File[] files = getDriverDirectory().listFiles();
+        int count = 0;
+
+        if (files == null) {
+            return 0;
+        }
+
+        for (final File file : files) {
+            if (file.getName().endsWith(SUFFIX) && !mUsedFiles.contains(file.getName())) {
+                delete(file);
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Hash of the driver and the type and source of every shader, in order.
+     */
+    byte[] getKey(final List<Shader> shaders) {
+        MessageDigest digest = mDigest;
+        digest.reset();
+        digest.update(getDriver());
+
+        for (final Shader shader : shaders) {
+            byte[] source = shader.getSource().getBytes(UTF_8);
+
+            update(digest, shader.getType().ordinal());
+            update(digest, source.length);
+            digest.update(source);
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * Loads the binary stored for key into program. Returns whether the program is linked.
+     */
+    boolean load(int program, final byte[] key) {
+        File file = getFile(key);
+
+        if (!file.isFile()) {
+            mMissCount++;
+            return false;
+        }
+
+        ByteBuffer binary;
+
+        try {
+            binary = map(file);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read program binary " + file + ": " + e.getMessage());
+            reject(file);
+            return false;
+        }
+
+        int format = checkHeader(binary, key);
+
+        if (format == UNKNOWN) {
+            Log.w(TAG, "Discarding invalid program binary " + file);
+            reject(file);
+            return false;
+        }
+
+        binary.position(HEADER_SIZE);
+        int length = binary.remaining();
+        mGL.glProgramBinary(program, format, binary.slice(), length);
+        mGL.glGetProgramiv(program, GLES20.GL_LINK_STATUS, mParams, 0);
+
+        if (mParams[0] == 0) {
+            Log.w(TAG, "Driver rejected program binary " + file);
+            reject(file);
+            return false;
+        }
+
+        mUsedFiles.add(file.getName());
+        mHitCount++;
+        return true;
+    }
+
+    /**
+     * Stores the binary of the linked program under key. Failures are logged and otherwise ignored, the
+     * program is then simply built from source again next time.
+     */
+    void store(int program, final byte[] key) {
+        mGL.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, mParams, 0);
+        int length = mParams[0];
+
+        if (length <= 0) {
+            return;
+        }
+
+        ByteBuffer data = ByteBuffer.allocateDirect(HEADER_SIZE + length);
+        data.position(HEADER_SIZE);
+        ByteBuffer binary = data.slice();
+
+        mBinaryLength.put(0, 0);
+        mBinaryFormat.put(0, 0);
+        mGL.glGetProgramBinary(program, length, mBinaryLength, mBinaryFormat, binary);
+
+        length = mBinaryLength.get(0);
+
+        if (length <= 0 || length > binary.capacity()) {
+            return;
+        }
+
+        binary.limit(length);
+        long checksum = checksum(binary);
+
+        data.clear();
+        data.putInt(MAGIC);
+        data.putInt(VERSION);
+        data.put(key);
+        data.putInt(mBinaryFormat.get(0));
+        data.putInt(length);
+        data.putLong(checksum);
+        data.position(0);
+        data.limit(HEADER_SIZE + length);
+
+        File file = getFile(key);
+        File temporary = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        try {
+            write(temporary, data);
+
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Failed to rename " + temporary + " to " + file);
+            }
+
+            mUsedFiles.add(file.getName());
+            mStoreCount++;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write program binary " + file + ": " + e.getMessage());
+            delete(temporary);
+        }
+    }
+
+    private boolean querySupported() {
+        String version = mGL.glGetString(GLES20.GL_VERSION);
+
+        // "OpenGL ES N.M ..."
+        if (version == null || !version.startsWith("OpenGL ES ") || version.length() < 11) {
+            return false;
+        }
+
+        char major = version.charAt(10);
+
+        if (major < '3' || major > '9') {
+            return false;
+        }
+
+        mGL.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, mParams, 0);
+        return mParams[0] > 0;
+    }
+
+    private byte[] getDriver() {
+        if (mDriver == null) {
+            String driver = mGL.glGetString(GLES20.GL_VENDOR) + "\n" + mGL.glGetString(GLES20.GL_RENDERER) + "\n" + mGL.glGetString(GLES20.GL_VERSION) + "\n" + VERSION;
+            mDriver = driver.getBytes(UTF_8);
+        }
+
+        return mDriver;
+    }
+
+    /**
+     * Directory of the binaries of the current driver. The directories of other drivers are deleted
+     * the first time it is needed.
+     */
+    private File getDriverDirectory() {
+        if (mDriverDirectory == null) {
+            MessageDigest digest = mDigest;
+            digest.reset();
+            digest.update(getDriver());
+
+            mDriverDirectory = new File(mDirectory, toHex(digest.digest()));
+            deleteDriverDirectories(mDriverDirectory.getName());
+        }
+
+        return mDriverDirectory;
+    }
+
+    /**
+     * Deletes the driver directories other than keep, which may be null, and binaries of the flat
+     * layout of earlier versions. Other files in the cache directory are left alone.
+     */
+    private void deleteDriverDirectories(final String keep) {
+        File[] files = mDirectory.listFiles();
+
+        if (files == null) {
+            return;
+        }
+
+        for (final File file : files) {
+            String name = file.getName();
+
+            if (file.isDirectory() && name.length() == DIGEST_LENGTH * 2 && isHex(name) && !name.equals(keep)) {
+                File[] binaries = file.listFiles();
+
+                if (binaries != null) {
+                    for (final File binary : binaries) {
+                        if (binary.getName().endsWith(SUFFIX) || binary.getName().endsWith(TEMPORARY_SUFFIX)) {
+                            delete(binary);
+                        }
+                    }
+                }
+
+                delete(file);
+            } else if (file.isFile() && (name.endsWith(SUFFIX) || name.endsWith(TEMPORARY_SUFFIX))) {
+                delete(file);
+            }
+        }
+    }
+
+    private File getFile(final byte[] key) {
+        return new File(getDriverDirectory(), toHex(key) + SUFFIX);
+    }
+
+    private static String toHex(final byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+
+        return new String(hex);
+    }
+
+    private static boolean isHex(final String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the binary format stored in the header, or UNKNOWN if the file cannot be used.
+     */
+    private int checkHeader(final ByteBuffer data, final byte[] key) {
+        if (data.limit() < HEADER_SIZE || data.getInt() != MAGIC || data.getInt() != VERSION) {
+            return UNKNOWN;
+        }
+
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            if (data.get() != key[i]) {
+                return UNKNOWN;
+            }
+        }
+
+        int format = data.getInt();
+        int length = data.getInt();
+        long checksum = data.getLong();
+
+        if (length != data.limit() - HEADER_SIZE) {
+            return UNKNOWN;
+        }
+
+        ByteBuffer binary = data.slice();
+
+        if (checksum(binary) != checksum) {
+            return UNKNOWN;
+        }
+
+        return format;
+    }
+
+    private long checksum(final ByteBuffer binary) {
+        ByteBuffer bytes = binary.duplicate();
+        CRC32 crc = mChecksum;
+        byte[] buffer = mChecksumBuffer;
+        crc.reset();
+
+        while (bytes.hasRemaining()) {
+            int count = Math.min(buffer.length, bytes.remaining());
+            bytes.get(buffer, 0, count);
+            crc.update(buffer, 0, count);
+        }
+
+        return crc.getValue();
+    }
+
+    private void reject(final File file) {
+        delete(file);
+        mRejectCount++;
+        mMissCount++;
+    }
+
+    private static MappedByteBuffer map(final File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = input.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            input.close();
+        }
+    }
+
+    private void write(final File file, final ByteBuffer data) throws IOException {
+        File directory = file.getParentFile();
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create " + directory);
+        }
+
+        FileOutputStream output = new FileOutputStream(file);
+
+        try {
+            FileChannel channel = output.getChannel();
+
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    private static void delete(final File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete " + file);
+        }
+    }
+
+    private static void update(final MessageDigest digest, int value) {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+    }
+}
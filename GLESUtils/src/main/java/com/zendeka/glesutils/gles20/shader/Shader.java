@@ -4,7 +4,10 @@ import android.opengl.GLES20;
 import android.util.Log;
 import android.util.SparseIntArray;
 
-import java.nio.IntBuffer;
+import com.zendeka.glesutils.gles20.DebugGLBackend;
+import com.zendeka.glesutils.gles20.GLBackend;
+import com.zendeka.glesutils.gles20.GLContext;
+import com.zendeka.glesutils.gles20.RenderMetrics;
 
 /**
  * Created by Lawrence on 8/5/13.
@@ -15,12 +18,15 @@ public final class Shader {
         VERTEX
     }
 
+    private final GLContext mContext = GLContext.getCurrent();
+    private final GLBackend mGL = mContext.getBackend();
     private Type mType;
     private int mName;
     private String mSource;
     private String mCompileLog;
     private SparseIntArray mAttachedPrograms = new SparseIntArray();
     private String mTag;
+    private ShaderRegistry mRegistry;
 
     public Shader(final Type type, final String source, final String tag) {
         mType = type;
@@ -36,6 +42,10 @@ public final class Shader {
         return mName;
     }
 
+    public String getSource() {
+        return mSource;
+    }
+
     public boolean isCompiled() {
         return mName > 0;
     }
@@ -54,6 +64,18 @@ public final class Shader {
 
     public void setTag(final String tag) {
         mTag = tag;
+
+        if (mName != 0) {
+            label();
+        }
+    }
+
+    ShaderRegistry getRegistry() {
+        return mRegistry;
+    }
+
+    void setRegistry(final ShaderRegistry registry) {
+        mRegistry = registry;
     }
 
     public void compile() throws IllegalStateException {
@@ -73,23 +95,26 @@ public final class Shader {
         }
 
         String shaderType = getShaderTypeString();
-        mName = GLES20.glCreateShader(type);
+        mName = mGL.glCreateShader(type);
 
         if (mName < 1) {
             throw new IllegalStateException("Failed to create OpenGL ES " + shaderType + " shader");
         }
 
-        GLES20.glShaderSource(mName, mSource);
-        GLES20.glCompileShader(mName);
+        label();
+
+        mGL.glShaderSource(mName, mSource);
+        mGL.glCompileShader(mName);
+        mContext.getMetrics().increment(RenderMetrics.Counter.SHADER_COMPILES);
 
-        IntBuffer params = IntBuffer.allocate(1);
+        int[] params = new int[1];
 
-        GLES20.glGetShaderiv(mName, GLES20.GL_COMPILE_STATUS, params);
+        mGL.glGetShaderiv(mName, GLES20.GL_COMPILE_STATUS, params, 0);
 
-        boolean compiled = params.get(0) != 0;
+        boolean compiled = params[0] != 0;
 
         if (!compiled) {
-            String infoLog = GLES20.glGetShaderInfoLog(mName);
+            String infoLog = mGL.glGetShaderInfoLog(mName);
             mCompileLog = shaderType + " shader compile log: " + infoLog;
             Log.e(mTag, mCompileLog);
 
@@ -119,7 +144,7 @@ public final class Shader {
             throw new IllegalStateException(getShaderTypeString() + " shader is not compiled");
         }
 
-        GLES20.glDeleteShader(mName);
+        mGL.glDeleteShader(mName);
         mName = 0;
         mAttachedPrograms.clear();
     }
@@ -137,7 +162,7 @@ public final class Shader {
             throw new IllegalArgumentException("Already attached to program " + program);
         }
 
-        GLES20.glAttachShader(program, mName);
+        mGL.glAttachShader(program, mName);
         mAttachedPrograms.put(program, 1);
     }
 
@@ -154,11 +179,17 @@ public final class Shader {
             throw new IllegalArgumentException(getShaderTypeString() + " shader not attached to program " + program);
         }
 
-        GLES20.glDetachShader(program, mName);
+        mGL.glDetachShader(program, mName);
         mAttachedPrograms.delete(program);
     }
 
     public boolean isAttachedToProgram(final int program) {
         return mAttachedPrograms.get(program) != 0;
     }
+
+    private void label() {
+        if (mTag != null) {
+            mGL.glObjectLabel(DebugGLBackend.GL_SHADER, mName, -1, mTag);
+        }
+    }
 }
@@ -0,0 +1,274 @@
+package com.zendeka.glesutils.gles20.shader;
+
+import com.zendeka.glesutils.gles20.Clock;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds queued shader programs a few steps at a time, so that warming up shaders can be spread over
+ * frames instead of stalling the first draw of each program. Call update() once per frame on the GL
+ * thread; it runs build steps until the per-frame budget is used up, but always at least one.
+ *
+ * Each program goes through creation (or loading from the ProgramBinaryCache), compiling each of its
+ * shaders, attaching them, linking, checking the link status and resolving its uniform and attribute
+ * locations. Every phase, and every shader compile, is one step. A program that has started linking
+ * goes to the back of the queue so the driver can link it while other programs are worked on.
+ *
+ * The listener of a program is called from update() once it is built or has failed to build. A
+ * program may still be built directly, e.g. when it is needed before its turn; build() then finishes it
+ * from where the scheduler left off. Cancel a queued program before deleting it.
+ */
+public final class ShaderBuildScheduler {
+    public interface Listener {
+        public void onProgramBuilt(ShaderProgram program);
+        public void onProgramFailed(ShaderProgram program, RuntimeException e);
+    }
+
+    private enum Phase {
+        CREATE,
+        COMPILE,
+        ATTACH,
+        LINK,
+        CHECK_LINK_STATUS,
+        LOAD_LOCATIONS
+    }
+
+    private static final class Task {
+        final ShaderProgram mProgram;
+        final Listener mListener;
+        Phase mPhase = Phase.CREATE;
+        int mShader;
+
+        Task(final ShaderProgram program, final Listener listener) {
+            mProgram = program;
+            mListener = listener;
+        }
+    }
+
+    private final Clock mClock;
+    private final ArrayDeque<Task> mTasks = new ArrayDeque<Task>();
+    private long mBudget;
+    private ProgramBinaryCache mCache;
+
+    private long mStepCount;
+    private int mBuiltCount;
+    private int mFailedCount;
+
+    public ShaderBuildScheduler(long budgetMillis) throws IllegalArgumentException {
+        this(budgetMillis, Clock.SYSTEM);
+    }
+
+    public ShaderBuildScheduler(long budgetMillis, final Clock clock) throws IllegalArgumentException {
+        if (clock == null) {
+            throw new IllegalArgumentException("Clock must not be null");
+        }
+
+        mClock = clock;
+        setBudget(budgetMillis);
+    }
+
+    public long getBudget() {
+        return TimeUnit.NANOSECONDS.toMillis(mBudget);
+    }
+
+    public void setBudget(long budgetMillis) throws IllegalArgumentException {
+        if (budgetMillis < 0) {
+            throw new IllegalArgumentException("Invalid build budget: " + budgetMillis);
+        }
+
+        mBudget = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    public ProgramBinaryCache getProgramBinaryCache() {
+        return mCache;
+    }
+
+    /**
+     * Cache programs are loaded from and stored in. Takes effect for programs that have not started yet.
+     */
+    public void setProgramBinaryCache(final ProgramBinaryCache cache) {
+        mCache = cache;
+    }
+
+    /**
+     * Queues program for building. listener may be null. Returns false if program is queued already,
+     * in which case it keeps its first listener.
+     */
+    public boolean submit(final ShaderProgram program, final Listener listener) throws IllegalArgumentException {
+        if (program == null) {
+            throw new IllegalArgumentException("Shader program must not be null");
+        }
+
+        if (findTask(program) != null) {
+            return false;
+        }
+
+        mTasks.addLast(new Task(program, listener));
+        return true;
+    }
+
+    /**
+     * Removes program from the queue without calling its listener. A program the scheduler has
+     * started on is left partly built; delete it or finish it with build(). Returns whether it was queued.
+     */
+    public boolean cancel(final ShaderProgram program) {
+        Task task = findTask(program);
+
+        if (task == null) {
+            return false;
+        }
+
+        mTasks.remove(task);
+        return true;
+    }
+
+    public int getPendingCount() {
+        return mTasks.size();
+    }
+
+    public boolean isIdle() {
+        return mTasks.isEmpty();
+    }
+
+    public long getStepCount() {
+        return mStepCount;
+    }
+
+    public int getBuiltCount() {
+        return mBuiltCount;
+    }
+
+    public int getFailedCount() {
+        return mFailedCount;
+    }
+
+    public void resetStatistics() {
+        mStepCount = 0;
+        mBuiltCount = 0;
+        mFailedCount = 0;
+    }
+
+    /**
+     * Runs build steps until the budget of this frame is used up or the queue is empty. Returns the
+     * number of steps run.
+     */
+    public int update() {
+        if (mTasks.isEmpty()) {
+            return 0;
+        }
+
+        long deadline = mClock.nanoTime() + mBudget;
+        int steps = 0;
+
+        do {
+            step();
+            steps++;
+        } while (!mTasks.isEmpty() && mClock.nanoTime() - deadline < 0);
+
+        return steps;
+    }
+
+    /**
+     * Builds everything still queued, regardless of the budget.
+     */
+    public void finish() {
+        while (!mTasks.isEmpty()) {
+            step();
+        }
+    }
+
+    private void step() {
+        Task task = mTasks.peekFirst();
+        ShaderProgram program = task.mProgram;
+        mStepCount++;
+
+        // Built directly in the meantime
+        if (program.isBuilt()) {
+            complete(task);
+            return;
+        }
+
+        if (task.mPhase != Phase.CREATE && !program.isBuilding()) {
+            fail(task, new IllegalStateException("Shader program was deleted while being built"));
+            return;
+        }
+
+        try {
+            switch (task.mPhase) {
+                case CREATE:
+                    if (program.isBuilding()) {
+                        // Left partly built by a cancelled task, finish it in one go
+                        program.build(mCache);
+                        complete(task);
+                    } else if (program.create(mCache)) {
+                        complete(task);
+                    } else {
+                        task.mPhase = Phase.COMPILE;
+                    }
+                    break;
+                case COMPILE:
+                    if (task.mShader < program.getShaderCount()) {
+                        program.compileShader(task.mShader++);
+                    }
+
+                    if (task.mShader >= program.getShaderCount()) {
+                        task.mPhase = Phase.ATTACH;
+                    }
+                    break;
+                case ATTACH:
+                    program.attachShaders();
+                    task.mPhase = Phase.LINK;
+                    break;
+                case LINK:
+                    program.link();
+                    task.mPhase = Phase.CHECK_LINK_STATUS;
+
+                    // Give the driver time to link before the status query waits for it
+                    mTasks.removeFirst();
+                    mTasks.addLast(task);
+                    break;
+                case CHECK_LINK_STATUS:
+                    program.checkLinkStatus();
+                    task.mPhase = Phase.LOAD_LOCATIONS;
+                    break;
+                case LOAD_LOCATIONS:
+                    program.loadLocations();
+                    complete(task);
+                    break;
+            }
+        } catch (IllegalArgumentException e) {
+            fail(task, e);
+        } catch (IllegalStateException e) {
+            fail(task, e);
+        }
+    }
+
+    private Task findTask(final ShaderProgram program) {
+        for (final Task task : mTasks) {
+            if (task.mProgram == program) {
+                return task;
+            }
+        }
+
+        return null;
+    }
+
+    private void complete(final Task task) {
+        mTasks.remove(task);
+        mBuiltCount++;
+
+        if (task.mListener != null) {
+            task.mListener.onProgramBuilt(task.mProgram);
+        }
+    }
+
+    private void fail(final Task task, final RuntimeException e) {
+        mTasks.remove(task);
+        mFailedCount++;
+
+        if (task.mListener != null) {
+            task.mListener.onProgramFailed(task.mProgram, e);
+        }
+    }
+}
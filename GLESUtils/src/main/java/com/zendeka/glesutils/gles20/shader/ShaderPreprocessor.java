@@ -0,0 +1,370 @@
+package com.zendeka.glesutils.gles20.shader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Turns named shader sources into the source handed to the driver: #include directives are resolved
+ * through a SourceProvider, a set of #defines is injected after the #version directive, and comments,
+ * blank lines and redundant whitespace are stripped.
+ *
+ * Every permutation of a source and a define set has a canonical key, the source name followed by the
+ * defines sorted by name, and processed sources are cached by that key. Feature variants of an uber
+ * shader are therefore generated once, on first use, and yield identical sources for identical define
+ * sets, which lets ShaderRegistry and ProgramBinaryCache share their work.
+ *
+ * #include takes a name in double quotes or angle brackets, read verbatim even if it contains comment
+ * delimiters, and is resolved wherever it appears; the
+ * preprocessor does not evaluate conditionals, that is left to the driver. Including a source from
+ * itself, directly or indirectly, is an error.
+ *
+ * The preprocessor makes no GL calls.
+ */
+public final class ShaderPreprocessor {
+    public interface SourceProvider {
+        /**
+         * Returns the source with the given name, or null if there is none.
+         */
+        public String getSource(String name);
+    }
+
+    private final SourceProvider mProvider;
+    private final Map<String, String> mSources = new HashMap<String, String>();
+    private final List<String> mIncludeStack = new ArrayList<String>();
+    private final StringBuilder mKey = new StringBuilder();
+    private final StringBuilder mLine = new StringBuilder();
+    private String mVersion;
+
+    private int mHitCount;
+    private int mMissCount;
+
+    public ShaderPreprocessor(final SourceProvider provider) throws IllegalArgumentException {
+        if (provider == null) {
+            throw new IllegalArgumentException("Shader source provider must not be null");
+        }
+
+        mProvider = provider;
+    }
+
+    /**
+     * Canonical key of the permutation of name with defines. defines may be null.
+     */
+    public String getKey(final String name, final Map<String, String> defines) throws IllegalArgumentException {
+        if (name == null) {
+            throw new IllegalArgumentException("Shader source name must not be null");
+        }
+
+        // Names and values are length-prefixed, so no choice of characters makes two permutations collide
+        StringBuilder key = mKey;
+        key.setLength(0);
+        appendKeyPart(key, name);
+
+        if (defines != null && !defines.isEmpty()) {
+            for (final Map.Entry<String, String> define : sort(defines).entrySet()) {
+                String value = define.getValue();
+                key.append('|');
+                appendKeyPart(key, define.getKey());
+                key.append('=');
+                appendKeyPart(key, value != null ? value : "");
+            }
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Returns the processed source of name with defines, generating it on first use.
+     */
+    public String process(final String name, final Map<String, String> defines) throws IllegalArgumentException {
+        String key = getKey(name, defines);
+        String source = mSources.get(key);
+
+        if (source != null) {
+            mHitCount++;
+            return source;
+        }
+
+        StringBuilder body = new StringBuilder();
+        // A failed call may have left a partial line behind
+        mVersion = null;
+        mIncludeStack.clear();
+        mLine.setLength(0);
+        append(name, body);
+
+        StringBuilder output = new StringBuilder(body.length() + 64);
+
+        if (mVersion != null) {
+            output.append(mVersion).append('\n');
+        }
+
+        if (defines != null) {
+            for (final Map.Entry<String, String> define : sort(defines).entrySet()) {
+                String defineName = define.getKey();
+                String value = define.getValue();
+
+                if (!isIdentifier(defineName)) {
+                    throw new IllegalArgumentException("Invalid #define name: " + defineName);
+                }
+
+                output.append("#define ").append(defineName);
+
+                if (value != null && value.length() > 0) {
+                    output.append(' ').append(value);
+                }
+
+                output.append('\n');
+            }
+        }
+
+        output.append(body);
+        source = output.toString();
+
+        mSources.put(key, source);
+        mMissCount++;
+
+        return source;
+    }
+
+    public Shader createShader(final Shader.Type type, final String name, final Map<String, String> defines, final String tag) throws IllegalArgumentException {
+        return new Shader(type, process(name, defines), tag);
+    }
+
+    /**
+     * Returns the shader registry shares for the processed source, see ShaderRegistry.acquire().
+     */
+    public Shader acquireShader(final ShaderRegistry registry, final Shader.Type type, final String name, final Map<String, String> defines) throws IllegalArgumentException {
+        return registry.acquire(type, process(name, defines));
+    }
+
+    public int getCacheSize() {
+        return mSources.size();
+    }
+
+    public void clearCache() {
+        mSources.clear();
+    }
+
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    public void resetStatistics() {
+        mHitCount = 0;
+        mMissCount = 0;
+    }
+
+    private void append(final String name, final StringBuilder output) throws IllegalArgumentException {
+        if (mIncludeStack.contains(name)) {
+            throw new IllegalArgumentException("Recursive #include of \"" + name + "\" in " + mIncludeStack);
+        }
+
+        String source = mProvider.getSource(name);
+
+        if (source == null) {
+            throw new IllegalArgumentException(mIncludeStack.isEmpty() ? "Shader source \"" + name + "\" not found" : "#include \"" + name + "\" not found in " + mIncludeStack.get(mIncludeStack.size() - 1));
+        }
+
+        mIncludeStack.add(name);
+
+        StringBuilder line = mLine;
+        int length = source.length();
+        int i = 0;
+
+        while (i <= length) {
+            char c = i < length ? source.charAt(i) : '\n';
+
+            if (c == '\n') {
+                emitLine(line, output);
+                line.setLength(0);
+                i++;
+            } else if ((c == '"' || c == '<') && isIncludeDirective(line)) {
+                // The name is not scanned for comments; an unterminated one is reported by emitLine()
+                char close = c == '"' ? '"' : '>';
+                line.append(c);
+                i++;
+
+                while (i < length && source.charAt(i) != '\n') {
+                    line.append(source.charAt(i));
+
+                    if (source.charAt(i++) == close) {
+                        break;
+                    }
+                }
+            } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+                i += 2;
+
+                while (i < length && source.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+                int end = source.indexOf("*/", i + 2);
+
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated comment in \"" + name + "\"");
+                }
+
+                // A comment spanning lines still ends the line it starts on, which matters for directives
+                if (source.lastIndexOf('\n', end) > i) {
+                    emitLine(line, output);
+                    line.setLength(0);
+                } else {
+                    appendSpace(line);
+                }
+
+                i = end + 2;
+            } else if (c == ' ' || c == '\t' || c == '\r' || c == '\f') {
+                appendSpace(line);
+                i++;
+            } else {
+                line.append(c);
+                i++;
+            }
+        }
+
+        mIncludeStack.remove(mIncludeStack.size() - 1);
+    }
+
+    private void emitLine(final StringBuilder line, final StringBuilder output) throws IllegalArgumentException {
+        int length = line.length();
+
+        if (length > 0 && line.charAt(length - 1) == ' ') {
+            line.setLength(--length);
+        }
+
+        if (length == 0) {
+            return;
+        }
+
+        if (line.charAt(0) != '#') {
+            output.append(line).append('\n');
+            return;
+        }
+
+        // A lone # is the null directive, which has no effect
+        if (length == 1) {
+            return;
+        }
+
+        int start = line.charAt(1) == ' ' ? 2 : 1;
+
+        if (startsWith(line, start, "include")) {
+            // The include stack is modified by the recursion, so copy the line first
+            String include = parseIncludeName(line.toString(), start + "include".length());
+            line.setLength(0);
+            append(include, output);
+            return;
+        }
+
+        if (startsWith(line, start, "version")) {
+            if (mVersion != null || mIncludeStack.size() > 1 || output.length() > 0) {
+                throw new IllegalArgumentException("#version must be the first directive of \"" + mIncludeStack.get(0) + "\"");
+            }
+
+            mVersion = line.toString();
+            return;
+        }
+
+        output.append(line).append('\n');
+    }
+
+    private String parseIncludeName(final String line, int start) throws IllegalArgumentException {
+        String rest = line.substring(start).trim();
+        int length = rest.length();
+
+        if (length >= 2) {
+            char open = rest.charAt(0);
+            char close = rest.charAt(length - 1);
+
+            if ((open == '"' && close == '"') || (open == '<' && close == '>')) {
+                return rest.substring(1, length - 1);
+            }
+        }
+
+        throw new IllegalArgumentException("Malformed directive in \"" + mIncludeStack.get(mIncludeStack.size() - 1) + "\": " + line);
+    }
+
+    /**
+     * Copies defines into a map sorted by the natural order of the names, whatever the order of defines.
+     */
+    private static SortedMap<String, String> sort(final Map<String, String> defines) throws IllegalArgumentException {
+        SortedMap<String, String> sorted = new TreeMap<String, String>();
+
+        for (final Map.Entry<String, String> define : defines.entrySet()) {
+            if (define.getKey() == null) {
+                throw new IllegalArgumentException("Invalid define name: null");
+            }
+
+            sorted.put(define.getKey(), define.getValue());
+        }
+
+        return sorted;
+    }
+
+    private static void appendKeyPart(final StringBuilder key, final String part) {
+        key.append(part.length()).append(':').append(part);
+    }
+
+    private static void appendSpace(final StringBuilder line) {
+        int length = line.length();
+
+        if (length > 0 && line.charAt(length - 1) != ' ') {
+            line.append(' ');
+        }
+    }
+
+    private static boolean startsWith(final StringBuilder line, int offset, final String directive) {
+        int end = offset + directive.length();
+
+        if (line.length() < end) {
+            return false;
+        }
+
+        for (int i = 0; i < directive.length(); i++) {
+            if (line.charAt(offset + i) != directive.charAt(i)) {
+                return false;
+            }
+        }
+
+        return end == line.length() || !Character.isJavaIdentifierPart(line.charAt(end));
+    }
+
+    /**
+     * Whether line holds an #include directive up to the start of its name.
+     */
+    private static boolean isIncludeDirective(final StringBuilder line) {
+        int length = line.length();
+
+        if (length < 2 || line.charAt(0) != '#') {
+            return false;
+        }
+
+        int start = line.charAt(1) == ' ' ? 2 : 1;
+        int end = start + "include".length();
+
+        return startsWith(line, start, "include") && (length == end || (length == end + 1 && line.charAt(end) == ' '));
+    }
+
+    private static boolean isIdentifier(final String name) {
+        if (name == null || name.length() == 0 || !(Character.isLetter(name.charAt(0)) || name.charAt(0) == '_')) {
+            return false;
+        }
+
+        for (int i = 1; i < name.length(); i++) {
+            char c = name.charAt(i);
+
+            if (!(Character.isLetterOrDigit(c) || c == '_')) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
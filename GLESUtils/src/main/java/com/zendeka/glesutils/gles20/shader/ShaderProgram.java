@@ -1,12 +1,21 @@
 package com.zendeka.glesutils.gles20.shader;
 
 import android.opengl.GLES20;
+import android.opengl.GLES30;
 import android.util.Log;
 
+import com.zendeka.glesutils.gles20.DebugGLBackend;
+import com.zendeka.glesutils.gles20.GLBackend;
+import com.zendeka.glesutils.gles20.GLContext;
+import com.zendeka.glesutils.gles20.RenderMetrics;
+import com.zendeka.glesutils.gles20.VertexFormat;
+
 import java.nio.Buffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -16,7 +25,10 @@ import java.util.Map;
 public final class ShaderProgram {
     private interface Location {
         public String getType();
-        public int getLocation(int program, String name);
+        public int getActiveCountParameter();
+        public int getActiveMaxLengthParameter();
+        public void getActive(GLBackend gl, int program, int index, int bufsize, int[] length, int[] size, int[] type, byte[] name);
+        public int getLocation(GLBackend gl, int program, String name);
     }
 
     private static class UniformLocation implements Location {
@@ -26,8 +38,23 @@ public final class ShaderProgram {
         }
 
         @Override
-        public int getLocation(int program, String name) throws IllegalArgumentException {
-            return GLES20.glGetUniformLocation(program, name);
+        public int getActiveCountParameter() {
+            return GLES20.GL_ACTIVE_UNIFORMS;
+        }
+
+        @Override
+        public int getActiveMaxLengthParameter() {
+            return GLES20.GL_ACTIVE_UNIFORM_MAX_LENGTH;
+        }
+
+        @Override
+        public void getActive(GLBackend gl, int program, int index, int bufsize, int[] length, int[] size, int[] type, byte[] name) {
+            gl.glGetActiveUniform(program, index, bufsize, length, 0, size, 0, type, 0, name, 0);
+        }
+
+        @Override
+        public int getLocation(GLBackend gl, int program, String name) throws IllegalArgumentException {
+            return gl.glGetUniformLocation(program, name);
         }
     }
 
@@ -38,27 +65,276 @@ public final class ShaderProgram {
         }
 
         @Override
-        public int getLocation(int program, String name) throws IllegalArgumentException {
-            return GLES20.glGetAttribLocation(program, name);
+        public int getActiveCountParameter() {
+            return GLES20.GL_ACTIVE_ATTRIBUTES;
+        }
+
+        @Override
+        public int getActiveMaxLengthParameter() {
+            return GLES20.GL_ACTIVE_ATTRIBUTE_MAX_LENGTH;
+        }
+
+        @Override
+        public void getActive(GLBackend gl, int program, int index, int bufsize, int[] length, int[] size, int[] type, byte[] name) {
+            gl.glGetActiveAttrib(program, index, bufsize, length, 0, size, 0, type, 0, name, 0);
+        }
+
+        @Override
+        public int getLocation(GLBackend gl, int program, String name) throws IllegalArgumentException {
+            return gl.glGetAttribLocation(program, name);
         }
     }
 
+    /**
+     * Handle table for the active uniforms or attributes of a program. A handle is an index into the
+     * parallel arrays and stays the same for a given name across rebuilds of the program; names that
+     * are no longer active keep their handle with a location of -1, which GL ignores.
+     */
+    private static final class LocationTable {
+        private final Location mLocation;
+        private final Map<String, Integer> mHandles = new HashMap<String, Integer>();
+
+        private String[] mNames = new String[8];
+        private int[] mLocations = new int[8];
+        private int[] mTypes = new int[8];
+        private int[] mSizes = new int[8];
+        private int[] mParents = new int[8];
+        private int[] mElements = new int[8];
+        private int mCount;
+
+        LocationTable(final Location location) {
+            mLocation = location;
+        }
+
+        void load(GLBackend gl, int program) {
+            Arrays.fill(mLocations, 0, mCount, -1);
+
+            int[] params = new int[1];
+            gl.glGetProgramiv(program, mLocation.getActiveCountParameter(), params, 0);
+            int activeCount = params[0];
+            gl.glGetProgramiv(program, mLocation.getActiveMaxLengthParameter(), params, 0);
+            int maxLength = params[0];
+
+            int[] length = new int[1];
+            int[] size = new int[1];
+            int[] type = new int[1];
+            byte[] nameBytes = new byte[Math.max(maxLength, 1)];
+
+            for (int i = 0; i < activeCount; i++) {
+                mLocation.getActive(gl, program, i, nameBytes.length, length, size, type, nameBytes);
+
+                String name = new String(nameBytes, 0, length[0]);
+                int location = mLocation.getLocation(gl, program, name);
+
+                // A declared array keeps its handle when the driver enumerates it as "name[0]"
+                if (name.endsWith("[0]") && !mHandles.containsKey(name)) {
+                    Integer declared = mHandles.get(name.substring(0, name.length() - 3));
+
+                    if (declared != null && mParents[declared] == declared) {
+                        mHandles.put(name, declared);
+                    }
+                }
+
+                int handle = put(name, location, type[0], size[0], -1, 0);
+
+                // Arrays are reported as "name[0]", but are usually addressed by their base name
+                if (name.endsWith("[0]")) {
+                    String baseName = name.substring(0, name.length() - 3);
+                    Integer baseHandle = mHandles.get(baseName);
+
+                    if (baseHandle == null) {
+                        mHandles.put(baseName, handle);
+                    }
+                }
+            }
+
+            // Names that were looked up directly on a previous build are not enumerated, query them again
+            for (int handle = 0; handle < mCount; handle++) {
+                if (mParents[handle] >= 0) {
+                    mLocations[handle] = mLocation.getLocation(gl, program, mNames[handle]);
+                }
+            }
+        }
+
+        /**
+         * Reserves handles 0 to names.length - 1 for names, in order. Locations are resolved by load().
+         */
+        void declare(String[] names) throws IllegalArgumentException, IllegalStateException {
+            if (mCount != 0) {
+                throw new IllegalStateException(mLocation.getType() + " handles must be declared before the shader program is built");
+            }
+
+            for (final String name : names) {
+                if (name == null || mHandles.containsKey(name)) {
+                    throw new IllegalArgumentException("Invalid or duplicate " + mLocation.getType().toLowerCase() + " name: " + name);
+                }
+
+                put(name, -1, 0, 1, mCount, 0);
+            }
+        }
+
+        int getHandle(GLBackend gl, int program, String name) throws IllegalArgumentException {
+            Integer handle = mHandles.get(name);
+
+            if (handle != null) {
+                return handle;
+            }
+
+            // Not enumerated by the driver, e.g. an individual array element: fall back to a direct query
+            int location = mLocation.getLocation(gl, program, name);
+
+            if (location < 0) {
+                throw new IllegalArgumentException(mLocation.getType() + " \"" + name + "\" not found in shader program");
+            }
+
+            int parent = -1;
+            int element = 0;
+            int bracket = name.lastIndexOf('[');
+
+            if (bracket > 0 && name.endsWith("]")) {
+                Integer arrayHandle = mHandles.get(name.substring(0, bracket));
+
+                try {
+                    element = Integer.parseInt(name.substring(bracket + 1, name.length() - 1));
+                } catch (NumberFormatException e) {
+                    arrayHandle = null;
+                }
+
+                if (arrayHandle != null && element < mSizes[arrayHandle]) {
+                    parent = arrayHandle;
+                }
+            }
+
+            if (parent < 0) {
+                return put(name, location, 0, 1, mCount, 0);
+            }
+
+            return put(name, location, mTypes[parent], 1, parent, element);
+        }
+
+        /**
+         * Location of a variable that may not be active, without creating a handle for it. Returns -1 if
+         * the program does not use it.
+         */
+        int findLocation(GLBackend gl, int program, String name) {
+            Integer handle = mHandles.get(name);
+
+            if (handle != null) {
+                return mLocations[handle];
+            }
+
+            return mLocation.getLocation(gl, program, name);
+        }
+
+        int getLocation(int handle) throws IllegalArgumentException {
+            if (handle < 0 || handle >= mCount) {
+                throw new IllegalArgumentException("Invalid " + mLocation.getType().toLowerCase() + " handle " + handle);
+            }
+
+            return mLocations[handle];
+        }
+
+        int getType(int handle) {
+            return mTypes[handle];
+        }
+
+        int getSize(int handle) {
+            return mSizes[handle];
+        }
+
+        String getName(int handle) {
+            return mNames[handle];
+        }
+
+        int getCount() {
+            return mCount;
+        }
+
+        /**
+         * Adds or updates a handle. Names that were looked up directly point at the array they are an
+         * element of, or at themselves if there is none; enumerated names have no parent.
+         */
+        private int put(String name, int location, int type, int size, int parent, int element) {
+            Integer existing = mHandles.get(name);
+            int handle;
+
+            if (existing != null) {
+                handle = existing;
+            } else {
+                if (mCount == mNames.length) {
+                    int capacity = mCount * 2;
+                    mNames = Arrays.copyOf(mNames, capacity);
+                    mLocations = Arrays.copyOf(mLocations, capacity);
+                    mTypes = Arrays.copyOf(mTypes, capacity);
+                    mSizes = Arrays.copyOf(mSizes, capacity);
+                    mParents = Arrays.copyOf(mParents, capacity);
+                    mElements = Arrays.copyOf(mElements, capacity);
+                }
+
+                handle = mCount++;
+                mNames[handle] = name;
+                mHandles.put(name, handle);
+            }
+
+            mLocations[handle] = location;
+            mTypes[handle] = type;
+            mSizes[handle] = size;
+            mParents[handle] = parent;
+            mElements[handle] = element;
+
+            return handle;
+        }
+    }
+
+    // Distinct vertex formats whose locations are kept; the cache starts over once it is full
+    private static final int MAX_VERTEX_FORMATS = 32;
+
+    private static final UniformLocation sUniformLocation = new UniformLocation();
+    private static final AttributeLocation sAttributeLocation = new AttributeLocation();
+
+    private final GLContext mContext = GLContext.getCurrent();
+    private final GLBackend mGL = mContext.getBackend();
+    private final RenderMetrics mMetrics = mContext.getMetrics();
     private String mTag;
     private List<Shader> mShaders = new ArrayList<Shader>();
     private int mName;
     private String mBuildLog;
     private String mValidationLog;
-    private Map<String, Integer> mUniformLocations;
-    private Map<String, Integer> mAttributeLocations;
-    private UniformLocation mUniformLocation;
-    private  AttributeLocation mAttributeLocation;
+    private final LocationTable mUniforms = new LocationTable(sUniformLocation);
+    private final LocationTable mAttributes = new LocationTable(sAttributeLocation);
+    private final UniformCache mUniformCache = new UniformCache();
+    private final Map<VertexFormat, int[]> mVertexFormatLocations = new HashMap<VertexFormat, int[]>();
+    private VertexFormat mLastVertexFormat;
+    private int[] mLastVertexFormatLocations;
+    private boolean mBuilt;
+    private boolean mAttached;
+    private boolean mLinked;
+    private int mBuildCount;
+    private ProgramBinaryCache mCache;
+    private byte[] mCacheKey;
 
     public void setTag(final String tag) {
         mTag = tag;
+
+        if (mName != 0) {
+            label();
+        }
+    }
+
+    public int getName() {
+        return mName;
     }
 
     public boolean isBuilt() {
-        return mName != 0;
+        return mBuilt;
+    }
+
+    /**
+     * Number of times the program has been built or loaded. Changes on every rebuild, unlike the
+     * name, which the driver may reuse, e.g. after the context is recreated.
+     */
+    public int getBuildCount() {
+        return mBuildCount;
     }
 
     public String getBuildLog() {
@@ -73,61 +349,46 @@ public final class ShaderProgram {
         mShaders.add(shader);
     }
 
+    /**
+     * Adds the shader registry shares for type and source. The program releases it again when it is
+     * unloaded or deleted.
+     */
+    public void addShader(final ShaderRegistry registry, final Shader.Type type, final String source) throws IllegalArgumentException {
+        mShaders.add(registry.acquire(type, source));
+    }
+
     public void build() throws IllegalArgumentException, IllegalStateException {
+        build(null);
+    }
+
+    /**
+     * Builds the program, loading it from cache instead of compiling and linking it when the cache
+     * holds a binary of the same shader sources for the same driver. Programs built from source are
+     * stored in the cache. A program a ShaderBuildScheduler has started on is finished from where it is.
+     */
+    public void build(final ProgramBinaryCache cache) throws IllegalArgumentException, IllegalStateException {
         if (isBuilt()) {
             return;
         }
 
-        mName = GLES20.glCreateProgram();
-
-        if (mName < 1) {
-            throw new IllegalStateException("Failed to create OpenGL ES shader program");
+        if (mName == 0 && create(cache)) {
+            return;
         }
 
-        for (final Shader shader : mShaders) {
-            try {
-                if (!shader.isCompiled()) {
-                    shader.compile();
-                }
-
-                shader.attachToProgram(mName);
-            } catch (IllegalArgumentException e) {
-                unload();
-                throw e;
-            } catch (IllegalStateException e) {
-                unload();
-                throw e;
+        if (!mAttached) {
+            for (int i = 0; i < mShaders.size(); i++) {
+                compileShader(i);
             }
-        }
 
-        GLES20.glLinkProgram(mName);
-
-        for (final Shader shader : mShaders) {
-            try {
-                shader.detachFromProgram(mName);
-            } catch (IllegalArgumentException e) {
-                unload();
-                throw e;
-            } catch (IllegalStateException e) {
-                unload();
-                throw e;
-            }
+            attachShaders();
         }
 
-        IntBuffer params = IntBuffer.allocate(1);
-        GLES20.glGetShaderiv(mName, GLES20.GL_LINK_STATUS, params);
-
-        String infoLog = GLES20.glGetProgramInfoLog(mName);
-        mBuildLog = "Shader program build log: " + infoLog;
-
-        boolean linked = params.get(0) != 0;
-
-        if (!linked) {
-            Log.e(mTag, mBuildLog);
-            unload();
-
-            throw new IllegalStateException();
+        if (!mLinked) {
+            link();
         }
+
+        checkLinkStatus();
+        loadLocations();
     }
 
     public void unload() throws IllegalArgumentException, IllegalStateException {
@@ -135,22 +396,46 @@ public final class ShaderProgram {
             if (shader.isCompiled() && shader.isAttachedToProgram(mName)) {
                 shader.detachFromProgram(mName);
             }
+
+            ShaderRegistry registry = shader.getRegistry();
+
+            if (registry != null) {
+                registry.release(shader);
+            }
         }
 
         mShaders.clear();
     }
 
+    /**
+     * Unloads the shaders and deletes the GL program.
+     */
+    public void delete() throws IllegalArgumentException, IllegalStateException {
+        unload();
+
+        if (mName != 0) {
+            mGL.glDeleteProgram(mName);
+            mName = 0;
+        }
+
+        mBuilt = false;
+        mAttached = false;
+        mLinked = false;
+        mCache = null;
+        mCacheKey = null;
+    }
+
     public boolean isValid() throws IllegalStateException {
         checkBuilt();
-        GLES20.glValidateProgram(mName);
+        mGL.glValidateProgram(mName);
 
-        IntBuffer params = IntBuffer.allocate(1);
-        GLES20.glGetShaderiv(mName, GLES20.GL_VALIDATE_STATUS, params);
+        int[] params = new int[1];
+        mGL.glGetProgramiv(mName, GLES20.GL_VALIDATE_STATUS, params, 0);
 
-        String infoLog = GLES20.glGetProgramInfoLog(mName);
+        String infoLog = mGL.glGetProgramInfoLog(mName);
         mValidationLog = "Shader program validation log: " + infoLog;
 
-        boolean valid = params.get(0) != 0;
+        boolean valid = params[0] != 0;
 
         if (!valid) {
             Log.e(mTag, mValidationLog);
@@ -162,247 +447,915 @@ public final class ShaderProgram {
 
     public void use() throws IllegalStateException {
         checkBuilt();
-        GLES20.glUseProgram(mName);
+        mContext.useProgram(mName);
     }
 
     public void setUniform(String name, float x) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform1f(location, x);
+        setUniform(getUniformHandle(name), x);
+    }
+
+    public void setUniform(int handle, float x) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, x)) {
+            mGL.glUniform1f(location, x);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_FLOAT);
+        }
     }
 
     public void setUniform1fv(String name, int count, FloatBuffer v) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform1fv(location, count, v);
+        setUniform1fv(getUniformHandle(name), count, v);
+    }
+
+    public void setUniform1fv(int handle, int count, FloatBuffer v) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, v, count)) {
+            mGL.glUniform1fv(location, count, v);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_FLOAT);
+        }
     }
 
     public void setUniform1fv(String name, int count, float[] v, int offset) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform1fv(location, count, v, offset);
+        setUniform1fv(getUniformHandle(name), count, v, offset);
+    }
+
+    public void setUniform1fv(int handle, int count, float[] v, int offset) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, v, offset, count)) {
+            mGL.glUniform1fv(location, count, v, offset);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_FLOAT);
+        }
     }
 
     public void setUniform(String name, int x) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform1i(location, x);
+        setUniform(getUniformHandle(name), x);
+    }
+
+    public void setUniform(int handle, int x) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, x)) {
+            mGL.glUniform1i(location, x);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_INT);
+        }
     }
 
     public void setUniform1iv(String name, int count, IntBuffer v) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform1iv(location, count, v);
+        setUniform1iv(getUniformHandle(name), count, v);
+    }
+
+    public void setUniform1iv(int handle, int count, IntBuffer v) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, v, count)) {
+            mGL.glUniform1iv(location, count, v);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_INT);
+        }
     }
 
     public void setUniform1iv(String name, int count, int[] v, int offset) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform1iv(location, count, v, offset);
+        setUniform1iv(getUniformHandle(name), count, v, offset);
+    }
+
+    public void setUniform1iv(int handle, int count, int[] v, int offset) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, v, offset, count)) {
+            mGL.glUniform1iv(location, count, v, offset);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_INT);
+        }
     }
 
     public void setUniform(String name, float x, float y) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform2f(location, x, y);
+        setUniform(getUniformHandle(name), x, y);
+    }
+
+    public void setUniform(int handle, float x, float y) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, x, y)) {
+            mGL.glUniform2f(location, x, y);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_VEC2);
+        }
     }
 
     public void setUniform2fv(String name, int count, FloatBuffer v) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform2fv(location, count, v);
+        setUniform2fv(getUniformHandle(name), count, v);
+    }
+
+    public void setUniform2fv(int handle, int count, FloatBuffer v) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, v, 2 * count)) {
+            mGL.glUniform2fv(location, count, v);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_VEC2);
+        }
     }
 
     public void setUniform2fv(String name, int count, float[] v, int offset) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform2fv(location, count, v, offset);
+        setUniform2fv(getUniformHandle(name), count, v, offset);
+    }
+
+    public void setUniform2fv(int handle, int count, float[] v, int offset) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, v, offset, 2 * count)) {
+            mGL.glUniform2fv(location, count, v, offset);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_VEC2);
+        }
     }
 
     public void setUniform(String name, int x, int y) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform2i(location, x, y);
+        setUniform(getUniformHandle(name), x, y);
+    }
+
+    public void setUniform(int handle, int x, int y) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, x, y)) {
+            mGL.glUniform2i(location, x, y);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_IVEC2);
+        }
     }
 
     public void setUniform2iv(String name, int count, IntBuffer v) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform2iv(location, count, v);
+        setUniform2iv(getUniformHandle(name), count, v);
+    }
+
+    public void setUniform2iv(int handle, int count, IntBuffer v) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, v, 2 * count)) {
+            mGL.glUniform2iv(location, count, v);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_IVEC2);
+        }
     }
 
     public void setUniform2iv(String name, int count, int[] v, int offset) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform2iv(location, count, v, offset);
+        setUniform2iv(getUniformHandle(name), count, v, offset);
+    }
+
+    public void setUniform2iv(int handle, int count, int[] v, int offset) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, v, offset, 2 * count)) {
+            mGL.glUniform2iv(location, count, v, offset);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_IVEC2);
+        }
     }
 
     public void setUniform(String name, float x, float y, float z) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform3f(location, x, y, z);
+        setUniform(getUniformHandle(name), x, y, z);
+    }
+
+    public void setUniform(int handle, float x, float y, float z) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, x, y, z)) {
+            mGL.glUniform3f(location, x, y, z);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_VEC3);
+        }
     }
 
     public void setUniform3fv(String name, int count, float[] v, int offset) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform3fv(location, count, v, offset);
+        setUniform3fv(getUniformHandle(name), count, v, offset);
+    }
+
+    public void setUniform3fv(int handle, int count, float[] v, int offset) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, v, offset, 3 * count)) {
+            mGL.glUniform3fv(location, count, v, offset);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_VEC3);
+        }
     }
 
     public void setUniform3fv(String name, int count, FloatBuffer v) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform3fv(location, count, v);
+        setUniform3fv(getUniformHandle(name), count, v);
+    }
+
+    public void setUniform3fv(int handle, int count, FloatBuffer v) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, v, 3 * count)) {
+            mGL.glUniform3fv(location, count, v);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_VEC3);
+        }
     }
 
     public void setUniform(String name, int x, int y, int z) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform3i(location, x, y, z);
+        setUniform(getUniformHandle(name), x, y, z);
+    }
+
+    public void setUniform(int handle, int x, int y, int z) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, x, y, z)) {
+            mGL.glUniform3i(location, x, y, z);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_IVEC3);
+        }
     }
 
     public void setUniform3iv(String name, int count, int[] v, int offset) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform3iv(location, count, v, offset);
+        setUniform3iv(getUniformHandle(name), count, v, offset);
+    }
+
+    public void setUniform3iv(int handle, int count, int[] v, int offset) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, v, offset, 3 * count)) {
+            mGL.glUniform3iv(location, count, v, offset);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_IVEC3);
+        }
     }
 
     public void setUniform3iv(String name, int count, IntBuffer v) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform3iv(location, count, v);
+        setUniform3iv(getUniformHandle(name), count, v);
+    }
+
+    public void setUniform3iv(int handle, int count, IntBuffer v) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, v, 3 * count)) {
+            mGL.glUniform3iv(location, count, v);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_IVEC3);
+        }
     }
 
     public void setUniform(String name, float x, float y, float z, float w) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform4f(location, x, y, z, w);
+        setUniform(getUniformHandle(name), x, y, z, w);
+    }
+
+    public void setUniform(int handle, float x, float y, float z, float w) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, x, y, z, w)) {
+            mGL.glUniform4f(location, x, y, z, w);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_VEC4);
+        }
     }
 
     public void setUniform4fv(String name, int count, FloatBuffer v) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform4fv(location, count, v);
+        setUniform4fv(getUniformHandle(name), count, v);
+    }
+
+    public void setUniform4fv(int handle, int count, FloatBuffer v) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, v, 4 * count)) {
+            mGL.glUniform4fv(location, count, v);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_VEC4);
+        }
     }
 
     public void setUniform4fv(String name, int count, float[] v, int offset) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform4fv(location, count, v, offset);
+        setUniform4fv(getUniformHandle(name), count, v, offset);
+    }
+
+    public void setUniform4fv(int handle, int count, float[] v, int offset) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, v, offset, 4 * count)) {
+            mGL.glUniform4fv(location, count, v, offset);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_VEC4);
+        }
     }
 
     public void setUniform(String name, int x, int y, int z, int w) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniform4i(location, x, y, z, w);
+        setUniform(getUniformHandle(name), x, y, z, w);
+    }
+
+    public void setUniform(int handle, int x, int y, int z, int w) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, x, y, z, w)) {
+            mGL.glUniform4i(location, x, y, z, w);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_IVEC4);
+        }
     }
 
     public void setUniform4iv(String name, int count, int[] v, int offset) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20. glUniform4iv(location, count, v, offset);
+        setUniform4iv(getUniformHandle(name), count, v, offset);
+    }
+
+    public void setUniform4iv(int handle, int count, int[] v, int offset) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, v, offset, 4 * count)) {
+            mGL.glUniform4iv(location, count, v, offset);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_IVEC4);
+        }
     }
 
     public void setUniform4iv(String name, int count, IntBuffer v) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20. glUniform4iv(location, count, v);
+        setUniform4iv(getUniformHandle(name), count, v);
+    }
+
+    public void setUniform4iv(int handle, int count, IntBuffer v) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, v, 4 * count)) {
+            mGL.glUniform4iv(location, count, v);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_IVEC4);
+        }
     }
 
     public void setUniformMatrix2fv(String name, int count, boolean transpose, FloatBuffer value) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20. glUniformMatrix2fv(location, count, transpose, value);
+        setUniformMatrix2fv(getUniformHandle(name), count, transpose, value);
+    }
+
+    public void setUniformMatrix2fv(int handle, int count, boolean transpose, FloatBuffer value) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, transpose, value, 4 * count)) {
+            mGL.glUniformMatrix2fv(location, count, transpose, value);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_MAT2);
+        }
     }
 
     public void setUniformMatrix2fv(String name, int count, boolean transpose, float[] value, int offset) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20. glUniformMatrix2fv(location, count, transpose, value, offset);
+        setUniformMatrix2fv(getUniformHandle(name), count, transpose, value, offset);
+    }
+
+    public void setUniformMatrix2fv(int handle, int count, boolean transpose, float[] value, int offset) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, transpose, value, offset, 4 * count)) {
+            mGL.glUniformMatrix2fv(location, count, transpose, value, offset);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_MAT2);
+        }
     }
 
     public void setUniformMatrix3fv(String name, int count, boolean transpose, float[] value, int offset) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniformMatrix3fv(location, count, transpose, value, offset);
+        setUniformMatrix3fv(getUniformHandle(name), count, transpose, value, offset);
+    }
+
+    public void setUniformMatrix3fv(int handle, int count, boolean transpose, float[] value, int offset) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, transpose, value, offset, 9 * count)) {
+            mGL.glUniformMatrix3fv(location, count, transpose, value, offset);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_MAT3);
+        }
     }
 
     public void setUniformMatrix3fv(String name, int count, boolean transpose, FloatBuffer value) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniformMatrix3fv(location, count, transpose, value);
+        setUniformMatrix3fv(getUniformHandle(name), count, transpose, value);
+    }
+
+    public void setUniformMatrix3fv(int handle, int count, boolean transpose, FloatBuffer value) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, transpose, value, 9 * count)) {
+            mGL.glUniformMatrix3fv(location, count, transpose, value);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_MAT3);
+        }
     }
 
     public void setUniformMatrix4fv(String name, int count, boolean transpose, float[] value, int offset) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniformMatrix4fv(location, count, transpose, value, offset);
+        setUniformMatrix4fv(getUniformHandle(name), count, transpose, value, offset);
+    }
+
+    public void setUniformMatrix4fv(int handle, int count, boolean transpose, float[] value, int offset) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, transpose, value, offset, 16 * count)) {
+            mGL.glUniformMatrix4fv(location, count, transpose, value, offset);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_MAT4);
+        }
     }
 
     public void setUniformMatrix4fv(String name, int count, boolean transpose, FloatBuffer value) throws IllegalStateException {
-        int location = getLocation(name, mUniformLocations, mUniformLocation);
-        GLES20.glUniformMatrix4fv(location, count, transpose, value);
+        setUniformMatrix4fv(getUniformHandle(name), count, transpose, value);
+    }
+
+    public void setUniformMatrix4fv(int handle, int count, boolean transpose, FloatBuffer value) throws IllegalStateException {
+        int location = getUniformLocation(handle);
+
+        if (location != -1 && mUniformCache.changed(handle, transpose, value, 16 * count)) {
+            mGL.glUniformMatrix4fv(location, count, transpose, value);
+            mMetrics.increment(RenderMetrics.Counter.UNIFORM_MAT4);
+        }
     }
 
     public void setAttribute(String name, float x) throws IllegalStateException {
-        int indx = getLocation(name, mAttributeLocations, mAttributeLocation);
-        GLES20.glVertexAttrib1f(indx, x);
+        setAttribute(getAttributeHandle(name), x);
+    }
+
+    public void setAttribute(int handle, float x) throws IllegalStateException {
+        int indx = getAttributeLocation(handle);
+        mGL.glVertexAttrib1f(indx, x);
     }
 
     public void setAttribute1fv(String name, FloatBuffer values) throws IllegalStateException {
-        int indx = getLocation(name, mAttributeLocations, mAttributeLocation);
-        GLES20.glVertexAttrib1fv(indx, values);
+        setAttribute1fv(getAttributeHandle(name), values);
+    }
+
+    public void setAttribute1fv(int handle, FloatBuffer values) throws IllegalStateException {
+        int indx = getAttributeLocation(handle);
+        mGL.glVertexAttrib1fv(indx, values);
     }
 
     public void setAttribute1fv(String name, float[] values, int offset) throws IllegalStateException {
-        int indx = getLocation(name, mAttributeLocations, mAttributeLocation);
-        GLES20.glVertexAttrib1fv(indx, values, offset);
+        setAttribute1fv(getAttributeHandle(name), values, offset);
+    }
+
+    public void setAttribute1fv(int handle, float[] values, int offset) throws IllegalStateException {
+        int indx = getAttributeLocation(handle);
+        mGL.glVertexAttrib1fv(indx, values, offset);
     }
 
     public void setAttribute(String name, float x, float y) throws IllegalStateException {
-        int indx = getLocation(name, mAttributeLocations, mAttributeLocation);
-        GLES20.glVertexAttrib2f(indx, x, y);
+        setAttribute(getAttributeHandle(name), x, y);
+    }
+
+    public void setAttribute(int handle, float x, float y) throws IllegalStateException {
+        int indx = getAttributeLocation(handle);
+        mGL.glVertexAttrib2f(indx, x, y);
     }
 
     public void setAttribute2fv(String name, float[] values, int offset) throws IllegalStateException {
-        int indx = getLocation(name, mAttributeLocations, mAttributeLocation);
-        GLES20.glVertexAttrib2fv(indx, values, offset);
+        setAttribute2fv(getAttributeHandle(name), values, offset);
+    }
+
+    public void setAttribute2fv(int handle, float[] values, int offset) throws IllegalStateException {
+        int indx = getAttributeLocation(handle);
+        mGL.glVertexAttrib2fv(indx, values, offset);
     }
 
     public void setAttribute2fv(String name, FloatBuffer values) throws IllegalStateException {
-        int indx = getLocation(name, mAttributeLocations, mAttributeLocation);
-        GLES20.glVertexAttrib2fv(indx, values);
+        setAttribute2fv(getAttributeHandle(name), values);
+    }
+
+    public void setAttribute2fv(int handle, FloatBuffer values) throws IllegalStateException {
+        int indx = getAttributeLocation(handle);
+        mGL.glVertexAttrib2fv(indx, values);
     }
 
     public void setAttribute(String name, float x, float y, float z) throws IllegalStateException {
-        int indx = getLocation(name, mAttributeLocations, mAttributeLocation);
-        GLES20.glVertexAttrib3f(indx, x, y, z);
+        setAttribute(getAttributeHandle(name), x, y, z);
+    }
+
+    public void setAttribute(int handle, float x, float y, float z) throws IllegalStateException {
+        int indx = getAttributeLocation(handle);
+        mGL.glVertexAttrib3f(indx, x, y, z);
     }
 
     public void setAttribute3fv(String name, FloatBuffer values) throws IllegalStateException {
-        int indx = getLocation(name, mAttributeLocations, mAttributeLocation);
-        GLES20.glVertexAttrib3fv(indx, values);
+        setAttribute3fv(getAttributeHandle(name), values);
+    }
+
+    public void setAttribute3fv(int handle, FloatBuffer values) throws IllegalStateException {
+        int indx = getAttributeLocation(handle);
+        mGL.glVertexAttrib3fv(indx, values);
     }
 
     public void setAttribute3fv(String name, float[] values, int offset) throws IllegalStateException {
-        int indx = getLocation(name, mAttributeLocations, mAttributeLocation);
-        GLES20.glVertexAttrib3fv(indx, values, offset);
+        setAttribute3fv(getAttributeHandle(name), values, offset);
+    }
+
+    public void setAttribute3fv(int handle, float[] values, int offset) throws IllegalStateException {
+        int indx = getAttributeLocation(handle);
+        mGL.glVertexAttrib3fv(indx, values, offset);
     }
 
     public void setAttribute(String name, float x, float y, float z, float w) throws IllegalStateException {
-        int indx = getLocation(name, mAttributeLocations, mAttributeLocation);
-        GLES20.glVertexAttrib4f(indx, x, y, z, w);
+        setAttribute(getAttributeHandle(name), x, y, z, w);
+    }
+
+    public void setAttribute(int handle, float x, float y, float z, float w) throws IllegalStateException {
+        int indx = getAttributeLocation(handle);
+        mGL.glVertexAttrib4f(indx, x, y, z, w);
     }
 
     public void setAttribute4fv(String name, FloatBuffer values) throws IllegalStateException {
-        int indx = getLocation(name, mAttributeLocations, mAttributeLocation);
-        GLES20.glVertexAttrib4fv(indx, values);
+        setAttribute4fv(getAttributeHandle(name), values);
+    }
+
+    public void setAttribute4fv(int handle, FloatBuffer values) throws IllegalStateException {
+        int indx = getAttributeLocation(handle);
+        mGL.glVertexAttrib4fv(indx, values);
     }
 
     public void setAttribute4fv(String name, float[] values, int offset) throws IllegalStateException {
-        int indx = getLocation(name, mAttributeLocations, mAttributeLocation);
-        GLES20.glVertexAttrib4fv(indx, values, offset);
+        setAttribute4fv(getAttributeHandle(name), values, offset);
+    }
+
+    public void setAttribute4fv(int handle, float[] values, int offset) throws IllegalStateException {
+        int indx = getAttributeLocation(handle);
+        mGL.glVertexAttrib4fv(indx, values, offset);
+    }
+
+    public void enableAttributeArray(String name) throws IllegalStateException {
+        enableAttributeArray(getAttributeHandle(name));
+    }
+
+    public void enableAttributeArray(int handle) throws IllegalStateException {
+        int indx = getAttributeLocation(handle);
+
+        if (indx != -1) {
+            mContext.enableVertexAttribArray(indx);
+        }
+    }
+
+    public void disableAttributeArray(String name) throws IllegalStateException {
+        disableAttributeArray(getAttributeHandle(name));
+    }
+
+    public void disableAttributeArray(int handle) throws IllegalStateException {
+        int indx = getAttributeLocation(handle);
+
+        if (indx != -1) {
+            mContext.disableVertexAttribArray(indx);
+        }
     }
 
     public void setAttributePointer(String name, int size, int type, boolean normalized, int stride, int offset) throws IllegalStateException {
-        int indx = getLocation(name, mAttributeLocations, mAttributeLocation);
-        GLES20.glVertexAttribPointer(indx, size, type, normalized, stride, offset);
+        setAttributePointer(getAttributeHandle(name), size, type, normalized, stride, offset);
+    }
+
+    public void setAttributePointer(int handle, int size, int type, boolean normalized, int stride, int offset) throws IllegalStateException {
+        int indx = getAttributeLocation(handle);
+
+        if (indx != -1) {
+            mContext.vertexAttribPointer(indx, size, type, normalized, stride, offset);
+        }
     }
 
     public void setAttributePointer(String name, int size, int type, boolean normalized, int stride, Buffer ptr) throws IllegalStateException {
-        int indx = getLocation(name, mAttributeLocations, mAttributeLocation);
-        GLES20.glVertexAttribPointer(indx, size, type, normalized, stride, ptr);
+        setAttributePointer(getAttributeHandle(name), size, type, normalized, stride, ptr);
     }
 
-    private int getLocation(String name, Map<String, Integer> locations, Location location) throws IllegalStateException {
+    public void setAttributePointer(int handle, int size, int type, boolean normalized, int stride, Buffer ptr) throws IllegalStateException {
+        int indx = getAttributeLocation(handle);
+
+        if (indx != -1) {
+            mContext.vertexAttribPointer(indx, size, type, normalized, stride, ptr);
+        }
+    }
+
+    /**
+     * Enables every attribute of format and points it at the vertices starting at offset in the buffer
+     * bound to GL_ARRAY_BUFFER. All other vertex attribute arrays are disabled. Attributes this program
+     * does not use are skipped; their locations are looked up the first time format is bound.
+     */
+    public void bindVertexFormat(final VertexFormat format, int offset) throws IllegalStateException, IllegalArgumentException {
+        int[] locations = getVertexFormatLocations(format);
+        int count = format.getAttributeCount();
+        int stride = format.getStride();
+
+        mContext.setVertexAttribArrays(locations[count]);
+
+        for (int i = 0; i < count; i++) {
+            int location = locations[i];
+
+            if (location == -1) {
+                continue;
+            }
+
+            VertexFormat.Attribute attribute = format.getAttribute(i);
+            mContext.vertexAttribPointer(location, attribute.getSize(), attribute.getType(), attribute.isNormalized(), stride, offset + attribute.getOffset());
+        }
+    }
+
+    /**
+     * Reserves uniform handles 0 to names.length - 1 for names, so that handles can be compile-time
+     * constants, e.g. those of the generated shader table. Must be called before the first build.
+     */
+    public void declareUniforms(String... names) throws IllegalStateException, IllegalArgumentException {
+        mUniforms.declare(names);
+    }
+
+    public int getUniformHandle(String name) throws IllegalStateException, IllegalArgumentException {
         checkBuilt();
 
-        Integer value = locations.get(name);
+        int count = mUniforms.getCount();
+        int handle = mUniforms.getHandle(mGL, mName, name);
 
-        if (value != null) {
-            return value;
+        if (handle >= count) {
+            // A new array element handle aliases values the cache may hold already, so start over
+            resetUniformCache();
+            mUniformCache.invalidate();
         }
 
-        value = location.getLocation(mName, name);
+        return handle;
+    }
+
+    public int getUniformLocation(int handle) throws IllegalStateException, IllegalArgumentException {
+        checkBuilt();
+        return mUniforms.getLocation(handle);
+    }
+
+    public int getUniformType(int handle) throws IllegalStateException, IllegalArgumentException {
+        getUniformLocation(handle);
+        return mUniforms.getType(handle);
+    }
+
+    public int getUniformSize(int handle) throws IllegalStateException, IllegalArgumentException {
+        getUniformLocation(handle);
+        return mUniforms.getSize(handle);
+    }
+
+    public String getUniformName(int handle) throws IllegalStateException, IllegalArgumentException {
+        getUniformLocation(handle);
+        return mUniforms.getName(handle);
+    }
+
+    public int getUniformCount() {
+        return mUniforms.getCount();
+    }
+
+    /**
+     * Number of uniform uploads that reached GL since the last resetUniformUploadCounters().
+     */
+    public long getUniformUploadCount() {
+        return mUniformCache.getIssuedCount();
+    }
+
+    /**
+     * Number of uniform uploads that were dropped because the value was already set.
+     */
+    public long getSkippedUniformUploadCount() {
+        return mUniformCache.getSkippedCount();
+    }
+
+    public void resetUniformUploadCounters() {
+        mUniformCache.resetCounters();
+    }
+
+    /**
+     * Forgets the shadowed uniform values, e.g. after uniforms of this program were set directly through GLES20.
+     */
+    public void invalidateUniformCache() {
+        mUniformCache.invalidate();
+    }
 
-        if (value < 0) {
-            throw new IllegalArgumentException(location.getType() + " \"" + name + "\" not found in shader program");
+    /**
+     * Reserves attribute handles 0 to names.length - 1 for names, see declareUniforms().
+     */
+    public void declareAttributes(String... names) throws IllegalStateException, IllegalArgumentException {
+        mAttributes.declare(names);
+    }
+
+    public int getAttributeHandle(String name) throws IllegalStateException, IllegalArgumentException {
+        checkBuilt();
+        return mAttributes.getHandle(mGL, mName, name);
+    }
+
+    public int getAttributeLocation(int handle) throws IllegalStateException, IllegalArgumentException {
+        checkBuilt();
+        return mAttributes.getLocation(handle);
+    }
+
+    public int getAttributeType(int handle) throws IllegalStateException, IllegalArgumentException {
+        getAttributeLocation(handle);
+        return mAttributes.getType(handle);
+    }
+
+    public int getAttributeSize(int handle) throws IllegalStateException, IllegalArgumentException {
+        getAttributeLocation(handle);
+        return mAttributes.getSize(handle);
+    }
+
+    public String getAttributeName(int handle) throws IllegalStateException, IllegalArgumentException {
+        getAttributeLocation(handle);
+        return mAttributes.getName(handle);
+    }
+
+    public int getAttributeCount() {
+        return mAttributes.getCount();
+    }
+
+    /*
+     * The build phases, run back to back by build() and one at a time by ShaderBuildScheduler. A failing
+     * phase deletes the program and throws.
+     */
+
+    int getShaderCount() {
+        return mShaders.size();
+    }
+
+    /**
+     * Whether the program has been created but not built yet.
+     */
+    boolean isBuilding() {
+        return mName != 0 && !mBuilt;
+    }
+
+    /**
+     * Creates the GL program and tries to load it from cache. Returns whether it was loaded, which
+     * completes the build.
+     */
+    boolean create(final ProgramBinaryCache cache) throws IllegalStateException {
+        if (mName != 0) {
+            throw new IllegalStateException("Shader program is already being built");
+        }
+
+        mName = mGL.glCreateProgram();
+
+        if (mName < 1) {
+            mName = 0;
+            throw new IllegalStateException("Failed to create OpenGL ES shader program");
+        }
+
+        label();
+
+        if (cache != null && cache.isSupported()) {
+            byte[] key = cache.getKey(mShaders);
+
+            if (cache.load(mName, key)) {
+                mBuildLog = "Shader program loaded from binary cache";
+                loadLocations();
+                return true;
+            }
+
+            mGL.glProgramParameteri(mName, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+            mCache = cache;
+            mCacheKey = key;
+        }
+
+        return false;
+    }
+
+    void compileShader(int index) throws IllegalStateException {
+        Shader shader = mShaders.get(index);
+
+        try {
+            if (!shader.isCompiled()) {
+                shader.compile();
+            }
+        } catch (IllegalStateException e) {
+            delete();
+            throw e;
+        }
+    }
+
+    void attachShaders() throws IllegalArgumentException, IllegalStateException {
+        for (final Shader shader : mShaders) {
+            try {
+                shader.attachToProgram(mName);
+            } catch (IllegalArgumentException e) {
+                delete();
+                throw e;
+            } catch (IllegalStateException e) {
+                delete();
+                throw e;
+            }
+        }
+
+        mAttached = true;
+    }
+
+    /**
+     * Starts linking. Many drivers link in the background until the link status is queried.
+     */
+    void link() {
+        long start = mMetrics.getClock().nanoTime();
+        mGL.glLinkProgram(mName);
+        mMetrics.addTimeSince(RenderMetrics.Counter.LINK_TIME_NANOS, start);
+        mMetrics.increment(RenderMetrics.Counter.PROGRAM_LINKS);
+        mLinked = true;
+    }
+
+    void checkLinkStatus() throws IllegalArgumentException, IllegalStateException {
+        for (final Shader shader : mShaders) {
+            try {
+                shader.detachFromProgram(mName);
+            } catch (IllegalArgumentException e) {
+                delete();
+                throw e;
+            } catch (IllegalStateException e) {
+                delete();
+                throw e;
+            }
+        }
+
+        // Drivers link asynchronously, the status query waits for the link to finish
+        int[] params = new int[1];
+        long start = mMetrics.getClock().nanoTime();
+        mGL.glGetProgramiv(mName, GLES20.GL_LINK_STATUS, params, 0);
+        mMetrics.addTimeSince(RenderMetrics.Counter.LINK_TIME_NANOS, start);
+
+        String infoLog = mGL.glGetProgramInfoLog(mName);
+        mBuildLog = "Shader program build log: " + infoLog;
+
+        boolean linked = params[0] != 0;
+
+        if (!linked) {
+            Log.e(mTag, mBuildLog);
+            delete();
+
+            throw new IllegalStateException();
+        }
+
+        if (mCache != null) {
+            mCache.store(mName, mCacheKey);
+            mCache = null;
+            mCacheKey = null;
+        }
+    }
+
+    void loadLocations() {
+        mUniforms.load(mGL, mName);
+        mAttributes.load(mGL, mName);
+        resetUniformCache();
+        clearVertexFormats();
+        mBuilt = true;
+        mBuildCount++;
+    }
+
+    /**
+     * Names the GL program after the tag, so DebugGLBackend can report which program a failing call concerns.
+     */
+    private void label() {
+        if (mTag != null) {
+            mGL.glObjectLabel(DebugGLBackend.GL_PROGRAM, mName, -1, mTag);
         }
+    }
+
+    private void resetUniformCache() {
+        mUniformCache.reset(mUniforms.mCount, mUniforms.mTypes, mUniforms.mSizes, mUniforms.mParents, mUniforms.mElements);
+    }
 
-        locations.put(name, value);
+    /**
+     * Locations of the attributes of format in this program, followed by the mask of all of them.
+     */
+    private int[] getVertexFormatLocations(final VertexFormat format) throws IllegalStateException, IllegalArgumentException {
+        if (format == mLastVertexFormat && format != null) {
+            return mLastVertexFormatLocations;
+        }
+
+        checkBuilt();
+
+        if (format == null) {
+            throw new IllegalArgumentException("Vertex format must not be null");
+        }
+
+        int[] cached = mVertexFormatLocations.get(format);
+
+        if (cached != null) {
+            mLastVertexFormat = format;
+            mLastVertexFormatLocations = cached;
+            return cached;
+        }
+
+        int count = format.getAttributeCount();
+        int[] locations = new int[count + 1];
+        int mask = 0;
+
+        for (int i = 0; i < count; i++) {
+            int location = mAttributes.findLocation(mGL, mName, format.getAttribute(i).getName());
+
+            if (location >= 32) {
+                throw new IllegalStateException("Vertex attribute location out of range: " + location);
+            }
+
+            if (location >= 0) {
+                mask |= 1 << location;
+            }
+
+            locations[i] = location < 0 ? -1 : location;
+        }
+
+        locations[count] = mask;
+
+        // Formats compare by value, so this only fills up with genuinely different layouts
+        if (mVertexFormatLocations.size() == MAX_VERTEX_FORMATS) {
+            mVertexFormatLocations.clear();
+        }
+
+        mVertexFormatLocations.put(format, locations);
+        mLastVertexFormat = format;
+        mLastVertexFormatLocations = locations;
+
+        return locations;
+    }
+
+    private void clearVertexFormats() {
+        mVertexFormatLocations.clear();
+        mLastVertexFormat = null;
+        mLastVertexFormatLocations = null;
+    }
+
+    /**
+     * Location of a uniform that may not be active, without creating a handle for it. Returns -1 if
+     * the program does not use it.
+     */
+    int findUniformLocation(String name) throws IllegalStateException {
+        checkBuilt();
+        return mUniforms.findLocation(mGL, mName, name);
+    }
 
-        return value;
+    /**
+     * Uploads count vec4s of v to the vec4 array uniform handle, starting at the element at location.
+     * The shadow copy of the array is bypassed and invalidated, see UniformBlock.
+     */
+    void uploadVec4Array(int handle, int location, int count, float[] v, int offset) {
+        mGL.glUniform4fv(location, count, v, offset);
+        mMetrics.increment(RenderMetrics.Counter.UNIFORM_VEC4);
+        mUniformCache.invalidate(handle);
     }
 
     private void checkBuilt() {
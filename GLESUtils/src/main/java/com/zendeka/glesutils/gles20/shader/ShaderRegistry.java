@@ -0,0 +1,151 @@
+package com.zendeka.glesutils.gles20.shader;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shares one Shader between all programs that use the same shader type and source, so each distinct
+ * shader is compiled only once. acquire() hands out the shared instance and counts a reference;
+ * ShaderProgram releases its references when it is unloaded or deleted, and the last release deletes
+ * the GL shader.
+ *
+ * Shaders are compiled by the first program build that needs them, so a program loaded from a
+ * ProgramBinaryCache never compiles its shaders at all.
+ */
+public final class ShaderRegistry {
+    private static final class Key {
+        final Shader.Type mType;
+        final String mSource;
+        final int mHash;
+
+        Key(final Shader.Type type, final String source) {
+            mType = type;
+            mSource = source;
+            mHash = 31 * type.hashCode() + source.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) o;
+            return mHash == key.mHash && mType == key.mType && mSource.equals(key.mSource);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+
+    private static final class Entry {
+        final Key mKey;
+        final Shader mShader;
+        int mReferences;
+
+        Entry(final Key key, final Shader shader) {
+            mKey = key;
+            mShader = shader;
+        }
+    }
+
+    private final Map<Key, Entry> mEntries = new HashMap<Key, Entry>();
+    private final Map<Shader, Entry> mShaders = new HashMap<Shader, Entry>();
+    private String mTag;
+
+    private int mHitCount;
+    private int mMissCount;
+
+    public ShaderRegistry(final String tag) {
+        mTag = tag;
+    }
+
+    public void setTag(final String tag) {
+        mTag = tag;
+    }
+
+    /**
+     * Returns the shared shader for type and source, creating it on first use. Every call must be
+     * balanced by a release(), which ShaderProgram does for the shaders added to it.
+     */
+    public Shader acquire(final Shader.Type type, final String source) throws IllegalArgumentException {
+        if (type == null || source == null) {
+            throw new IllegalArgumentException("Shader type and source must not be null");
+        }
+
+        Key key = new Key(type, source);
+        Entry entry = mEntries.get(key);
+
+        if (entry == null) {
+            Shader shader = new Shader(type, source, mTag);
+            shader.setRegistry(this);
+
+            entry = new Entry(key, shader);
+            mEntries.put(key, entry);
+            mShaders.put(shader, entry);
+            mMissCount++;
+        } else {
+            mHitCount++;
+        }
+
+        entry.mReferences++;
+        return entry.mShader;
+    }
+
+    /**
+     * Drops a reference to shader. The last release deletes the compiled GL shader.
+     */
+    public void release(final Shader shader) throws IllegalArgumentException, IllegalStateException {
+        Entry entry = mShaders.get(shader);
+
+        if (entry == null) {
+            throw new IllegalArgumentException("Shader not owned by this registry");
+        }
+
+        if (--entry.mReferences > 0) {
+            return;
+        }
+
+        mEntries.remove(entry.mKey);
+        mShaders.remove(shader);
+        shader.setRegistry(null);
+
+        if (shader.isCompiled()) {
+            shader.unload();
+        }
+    }
+
+    public int getReferenceCount(final Shader shader) {
+        Entry entry = mShaders.get(shader);
+        return entry != null ? entry.mReferences : 0;
+    }
+
+    public int getShaderCount() {
+        return mEntries.size();
+    }
+
+    /**
+     * Number of acquire() calls that returned an existing shader.
+     */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Number of acquire() calls that created a new shader.
+     */
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    public void resetStatistics() {
+        mHitCount = 0;
+        mMissCount = 0;
+    }
+}
@@ -0,0 +1,597 @@
+package com.zendeka.glesutils.gles20.shader;
+
+import java.util.Arrays;
+
+/**
+ * Emulates a uniform block on OpenGL ES 2.0. The members are laid out std140-style in a flat array of
+ * vec4s, which the shader declares as a single uniform vec4 array, so a whole block uploads with one
+ * glUniform4fv() instead of one glUniform call per member.
+ *
+ * getDeclaration() generates the GLSL: the array declaration plus a macro per member that reads it
+ * back, e.g. "#define uColor (uMaterial[0])", or "#define uLights(i) (uMaterial[4 + (i)])" for
+ * arrays. Include it in the shader source, e.g. through a ShaderPreprocessor.SourceProvider.
+ *
+ * Setters only store values that differ. upload() sends each program the span of vec4s that changed
+ * since that program last received the block, so one block can be shared between programs. The
+ * block owns the array uniform; do not set it through ShaderProgram as well.
+ */
+public final class UniformBlock {
+    // Floats in a vec4 of the block array
+    private static final int SLOT_SIZE = 4;
+    private static final char[] COMPONENTS = { 'x', 'y', 'z', 'w' };
+
+    public enum Type {
+        FLOAT(1, 1),
+        VEC2(2, 1),
+        VEC3(3, 1),
+        VEC4(4, 1),
+        MAT2(2, 2),
+        MAT3(3, 3),
+        MAT4(4, 4);
+
+        private final int mRows;
+        private final int mColumns;
+
+        private Type(int rows, int columns) {
+            mRows = rows;
+            mColumns = columns;
+        }
+
+        /**
+         * Components of a vector, or of a column of a matrix.
+         */
+        public int getRows() {
+            return mRows;
+        }
+
+        public int getColumns() {
+            return mColumns;
+        }
+
+        public int getComponentCount() {
+            return mRows * mColumns;
+        }
+
+        boolean isMatrix() {
+            return mColumns > 1;
+        }
+
+        /**
+         * std140 base alignment in floats.
+         */
+        int getAlignment() {
+            return isMatrix() || mRows > 2 ? SLOT_SIZE : mRows;
+        }
+    }
+
+    public static final class Member {
+        private final String mName;
+        private final Type mType;
+        private final int mArrayLength;
+
+        public Member(final String name, final Type type) throws IllegalArgumentException {
+            this(name, type, 0);
+        }
+
+        /**
+         * arrayLength is 0 for a member that is not an array.
+         */
+        public Member(final String name, final Type type, int arrayLength) throws IllegalArgumentException {
+            if (name == null || type == null) {
+                throw new IllegalArgumentException("Uniform block member name and type must not be null");
+            }
+
+            if (arrayLength < 0) {
+                throw new IllegalArgumentException("Invalid array length for uniform block member " + name + ": " + arrayLength);
+            }
+
+            mName = name;
+            mType = type;
+            mArrayLength = arrayLength;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public Type getType() {
+            return mType;
+        }
+
+        public int getArrayLength() {
+            return mArrayLength;
+        }
+
+        public boolean isArray() {
+            return mArrayLength > 0;
+        }
+
+        int getElementCount() {
+            return Math.max(mArrayLength, 1);
+        }
+    }
+
+    private final String mName;
+    private final Member[] mMembers;
+    private final int[] mOffsets;
+    private final int[] mStrides;
+    private final int mSlotCount;
+    private final float[] mData;
+
+    // Version of the block in which each vec4 last changed
+    private final int[] mSlotVersions;
+    private int mVersion = 1;
+
+    private ShaderProgram[] mPrograms = new ShaderProgram[2];
+    private int[] mProgramBuilds = new int[2];
+    private int[] mProgramVersions = new int[2];
+    private int[] mProgramHandles = new int[2];
+    private int[][] mProgramLocations = new int[2][];
+    private int mProgramCount;
+
+    private long mUploadCount;
+    private long mUploadedSlotCount;
+
+    /**
+     * name is the name of the vec4 array uniform in the shader.
+     */
+    public UniformBlock(final String name, final Member... members) throws IllegalArgumentException {
+        if (name == null) {
+            throw new IllegalArgumentException("Uniform block name must not be null");
+        }
+
+        if (members == null || members.length == 0) {
+            throw new IllegalArgumentException("Uniform block needs at least one member");
+        }
+
+        mName = name;
+        mMembers = members.clone();
+        mOffsets = new int[members.length];
+        mStrides = new int[members.length];
+
+        int offset = 0;
+
+        for (int i = 0; i < members.length; i++) {
+            Member member = members[i];
+
+            if (member == null) {
+                throw new IllegalArgumentException("Uniform block member must not be null");
+            }
+
+            for (int j = 0; j < i; j++) {
+                if (members[j].getName().equals(member.getName())) {
+                    throw new IllegalArgumentException("Duplicate uniform block member " + member.getName());
+                }
+            }
+
+            Type type = member.getType();
+            int alignment = member.isArray() ? SLOT_SIZE : type.getAlignment();
+            offset = align(offset, alignment);
+
+            // Matrix columns and array elements each start a new vec4
+            int elementSize = type.isMatrix() ? type.getColumns() * SLOT_SIZE : type.getRows();
+            int stride = member.isArray() ? align(elementSize, SLOT_SIZE) : elementSize;
+
+            mOffsets[i] = offset;
+            mStrides[i] = stride;
+            offset += stride * member.getElementCount();
+        }
+
+        mSlotCount = align(offset, SLOT_SIZE) / SLOT_SIZE;
+        mData = new float[mSlotCount * SLOT_SIZE];
+        mSlotVersions = new int[mSlotCount];
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getMemberCount() {
+        return mMembers.length;
+    }
+
+    public Member getMember(int member) throws IllegalArgumentException {
+        checkMember(member);
+        return mMembers[member];
+    }
+
+    /**
+     * Index of the member called name, for use with the setters. Returns -1 if there is none.
+     */
+    public int getMemberIndex(final String name) {
+        for (int i = 0; i < mMembers.length; i++) {
+            if (mMembers[i].getName().equals(name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Offset of the member in floats from the start of the block.
+     */
+    public int getOffset(int member) throws IllegalArgumentException {
+        checkMember(member);
+        return mOffsets[member];
+    }
+
+    /**
+     * Number of vec4s in the block, the length of the array in the shader.
+     */
+    public int getSlotCount() {
+        return mSlotCount;
+    }
+
+    public float getValue(int member, int element, int component) throws IllegalArgumentException {
+        return mData[getComponentOffset(member, element, component)];
+    }
+
+    /**
+     * GLSL declaration of the block array and the accessor macros of its members.
+     */
+    public String getDeclaration() {
+        StringBuilder glsl = new StringBuilder();
+        glsl.append("uniform vec4 ").append(mName).append('[').append(mSlotCount).append("];\n");
+
+        for (int i = 0; i < mMembers.length; i++) {
+            Member member = mMembers[i];
+            Type type = member.getType();
+            int slot = mOffsets[i] / SLOT_SIZE;
+            int component = mOffsets[i] % SLOT_SIZE;
+
+            glsl.append("#define ").append(member.getName());
+
+            if (member.isArray()) {
+                glsl.append("(i)");
+            }
+
+            glsl.append(' ');
+
+            if (!type.isMatrix()) {
+                glsl.append('(');
+                appendSlot(glsl, member, slot, 0);
+                appendSwizzle(glsl, component, type.getRows());
+                glsl.append(')');
+            } else {
+                glsl.append("mat").append(type.getColumns()).append('(');
+
+                for (int column = 0; column < type.getColumns(); column++) {
+                    if (column > 0) {
+                        glsl.append(", ");
+                    }
+
+                    appendSlot(glsl, member, slot, column);
+                    appendSwizzle(glsl, 0, type.getRows());
+                }
+
+                glsl.append(')');
+            }
+
+            glsl.append('\n');
+        }
+
+        return glsl.toString();
+    }
+
+    public void set(int member, float x) throws IllegalArgumentException {
+        int offset = getComponentOffset(member, 0, 0);
+        checkComponents(member, 1);
+
+        if (store(offset, x)) {
+            touch(offset, 1);
+        }
+    }
+
+    public void set(int member, float x, float y) throws IllegalArgumentException {
+        int offset = getComponentOffset(member, 0, 0);
+        checkComponents(member, 2);
+
+        if (store(offset, x) | store(offset + 1, y)) {
+            touch(offset, 2);
+        }
+    }
+
+    public void set(int member, float x, float y, float z) throws IllegalArgumentException {
+        int offset = getComponentOffset(member, 0, 0);
+        checkComponents(member, 3);
+
+        if (store(offset, x) | store(offset + 1, y) | store(offset + 2, z)) {
+            touch(offset, 3);
+        }
+    }
+
+    public void set(int member, float x, float y, float z, float w) throws IllegalArgumentException {
+        int offset = getComponentOffset(member, 0, 0);
+        checkComponents(member, 4);
+
+        if (store(offset, x) | store(offset + 1, y) | store(offset + 2, z) | store(offset + 3, w)) {
+            touch(offset, 4);
+        }
+    }
+
+    /**
+     * Sets one element of the member from v, a vector or a column-major matrix.
+     */
+    public void set(int member, int element, float[] v, int offset) throws IllegalArgumentException {
+        int start = getComponentOffset(member, element, 0);
+        Type type = mMembers[member].getType();
+        int rows = type.getRows();
+        boolean changed = false;
+
+        for (int column = 0; column < type.getColumns(); column++) {
+            int columnStart = start + column * SLOT_SIZE;
+
+            for (int row = 0; row < rows; row++) {
+                changed |= store(columnStart + row, v[offset + column * rows + row]);
+            }
+        }
+
+        if (changed) {
+            touch(start, (type.getColumns() - 1) * SLOT_SIZE + rows);
+        }
+    }
+
+    /**
+     * Sets count elements of the member, starting at element 0, from consecutive vectors or
+     * column-major matrices in v.
+     */
+    public void setArray(int member, float[] v, int offset, int count) throws IllegalArgumentException {
+        checkMember(member);
+
+        if (count < 0 || count > mMembers[member].getElementCount()) {
+            throw new IllegalArgumentException("Invalid element count for uniform block member " + mMembers[member].getName() + ": " + count);
+        }
+
+        int components = mMembers[member].getType().getComponentCount();
+
+        for (int element = 0; element < count; element++) {
+            set(member, element, v, offset + element * components);
+        }
+    }
+
+    /**
+     * Uses program and uploads the part of the block it has not received yet. The first upload to a
+     * program, and the first after it was rebuilt, sends the whole block. Does nothing if the program
+     * does not use the block.
+     */
+    public void upload(final ShaderProgram program) throws IllegalArgumentException, IllegalStateException {
+        if (program == null) {
+            throw new IllegalArgumentException("Shader program must not be null");
+        }
+
+        program.use();
+
+        int index = getProgramIndex(program);
+        int[] locations = mProgramLocations[index];
+        int programVersion = mProgramVersions[index];
+        int[] versions = mSlotVersions;
+        int first = -1;
+        int last = -1;
+
+        for (int slot = 0; slot < locations.length; slot++) {
+            if (versions[slot] > programVersion) {
+                if (first < 0) {
+                    first = slot;
+                }
+
+                last = slot;
+            }
+        }
+
+        // Later writes must be newer than what this program has now
+        mProgramVersions[index] = mVersion++;
+
+        if (first < 0) {
+            return;
+        }
+
+        int count = last - first + 1;
+        program.uploadVec4Array(mProgramHandles[index], locations[first], count, mData, first * SLOT_SIZE);
+
+        mUploadCount++;
+        mUploadedSlotCount += count;
+    }
+
+    /**
+     * Forgets what program has received, e.g. after its uniforms were set through GLES20 directly.
+     */
+    public void invalidate(final ShaderProgram program) {
+        for (int i = 0; i < mProgramCount; i++) {
+            if (mPrograms[i] == program) {
+                mProgramVersions[i] = -1;
+            }
+        }
+    }
+
+    /**
+     * Stops tracking program, e.g. before it is deleted.
+     */
+    public void remove(final ShaderProgram program) {
+        for (int i = 0; i < mProgramCount; i++) {
+            if (mPrograms[i] == program) {
+                int last = --mProgramCount;
+                mPrograms[i] = mPrograms[last];
+                mProgramBuilds[i] = mProgramBuilds[last];
+                mProgramVersions[i] = mProgramVersions[last];
+                mProgramHandles[i] = mProgramHandles[last];
+                mProgramLocations[i] = mProgramLocations[last];
+                mPrograms[last] = null;
+                mProgramLocations[last] = null;
+                return;
+            }
+        }
+    }
+
+    public long getUploadCount() {
+        return mUploadCount;
+    }
+
+    /**
+     * Number of vec4s sent by all uploads.
+     */
+    public long getUploadedSlotCount() {
+        return mUploadedSlotCount;
+    }
+
+    public void resetStatistics() {
+        mUploadCount = 0;
+        mUploadedSlotCount = 0;
+    }
+
+    /**
+     * Index of program in the tracked programs, adding it or resolving it again after a rebuild.
+     */
+    private int getProgramIndex(final ShaderProgram program) throws IllegalStateException {
+        int index = -1;
+
+        for (int i = 0; i < mProgramCount; i++) {
+            if (mPrograms[i] == program) {
+                index = i;
+                break;
+            }
+        }
+
+        if (index >= 0 && mProgramBuilds[index] == program.getBuildCount()) {
+            return index;
+        }
+
+        if (index < 0) {
+            if (mProgramCount == mPrograms.length) {
+                int capacity = mProgramCount * 2;
+                mPrograms = Arrays.copyOf(mPrograms, capacity);
+                mProgramBuilds = Arrays.copyOf(mProgramBuilds, capacity);
+                mProgramVersions = Arrays.copyOf(mProgramVersions, capacity);
+                mProgramHandles = Arrays.copyOf(mProgramHandles, capacity);
+                mProgramLocations = Arrays.copyOf(mProgramLocations, capacity);
+            }
+
+            index = mProgramCount++;
+            mPrograms[index] = program;
+        }
+
+        mProgramBuilds[index] = program.getBuildCount();
+        mProgramVersions[index] = -1;
+        mProgramLocations[index] = resolveLocations(program);
+        mProgramHandles[index] = mProgramLocations[index][0] != -1 ? program.getUniformHandle(mName) : -1;
+
+        return index;
+    }
+
+    /**
+     * Locations of the array elements in program. The driver may drop trailing elements the shader
+     * never reads; uploads are clipped to the active ones.
+     */
+    private int[] resolveLocations(final ShaderProgram program) throws IllegalStateException {
+        int location = program.findUniformLocation(mName);
+
+        if (location == -1) {
+            return new int[0];
+        }
+
+        int active = 1;
+
+        while (active < mSlotCount && program.findUniformLocation(mName + "[" + active + "]") != -1) {
+            active++;
+        }
+
+        int[] locations = new int[active];
+        locations[0] = location;
+
+        for (int slot = 1; slot < active; slot++) {
+            locations[slot] = program.findUniformLocation(mName + "[" + slot + "]");
+        }
+
+        return locations;
+    }
+
+    private void appendSlot(final StringBuilder glsl, final Member member, int slot, int column) {
+        glsl.append(mName).append('[');
+
+        if (!member.isArray()) {
+            glsl.append(slot + column);
+        } else {
+            int slots = member.getType().isMatrix() ? member.getType().getColumns() : 1;
+            glsl.append(slot).append(" + ");
+
+            if (slots > 1) {
+                glsl.append(slots).append(" * ");
+            }
+
+            glsl.append("(i)");
+
+            if (column > 0) {
+                glsl.append(" + ").append(column);
+            }
+        }
+
+        glsl.append(']');
+    }
+
+    private static void appendSwizzle(final StringBuilder glsl, int component, int count) {
+        if (component == 0 && count == SLOT_SIZE) {
+            return;
+        }
+
+        glsl.append('.');
+
+        for (int i = 0; i < count; i++) {
+            glsl.append(COMPONENTS[component + i]);
+        }
+    }
+
+    private int getComponentOffset(int member, int element, int component) throws IllegalArgumentException {
+        checkMember(member);
+
+        if (element < 0 || element >= mMembers[member].getElementCount()) {
+            throw new IllegalArgumentException("Invalid element of uniform block member " + mMembers[member].getName() + ": " + element);
+        }
+
+        Type type = mMembers[member].getType();
+
+        if (component < 0 || component >= type.getComponentCount()) {
+            throw new IllegalArgumentException("Invalid component of uniform block member " + mMembers[member].getName() + ": " + component);
+        }
+
+        int column = component / type.getRows();
+        int row = component % type.getRows();
+
+        return mOffsets[member] + element * mStrides[member] + column * SLOT_SIZE + row;
+    }
+
+    private void checkMember(int member) throws IllegalArgumentException {
+        if (member < 0 || member >= mMembers.length) {
+            throw new IllegalArgumentException("Invalid uniform block member " + member);
+        }
+    }
+
+    private void checkComponents(int member, int count) throws IllegalArgumentException {
+        Type type = mMembers[member].getType();
+
+        if (type.isMatrix() || type.getRows() != count) {
+            throw new IllegalArgumentException("Uniform block member " + mMembers[member].getName() + " is a " + type + ", not " + count + " floats");
+        }
+    }
+
+    private boolean store(int offset, float value) {
+        if (Float.floatToRawIntBits(mData[offset]) == Float.floatToRawIntBits(value)) {
+            return false;
+        }
+
+        mData[offset] = value;
+        return true;
+    }
+
+    private void touch(int offset, int length) {
+        int first = offset / SLOT_SIZE;
+        int last = (offset + length - 1) / SLOT_SIZE;
+
+        for (int slot = first; slot <= last; slot++) {
+            mSlotVersions[slot] = mVersion;
+        }
+    }
+
+    private static int align(int value, int alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+}
@@ -0,0 +1,424 @@
+package com.zendeka.glesutils.gles20.shader;
+
+import android.opengl.GLES20;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Shadow copy of the uniform values of a single program, laid out in flat float and int arrays.
+ *
+ * A successful link initializes every active uniform to zero, so the shadow starts out zeroed and
+ * valid. Every changed() call compares the new value against the shadow, stores it and returns
+ * whether the upload has to reach GL. An invalidated handle is uploaded unconditionally until it
+ * has been set in full again. Array elements share the storage of their array, so invalidating
+ * either one invalidates the other as well.
+ */
+final class UniformCache {
+    private int[] mFloatOffsets = new int[0];
+    private int[] mIntOffsets = new int[0];
+    private int[] mLengths = new int[0];
+    private int[] mParents = new int[0];
+    private boolean[] mValid = new boolean[0];
+    private int mCount;
+
+    private float[] mFloats = new float[0];
+    private int[] mInts = new int[0];
+
+    private long mIssuedCount;
+    private long mSkippedCount;
+
+    /**
+     * Lays out the shadow for the given handles. A handle whose parent is another handle is an element
+     * of that uniform array and shares its storage.
+     */
+    void reset(int count, int[] types, int[] sizes, int[] parents, int[] elements) {
+        if (mLengths.length < count) {
+            mFloatOffsets = new int[count];
+            mIntOffsets = new int[count];
+            mLengths = new int[count];
+            mParents = new int[count];
+            mValid = new boolean[count];
+        }
+
+        int floatCount = 0;
+        int intCount = 0;
+
+        for (int handle = 0; handle < count; handle++) {
+            int type = types[handle];
+            int length = getComponentCount(type) * sizes[handle];
+
+            mFloatOffsets[handle] = -1;
+            mIntOffsets[handle] = -1;
+            mLengths[handle] = length;
+            mParents[handle] = -1;
+            mValid[handle] = length > 0;
+
+            if (length == 0) {
+                continue;
+            }
+
+            int parent = parents[handle];
+
+            if (parent >= 0 && parent != handle) {
+                int elementOffset = elements[handle] * length;
+
+                if (mFloatOffsets[parent] >= 0) {
+                    mFloatOffsets[handle] = mFloatOffsets[parent] + elementOffset;
+                } else if (mIntOffsets[parent] >= 0) {
+                    mIntOffsets[handle] = mIntOffsets[parent] + elementOffset;
+                }
+
+                mParents[handle] = parent;
+                mValid[handle] = mValid[parent];
+                continue;
+            }
+
+            if (isFloatType(type)) {
+                mFloatOffsets[handle] = floatCount;
+                floatCount += length;
+            } else {
+                mIntOffsets[handle] = intCount;
+                intCount += length;
+            }
+        }
+
+        if (mFloats.length < floatCount) {
+            mFloats = new float[floatCount];
+        } else {
+            Arrays.fill(mFloats, 0, floatCount, 0.0f);
+        }
+
+        if (mInts.length < intCount) {
+            mInts = new int[intCount];
+        } else {
+            Arrays.fill(mInts, 0, intCount, 0);
+        }
+
+        mCount = count;
+    }
+
+    void invalidate() {
+        Arrays.fill(mValid, 0, mCount, false);
+    }
+
+    void invalidate(int handle) {
+        if (handle >= mCount) {
+            return;
+        }
+
+        mValid[handle] = false;
+
+        int parent = mParents[handle];
+
+        if (parent >= 0) {
+            mValid[parent] = false;
+            return;
+        }
+
+        for (int element = 0; element < mCount; element++) {
+            if (mParents[element] == handle) {
+                mValid[element] = false;
+            }
+        }
+    }
+
+    long getIssuedCount() {
+        return mIssuedCount;
+    }
+
+    long getSkippedCount() {
+        return mSkippedCount;
+    }
+
+    void resetCounters() {
+        mIssuedCount = 0;
+        mSkippedCount = 0;
+    }
+
+    boolean changed(int handle, float x) {
+        int offset = getFloatOffset(handle, 1);
+
+        if (offset < 0) {
+            return issued(handle);
+        }
+
+        boolean changed = !mValid[handle] | store(offset, x);
+
+        return validate(handle, 1, changed);
+    }
+
+    boolean changed(int handle, float x, float y) {
+        int offset = getFloatOffset(handle, 2);
+
+        if (offset < 0) {
+            return issued(handle);
+        }
+
+        boolean changed = !mValid[handle] | store(offset, x) | store(offset + 1, y);
+
+        return validate(handle, 2, changed);
+    }
+
+    boolean changed(int handle, float x, float y, float z) {
+        int offset = getFloatOffset(handle, 3);
+
+        if (offset < 0) {
+            return issued(handle);
+        }
+
+        boolean changed = !mValid[handle] | store(offset, x) | store(offset + 1, y) | store(offset + 2, z);
+
+        return validate(handle, 3, changed);
+    }
+
+    boolean changed(int handle, float x, float y, float z, float w) {
+        int offset = getFloatOffset(handle, 4);
+
+        if (offset < 0) {
+            return issued(handle);
+        }
+
+        boolean changed = !mValid[handle] | store(offset, x) | store(offset + 1, y) | store(offset + 2, z) | store(offset + 3, w);
+
+        return validate(handle, 4, changed);
+    }
+
+    boolean changed(int handle, int x) {
+        int offset = getIntOffset(handle, 1);
+
+        if (offset < 0) {
+            return issued(handle);
+        }
+
+        boolean changed = !mValid[handle] | store(offset, x);
+
+        return validate(handle, 1, changed);
+    }
+
+    boolean changed(int handle, int x, int y) {
+        int offset = getIntOffset(handle, 2);
+
+        if (offset < 0) {
+            return issued(handle);
+        }
+
+        boolean changed = !mValid[handle] | store(offset, x) | store(offset + 1, y);
+
+        return validate(handle, 2, changed);
+    }
+
+    boolean changed(int handle, int x, int y, int z) {
+        int offset = getIntOffset(handle, 3);
+
+        if (offset < 0) {
+            return issued(handle);
+        }
+
+        boolean changed = !mValid[handle] | store(offset, x) | store(offset + 1, y) | store(offset + 2, z);
+
+        return validate(handle, 3, changed);
+    }
+
+    boolean changed(int handle, int x, int y, int z, int w) {
+        int offset = getIntOffset(handle, 4);
+
+        if (offset < 0) {
+            return issued(handle);
+        }
+
+        boolean changed = !mValid[handle] | store(offset, x) | store(offset + 1, y) | store(offset + 2, z) | store(offset + 3, w);
+
+        return validate(handle, 4, changed);
+    }
+
+    boolean changed(int handle, float[] v, int vOffset, int length) {
+        int offset = getFloatOffset(handle, length);
+
+        if (offset < 0) {
+            return issued(handle);
+        }
+
+        boolean changed = !mValid[handle];
+
+        for (int i = 0; i < length; i++) {
+            changed |= store(offset + i, v[vOffset + i]);
+        }
+
+        return validate(handle, length, changed);
+    }
+
+    boolean changed(int handle, FloatBuffer v, int length) {
+        int offset = getFloatOffset(handle, length);
+
+        if (offset < 0 || v.remaining() < length) {
+            return issued(handle);
+        }
+
+        boolean changed = !mValid[handle];
+        int position = v.position();
+
+        for (int i = 0; i < length; i++) {
+            changed |= store(offset + i, v.get(position + i));
+        }
+
+        return validate(handle, length, changed);
+    }
+
+    boolean changed(int handle, int[] v, int vOffset, int length) {
+        int offset = getIntOffset(handle, length);
+
+        if (offset < 0) {
+            return issued(handle);
+        }
+
+        boolean changed = !mValid[handle];
+
+        for (int i = 0; i < length; i++) {
+            changed |= store(offset + i, v[vOffset + i]);
+        }
+
+        return validate(handle, length, changed);
+    }
+
+    boolean changed(int handle, IntBuffer v, int length) {
+        int offset = getIntOffset(handle, length);
+
+        if (offset < 0 || v.remaining() < length) {
+            return issued(handle);
+        }
+
+        boolean changed = !mValid[handle];
+        int position = v.position();
+
+        for (int i = 0; i < length; i++) {
+            changed |= store(offset + i, v.get(position + i));
+        }
+
+        return validate(handle, length, changed);
+    }
+
+    boolean changed(int handle, boolean transpose, float[] v, int vOffset, int length) {
+        if (transpose) {
+            return issued(handle);
+        }
+
+        return changed(handle, v, vOffset, length);
+    }
+
+    boolean changed(int handle, boolean transpose, FloatBuffer v, int length) {
+        if (transpose) {
+            return issued(handle);
+        }
+
+        return changed(handle, v, length);
+    }
+
+    private int getFloatOffset(int handle, int length) {
+        if (handle >= mCount || length > mLengths[handle]) {
+            return -1;
+        }
+
+        return mFloatOffsets[handle];
+    }
+
+    private int getIntOffset(int handle, int length) {
+        if (handle >= mCount || length > mLengths[handle]) {
+            return -1;
+        }
+
+        return mIntOffsets[handle];
+    }
+
+    private boolean store(int offset, float value) {
+        if (Float.floatToRawIntBits(mFloats[offset]) == Float.floatToRawIntBits(value)) {
+            return false;
+        }
+
+        mFloats[offset] = value;
+        return true;
+    }
+
+    private boolean store(int offset, int value) {
+        if (mInts[offset] == value) {
+            return false;
+        }
+
+        mInts[offset] = value;
+        return true;
+    }
+
+    private boolean validate(int handle, int length, boolean changed) {
+        if (!mValid[handle] && length == mLengths[handle]) {
+            mValid[handle] = true;
+
+            // An array set in full covers its elements too
+            for (int element = 0; element < mCount; element++) {
+                if (mParents[element] == handle) {
+                    mValid[element] = true;
+                }
+            }
+        }
+
+        if (!changed) {
+            mSkippedCount++;
+            return false;
+        }
+
+        mIssuedCount++;
+        return true;
+    }
+
+    private boolean issued(int handle) {
+        // Whatever GL makes of this upload, the shadow no longer knows the value
+        invalidate(handle);
+        mIssuedCount++;
+        return true;
+    }
+
+    private static boolean isFloatType(int type) {
+        switch (type) {
+            case GLES20.GL_FLOAT:
+            case GLES20.GL_FLOAT_VEC2:
+            case GLES20.GL_FLOAT_VEC3:
+            case GLES20.GL_FLOAT_VEC4:
+            case GLES20.GL_FLOAT_MAT2:
+            case GLES20.GL_FLOAT_MAT3:
+            case GLES20.GL_FLOAT_MAT4:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int getComponentCount(int type) {
+        switch (type) {
+            case GLES20.GL_FLOAT:
+            case GLES20.GL_INT:
+            case GLES20.GL_BOOL:
+            case GLES20.GL_SAMPLER_2D:
+            case GLES20.GL_SAMPLER_CUBE:
+                return 1;
+            case GLES20.GL_FLOAT_VEC2:
+            case GLES20.GL_INT_VEC2:
+            case GLES20.GL_BOOL_VEC2:
+                return 2;
+            case GLES20.GL_FLOAT_VEC3:
+            case GLES20.GL_INT_VEC3:
+            case GLES20.GL_BOOL_VEC3:
+                return 3;
+            case GLES20.GL_FLOAT_VEC4:
+            case GLES20.GL_INT_VEC4:
+            case GLES20.GL_BOOL_VEC4:
+            case GLES20.GL_FLOAT_MAT2:
+                return 4;
+            case GLES20.GL_FLOAT_MAT3:
+                return 9;
+            case GLES20.GL_FLOAT_MAT4:
+                return 16;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+// Default float precision for fragment shaders, highp where the hardware has it
+#ifdef GL_FRAGMENT_PRECISION_HIGH
+precision highp float;
+#else
+precision mediump float;
+#endif
@@ -0,0 +1,10 @@
+#include "precision.glsl"
+
+uniform sampler2D uTexture;
+
+varying vec2 vTexCoord;
+varying lowp vec4 vColor;
+
+void main() {
+    gl_FragColor = texture2D(uTexture, vTexCoord) * vColor;
+}
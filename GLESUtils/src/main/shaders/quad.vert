@@ -0,0 +1,15 @@
+// Textured, colored quads as drawn by QuadBatch
+uniform mat4 uProjection;
+
+attribute vec2 aPosition;
+attribute vec2 aTexCoord;
+attribute vec4 aColor;
+
+varying vec2 vTexCoord;
+varying lowp vec4 vColor;
+
+void main() {
+    vTexCoord = aTexCoord;
+    vColor = aColor;
+    gl_Position = uProjection * vec4(aPosition, 0.0, 1.0);
+}
@@ -0,0 +1,39 @@
+package android.util;
+
+/**
+ * Desktop stand-in for android.util.Log, used when the library runs outside of Android.
+ */
+public final class Log {
+    private Log() {
+    }
+
+    public static int d(String tag, String msg) {
+        return println("D", tag, msg);
+    }
+
+    public static int i(String tag, String msg) {
+        return println("I", tag, msg);
+    }
+
+    public static int w(String tag, String msg) {
+        return println("W", tag, msg);
+    }
+
+    public static int e(String tag, String msg) {
+        return println("E", tag, msg);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        int length = println("E", tag, msg);
+        tr.printStackTrace();
+
+        return length;
+    }
+
+    private static int println(String priority, String tag, String msg) {
+        String line = priority + "/" + tag + ": " + msg;
+        System.err.println(line);
+
+        return line.length();
+    }
+}
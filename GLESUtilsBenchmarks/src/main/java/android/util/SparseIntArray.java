@@ -0,0 +1,86 @@
+package android.util;
+
+import java.util.Arrays;
+
+/**
+ * Desktop stand-in for android.util.SparseIntArray: sorted keys with binary search, like the original.
+ */
+public class SparseIntArray {
+    private int[] mKeys;
+    private int[] mValues;
+    private int mSize;
+
+    public SparseIntArray() {
+        this(10);
+    }
+
+    public SparseIntArray(int initialCapacity) {
+        mKeys = new int[Math.max(initialCapacity, 1)];
+        mValues = new int[mKeys.length];
+    }
+
+    public int get(int key) {
+        return get(key, 0);
+    }
+
+    public int get(int key, int valueIfKeyNotFound) {
+        int i = Arrays.binarySearch(mKeys, 0, mSize, key);
+        return i < 0 ? valueIfKeyNotFound : mValues[i];
+    }
+
+    public void delete(int key) {
+        int i = Arrays.binarySearch(mKeys, 0, mSize, key);
+
+        if (i >= 0) {
+            removeAt(i);
+        }
+    }
+
+    public void removeAt(int index) {
+        System.arraycopy(mKeys, index + 1, mKeys, index, mSize - index - 1);
+        System.arraycopy(mValues, index + 1, mValues, index, mSize - index - 1);
+        mSize--;
+    }
+
+    public void put(int key, int value) {
+        int i = Arrays.binarySearch(mKeys, 0, mSize, key);
+
+        if (i >= 0) {
+            mValues[i] = value;
+            return;
+        }
+
+        i = ~i;
+
+        if (mSize == mKeys.length) {
+            mKeys = Arrays.copyOf(mKeys, mSize * 2);
+            mValues = Arrays.copyOf(mValues, mSize * 2);
+        }
+
+        System.arraycopy(mKeys, i, mKeys, i + 1, mSize - i);
+        System.arraycopy(mValues, i, mValues, i + 1, mSize - i);
+        mKeys[i] = key;
+        mValues[i] = value;
+        mSize++;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int keyAt(int index) {
+        return mKeys[index];
+    }
+
+    public int valueAt(int index) {
+        return mValues[index];
+    }
+
+    public int indexOfKey(int key) {
+        return Arrays.binarySearch(mKeys, 0, mSize, key);
+    }
+
+    public void clear() {
+        mSize = 0;
+    }
+}
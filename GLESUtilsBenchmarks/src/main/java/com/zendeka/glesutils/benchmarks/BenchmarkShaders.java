@@ -0,0 +1,48 @@
+package com.zendeka.glesutils.benchmarks;
+
+import com.zendeka.glesutils.gles20.shader.Shader;
+import com.zendeka.glesutils.gles20.shader.ShaderProgram;
+
+/**
+ * Shader sources shared by the benchmarks, sized like a typical lit, textured material.
+ */
+final class BenchmarkShaders {
+    static final String VERTEX_SOURCE =
+            "uniform mat4 uModelViewProjection;\n" +
+            "uniform mat4 uModel;\n" +
+            "uniform mat3 uNormalMatrix;\n" +
+            "uniform vec4 uLightPositions[4];\n" +
+            "attribute vec4 aPosition;\n" +
+            "attribute vec3 aNormal;\n" +
+            "attribute vec2 aTexCoord;\n" +
+            "varying vec3 vNormal;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "void main() {\n" +
+            "    vNormal = uNormalMatrix * aNormal;\n" +
+            "    vTexCoord = aTexCoord;\n" +
+            "    gl_Position = uModelViewProjection * aPosition;\n" +
+            "}\n";
+
+    static final String FRAGMENT_SOURCE =
+            "precision mediump float;\n" +
+            "uniform sampler2D uTexture;\n" +
+            "uniform vec4 uColor;\n" +
+            "uniform float uShininess;\n" +
+            "varying vec3 vNormal;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = texture2D(uTexture, vTexCoord) * uColor;\n" +
+            "}\n";
+
+    private BenchmarkShaders() {
+    }
+
+    static ShaderProgram createProgram() {
+        ShaderProgram program = new ShaderProgram();
+        program.setTag("Benchmark");
+        program.addShader(new Shader(Shader.Type.VERTEX, VERTEX_SOURCE, "Benchmark"));
+        program.addShader(new Shader(Shader.Type.FRAGMENT, FRAGMENT_SOURCE, "Benchmark"));
+
+        return program;
+    }
+}
@@ -0,0 +1,73 @@
+package com.zendeka.glesutils.benchmarks;
+
+import com.zendeka.glesutils.gles20.GLBackend;
+import com.zendeka.glesutils.gles20.GLContext;
+import com.zendeka.glesutils.gles20.StubGLBackend;
+import com.zendeka.glesutils.gles20.shader.Shader;
+import com.zendeka.glesutils.gles20.shader.ShaderProgram;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bookkeeping around Shader.compile() and ShaderProgram.build(): object creation, status and log
+ * queries and the uniform/attribute enumeration. The stub's "compiler" only scans declarations, so
+ * this is the part of a build the library is responsible for.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShaderBuildBenchmark {
+    private GLBackend mGL;
+
+    @Setup
+    public void setUp() {
+        GLContext context = new GLContext(new StubGLBackend());
+        GLContext.setCurrent(context);
+        mGL = context.getBackend();
+    }
+
+    @Benchmark
+    public int compileShader() {
+        Shader shader = new Shader(Shader.Type.VERTEX, BenchmarkShaders.VERTEX_SOURCE, "Benchmark");
+        shader.compile();
+
+        int name = shader.getName();
+        shader.unload();
+
+        return name;
+    }
+
+    @Benchmark
+    public int buildProgram() {
+        Shader vertexShader = new Shader(Shader.Type.VERTEX, BenchmarkShaders.VERTEX_SOURCE, "Benchmark");
+        Shader fragmentShader = new Shader(Shader.Type.FRAGMENT, BenchmarkShaders.FRAGMENT_SOURCE, "Benchmark");
+
+        ShaderProgram program = new ShaderProgram();
+        program.addShader(vertexShader);
+        program.addShader(fragmentShader);
+        program.build();
+
+        int uniformCount = program.getUniformCount();
+
+        program.unload();
+        vertexShader.unload();
+        fragmentShader.unload();
+        mGL.glDeleteProgram(program.getName());
+
+        return uniformCount;
+    }
+}
@@ -0,0 +1,99 @@
+package com.zendeka.glesutils.benchmarks;
+
+import com.zendeka.glesutils.gles20.GLContext;
+import com.zendeka.glesutils.gles20.StubGLBackend;
+import com.zendeka.glesutils.gles20.shader.ShaderProgram;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call overhead of ShaderProgram uniform uploads and location lookups. The "Changed" variants
+ * alternate between two values so every call reaches the backend, the others repeat the last value.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShaderProgramBenchmark {
+    private ShaderProgram mProgram;
+    private int mColorHandle;
+    private int mMatrixHandle;
+    private final float[] mMatrix = new float[16];
+    private float mValue;
+
+    @Setup
+    public void setUp() {
+        GLContext.setCurrent(new GLContext(new StubGLBackend()));
+
+        mProgram = BenchmarkShaders.createProgram();
+        mProgram.build();
+        mProgram.use();
+
+        mColorHandle = mProgram.getUniformHandle("uColor");
+        mMatrixHandle = mProgram.getUniformHandle("uModelViewProjection");
+    }
+
+    @Benchmark
+    public void setUniformByName() {
+        mProgram.setUniform("uColor", 1.0f, 0.5f, 0.25f, 1.0f);
+    }
+
+    @Benchmark
+    public void setUniformByNameChanged() {
+        mProgram.setUniform("uColor", nextValue(), 0.5f, 0.25f, 1.0f);
+    }
+
+    @Benchmark
+    public void setUniformByHandle() {
+        mProgram.setUniform(mColorHandle, 1.0f, 0.5f, 0.25f, 1.0f);
+    }
+
+    @Benchmark
+    public void setUniformByHandleChanged() {
+        mProgram.setUniform(mColorHandle, nextValue(), 0.5f, 0.25f, 1.0f);
+    }
+
+    @Benchmark
+    public void setUniformMatrix4fvByName() {
+        mProgram.setUniformMatrix4fv("uModelViewProjection", 1, false, mMatrix, 0);
+    }
+
+    @Benchmark
+    public void setUniformMatrix4fvByHandleChanged() {
+        mMatrix[0] = nextValue();
+        mProgram.setUniformMatrix4fv(mMatrixHandle, 1, false, mMatrix, 0);
+    }
+
+    @Benchmark
+    public int getUniformHandle() {
+        return mProgram.getUniformHandle("uColor");
+    }
+
+    @Benchmark
+    public int getUniformLocation() {
+        return mProgram.getUniformLocation(mColorHandle);
+    }
+
+    @Benchmark
+    public int getAttributeHandle() {
+        return mProgram.getAttributeHandle("aTexCoord");
+    }
+
+    private float nextValue() {
+        mValue = mValue == 0.0f ? 1.0f : 0.0f;
+        return mValue;
+    }
+}
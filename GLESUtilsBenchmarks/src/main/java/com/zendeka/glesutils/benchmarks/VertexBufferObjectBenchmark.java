@@ -0,0 +1,66 @@
+package com.zendeka.glesutils.benchmarks;
+
+import com.zendeka.glesutils.gles20.GLContext;
+import com.zendeka.glesutils.gles20.StubGLBackend;
+import com.zendeka.glesutils.gles20.VertexBufferObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of VertexBufferObject uploads. The stub backend copies the data like a driver would, so the
+ * larger sizes are dominated by that copy; the smallest one shows the library's own overhead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VertexBufferObjectBenchmark {
+    @Param({"64", "4096", "65536"})
+    public int mSize;
+
+    private VertexBufferObject mBuffer;
+    private FloatBuffer mData;
+
+    @Setup
+    public void setUp() {
+        GLContext.setCurrent(new GLContext(new StubGLBackend()));
+
+        mData = ByteBuffer.allocateDirect(mSize).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        mBuffer = new VertexBufferObject(VertexBufferObject.Target.ARRAY_BUFFER, VertexBufferObject.Usage.DYNAMIC_DRAW);
+        mBuffer.bind();
+        mBuffer.allocate(mSize);
+    }
+
+    @Benchmark
+    public void updateData() {
+        mBuffer.updateData(0, mSize, mData);
+    }
+
+    @Benchmark
+    public void bindAndUpdateData() {
+        mBuffer.bind();
+        mBuffer.updateData(0, mSize, mData);
+    }
+
+    @Benchmark
+    public void allocateAndBufferData() {
+        mBuffer.allocateAndBufferData(mSize, mData);
+    }
+}
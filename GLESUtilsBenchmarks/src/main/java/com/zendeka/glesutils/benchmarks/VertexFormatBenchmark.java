@@ -0,0 +1,71 @@
+package com.zendeka.glesutils.benchmarks;
+
+import android.opengl.GLES20;
+
+import com.zendeka.glesutils.gles20.GLContext;
+import com.zendeka.glesutils.gles20.StubGLBackend;
+import com.zendeka.glesutils.gles20.VertexBufferObject;
+import com.zendeka.glesutils.gles20.VertexFormat;
+import com.zendeka.glesutils.gles20.shader.ShaderProgram;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of binding the three attributes of an interleaved mesh, by name per attribute versus with a
+ * VertexFormat.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VertexFormatBenchmark {
+    private static final int STRIDE = 32;
+
+    private ShaderProgram mProgram;
+    private VertexFormat mFormat;
+
+    @Setup
+    public void setUp() {
+        GLContext.setCurrent(new GLContext(new StubGLBackend()));
+
+        mProgram = BenchmarkShaders.createProgram();
+        mProgram.build();
+        mProgram.use();
+
+        mFormat = new VertexFormat(
+                new VertexFormat.Attribute("aPosition", 3, GLES20.GL_FLOAT, false, 0),
+                new VertexFormat.Attribute("aNormal", 3, GLES20.GL_FLOAT, false, 12),
+                new VertexFormat.Attribute("aTexCoord", 2, GLES20.GL_FLOAT, false, 24));
+
+        new VertexBufferObject(VertexBufferObject.Target.ARRAY_BUFFER, VertexBufferObject.Usage.STATIC_DRAW).bind();
+    }
+
+    @Benchmark
+    public void bindAttributesByName() {
+        mProgram.enableAttributeArray("aPosition");
+        mProgram.enableAttributeArray("aNormal");
+        mProgram.enableAttributeArray("aTexCoord");
+
+        mProgram.setAttributePointer("aPosition", 3, GLES20.GL_FLOAT, false, STRIDE, 0);
+        mProgram.setAttributePointer("aNormal", 3, GLES20.GL_FLOAT, false, STRIDE, 12);
+        mProgram.setAttributePointer("aTexCoord", 2, GLES20.GL_FLOAT, false, STRIDE, 24);
+    }
+
+    @Benchmark
+    public void bindVertexFormat() {
+        mProgram.bindVertexFormat(mFormat, 0);
+    }
+}
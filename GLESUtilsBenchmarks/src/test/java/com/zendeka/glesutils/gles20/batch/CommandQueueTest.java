@@ -0,0 +1,244 @@
+package com.zendeka.glesutils.gles20.batch;
+
+import android.opengl.GLES20;
+
+import com.zendeka.glesutils.gles20.GLContext;
+import com.zendeka.glesutils.gles20.RecordingGLBackend;
+import com.zendeka.glesutils.gles20.RecordingGLBackend.Command;
+import com.zendeka.glesutils.gles20.StubGLBackend;
+import com.zendeka.glesutils.gles20.VertexBufferObject;
+import com.zendeka.glesutils.gles20.VertexFormat;
+import com.zendeka.glesutils.gles20.shader.Shader;
+import com.zendeka.glesutils.gles20.shader.ShaderProgram;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Records packets from several threads and replays them through a RecordingGLBackend around a
+ * StubGLBackend. Each packet draws from a first vertex that identifies it, so the command stream shows
+ * the order the packets were drawn in and the program and vertex buffer bound for each.
+ */
+public class CommandQueueTest {
+    private static final int THREADS = 4;
+    private static final int PACKETS = 250;
+    private static final int PROGRAMS = 2;
+    private static final int VERTEX_BUFFERS = 3;
+
+    private RecordingGLBackend mGL;
+    private StubGLBackend mStub;
+    private ShaderProgram[] mPrograms;
+    private VertexBufferObject[] mVertexBuffers;
+    private VertexFormat mFormat;
+    private ExecutorService mExecutor;
+
+    @Before
+    public void setUp() {
+        mGL = new RecordingGLBackend();
+        mStub = (StubGLBackend) mGL.getDelegate();
+        GLContext.setCurrent(new GLContext(mGL));
+
+        mPrograms = new ShaderProgram[PROGRAMS];
+
+        for (int i = 0; i < PROGRAMS; i++) {
+            mPrograms[i] = new ShaderProgram();
+            mPrograms[i].addShader(new Shader(Shader.Type.VERTEX, "attribute vec4 aPosition; uniform vec4 uColor; // program " + i, "test"));
+            mPrograms[i].addShader(new Shader(Shader.Type.FRAGMENT, "uniform float uAlpha;", "test"));
+            mPrograms[i].build();
+        }
+
+        mVertexBuffers = new VertexBufferObject[VERTEX_BUFFERS];
+
+        for (int i = 0; i < VERTEX_BUFFERS; i++) {
+            mVertexBuffers[i] = new VertexBufferObject(VertexBufferObject.Target.ARRAY_BUFFER, VertexBufferObject.Usage.STATIC_DRAW, null, 1024);
+        }
+
+        mFormat = new VertexFormat(new VertexFormat.Attribute("aPosition", 3, GLES20.GL_FLOAT, false, 0));
+        mExecutor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void replaysPacketsOfAllThreadsSorted() throws Exception {
+        final CommandQueue queue = new CommandQueue(THREADS, 16);
+        final int uColor = mPrograms[0].getUniformHandle("uColor");
+        final long[] keys = new long[THREADS * PACKETS];
+        final int[] programs = new int[THREADS * PACKETS];
+        final int[] vertexBuffers = new int[THREADS * PACKETS];
+
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+
+            futures.add(mExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    Random random = new Random(1234 + thread);
+                    CommandBuffer buffer = queue.getBuffer(thread);
+
+                    for (int i = 0; i < PACKETS; i++) {
+                        int id = thread * PACKETS + i;
+                        ShaderProgram program = mPrograms[random.nextInt(PROGRAMS)];
+                        VertexBufferObject vertexBuffer = mVertexBuffers[random.nextInt(VERTEX_BUFFERS)];
+                        float depth = random.nextFloat() * 200.0f - 100.0f;
+
+                        buffer.uniform(uColor, id, thread, 0.0f, 1.0f);
+                        buffer.drawArrays(program, mFormat, vertexBuffer, 0, GLES20.GL_TRIANGLES, id, 3, depth);
+
+                        keys[id] = CommandBuffer.getKey(program.getName(), vertexBuffer.getName(), depth);
+                        programs[id] = program.getName();
+                        vertexBuffers[id] = vertexBuffer.getName();
+                    }
+
+                    buffer.finish();
+                    return null;
+                }
+            }));
+        }
+
+        for (final Future<Void> future : futures) {
+            future.get();
+        }
+
+        int boundVertexBuffer = mStub.getBoundBuffer(GLES20.GL_ARRAY_BUFFER);
+        mGL.reset();
+
+        assertEquals(THREADS * PACKETS, queue.execute());
+
+        // Walk the command stream, checking what each draw saw bound
+        boolean[] drawn = new boolean[THREADS * PACKETS];
+        int currentProgram = 0;
+        int currentVertexBuffer = boundVertexBuffer;
+        int[] lastDrawn = new int[PROGRAMS];
+        long lastKey = Long.MIN_VALUE;
+        int draws = 0;
+
+        for (int i = 0; i < mGL.getCommandCount(); i++) {
+            Command command = mGL.getCommand(i);
+
+            if (command == Command.USE_PROGRAM) {
+                currentProgram = mGL.getCommandArgument(i, 0);
+            } else if (command == Command.BIND_BUFFER && mGL.getCommandArgument(i, 0) == GLES20.GL_ARRAY_BUFFER) {
+                currentVertexBuffer = mGL.getCommandArgument(i, 1);
+            } else if (command == Command.DRAW_ARRAYS) {
+                int id = mGL.getCommandArgument(i, 1);
+
+                assertFalse("packet " + id + " drawn twice", drawn[id]);
+                assertTrue("packet " + id + " out of order", keys[id] >= lastKey);
+                assertEquals(programs[id], currentProgram);
+                assertEquals(vertexBuffers[id], currentVertexBuffer);
+
+                drawn[id] = true;
+                lastKey = keys[id];
+                lastDrawn[getProgramIndex(currentProgram)] = id;
+                draws++;
+            }
+        }
+
+        assertEquals(THREADS * PACKETS, draws);
+
+        // Sorted by program, then vertex buffer: every program and every buffer within it is bound once
+        assertEquals(PROGRAMS, queue.getProgramChangeCount());
+        assertEquals(PROGRAMS * VERTEX_BUFFERS, queue.getVertexBufferChangeCount());
+        assertEquals(PROGRAMS, mGL.getCallCount(Command.USE_PROGRAM));
+        assertEquals(THREADS * PACKETS, queue.getDrawCallCount());
+
+        // Every packet has its own color, so each one reaches GL, and each program keeps the last one drawn
+        assertEquals(THREADS * PACKETS, mGL.getCallCount(Command.UNIFORM_4F));
+
+        for (int p = 0; p < PROGRAMS; p++) {
+            int location = mPrograms[p].getUniformLocation(mPrograms[p].getUniformHandle("uColor"));
+            int id = lastDrawn[p];
+
+            assertEquals(id, mStub.getUniformValue(mPrograms[p].getName(), location, 0), 0.0f);
+            assertEquals(id / PACKETS, mStub.getUniformValue(mPrograms[p].getName(), location, 1), 0.0f);
+        }
+
+        for (int t = 0; t < THREADS; t++) {
+            assertFalse(queue.getBuffer(t).isFinished());
+            assertEquals(0, queue.getBuffer(t).getPacketCount());
+        }
+    }
+
+    @Test
+    public void equalUniformsAreSetOnce() {
+        CommandQueue queue = new CommandQueue(1, 16);
+        CommandBuffer buffer = queue.getBuffer(0);
+        ShaderProgram program = mPrograms[0];
+        int uColor = program.getUniformHandle("uColor");
+
+        for (int i = 0; i < 3; i++) {
+            buffer.uniform(uColor, 0.5f, 0.5f, 0.5f, 1.0f);
+            buffer.drawArrays(program, mFormat, mVertexBuffers[0], 0, GLES20.GL_TRIANGLES, i, 3, i);
+        }
+
+        buffer.finish();
+        mGL.reset();
+
+        assertEquals(3, queue.execute());
+        assertEquals(1, mGL.getCallCount(Command.UNIFORM_4F));
+        assertEquals(3, mGL.getCallCount(Command.DRAW_ARRAYS));
+    }
+
+    @Test
+    public void unfinishedBuffersWaitForTheNextExecute() {
+        CommandQueue queue = new CommandQueue(2, 16);
+
+        queue.getBuffer(0).drawArrays(mPrograms[0], mFormat, mVertexBuffers[0], 0, GLES20.GL_TRIANGLES, 0, 3, 0.0f);
+        queue.getBuffer(0).finish();
+        queue.getBuffer(1).drawArrays(mPrograms[1], mFormat, mVertexBuffers[1], 0, GLES20.GL_TRIANGLES, 1, 3, 0.0f);
+
+        assertEquals(1, queue.execute());
+        assertEquals(1, queue.getBuffer(1).getPacketCount());
+
+        queue.getBuffer(1).finish();
+
+        assertEquals(1, queue.execute());
+        assertEquals(2, queue.getPacketCount());
+    }
+
+    @Test
+    public void finishRejectsTrailingUniforms() {
+        CommandQueue queue = new CommandQueue(1, 16);
+        CommandBuffer buffer = queue.getBuffer(0);
+
+        buffer.drawArrays(mPrograms[0], mFormat, mVertexBuffers[0], 0, GLES20.GL_TRIANGLES, 0, 3, 0.0f);
+        buffer.uniform(mPrograms[0].getUniformHandle("uColor"), 1.0f, 0.0f, 0.0f, 1.0f);
+
+        try {
+            buffer.finish();
+            fail("finish() accepted a uniform without a draw packet");
+        } catch (IllegalStateException e) {
+            assertFalse(buffer.isFinished());
+        }
+    }
+
+    private int getProgramIndex(int name) {
+        for (int p = 0; p < PROGRAMS; p++) {
+            if (mPrograms[p].getName() == name) {
+                return p;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown program " + name);
+    }
+}
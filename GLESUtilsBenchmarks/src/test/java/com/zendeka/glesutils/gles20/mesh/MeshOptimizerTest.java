@@ -0,0 +1,267 @@
+package com.zendeka.glesutils.gles20.mesh;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs each pass on grids of quads and checks that the triangles still cover the same positions
+ * with the same winding, besides what the pass itself promises.
+ */
+public class MeshOptimizerTest {
+    private static final int SIZE = 32;
+    private static final int STRIDE = 12;
+    private static final int CACHE_SIZE = MeshOptimizer.DEFAULT_CACHE_SIZE;
+
+    private final Random mRandom = new Random(1234);
+
+    @Test
+    public void weldMergesDuplicateVertices() {
+        // Every triangle gets vertices of its own, as in a file without shared vertices
+        int[] grid = grid();
+        ByteBuffer vertices = allocate(grid.length);
+        int[] indices = new int[grid.length];
+
+        for (int i = 0; i < grid.length; i++) {
+            putGridPosition(vertices, i, grid[i]);
+            indices[i] = i;
+        }
+
+        List<String> before = getTriangles(vertices, indices);
+        int vertexCount = MeshOptimizer.weld(vertices, STRIDE, grid.length, indices, indices.length);
+
+        assertEquals((SIZE + 1) * (SIZE + 1), vertexCount);
+        assertEquals(before, getTriangles(vertices, indices));
+
+        for (int i = 0; i < indices.length; i++) {
+            assertTrue(indices[i] < vertexCount);
+        }
+    }
+
+    @Test
+    public void optimizeVertexCacheKeepsTrianglesAndLowersAcmr() {
+        int[] indices = shuffle(grid());
+        int vertexCount = (SIZE + 1) * (SIZE + 1);
+
+        List<String> before = getSortedTriangles(indices);
+        float acmr = MeshOptimizer.getAcmr(indices, indices.length, CACHE_SIZE);
+
+        MeshOptimizer.optimizeVertexCache(indices, indices.length, vertexCount, CACHE_SIZE);
+        float optimized = MeshOptimizer.getAcmr(indices, indices.length, CACHE_SIZE);
+
+        assertEquals(before, getSortedTriangles(indices));
+        assertTrue("ACMR " + acmr + " -> " + optimized, optimized < acmr * 0.5f);
+        assertTrue("ACMR " + optimized, optimized < 1.0f);
+    }
+
+    @Test
+    public void optimizeVertexFetchDropsUnreferencedVertices() {
+        int[] grid = grid();
+        int gridVertexCount = (SIZE + 1) * (SIZE + 1);
+
+        // Keep the triangles of the first half of the rows, so the second half is never referenced
+        int[] indices = Arrays.copyOf(grid, grid.length / 2);
+        ByteBuffer vertices = allocate(gridVertexCount);
+
+        for (int vertex = 0; vertex < gridVertexCount; vertex++) {
+            putGridPosition(vertices, vertex, vertex);
+        }
+
+        List<String> before = getTriangles(vertices, indices);
+        int vertexCount = MeshOptimizer.optimizeVertexFetch(vertices, STRIDE, gridVertexCount, indices, indices.length);
+
+        assertEquals((SIZE / 2 + 1) * (SIZE + 1), vertexCount);
+        assertEquals(before, getTriangles(vertices, indices));
+
+        // Vertices are numbered in the order the indices first reference them
+        int next = 0;
+
+        for (final int index : indices) {
+            assertTrue(index <= next);
+            next = Math.max(next, index + 1);
+        }
+
+        assertEquals(vertexCount, next);
+    }
+
+    @Test
+    public void narrowIndicesSwitchesTo16Bit() {
+        MeshBuilder builder = buildGrid(MeshBuilder.IndexType.UNSIGNED_INT);
+        int[] indices = new int[builder.getIndexCount()];
+        builder.getIndices(indices);
+
+        assertTrue(builder.narrowIndices());
+        assertEquals(MeshBuilder.IndexType.UNSIGNED_SHORT, builder.getIndexType());
+        assertEquals(indices.length * 2, builder.getIndexDataSize());
+
+        for (int i = 0; i < indices.length; i++) {
+            assertEquals(indices[i], builder.getIndex(i));
+        }
+    }
+
+    @Test
+    public void narrowIndicesKeeps32BitForLargeMeshes() {
+        MeshBuilder builder = new MeshBuilder(false, false, false, MeshBuilder.IndexType.UNSIGNED_INT);
+
+        for (int vertex = 0; vertex <= 0x10000; vertex++) {
+            builder.vertex(vertex, 0.0f, 0.0f);
+        }
+
+        builder.triangle(0, 1, 0x10000);
+
+        assertFalse(builder.narrowIndices());
+        assertEquals(MeshBuilder.IndexType.UNSIGNED_INT, builder.getIndexType());
+        assertEquals(0x10000, builder.getIndex(2));
+    }
+
+    @Test
+    public void optimizeRunsEveryPass() {
+        MeshBuilder builder = buildGrid(MeshBuilder.IndexType.UNSIGNED_INT);
+        int[] indices = new int[builder.getIndexCount()];
+        builder.getIndices(indices);
+
+        float acmr = MeshOptimizer.getAcmr(builder, CACHE_SIZE);
+        List<String> before = getSortedTriangles(builder.getVertexData(), indices);
+
+        MeshOptimizer.optimize(builder, CACHE_SIZE);
+        indices = new int[builder.getIndexCount()];
+        builder.getIndices(indices);
+
+        assertEquals((SIZE + 1) * (SIZE + 1), builder.getVertexCount());
+        assertEquals(MeshBuilder.IndexType.UNSIGNED_SHORT, builder.getIndexType());
+        assertEquals(before, getSortedTriangles(builder.getVertexData(), indices));
+        assertTrue(MeshOptimizer.getAcmr(builder, CACHE_SIZE) < acmr);
+    }
+
+    /**
+     * Indices of a SIZE by SIZE grid of quads over (SIZE + 1) squared vertices, in row order.
+     */
+    private static int[] grid() {
+        int[] indices = new int[SIZE * SIZE * 6];
+        int i = 0;
+
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int a = y * (SIZE + 1) + x;
+                int b = a + 1;
+                int c = b + SIZE + 1;
+                int d = a + SIZE + 1;
+
+                indices[i++] = a;
+                indices[i++] = b;
+                indices[i++] = c;
+                indices[i++] = c;
+                indices[i++] = d;
+                indices[i++] = a;
+            }
+        }
+
+        return indices;
+    }
+
+    /**
+     * A grid with one vertex per triangle corner and its triangles in random order.
+     */
+    private MeshBuilder buildGrid(final MeshBuilder.IndexType indexType) {
+        int[] grid = shuffle(grid());
+        MeshBuilder builder = new MeshBuilder(false, false, false, indexType);
+
+        for (int i = 0; i < grid.length; i += 3) {
+            int a = builder.vertex(grid[i] % (SIZE + 1), grid[i] / (SIZE + 1), 0.0f);
+            int b = builder.vertex(grid[i + 1] % (SIZE + 1), grid[i + 1] / (SIZE + 1), 0.0f);
+            int c = builder.vertex(grid[i + 2] % (SIZE + 1), grid[i + 2] / (SIZE + 1), 0.0f);
+            builder.triangle(a, b, c);
+        }
+
+        return builder;
+    }
+
+    /**
+     * Shuffles whole triangles.
+     */
+    private int[] shuffle(final int[] indices) {
+        List<int[]> triangles = new ArrayList<int[]>();
+
+        for (int i = 0; i < indices.length; i += 3) {
+            triangles.add(new int[] { indices[i], indices[i + 1], indices[i + 2] });
+        }
+
+        Collections.shuffle(triangles, mRandom);
+
+        for (int i = 0; i < triangles.size(); i++) {
+            System.arraycopy(triangles.get(i), 0, indices, i * 3, 3);
+        }
+
+        return indices;
+    }
+
+    /**
+     * The triangles as strings of their positions, rotated so the smallest one comes first, which
+     * keeps the winding.
+     */
+    private static List<String> getTriangles(final ByteBuffer vertices, final int[] indices) {
+        List<String> triangles = new ArrayList<String>();
+
+        for (int i = 0; i < indices.length; i += 3) {
+            String[] corners = new String[3];
+
+            for (int c = 0; c < 3; c++) {
+                int offset = indices[i + c] * STRIDE;
+                corners[c] = vertices.getFloat(offset) + "," + vertices.getFloat(offset + 4) + "," + vertices.getFloat(offset + 8);
+            }
+
+            triangles.add(getTriangle(corners));
+        }
+
+        return triangles;
+    }
+
+    private static List<String> getSortedTriangles(final ByteBuffer vertices, final int[] indices) {
+        List<String> triangles = getTriangles(vertices, indices);
+        Collections.sort(triangles);
+        return triangles;
+    }
+
+    private static List<String> getSortedTriangles(final int[] indices) {
+        List<String> triangles = new ArrayList<String>();
+
+        for (int i = 0; i < indices.length; i += 3) {
+            triangles.add(getTriangle(new String[] { String.valueOf(indices[i]), String.valueOf(indices[i + 1]), String.valueOf(indices[i + 2]) }));
+        }
+
+        Collections.sort(triangles);
+        return triangles;
+    }
+
+    private static String getTriangle(final String[] corners) {
+        int first = 0;
+
+        for (int c = 1; c < 3; c++) {
+            if (corners[c].compareTo(corners[first]) < 0) {
+                first = c;
+            }
+        }
+
+        return corners[first] + " " + corners[(first + 1) % 3] + " " + corners[(first + 2) % 3];
+    }
+
+    private static void putGridPosition(final ByteBuffer vertices, int vertex, int gridVertex) {
+        vertices.putFloat(vertex * STRIDE, gridVertex % (SIZE + 1));
+        vertices.putFloat(vertex * STRIDE + 4, gridVertex / (SIZE + 1));
+        vertices.putFloat(vertex * STRIDE + 8, 0.0f);
+    }
+
+    private static ByteBuffer allocate(int vertexCount) {
+        return ByteBuffer.allocateDirect(vertexCount * STRIDE).order(ByteOrder.nativeOrder());
+    }
+}
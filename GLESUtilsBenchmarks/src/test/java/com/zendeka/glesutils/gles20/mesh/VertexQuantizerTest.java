@@ -0,0 +1,244 @@
+package com.zendeka.glesutils.gles20.mesh;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that every encoder stays within half a quantization step of its input, decoding the encoded
+ * buffer the way OpenGL ES 2.0 does, and that getMaxError() reports the error of the data.
+ */
+public class VertexQuantizerTest {
+    private static final int COUNT = 1000;
+    private static final int STRIDE = 20;
+    private static final int SHORT_MAX = 0xFFFF;
+    private static final int BYTE_MAX = 0xFF;
+
+    // Slack for the float arithmetic of encoding and decoding, relative to the magnitude of the values
+    private static final float EPSILON = 1e-6f;
+
+    private final Random mRandom = new Random(1234);
+
+    @Test
+    public void positionsStayWithinHalfAStep() {
+        float[] src = random(COUNT * 3, -250.0f, 1000.0f);
+        ByteBuffer dst = allocate();
+
+        VertexQuantizer.Encoding encoding = VertexQuantizer.encodePositions(src, 0, 3, COUNT, dst, 4, STRIDE);
+
+        float error = 0.0f;
+        float bound = 0.0f;
+
+        for (int c = 0; c < 3; c++) {
+            bound = Math.max(bound, encoding.getScale(c) / SHORT_MAX);
+        }
+
+        for (int i = 0; i < COUNT; i++) {
+            for (int c = 0; c < 3; c++) {
+                float decoded = decodeSigned(dst.getShort(4 + i * STRIDE + c * 2), SHORT_MAX) * encoding.getScale(c) + encoding.getBias(c);
+                error = Math.max(error, Math.abs(decoded - src[i * 3 + c]));
+            }
+
+            assertEquals(1.0f, decodeSigned(dst.getShort(4 + i * STRIDE + 6), SHORT_MAX) * encoding.getScale(3) + encoding.getBias(3), 0.0f);
+        }
+
+        assertWithin(bound, error, encoding, 1000.0f);
+    }
+
+    @Test
+    public void constantPositionsAreExact() {
+        float[] src = new float[COUNT * 2];
+
+        for (int i = 0; i < COUNT; i++) {
+            src[i * 2] = 3.25f;
+            src[i * 2 + 1] = -7.5f;
+        }
+
+        VertexQuantizer.Encoding encoding = VertexQuantizer.encodePositions(src, 0, 2, COUNT, allocate(), 0, STRIDE);
+
+        assertEquals(0.0f, encoding.getScale(0), 0.0f);
+        assertEquals(3.25f, encoding.getBias(0), 0.0f);
+        assertEquals(-7.5f, encoding.getBias(1), 0.0f);
+        assertEquals(0.0f, encoding.getMaxError(), 0.0f);
+    }
+
+    @Test
+    public void normalsStayWithinHalfAStep() {
+        float[] src = new float[COUNT * 4];
+
+        for (int i = 0; i < COUNT; i++) {
+            float x = mRandom.nextFloat() * 2.0f - 1.0f;
+            float y = mRandom.nextFloat() * 2.0f - 1.0f;
+            float z = mRandom.nextFloat() * 2.0f - 1.0f;
+            float length = (float) Math.sqrt(x * x + y * y + z * z);
+
+            src[i * 4] = x / length;
+            src[i * 4 + 1] = y / length;
+            src[i * 4 + 2] = z / length;
+            src[i * 4 + 3] = mRandom.nextBoolean() ? 1.0f : -1.0f;
+        }
+
+        ByteBuffer dst = allocate();
+        VertexQuantizer.Encoding encoding = VertexQuantizer.encodeNormals(src, 0, 4, COUNT, dst, 8, STRIDE);
+
+        float error = 0.0f;
+
+        for (int i = 0; i < COUNT; i++) {
+            for (int c = 0; c < 4; c++) {
+                float decoded = decodeSigned(dst.get(8 + i * STRIDE + c), BYTE_MAX) * encoding.getScale(c) + encoding.getBias(c);
+                error = Math.max(error, Math.abs(decoded - src[i * 4 + c]));
+            }
+        }
+
+        assertWithin(1.0f / BYTE_MAX, error, encoding, 1.0f);
+    }
+
+    @Test
+    public void normalsWithoutWDecodeToZeroW() {
+        float[] src = { 0.0f, 0.0f, 1.0f, 0.6f, -0.8f, 0.0f };
+        ByteBuffer dst = allocate();
+
+        VertexQuantizer.Encoding encoding = VertexQuantizer.encodeNormals(src, 0, 3, 2, dst, 0, STRIDE);
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals(0.0f, decodeSigned(dst.get(i * STRIDE + 3), BYTE_MAX) * encoding.getScale(3) + encoding.getBias(3), 0.0f);
+        }
+
+        assertTrue(encoding.getMaxError() <= 1.0f / BYTE_MAX + EPSILON);
+    }
+
+    @Test
+    public void outOfRangeNormalsAreClamped() {
+        float overshoot = 0.25f;
+        float[] src = { 1.0f + overshoot, 0.0f, -1.0f - overshoot, 0.5f, -0.5f, 0.5f };
+        ByteBuffer dst = allocate();
+
+        VertexQuantizer.Encoding encoding = VertexQuantizer.encodeNormals(src, 0, 3, 2, dst, 0, STRIDE);
+
+        assertEquals(1.0f, decodeSigned(dst.get(0), BYTE_MAX), 0.0f);
+        assertEquals(-1.0f, decodeSigned(dst.get(2), BYTE_MAX), 0.0f);
+
+        // The clamped components are off by the overshoot, the others by at most half a step
+        assertEquals(overshoot, encoding.getMaxError(), EPSILON);
+
+        for (int c = 0; c < 3; c++) {
+            assertEquals(src[3 + c], decodeSigned(dst.get(STRIDE + c), BYTE_MAX), 1.0f / BYTE_MAX + EPSILON);
+        }
+    }
+
+    @Test
+    public void tiledTexCoordsStayWithinHalfAStep() {
+        float[] src = random(COUNT * 2, -3.0f, 10.0f);
+        ByteBuffer dst = allocate();
+
+        VertexQuantizer.Encoding encoding = VertexQuantizer.encodeTexCoords(src, 0, COUNT, dst, 12, STRIDE);
+
+        float error = 0.0f;
+        float bound = Math.max(encoding.getScale(0), encoding.getScale(1)) / (2.0f * SHORT_MAX);
+
+        assertTrue(encoding.getBias(0) < 0.0f);
+        assertTrue(encoding.getScale(0) > 1.0f);
+
+        for (int i = 0; i < COUNT; i++) {
+            for (int c = 0; c < 2; c++) {
+                float decoded = decodeUnsigned(dst.getShort(12 + i * STRIDE + c * 2), SHORT_MAX) * encoding.getScale(c) + encoding.getBias(c);
+                error = Math.max(error, Math.abs(decoded - src[i * 2 + c]));
+            }
+        }
+
+        assertWithin(bound, error, encoding, 10.0f);
+    }
+
+    @Test
+    public void constantTexCoordsAreExact() {
+        float[] src = new float[COUNT * 2];
+
+        for (int i = 0; i < COUNT; i++) {
+            src[i * 2] = 0.5f;
+            src[i * 2 + 1] = 2.0f;
+        }
+
+        VertexQuantizer.Encoding encoding = VertexQuantizer.encodeTexCoords(src, 0, COUNT, allocate(), 0, STRIDE);
+
+        assertEquals(0.0f, encoding.getScale(0), 0.0f);
+        assertEquals(0.0f, encoding.getScale(1), 0.0f);
+        assertEquals(0.0f, encoding.getMaxError(), 0.0f);
+    }
+
+    @Test
+    public void colorsStayWithinHalfAStep() {
+        float[] src = random(COUNT * 3, 0.0f, 1.0f);
+        ByteBuffer dst = allocate();
+
+        VertexQuantizer.Encoding encoding = VertexQuantizer.encodeColors(src, 0, 3, COUNT, dst, 16, STRIDE);
+
+        float error = 0.0f;
+
+        for (int i = 0; i < COUNT; i++) {
+            for (int c = 0; c < 3; c++) {
+                float decoded = decodeUnsigned(dst.get(16 + i * STRIDE + c), BYTE_MAX);
+                error = Math.max(error, Math.abs(decoded - src[i * 3 + c]));
+            }
+
+            assertEquals(1.0f, decodeUnsigned(dst.get(16 + i * STRIDE + 3), BYTE_MAX), 0.0f);
+        }
+
+        assertWithin(0.5f / BYTE_MAX, error, encoding, 1.0f);
+    }
+
+    @Test
+    public void constantColorsAreExactOnSteps() {
+        float[] src = new float[COUNT * 4];
+
+        for (int i = 0; i < src.length; i++) {
+            src[i] = (i % 4) / 3.0f;
+        }
+
+        VertexQuantizer.Encoding encoding = VertexQuantizer.encodeColors(src, 0, 4, COUNT, allocate(), 0, STRIDE);
+
+        assertTrue(encoding.getMaxError() <= 0.5f / BYTE_MAX + EPSILON);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShortDestination() {
+        VertexQuantizer.encodePositions(new float[12], 0, 3, 4, ByteBuffer.allocate(3 * STRIDE + 4), 0, STRIDE);
+    }
+
+    /**
+     * Checks the error of the decoded data against bound, and that getMaxError() agrees with it.
+     */
+    private static void assertWithin(float bound, float error, final VertexQuantizer.Encoding encoding, float magnitude) {
+        float slack = EPSILON * magnitude;
+
+        assertTrue("error " + error + " exceeds half a step " + bound, error <= bound + slack);
+        assertTrue("getMaxError() " + encoding.getMaxError() + " exceeds half a step " + bound, encoding.getMaxError() <= bound + slack);
+        assertEquals(error, encoding.getMaxError(), slack);
+    }
+
+    private float[] random(int length, float min, float max) {
+        float[] values = new float[length];
+
+        for (int i = 0; i < length; i++) {
+            values[i] = min + mRandom.nextFloat() * (max - min);
+        }
+
+        return values;
+    }
+
+    private static ByteBuffer allocate() {
+        return ByteBuffer.allocateDirect(COUNT * STRIDE + 16).order(ByteOrder.nativeOrder());
+    }
+
+    private static float decodeSigned(int code, int max) {
+        return (2.0f * code + 1.0f) / max;
+    }
+
+    private static float decodeUnsigned(int code, int max) {
+        return (float) (code & max) / max;
+    }
+}
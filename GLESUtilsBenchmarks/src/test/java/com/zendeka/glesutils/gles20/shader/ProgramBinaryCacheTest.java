@@ -0,0 +1,184 @@
+package com.zendeka.glesutils.gles20.shader;
+
+import com.zendeka.glesutils.gles20.GLContext;
+import com.zendeka.glesutils.gles20.StubGLBackend;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the cache against files in a temporary directory and StubGLBackend, whose program binaries
+ * record the shaders they were linked from. Every session() stands for a new launch of the app.
+ */
+public class ProgramBinaryCacheTest {
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mDirectory;
+    private StubGLBackend mGL;
+    private ProgramBinaryCache mCache;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = mFolder.newFolder("programs");
+    }
+
+    @Test
+    public void secondLaunchLoadsWithoutCompiling() {
+        session("Stub");
+        build(0, 1, 2);
+
+        assertEquals(3, mCache.getStoreCount());
+        assertEquals(3, mCache.getMissCount());
+        assertEquals(3, getBinaries().size());
+
+        session("Stub");
+        ShaderProgram program = build(0).get(0);
+
+        assertEquals(1, mCache.getHitCount());
+        assertEquals(0, mGL.getCompileCount());
+        assertEquals(0, mGL.getLinkCount());
+        assertTrue(program.isBuilt());
+        assertTrue(program.getUniformLocation(program.getUniformHandle("uColor")) >= 0);
+    }
+
+    @Test
+    public void damagedBinaryIsRejectedAndReplaced() throws IOException {
+        session("Stub");
+        build(0);
+
+        File binary = getBinaries().get(0);
+        RandomAccessFile file = new RandomAccessFile(binary, "rw");
+
+        try {
+            file.seek(file.length() - 1);
+            file.write(file.read() ^ 0xFF);
+        } finally {
+            file.close();
+        }
+
+        session("Stub");
+        ShaderProgram program = build(0).get(0);
+
+        assertTrue(program.isBuilt());
+        assertEquals(1, mCache.getRejectCount());
+        assertEquals(1, mCache.getStoreCount());
+        assertEquals(1, mGL.getLinkCount());
+
+        session("Stub");
+        build(0);
+
+        assertEquals(1, mCache.getHitCount());
+    }
+
+    @Test
+    public void driverChangeDeletesTheBinariesOfTheOldDriver() {
+        session("Old driver");
+        build(0, 1);
+        File oldDirectory = getBinaries().get(0).getParentFile();
+
+        session("New driver");
+        build(0);
+
+        assertEquals(0, mCache.getHitCount());
+        assertEquals(1, mCache.getStoreCount());
+        assertFalse(oldDirectory.exists());
+        assertEquals(1, mDirectory.listFiles().length);
+        assertEquals(1, getBinaries().size());
+    }
+
+    @Test
+    public void pruneDeletesBinariesNotUsedSinceOpening() {
+        session("Stub");
+        build(0, 1, 2);
+
+        // Program 1 is gone from this version of the app, program 2 is not needed yet
+        session("Stub");
+        build(0);
+
+        assertEquals(2, mCache.prune());
+        assertEquals(1, getBinaries().size());
+
+        session("Stub");
+        build(0, 2);
+
+        assertEquals(1, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+    }
+
+    @Test
+    public void clearKeepsForeignFiles() throws IOException {
+        File foreign = new File(mDirectory, "notes.txt");
+        assertTrue(foreign.createNewFile());
+
+        session("Stub");
+        build(0, 1);
+        mCache.clear();
+
+        assertEquals(0, getBinaries().size());
+        assertTrue(foreign.exists());
+        assertEquals(1, mDirectory.listFiles().length);
+    }
+
+    @Test
+    public void unsupportedContextWritesNothing() {
+        session("Stub");
+        mGL.setProgramBinarySupported(false);
+        ShaderProgram program = build(0).get(0);
+
+        assertFalse(mCache.isSupported());
+        assertTrue(program.isBuilt());
+        assertEquals(0, mCache.getStoreCount());
+        assertEquals(0, getBinaries().size());
+    }
+
+    private void session(final String renderer) {
+        mGL = new StubGLBackend();
+        mGL.setRenderer(renderer);
+        GLContext.setCurrent(new GLContext(mGL));
+        mCache = new ProgramBinaryCache(mDirectory);
+    }
+
+    private List<ShaderProgram> build(int... variants) {
+        List<ShaderProgram> programs = new ArrayList<ShaderProgram>();
+
+        for (final int variant : variants) {
+            ShaderProgram program = new ShaderProgram();
+            program.addShader(new Shader(Shader.Type.VERTEX, "attribute vec4 aPosition; uniform mat4 uMatrix; // variant " + variant, "test"));
+            program.addShader(new Shader(Shader.Type.FRAGMENT, "uniform vec4 uColor;", "test"));
+            program.build(mCache);
+            programs.add(program);
+        }
+
+        return programs;
+    }
+
+    private List<File> getBinaries() {
+        List<File> binaries = new ArrayList<File>();
+        File[] files = mDirectory.listFiles();
+
+        for (final File file : files) {
+            File[] children = file.isDirectory() ? file.listFiles() : new File[] { file };
+
+            for (final File child : children) {
+                if (child.getName().endsWith(".bin")) {
+                    binaries.add(child);
+                }
+            }
+        }
+
+        return binaries;
+    }
+}
@@ -0,0 +1,209 @@
+package com.zendeka.glesutils.gles20.shader;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Processes sources from a map and compares the output line by line.
+ */
+public class ShaderPreprocessorTest {
+    private final Map<String, String> mSources = new HashMap<String, String>();
+
+    private final ShaderPreprocessor mPreprocessor = new ShaderPreprocessor(new ShaderPreprocessor.SourceProvider() {
+        @Override
+        public String getSource(String name) {
+            return mSources.get(name);
+        }
+    });
+
+    @Test
+    public void resolvesNestedIncludes() {
+        mSources.put("main", "#include \"lighting\"\nvoid main() {\n    gl_FragColor = light();\n}\n");
+        mSources.put("lighting", "# include <common>\nvec4 light() { return COLOR; }\n");
+        mSources.put("common", "precision mediump float;\nconst vec4 COLOR = vec4(1.0);\n");
+
+        assertEquals("precision mediump float;\n" +
+                "const vec4 COLOR = vec4(1.0);\n" +
+                "vec4 light() { return COLOR; }\n" +
+                "void main() {\n" +
+                "gl_FragColor = light();\n" +
+                "}\n", mPreprocessor.process("main", null));
+    }
+
+    @Test
+    public void stripsCommentsAndWhitespace() {
+        mSources.put("main", "  uniform   vec4\tuColor; // the color\n\n/* block\n comment */ void main() /* inline */ {}\n");
+
+        assertEquals("uniform vec4 uColor;\nvoid main() {}\n", mPreprocessor.process("main", null));
+    }
+
+    @Test
+    public void includeNamesKeepCommentDelimiters() {
+        mSources.put("main", "#include \"shaders//common.glsl\" // shared code\n#include <lib/*.glsl>\nvoid main() {}\n");
+        mSources.put("shaders//common.glsl", "float a;\n");
+        mSources.put("lib/*.glsl", "float b;\n");
+
+        assertEquals("float a;\nfloat b;\nvoid main() {}\n", mPreprocessor.process("main", null));
+    }
+
+    @Test
+    public void rejectsUnterminatedIncludeNames() {
+        mSources.put("main", "#include \"common\nvoid main() {}\n");
+        mSources.put("common", "float a;\n");
+
+        assertRejected("main");
+    }
+
+    @Test
+    public void rejectsRecursiveIncludes() {
+        mSources.put("self", "#include \"self\"\n");
+        mSources.put("a", "#include \"b\"\n");
+        mSources.put("b", "#include \"c\"\n");
+        mSources.put("c", "#include \"a\"\n");
+
+        assertRejected("self");
+        assertRejected("a");
+        assertEquals(0, mPreprocessor.getCacheSize());
+    }
+
+    @Test
+    public void sharedIncludesAreNotRecursive() {
+        mSources.put("main", "#include \"a\"\n#include \"a\"\n");
+        mSources.put("a", "float a;\n");
+
+        assertEquals("float a;\nfloat a;\n", mPreprocessor.process("main", null));
+    }
+
+    @Test
+    public void rejectsMissingIncludes() {
+        mSources.put("main", "#include \"missing\"\n");
+
+        assertRejected("main");
+        assertRejected("missing");
+    }
+
+    @Test
+    public void injectsDefinesAfterVersion() {
+        mSources.put("main", "// header\n#version 100\n#ifdef LIGHTING\nfloat a;\n#endif\n");
+
+        Map<String, String> defines = new HashMap<String, String>();
+        defines.put("LIGHTING", null);
+        defines.put("COUNT", "4");
+
+        assertEquals("#version 100\n" +
+                "#define COUNT 4\n" +
+                "#define LIGHTING\n" +
+                "#ifdef LIGHTING\n" +
+                "float a;\n" +
+                "#endif\n", mPreprocessor.process("main", defines));
+    }
+
+    @Test
+    public void injectsDefinesFirstWithoutVersion() {
+        mSources.put("main", "float a;\n");
+
+        assertEquals("#define A 1\nfloat a;\n", mPreprocessor.process("main", defines("A", "1")));
+    }
+
+    @Test
+    public void rejectsLateVersion() {
+        mSources.put("main", "float a;\n#version 100\n");
+        mSources.put("included", "#include \"version\"\n");
+        mSources.put("version", "#version 100\n");
+
+        assertRejected("main");
+        assertRejected("included");
+    }
+
+    @Test
+    public void rejectsInvalidDefineNames() {
+        mSources.put("main", "float a;\n");
+
+        try {
+            mPreprocessor.process("main", defines("1A", ""));
+            fail("Accepted an invalid #define name");
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, mPreprocessor.getCacheSize());
+        }
+    }
+
+    @Test
+    public void keysIgnoreDefineOrder() {
+        mSources.put("main", "float a;\n");
+
+        Map<String, String> forward = new LinkedHashMap<String, String>();
+        forward.put("A", "1");
+        forward.put("B", "2");
+
+        Map<String, String> backward = new LinkedHashMap<String, String>();
+        backward.put("B", "2");
+        backward.put("A", "1");
+
+        assertEquals(mPreprocessor.getKey("main", forward), mPreprocessor.getKey("main", backward));
+
+        String source = mPreprocessor.process("main", forward);
+
+        assertSame(source, mPreprocessor.process("main", backward));
+        assertEquals(1, mPreprocessor.getMissCount());
+        assertEquals(1, mPreprocessor.getHitCount());
+    }
+
+    @Test
+    public void keysTellPermutationsApart() {
+        assertEquals(mPreprocessor.getKey("main", null), mPreprocessor.getKey("main", new HashMap<String, String>()));
+        assertEquals(mPreprocessor.getKey("main", defines("A", null)), mPreprocessor.getKey("main", defines("A", "")));
+
+        assertFalse(mPreprocessor.getKey("main", null).equals(mPreprocessor.getKey("other", null)));
+        assertFalse(mPreprocessor.getKey("main", defines("A", "1")).equals(mPreprocessor.getKey("main", defines("A", "2"))));
+
+        // Separators inside names and values cannot make two define sets look alike
+        Map<String, String> two = defines("A", "1");
+        two.put("B", "2");
+
+        assertFalse(mPreprocessor.getKey("main", two).equals(mPreprocessor.getKey("main", defines("A", "1|1:B=1:2"))));
+        assertFalse(mPreprocessor.getKey("main|1:A=0:", null).equals(mPreprocessor.getKey("main", defines("A", ""))));
+    }
+
+    @Test
+    public void permutationsAreCachedSeparately() {
+        mSources.put("main", "float a;\n");
+
+        String plain = mPreprocessor.process("main", null);
+        String defined = mPreprocessor.process("main", defines("A", "1"));
+
+        assertFalse(plain.equals(defined));
+        assertTrue(defined.startsWith("#define A 1\n"));
+        assertEquals(2, mPreprocessor.getCacheSize());
+
+        // Cached sources are not reread from the provider
+        mSources.put("main", "float b;\n");
+        assertSame(plain, mPreprocessor.process("main", null));
+
+        mPreprocessor.clearCache();
+        assertEquals("float b;\n", mPreprocessor.process("main", null));
+    }
+
+    private void assertRejected(final String name) {
+        try {
+            mPreprocessor.process(name, null);
+            fail("Processed \"" + name + "\"");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static Map<String, String> defines(final String name, final String value) {
+        Map<String, String> defines = new HashMap<String, String>();
+        defines.put(name, value);
+        return defines;
+    }
+}
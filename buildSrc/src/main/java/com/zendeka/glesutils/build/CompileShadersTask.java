@@ -0,0 +1,89 @@
+package com.zendeka.glesutils.build;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Runs the ShaderCompiler over sourceDir and fails the build if any shader does not compile.
+ */
+public class CompileShadersTask extends DefaultTask {
+    private File mSourceDir;
+    private File mJavaOutputDir;
+    private File mMinifiedOutputDir;
+    private String mPackageName = "com.zendeka.glesutils.gles20.shader";
+    private String mClassName = "Shaders";
+
+    @InputDirectory
+    public File getSourceDir() {
+        return mSourceDir;
+    }
+
+    public void setSourceDir(final File sourceDir) {
+        mSourceDir = sourceDir;
+    }
+
+    @OutputDirectory
+    public File getJavaOutputDir() {
+        return mJavaOutputDir;
+    }
+
+    public void setJavaOutputDir(final File javaOutputDir) {
+        mJavaOutputDir = javaOutputDir;
+    }
+
+    @OutputDirectory
+    public File getMinifiedOutputDir() {
+        return mMinifiedOutputDir;
+    }
+
+    public void setMinifiedOutputDir(final File minifiedOutputDir) {
+        mMinifiedOutputDir = minifiedOutputDir;
+    }
+
+    @Input
+    public String getPackageName() {
+        return mPackageName;
+    }
+
+    public void setPackageName(final String packageName) {
+        mPackageName = packageName;
+    }
+
+    @Input
+    public String getClassName() {
+        return mClassName;
+    }
+
+    public void setClassName(final String className) {
+        mClassName = className;
+    }
+
+    @TaskAction
+    public void compile() {
+        List<String> errors;
+
+        try {
+            errors = new ShaderCompiler(mSourceDir).compile(mMinifiedOutputDir, mJavaOutputDir, mPackageName, mClassName);
+        } catch (IOException e) {
+            throw new GradleException("Failed to compile shaders: " + e.getMessage(), e);
+        }
+
+        if (errors.isEmpty()) {
+            return;
+        }
+
+        for (final String error : errors) {
+            getLogger().error(error);
+        }
+
+        throw new GradleException(errors.size() + (errors.size() == 1 ? " shader error" : " shader errors") + ", see above");
+    }
+}
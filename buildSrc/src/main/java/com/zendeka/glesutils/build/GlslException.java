@@ -0,0 +1,35 @@
+package com.zendeka.glesutils.build;
+
+/**
+ * A preprocessor or syntax error in a GLSL source, reported as "file:line:column: message".
+ */
+public final class GlslException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    private final String mFile;
+    private final int mLine;
+    private final int mColumn;
+
+    public GlslException(final String file, int line, int column, final String message) {
+        super(file + ":" + line + ":" + column + ": " + message);
+        mFile = file;
+        mLine = line;
+        mColumn = column;
+    }
+
+    public GlslException(final GlslToken token, final String message) {
+        this(token.getFile(), token.getLine(), token.getColumn(), message);
+    }
+
+    public String getFile() {
+        return mFile;
+    }
+
+    public int getLine() {
+        return mLine;
+    }
+
+    public int getColumn() {
+        return mColumn;
+    }
+}
@@ -0,0 +1,178 @@
+package com.zendeka.glesutils.build;
+
+import java.util.List;
+
+/**
+ * Evaluates the integer constant expression of an #if or #elif directive after macro expansion.
+ */
+final class GlslExpression {
+    private static final String[][] BINARY_OPERATORS = {
+            { "||" },
+            { "&&" },
+            { "|" },
+            { "^" },
+            { "&" },
+            { "==", "!=" },
+            { "<", ">", "<=", ">=" },
+            { "<<", ">>" },
+            { "+", "-" },
+            { "*", "/", "%" }
+    };
+
+    private final List<GlslToken> mTokens;
+    private final GlslToken mDirective;
+    private int mPosition;
+
+    GlslExpression(final List<GlslToken> tokens, final GlslToken directive) {
+        mTokens = tokens;
+        mDirective = directive;
+    }
+
+    int evaluate() throws GlslException {
+        int value = parseBinary(0);
+
+        if (mPosition < mTokens.size()) {
+            throw new GlslException(mTokens.get(mPosition), "Unexpected " + mTokens.get(mPosition) + " in expression");
+        }
+
+        return value;
+    }
+
+    private int parseBinary(int level) throws GlslException {
+        if (level == BINARY_OPERATORS.length) {
+            return parseUnary();
+        }
+
+        int value = parseBinary(level + 1);
+
+        while (mPosition < mTokens.size()) {
+            GlslToken operator = mTokens.get(mPosition);
+            String text = null;
+
+            for (final String candidate : BINARY_OPERATORS[level]) {
+                if (operator.is(candidate)) {
+                    text = candidate;
+                    break;
+                }
+            }
+
+            if (text == null) {
+                break;
+            }
+
+            mPosition++;
+            int right = parseBinary(level + 1);
+            value = apply(text, value, right, operator);
+        }
+
+        return value;
+    }
+
+    private int parseUnary() throws GlslException {
+        GlslToken token = next();
+
+        if (token.is("+")) {
+            return parseUnary();
+        }
+
+        if (token.is("-")) {
+            return -parseUnary();
+        }
+
+        if (token.is("!")) {
+            return parseUnary() == 0 ? 1 : 0;
+        }
+
+        if (token.is("~")) {
+            return ~parseUnary();
+        }
+
+        if (token.is("(")) {
+            int value = parseBinary(0);
+
+            if (!next().is(")")) {
+                throw new GlslException(token, "Unbalanced parenthesis in expression");
+            }
+
+            return value;
+        }
+
+        if (token.getType() == GlslToken.Type.INT_CONSTANT) {
+            return parseInt(token);
+        }
+
+        if (token.isIdentifier()) {
+            throw new GlslException(token, "Undefined identifier " + token.getText() + " in expression");
+        }
+
+        throw new GlslException(token, "Unexpected " + token + " in expression");
+    }
+
+    private GlslToken next() throws GlslException {
+        if (mPosition >= mTokens.size()) {
+            throw new GlslException(mDirective, "Incomplete expression");
+        }
+
+        return mTokens.get(mPosition++);
+    }
+
+    private static int apply(final String operator, int left, int right, final GlslToken token) throws GlslException {
+        if (operator.equals("||")) {
+            return left != 0 || right != 0 ? 1 : 0;
+        } else if (operator.equals("&&")) {
+            return left != 0 && right != 0 ? 1 : 0;
+        } else if (operator.equals("|")) {
+            return left | right;
+        } else if (operator.equals("^")) {
+            return left ^ right;
+        } else if (operator.equals("&")) {
+            return left & right;
+        } else if (operator.equals("==")) {
+            return left == right ? 1 : 0;
+        } else if (operator.equals("!=")) {
+            return left != right ? 1 : 0;
+        } else if (operator.equals("<")) {
+            return left < right ? 1 : 0;
+        } else if (operator.equals(">")) {
+            return left > right ? 1 : 0;
+        } else if (operator.equals("<=")) {
+            return left <= right ? 1 : 0;
+        } else if (operator.equals(">=")) {
+            return left >= right ? 1 : 0;
+        } else if (operator.equals("<<")) {
+            return left << right;
+        } else if (operator.equals(">>")) {
+            return left >> right;
+        } else if (operator.equals("+")) {
+            return left + right;
+        } else if (operator.equals("-")) {
+            return left - right;
+        } else if (operator.equals("*")) {
+            return left * right;
+        }
+
+        if (right == 0) {
+            throw new GlslException(token, "Division by zero in expression");
+        }
+
+        return operator.equals("/") ? left / right : left % right;
+    }
+
+    static int parseInt(final GlslToken token) throws GlslException {
+        String text = token.getText();
+
+        try {
+            if (text.startsWith("0x") || text.startsWith("0X")) {
+                return (int) Long.parseLong(text.substring(2), 16);
+            }
+
+            if (text.length() > 1 && text.charAt(0) == '0') {
+                return (int) Long.parseLong(text.substring(1), 8);
+            }
+
+            return (int) Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new GlslException(token, "Integer constant out of range: " + text);
+        }
+    }
+}
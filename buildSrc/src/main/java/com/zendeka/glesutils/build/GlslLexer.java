@@ -0,0 +1,143 @@
+package com.zendeka.glesutils.build;
+
+import java.util.List;
+
+/**
+ * Splits one line of comment-free GLSL ES 1.00 into tokens.
+ */
+final class GlslLexer {
+    // Longest operators first, so the first match is the longest one
+    private static final String[] OPERATORS = {
+            "<<=", ">>=",
+            "++", "--", "<=", ">=", "==", "!=", "&&", "||", "^^", "+=", "-=", "*=", "/=", "%=", "&=", "^=", "|=", "<<", ">>",
+            "(", ")", "{", "}", "[", "]", ".", ",", ";", ":", "?", "+", "-", "*", "/", "%", "<", ">", "=", "!", "~", "&", "|", "^", "#"
+    };
+
+    private GlslLexer() {
+    }
+
+    static void tokenize(final String text, final String file, int line, final List<GlslToken> tokens) throws GlslException {
+        int length = text.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = text.charAt(i);
+
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\f' || c == 0x0B) {
+                i++;
+                continue;
+            }
+
+            int start = i;
+
+            if (isIdentifierStart(c)) {
+                while (i < length && isIdentifierPart(text.charAt(i))) {
+                    i++;
+                }
+
+                tokens.add(new GlslToken(GlslToken.Type.IDENTIFIER, text.substring(start, i), file, line, start + 1));
+            } else if (isDigit(c) || (c == '.' && i + 1 < length && isDigit(text.charAt(i + 1)))) {
+                i = readNumber(text, i, file, line, tokens);
+            } else {
+                String operator = null;
+
+                for (final String candidate : OPERATORS) {
+                    if (text.startsWith(candidate, i)) {
+                        operator = candidate;
+                        break;
+                    }
+                }
+
+                if (operator == null) {
+                    throw new GlslException(file, line, start + 1, "Unexpected character '" + c + "'");
+                }
+
+                tokens.add(new GlslToken(GlslToken.Type.OPERATOR, operator, file, line, start + 1));
+                i += operator.length();
+            }
+        }
+    }
+
+    private static int readNumber(final String text, int start, final String file, int line, final List<GlslToken> tokens) throws GlslException {
+        int length = text.length();
+        int i = start;
+        boolean isFloat = false;
+
+        if (text.charAt(i) == '0' && i + 1 < length && (text.charAt(i + 1) == 'x' || text.charAt(i + 1) == 'X')) {
+            i += 2;
+
+            while (i < length && isHexDigit(text.charAt(i))) {
+                i++;
+            }
+
+            if (i == start + 2) {
+                throw new GlslException(file, line, start + 1, "Invalid hexadecimal constant");
+            }
+        } else {
+            while (i < length && isDigit(text.charAt(i))) {
+                i++;
+            }
+
+            if (i < length && text.charAt(i) == '.') {
+                isFloat = true;
+                i++;
+
+                while (i < length && isDigit(text.charAt(i))) {
+                    i++;
+                }
+            }
+
+            if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+                int exponent = i + 1;
+
+                if (exponent < length && (text.charAt(exponent) == '+' || text.charAt(exponent) == '-')) {
+                    exponent++;
+                }
+
+                if (exponent >= length || !isDigit(text.charAt(exponent))) {
+                    throw new GlslException(file, line, start + 1, "Invalid floating point constant");
+                }
+
+                isFloat = true;
+                i = exponent;
+
+                while (i < length && isDigit(text.charAt(i))) {
+                    i++;
+                }
+            }
+
+            if (!isFloat && text.charAt(start) == '0') {
+                for (int j = start + 1; j < i; j++) {
+                    if (text.charAt(j) > '7') {
+                        throw new GlslException(file, line, start + 1, "Invalid octal constant");
+                    }
+                }
+            }
+        }
+
+        if (i < length && isIdentifierPart(text.charAt(i))) {
+            throw new GlslException(file, line, start + 1, "Invalid suffix on constant " + text.substring(start, i + 1));
+        }
+
+        GlslToken.Type type = isFloat ? GlslToken.Type.FLOAT_CONSTANT : GlslToken.Type.INT_CONSTANT;
+        tokens.add(new GlslToken(type, text.substring(start, i), file, line, start + 1));
+
+        return i;
+    }
+
+    static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || isDigit(c);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHexDigit(char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+}
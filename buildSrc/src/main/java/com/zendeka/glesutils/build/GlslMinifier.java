@@ -0,0 +1,115 @@
+package com.zendeka.glesutils.build;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a preprocessed shader back out as GLSL: the #version, #extension and #pragma directives on
+ * lines of their own, followed by the expanded tokens with a space only where two tokens would
+ * otherwise run together.
+ *
+ * Whether GL_FRAGMENT_PRECISION_HIGH is defined is only known on the device, so fragment shaders are
+ * preprocessed both ways. Where the two token streams differ, the output keeps both behind an
+ * #ifdef GL_FRAGMENT_PRECISION_HIGH.
+ */
+final class GlslMinifier {
+    private static final String PRECISION_HIGH = "GL_FRAGMENT_PRECISION_HIGH";
+
+    private final List<GlslToken> mPair = new ArrayList<GlslToken>(3);
+
+    /**
+     * precisionLow is the shader preprocessed without GL_FRAGMENT_PRECISION_HIGH, or null for vertex shaders.
+     */
+    String minify(final GlslPreprocessor preprocessor, final GlslPreprocessor precisionLow) {
+        StringBuilder output = new StringBuilder();
+
+        if (preprocessor.getVersion() != null) {
+            output.append(preprocessor.getVersion()).append('\n');
+        }
+
+        for (final String extension : preprocessor.getExtensions()) {
+            output.append(extension).append('\n');
+        }
+
+        for (final String pragma : preprocessor.getPragmas()) {
+            output.append(pragma).append('\n');
+        }
+
+        List<GlslToken> high = preprocessor.getTokens();
+        List<GlslToken> low = precisionLow != null ? precisionLow.getTokens() : high;
+        int highCount = high.size();
+        int lowCount = low.size();
+        int prefix = 0;
+        int suffix = 0;
+
+        while (prefix < highCount && prefix < lowCount && high.get(prefix).getText().equals(low.get(prefix).getText())) {
+            prefix++;
+        }
+
+        if (prefix == highCount && prefix == lowCount) {
+            appendTokens(high, 0, highCount, output);
+            return output.toString();
+        }
+
+        while (suffix < highCount - prefix && suffix < lowCount - prefix && high.get(highCount - 1 - suffix).getText().equals(low.get(lowCount - 1 - suffix).getText())) {
+            suffix++;
+        }
+
+        appendTokens(high, 0, prefix, output);
+        output.append("#ifdef ").append(PRECISION_HIGH).append('\n');
+        appendTokens(high, prefix, highCount - suffix, output);
+        output.append("#else\n");
+        appendTokens(low, prefix, lowCount - suffix, output);
+        output.append("#endif\n");
+        appendTokens(high, highCount - suffix, highCount, output);
+
+        return output.toString();
+    }
+
+    /**
+     * Appends tokens start to end - 1 as one line.
+     */
+    private void appendTokens(final List<GlslToken> tokens, int start, int end, final StringBuilder output) {
+        GlslToken previous = null;
+
+        for (int i = start; i < end; i++) {
+            GlslToken token = tokens.get(i);
+
+            if (previous != null && needsSpace(previous, token)) {
+                output.append(' ');
+            }
+
+            output.append(token.getText());
+            previous = token;
+        }
+
+        if (previous != null) {
+            output.append('\n');
+        }
+    }
+
+    /**
+     * Whether first and second, written next to each other, would be read back as different tokens.
+     */
+    private boolean needsSpace(final GlslToken first, final GlslToken second) {
+        String a = first.getText();
+        String b = second.getText();
+
+        // "//" and "/*" start comments, which the lexer never sees
+        if (a.endsWith("/") && (b.startsWith("/") || b.startsWith("*"))) {
+            return true;
+        }
+
+        List<GlslToken> pair = mPair;
+        pair.clear();
+
+        try {
+            GlslLexer.tokenize(a + b, first.getFile(), first.getLine(), pair);
+        } catch (GlslException e) {
+            // e.g. "1" followed by "e" reads as a malformed number
+            return true;
+        }
+
+        return pair.size() != 2 || !pair.get(0).getText().equals(a) || !pair.get(1).getText().equals(b);
+    }
+}
@@ -0,0 +1,886 @@
+package com.zendeka.glesutils.build;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Recursive descent parser for preprocessed GLSL ES 1.00. It checks the syntax of a shader against
+ * the grammar of the specification, plus the mistakes drivers most often report at runtime: use of
+ * reserved words and operators, attributes outside of vertex shaders and floating point declarations
+ * without a precision in fragment shaders. It does not type check.
+ *
+ * The uniforms, attributes and varyings declared at global scope are collected in declaration order.
+ */
+final class GlslParser {
+    static final class Variable {
+        private final String mQualifier;
+        private final String mType;
+        private final String mName;
+        private final int mArraySize;
+        private final List<Variable> mMembers;
+
+        Variable(final String qualifier, final String type, final String name, int arraySize, final List<Variable> members) {
+            mQualifier = qualifier;
+            mType = type;
+            mName = name;
+            mArraySize = arraySize;
+            mMembers = members;
+        }
+
+        String getQualifier() {
+            return mQualifier;
+        }
+
+        String getType() {
+            return mType;
+        }
+
+        String getName() {
+            return mName;
+        }
+
+        boolean isArray() {
+            return mArraySize != 0;
+        }
+
+        /**
+         * Number of elements of an array whose size is an integer literal, -1 for other arrays and 0
+         * if the variable is not an array.
+         */
+        int getArraySize() {
+            return mArraySize;
+        }
+
+        /**
+         * Members of a variable of struct type, in declaration order, or null for other types.
+         */
+        List<Variable> getMembers() {
+            return mMembers;
+        }
+    }
+
+    private static final Set<String> BASIC_TYPES = new HashSet<String>(Arrays.asList(
+            "void", "float", "int", "bool",
+            "vec2", "vec3", "vec4", "bvec2", "bvec3", "bvec4", "ivec2", "ivec3", "ivec4",
+            "mat2", "mat3", "mat4", "sampler2D", "samplerCube"));
+
+    private static final Set<String> FLOAT_TYPES = new HashSet<String>(Arrays.asList(
+            "float", "vec2", "vec3", "vec4", "mat2", "mat3", "mat4"));
+
+    private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList(
+            "attribute", "const", "uniform", "varying", "break", "continue", "do", "for", "while", "if", "else",
+            "in", "out", "inout", "true", "false", "lowp", "mediump", "highp", "precision", "invariant",
+            "discard", "return", "struct"));
+
+    private static final Set<String> RESERVED = new HashSet<String>(Arrays.asList(
+            "asm", "class", "union", "enum", "typedef", "template", "this", "packed", "goto", "switch", "default",
+            "inline", "noinline", "volatile", "public", "static", "extern", "external", "interface", "flat",
+            "long", "short", "double", "half", "fixed", "unsigned", "superp", "input", "output",
+            "hvec2", "hvec3", "hvec4", "dvec2", "dvec3", "dvec4", "fvec2", "fvec3", "fvec4",
+            "sampler1D", "sampler3D", "sampler1DShadow", "sampler2DShadow", "sampler2DRect", "sampler3DRect",
+            "sampler2DRectShadow", "sizeof", "cast", "namespace", "using"));
+
+    // Built-in variables that can be redeclared invariant, GLSL ES 1.00 section 4.6.1
+    private static final Set<String> VERTEX_INVARIANTS = new HashSet<String>(Arrays.asList("gl_Position", "gl_PointSize"));
+    private static final Set<String> FRAGMENT_INVARIANTS = new HashSet<String>(Arrays.asList(
+            "gl_FragCoord", "gl_FrontFacing", "gl_PointCoord", "gl_FragColor", "gl_FragData"));
+
+    private static final Set<String> PRECISIONS = new HashSet<String>(Arrays.asList("lowp", "mediump", "highp"));
+
+    private static final Set<String> RESERVED_OPERATORS = new HashSet<String>(Arrays.asList(
+            "%", "<<", ">>", "&", "|", "~", "%=", "<<=", ">>=", "&=", "^=", "|="));
+
+    private final List<GlslToken> mTokens;
+    private final boolean mVertex;
+    private final List<Set<String>> mTypeNames = new ArrayList<Set<String>>();
+    private boolean mFloatPrecision;
+    private int mPosition;
+
+    private final List<Variable> mVariables = new ArrayList<Variable>();
+    // Members of the struct types by name; anonymous structs get a name no identifier can have
+    private final Map<String, List<Variable>> mStructs = new HashMap<String, List<Variable>>();
+
+    GlslParser(final List<GlslToken> tokens, boolean vertex) {
+        mTokens = tokens;
+        mVertex = vertex;
+    }
+
+    void parse() throws GlslException {
+        mTypeNames.clear();
+        mTypeNames.add(new HashSet<String>());
+        mVariables.clear();
+        mStructs.clear();
+        mFloatPrecision = mVertex;
+        mPosition = 0;
+
+        while (!atEnd()) {
+            parseExternalDeclaration();
+        }
+    }
+
+    List<Variable> getVariables(final String qualifier) {
+        List<Variable> variables = new ArrayList<Variable>();
+
+        for (final Variable variable : mVariables) {
+            if (variable.getQualifier().equals(qualifier)) {
+                variables.add(variable);
+            }
+        }
+
+        return variables;
+    }
+
+    private void parseExternalDeclaration() throws GlslException {
+        if (peek().is("precision")) {
+            parsePrecisionStatement();
+            return;
+        }
+
+        parseDeclaration(true);
+    }
+
+    private void parsePrecisionStatement() throws GlslException {
+        expect("precision");
+        GlslToken precision = next();
+
+        if (!PRECISIONS.contains(precision.getText())) {
+            throw new GlslException(precision, "Expected a precision qualifier but found " + precision);
+        }
+
+        GlslToken type = next();
+
+        if (!type.is("float") && !type.is("int") && !type.is("sampler2D") && !type.is("samplerCube")) {
+            throw new GlslException(type, "Default precision can only be set for float, int and sampler types");
+        }
+
+        if (type.is("float") && mTypeNames.size() == 1) {
+            mFloatPrecision = true;
+        }
+
+        expect(";");
+    }
+
+    /**
+     * Parses a declaration, or at global scope also a function prototype or definition.
+     */
+    private void parseDeclaration(boolean global) throws GlslException {
+        GlslToken first = peek();
+
+        if (first.is("invariant") && peek(1).isIdentifier() && !peek(1).is("varying")) {
+            next();
+            checkGlobal(global, first);
+
+            do {
+                parseInvariantName();
+            } while (accept(","));
+
+            expect(";");
+            return;
+        }
+
+        String qualifier = parseTypeQualifier(global);
+        GlslToken typeToken = peek();
+        String type = parseTypeSpecifier();
+
+        if (accept(";")) {
+            if (!typeToken.is("struct")) {
+                throw new GlslException(typeToken, "Declaration does not declare anything");
+            }
+
+            return;
+        }
+
+        GlslToken name = parseNewName();
+
+        if (peek().is("(")) {
+            if (!global) {
+                throw new GlslException(name, "Functions can only be declared at global scope");
+            }
+
+            if (qualifier != null) {
+                throw new GlslException(typeToken, "Function return types cannot be qualified with " + qualifier);
+            }
+
+            parseFunction();
+            return;
+        }
+
+        if (type.equals("void")) {
+            throw new GlslException(typeToken, "Variables cannot be declared void");
+        }
+
+        checkQualifier(qualifier, type, typeToken);
+
+        while (true) {
+            int arraySize = parseArraySpecifier();
+
+            if (accept("=")) {
+                if (qualifier != null && !qualifier.equals("const")) {
+                    throw new GlslException(name, qualifier + " variables cannot be initialized");
+                }
+
+                parseAssignmentExpression();
+            } else if ("const".equals(qualifier)) {
+                throw new GlslException(name, "const variables must be initialized");
+            }
+
+            if (global && qualifier != null && !qualifier.equals("const")) {
+                mVariables.add(new Variable(qualifier, type, name.getText(), arraySize, mStructs.get(type)));
+            }
+
+            if (!accept(",")) {
+                break;
+            }
+
+            name = parseNewName();
+        }
+
+        expect(";");
+    }
+
+    private String parseTypeQualifier(boolean global) throws GlslException {
+        GlslToken token = peek();
+
+        if (token.is("invariant")) {
+            next();
+            expect("varying");
+            checkGlobal(global, token);
+            return "varying";
+        }
+
+        if (token.is("const")) {
+            next();
+            return "const";
+        }
+
+        if (token.is("attribute") || token.is("uniform") || token.is("varying")) {
+            next();
+            checkGlobal(global, token);
+            return token.getText();
+        }
+
+        return null;
+    }
+
+    private void checkGlobal(boolean global, final GlslToken qualifier) throws GlslException {
+        if (!global) {
+            throw new GlslException(qualifier, qualifier.getText() + " variables can only be declared at global scope");
+        }
+    }
+
+    private void checkQualifier(final String qualifier, final String type, final GlslToken typeToken) throws GlslException {
+        if (qualifier == null) {
+            return;
+        }
+
+        if (qualifier.equals("attribute")) {
+            if (!mVertex) {
+                throw new GlslException(typeToken, "Attributes can only be declared in vertex shaders");
+            }
+
+            if (!FLOAT_TYPES.contains(type)) {
+                throw new GlslException(typeToken, "Attributes must be float, vector or matrix types, not " + type);
+            }
+        } else if (qualifier.equals("varying") && !FLOAT_TYPES.contains(type)) {
+            throw new GlslException(typeToken, "Varyings must be float, vector or matrix types, not " + type);
+        } else if (!qualifier.equals("uniform") && !qualifier.equals("const") && !qualifier.equals("varying")) {
+            throw new GlslException(typeToken, "Invalid qualifier " + qualifier);
+        }
+    }
+
+    /**
+     * Parses an optionally precision qualified type and returns its name.
+     */
+    private String parseTypeSpecifier() throws GlslException {
+        boolean precision = false;
+
+        if (PRECISIONS.contains(peek().getText()) && peek().getType() == GlslToken.Type.IDENTIFIER) {
+            next();
+            precision = true;
+        }
+
+        GlslToken token = peek();
+
+        if (token.is("struct")) {
+            return parseStruct();
+        }
+
+        next();
+
+        if (!isTypeName(token)) {
+            throw new GlslException(token, "Expected a type but found " + token);
+        }
+
+        if (!precision && !mFloatPrecision && FLOAT_TYPES.contains(token.getText())) {
+            throw new GlslException(token, "No precision specified for " + token.getText() + ", fragment shaders have no default float precision");
+        }
+
+        return token.getText();
+    }
+
+    /**
+     * Parses a struct specifier and returns the name of its type.
+     */
+    private String parseStruct() throws GlslException {
+        expect("struct");
+        GlslToken name = null;
+        List<Variable> members = new ArrayList<Variable>();
+
+        if (peek().isIdentifier() && !peek().is("{")) {
+            name = parseNewName();
+        }
+
+        expect("{");
+        mTypeNames.add(new HashSet<String>());
+
+        while (!accept("}")) {
+            GlslToken typeToken = peek();
+            String type = parseTypeSpecifier();
+
+            if (type.equals("void")) {
+                throw new GlslException(typeToken, "Struct members cannot be void");
+            }
+
+            do {
+                GlslToken member = parseNewName();
+                int arraySize = parseArraySpecifier();
+                members.add(new Variable(null, type, member.getText(), arraySize, mStructs.get(type)));
+            } while (accept(","));
+
+            expect(";");
+        }
+
+        mTypeNames.remove(mTypeNames.size() - 1);
+
+        if (members.isEmpty()) {
+            throw new GlslException(name != null ? name : previous(), "Structs must have at least one member");
+        }
+
+        String type = name != null ? name.getText() : "struct " + mStructs.size();
+
+        if (name != null) {
+            mTypeNames.get(mTypeNames.size() - 1).add(type);
+        }
+
+        // A struct of an inner scope must not replace a global one of the same name
+        if (!mStructs.containsKey(type)) {
+            mStructs.put(type, members);
+        }
+
+        return type;
+    }
+
+    /**
+     * Parses an optional array size and returns it as getArraySize() does.
+     */
+    private int parseArraySpecifier() throws GlslException {
+        if (!accept("[")) {
+            return 0;
+        }
+
+        int size = -1;
+
+        if (peek().getType() == GlslToken.Type.INT_CONSTANT && peek(1).is("]")) {
+            try {
+                size = Math.max(Integer.decode(peek().getText()), -1);
+            } catch (NumberFormatException e) {
+                size = -1;
+            }
+        }
+
+        parseConditionalExpression();
+        expect("]");
+
+        return size;
+    }
+
+    private void parseFunction() throws GlslException {
+        expect("(");
+
+        if (peek().is("void") && peek(1).is(")")) {
+            next();
+        }
+
+        mTypeNames.add(new HashSet<String>());
+
+        if (!accept(")")) {
+            do {
+                parseParameter();
+            } while (accept(","));
+
+            expect(")");
+        }
+
+        if (accept(";")) {
+            mTypeNames.remove(mTypeNames.size() - 1);
+            return;
+        }
+
+        expect("{");
+
+        while (!accept("}")) {
+            parseStatement();
+        }
+
+        mTypeNames.remove(mTypeNames.size() - 1);
+    }
+
+    private void parseParameter() throws GlslException {
+        accept("const");
+
+        if (peek().is("in") || peek().is("out") || peek().is("inout")) {
+            next();
+        }
+
+        GlslToken typeToken = peek();
+        String type = parseTypeSpecifier();
+
+        if (type.equals("void")) {
+            throw new GlslException(typeToken, "Parameters cannot be void");
+        }
+
+        if (peek().isIdentifier() && !isKeyword(peek().getText())) {
+            parseNewName();
+        }
+
+        parseArraySpecifier();
+    }
+
+    private void parseStatement() throws GlslException {
+        GlslToken token = peek();
+
+        if (token.is("{")) {
+            parseCompoundStatement();
+        } else if (token.is("if")) {
+            next();
+            expect("(");
+            parseExpression();
+            expect(")");
+            parseStatement();
+
+            if (accept("else")) {
+                parseStatement();
+            }
+        } else if (token.is("while")) {
+            next();
+            expect("(");
+            mTypeNames.add(new HashSet<String>());
+            parseCondition();
+            expect(")");
+            parseStatementNoNewScope();
+            mTypeNames.remove(mTypeNames.size() - 1);
+        } else if (token.is("do")) {
+            next();
+            parseStatement();
+            expect("while");
+            expect("(");
+            parseExpression();
+            expect(")");
+            expect(";");
+        } else if (token.is("for")) {
+            next();
+            expect("(");
+            mTypeNames.add(new HashSet<String>());
+
+            if (isDeclarationStart()) {
+                parseDeclaration(false);
+            } else {
+                parseExpressionStatement();
+            }
+
+            if (!peek().is(";")) {
+                parseCondition();
+            }
+
+            expect(";");
+
+            if (!peek().is(")")) {
+                parseExpression();
+            }
+
+            expect(")");
+            parseStatementNoNewScope();
+            mTypeNames.remove(mTypeNames.size() - 1);
+        } else if (token.is("continue") || token.is("break") || token.is("discard")) {
+            next();
+
+            if (token.is("discard") && mVertex) {
+                throw new GlslException(token, "discard can only be used in fragment shaders");
+            }
+
+            expect(";");
+        } else if (token.is("return")) {
+            next();
+
+            if (!accept(";")) {
+                parseExpression();
+                expect(";");
+            }
+        } else if (token.is("precision")) {
+            parsePrecisionStatement();
+        } else if (isDeclarationStart()) {
+            parseDeclaration(false);
+        } else {
+            parseExpressionStatement();
+        }
+    }
+
+    private void parseStatementNoNewScope() throws GlslException {
+        if (peek().is("{")) {
+            next();
+
+            while (!accept("}")) {
+                parseStatement();
+            }
+        } else {
+            parseStatement();
+        }
+    }
+
+    private void parseCompoundStatement() throws GlslException {
+        expect("{");
+        mTypeNames.add(new HashSet<String>());
+
+        while (!accept("}")) {
+            parseStatement();
+        }
+
+        mTypeNames.remove(mTypeNames.size() - 1);
+    }
+
+    private void parseExpressionStatement() throws GlslException {
+        if (!accept(";")) {
+            parseExpression();
+            expect(";");
+        }
+    }
+
+    private void parseCondition() throws GlslException {
+        if (!isDeclarationStart()) {
+            parseExpression();
+            return;
+        }
+
+        parseTypeSpecifier();
+        parseNewName();
+        expect("=");
+        parseAssignmentExpression();
+    }
+
+    /**
+     * A statement is a declaration if it starts with a qualifier, a precision or struct, or a type
+     * followed by a name. A type followed by a parenthesis is a constructor call.
+     */
+    private boolean isDeclarationStart() {
+        GlslToken token = peek();
+
+        if (token.is("const") || token.is("struct") || token.is("invariant") || token.is("attribute") || token.is("uniform") || token.is("varying")) {
+            return true;
+        }
+
+        if (PRECISIONS.contains(token.getText()) && token.isIdentifier()) {
+            return true;
+        }
+
+        return isTypeName(token) && peek(1).isIdentifier();
+    }
+
+    private void parseExpression() throws GlslException {
+        do {
+            parseAssignmentExpression();
+        } while (accept(","));
+    }
+
+    private void parseAssignmentExpression() throws GlslException {
+        parseConditionalExpression();
+        GlslToken token = peek();
+
+        if (token.is("=") || token.is("*=") || token.is("/=") || token.is("+=") || token.is("-=")) {
+            next();
+            parseAssignmentExpression();
+        } else if (RESERVED_OPERATORS.contains(token.getText()) && token.getType() == GlslToken.Type.OPERATOR) {
+            throw new GlslException(token, "Reserved operator " + token.getText());
+        }
+    }
+
+    private void parseConditionalExpression() throws GlslException {
+        parseBinaryExpression(0);
+
+        if (accept("?")) {
+            parseExpression();
+            expect(":");
+            parseAssignmentExpression();
+        }
+    }
+
+    private static final String[][] BINARY_OPERATORS = {
+            { "||" },
+            { "^^" },
+            { "&&" },
+            { "==", "!=" },
+            { "<", ">", "<=", ">=" },
+            { "+", "-" },
+            { "*", "/" }
+    };
+
+    private void parseBinaryExpression(int level) throws GlslException {
+        if (level == BINARY_OPERATORS.length) {
+            parseUnaryExpression();
+            return;
+        }
+
+        parseBinaryExpression(level + 1);
+
+        while (true) {
+            GlslToken token = peek();
+            boolean matched = false;
+
+            for (final String operator : BINARY_OPERATORS[level]) {
+                if (token.getType() == GlslToken.Type.OPERATOR && token.is(operator)) {
+                    matched = true;
+                    break;
+                }
+            }
+
+            if (!matched) {
+                if (token.getType() == GlslToken.Type.OPERATOR && RESERVED_OPERATORS.contains(token.getText())) {
+                    throw new GlslException(token, "Reserved operator " + token.getText());
+                }
+
+                return;
+            }
+
+            next();
+            parseBinaryExpression(level + 1);
+        }
+    }
+
+    private void parseUnaryExpression() throws GlslException {
+        GlslToken token = peek();
+
+        if (token.getType() == GlslToken.Type.OPERATOR) {
+            if (token.is("++") || token.is("--") || token.is("+") || token.is("-") || token.is("!")) {
+                next();
+                parseUnaryExpression();
+                return;
+            }
+
+            if (token.is("~")) {
+                throw new GlslException(token, "Reserved operator ~");
+            }
+        }
+
+        parsePostfixExpression();
+    }
+
+    private void parsePostfixExpression() throws GlslException {
+        parsePrimaryExpression();
+
+        while (true) {
+            if (accept("[")) {
+                parseExpression();
+                expect("]");
+            } else if (accept(".")) {
+                GlslToken field = next();
+
+                if (!field.isIdentifier()) {
+                    throw new GlslException(field, "Expected a field name but found " + field);
+                }
+            } else if (peek().is("++") || peek().is("--")) {
+                next();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void parsePrimaryExpression() throws GlslException {
+        GlslToken token = next();
+
+        switch (token.getType()) {
+            case INT_CONSTANT:
+                GlslExpression.parseInt(token);
+                return;
+            case FLOAT_CONSTANT:
+                return;
+            case IDENTIFIER:
+                break;
+            default:
+                if (token.is("(")) {
+                    parseExpression();
+                    expect(")");
+                    return;
+                }
+
+                throw new GlslException(token, "Expected an expression but found " + token);
+        }
+
+        if (token.is("true") || token.is("false")) {
+            return;
+        }
+
+        checkName(token);
+
+        boolean type = isTypeName(token);
+
+        if (isKeyword(token.getText()) && !type) {
+            throw new GlslException(token, "Expected an expression but found " + token);
+        }
+
+        if (accept("(")) {
+            parseCallArguments();
+        } else if (type) {
+            throw new GlslException(token, "Expected '(' after constructor " + token.getText());
+        }
+    }
+
+    private void parseCallArguments() throws GlslException {
+        if (accept(")")) {
+            return;
+        }
+
+        if (peek().is("void") && peek(1).is(")")) {
+            next();
+            next();
+            return;
+        }
+
+        do {
+            parseAssignmentExpression();
+        } while (accept(","));
+
+        expect(")");
+    }
+
+    private GlslToken parseNewName() throws GlslException {
+        GlslToken name = next();
+
+        if (!name.isIdentifier() || isKeyword(name.getText()) || BASIC_TYPES.contains(name.getText())) {
+            throw new GlslException(name, "Expected a name but found " + name);
+        }
+
+        checkName(name);
+
+        if (name.getText().startsWith("gl_")) {
+            throw new GlslException(name, "Names starting with gl_ are reserved");
+        }
+
+        return name;
+    }
+
+    /**
+     * Parses the name of a variable redeclared invariant, which must be a varying declared before or
+     * one of the built-in varyings of the shader stage.
+     */
+    private void parseInvariantName() throws GlslException {
+        GlslToken name = next();
+
+        if (!name.isIdentifier()) {
+            throw new GlslException(name, "Expected a varying but found " + name);
+        }
+
+        if ((mVertex ? VERTEX_INVARIANTS : FRAGMENT_INVARIANTS).contains(name.getText())) {
+            return;
+        }
+
+        for (final Variable variable : mVariables) {
+            if (variable.getQualifier().equals("varying") && variable.getName().equals(name.getText())) {
+                return;
+            }
+        }
+
+        throw new GlslException(name, "Only varyings can be redeclared invariant, " + name.getText() + " is not a varying");
+    }
+
+    private static void checkName(final GlslToken name) throws GlslException {
+        if (RESERVED.contains(name.getText())) {
+            throw new GlslException(name, "Reserved word " + name.getText());
+        }
+
+        if (name.getText().contains("__")) {
+            throw new GlslException(name, "Names containing two consecutive underscores are reserved");
+        }
+    }
+
+    static boolean isBasicType(final String type) {
+        return BASIC_TYPES.contains(type);
+    }
+
+    private boolean isTypeName(final GlslToken token) {
+        if (!token.isIdentifier()) {
+            return false;
+        }
+
+        String name = token.getText();
+
+        if (BASIC_TYPES.contains(name)) {
+            return true;
+        }
+
+        for (int i = mTypeNames.size() - 1; i >= 0; i--) {
+            if (mTypeNames.get(i).contains(name)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isKeyword(final String name) {
+        return KEYWORDS.contains(name);
+    }
+
+    private boolean atEnd() {
+        return mPosition >= mTokens.size();
+    }
+
+    private GlslToken peek() {
+        return peek(0);
+    }
+
+    private GlslToken peek(int offset) {
+        int index = mPosition + offset;
+
+        if (index < mTokens.size()) {
+            return mTokens.get(index);
+        }
+
+        GlslToken last = mTokens.isEmpty() ? null : mTokens.get(mTokens.size() - 1);
+        return new GlslToken(GlslToken.Type.END, "", last != null ? last.getFile() : "", last != null ? last.getLine() : 0, last != null ? last.getColumn() : 0);
+    }
+
+    private GlslToken previous() {
+        return mTokens.get(Math.max(0, mPosition - 1));
+    }
+
+    private GlslToken next() {
+        GlslToken token = peek();
+        mPosition++;
+
+        return token;
+    }
+
+    private boolean accept(final String text) {
+        if (peek().is(text)) {
+            mPosition++;
+            return true;
+        }
+
+        return false;
+    }
+
+    private void expect(final String text) throws GlslException {
+        GlslToken token = peek();
+
+        if (!token.is(text)) {
+            throw new GlslException(token, "Expected '" + text + "' but found " + token);
+        }
+
+        mPosition++;
+    }
+}
@@ -0,0 +1,601 @@
+package com.zendeka.glesutils.build;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The GLSL ES 1.00 preprocessor: strips comments, expands object and function-like macros, evaluates
+ * conditionals and reports #error. #include "name" is resolved through a SourceProvider, as by the
+ * runtime ShaderPreprocessor.
+ *
+ * The result is the expanded token stream of the shader plus the #version, #extension and #pragma
+ * directives, which have to be passed on to the driver.
+ */
+final class GlslPreprocessor {
+    interface SourceProvider {
+        /**
+         * Returns the source with the given name, or null if there is none.
+         */
+        String getSource(String name);
+    }
+
+    private static final class Macro {
+        final String mName;
+        final List<String> mParameters;
+        final List<GlslToken> mBody;
+
+        Macro(final String name, final List<String> parameters, final List<GlslToken> body) {
+            mName = name;
+            mParameters = parameters;
+            mBody = body;
+        }
+
+        boolean isFunction() {
+            return mParameters != null;
+        }
+
+        boolean sameAs(final Macro macro) {
+            if (mParameters == null ? macro.mParameters != null : !mParameters.equals(macro.mParameters)) {
+                return false;
+            }
+
+            if (mBody.size() != macro.mBody.size()) {
+                return false;
+            }
+
+            for (int i = 0; i < mBody.size(); i++) {
+                if (!mBody.get(i).getText().equals(macro.mBody.get(i).getText())) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    private static final class Conditional {
+        final boolean mParentActive;
+        boolean mTaken;
+        boolean mActive;
+        boolean mElse;
+
+        Conditional(boolean parentActive, boolean condition) {
+            mParentActive = parentActive;
+            mActive = parentActive && condition;
+            mTaken = mActive;
+        }
+    }
+
+    private final SourceProvider mProvider;
+    private final boolean mPrecisionHigh;
+    private final Map<String, Macro> mMacros = new HashMap<String, Macro>();
+    private final List<Conditional> mConditionals = new ArrayList<Conditional>();
+    private final List<String> mIncludeStack = new ArrayList<String>();
+    private final List<GlslToken> mPending = new ArrayList<GlslToken>();
+    private final List<GlslToken> mTokens = new ArrayList<GlslToken>();
+
+    private String mVersion;
+    private final List<String> mExtensions = new ArrayList<String>();
+    private final List<String> mPragmas = new ArrayList<String>();
+    private boolean mSeenContent;
+
+    /**
+     * precisionHigh defines GL_FRAGMENT_PRECISION_HIGH, as fragment shaders on hardware with highp support see it.
+     */
+    GlslPreprocessor(final SourceProvider provider, boolean precisionHigh) {
+        mProvider = provider;
+        mPrecisionHigh = precisionHigh;
+    }
+
+    void process(final String name) throws GlslException {
+        include(name, null);
+
+        if (!mConditionals.isEmpty()) {
+            throw new GlslException(name, 0, 0, "Unterminated #if");
+        }
+    }
+
+    List<GlslToken> getTokens() {
+        return mTokens;
+    }
+
+    String getVersion() {
+        return mVersion;
+    }
+
+    List<String> getExtensions() {
+        return mExtensions;
+    }
+
+    List<String> getPragmas() {
+        return mPragmas;
+    }
+
+    private void include(final String name, final GlslToken directive) throws GlslException {
+        if (mIncludeStack.contains(name)) {
+            throw new GlslException(directive, "Recursive #include of \"" + name + "\"");
+        }
+
+        String source = mProvider.getSource(name);
+
+        if (source == null) {
+            if (directive == null) {
+                throw new GlslException(name, 0, 0, "Shader source not found");
+            }
+
+            throw new GlslException(directive, "#include \"" + name + "\" not found");
+        }
+
+        mIncludeStack.add(name);
+        String[] lines = stripComments(source, name).split("\n", -1);
+
+        for (int i = 0; i < lines.length; i++) {
+            processLine(lines[i], name, i + 1);
+        }
+
+        flush();
+        mIncludeStack.remove(mIncludeStack.size() - 1);
+    }
+
+    private void processLine(final String line, final String file, int lineNumber) throws GlslException {
+        String trimmed = line.trim();
+
+        if (trimmed.length() == 0) {
+            return;
+        }
+
+        if (trimmed.charAt(0) != '#') {
+            // Skipped groups are not tokenized at all, they may hold anything
+            if (isActive()) {
+                GlslLexer.tokenize(line, file, lineNumber, mPending);
+                mSeenContent = true;
+            }
+
+            return;
+        }
+
+        flush();
+
+        int hash = line.indexOf('#');
+        int start = hash + 1;
+
+        while (start < line.length() && (line.charAt(start) == ' ' || line.charAt(start) == '\t')) {
+            start++;
+        }
+
+        int end = start;
+
+        while (end < line.length() && GlslLexer.isIdentifierPart(line.charAt(end))) {
+            end++;
+        }
+
+        if (start == end) {
+            if (end < line.length() && isActive()) {
+                throw new GlslException(file, lineNumber, end + 1, "Invalid directive");
+            }
+
+            return;
+        }
+
+        String name = line.substring(start, end);
+        GlslToken directive = new GlslToken(GlslToken.Type.IDENTIFIER, name, file, lineNumber, start + 1);
+        String text = line.substring(end).trim();
+
+        if (name.equals("if")) {
+            pushConditional(isActive() && evaluate(tokenize(line, end, directive), directive) != 0);
+        } else if (name.equals("ifdef") || name.equals("ifndef")) {
+            boolean active = isActive();
+            boolean condition = false;
+
+            if (active) {
+                String macro = getMacroName(tokenize(line, end, directive), directive);
+                condition = (mMacros.containsKey(macro) || isPredefined(macro) || macro.equals("__LINE__")) == name.equals("ifdef");
+            }
+
+            pushConditional(condition);
+        } else if (name.equals("elif")) {
+            Conditional conditional = getConditional(directive);
+
+            if (conditional.mElse) {
+                throw new GlslException(directive, "#elif after #else");
+            }
+
+            boolean active = conditional.mParentActive && !conditional.mTaken && evaluate(tokenize(line, end, directive), directive) != 0;
+            conditional.mActive = active;
+            conditional.mTaken |= active;
+        } else if (name.equals("else")) {
+            Conditional conditional = getConditional(directive);
+
+            if (conditional.mElse) {
+                throw new GlslException(directive, "#else after #else");
+            }
+
+            conditional.mElse = true;
+            conditional.mActive = conditional.mParentActive && !conditional.mTaken;
+            conditional.mTaken = true;
+        } else if (name.equals("endif")) {
+            getConditional(directive);
+            mConditionals.remove(mConditionals.size() - 1);
+        } else if (!isActive()) {
+            // Other directives in skipped groups are ignored, even unknown ones
+            return;
+        } else if (name.equals("define")) {
+            define(tokenize(line, end, directive), directive);
+        } else if (name.equals("undef")) {
+            String macro = getMacroName(tokenize(line, end, directive), directive);
+            checkMacroName(macro, directive);
+            mMacros.remove(macro);
+        } else if (name.equals("error")) {
+            throw new GlslException(directive, "#error " + text);
+        } else if (name.equals("pragma")) {
+            mPragmas.add("#pragma " + text);
+        } else if (name.equals("extension")) {
+            List<GlslToken> arguments = tokenize(line, end, directive);
+
+            if (arguments.size() != 3 || !arguments.get(0).isIdentifier() || !arguments.get(1).is(":") || !arguments.get(2).isIdentifier()) {
+                throw new GlslException(directive, "Malformed #extension directive");
+            }
+
+            mExtensions.add("#extension " + arguments.get(0).getText() + " : " + arguments.get(2).getText());
+        } else if (name.equals("version")) {
+            if (mSeenContent || mVersion != null || mIncludeStack.size() > 1) {
+                throw new GlslException(directive, "#version must occur before anything else");
+            }
+
+            if (!text.equals("100")) {
+                throw new GlslException(directive, "Only #version 100 is supported");
+            }
+
+            mVersion = "#version 100";
+            return;
+        } else if (name.equals("line")) {
+            // Line numbers are not carried into the minified source
+        } else if (name.equals("include")) {
+            include(getIncludeName(text, directive), directive);
+        } else {
+            throw new GlslException(directive, "Invalid directive #" + name);
+        }
+
+        mSeenContent = true;
+    }
+
+    /**
+     * Tokenizes the rest of a directive line, keeping the columns of the tokens.
+     */
+    private static List<GlslToken> tokenize(final String line, int start, final GlslToken directive) throws GlslException {
+        StringBuilder padded = new StringBuilder(line.length());
+
+        for (int i = 0; i < start; i++) {
+            padded.append(' ');
+        }
+
+        padded.append(line, start, line.length());
+
+        List<GlslToken> tokens = new ArrayList<GlslToken>();
+        GlslLexer.tokenize(padded.toString(), directive.getFile(), directive.getLine(), tokens);
+
+        return tokens;
+    }
+
+    private void define(final List<GlslToken> tokens, final GlslToken directive) throws GlslException {
+        if (tokens.isEmpty() || !tokens.get(0).isIdentifier()) {
+            throw new GlslException(directive, "Macro name missing");
+        }
+
+        GlslToken name = tokens.get(0);
+        checkMacroName(name.getText(), name);
+
+        int body = 1;
+        List<String> parameters = null;
+
+        // A parenthesis right after the name starts a parameter list, after a space it is part of the body
+        if (tokens.size() > 1 && tokens.get(1).is("(") && tokens.get(1).getColumn() == name.getColumn() + name.getText().length()) {
+            parameters = new ArrayList<String>();
+            int i = 2;
+
+            if (i < tokens.size() && tokens.get(i).is(")")) {
+                i++;
+            } else {
+                while (true) {
+                    if (i >= tokens.size() || !tokens.get(i).isIdentifier()) {
+                        throw new GlslException(i < tokens.size() ? tokens.get(i) : name, "Macro parameter name expected");
+                    }
+
+                    String parameter = tokens.get(i).getText();
+
+                    if (parameters.contains(parameter)) {
+                        throw new GlslException(tokens.get(i), "Duplicate macro parameter " + parameter);
+                    }
+
+                    parameters.add(parameter);
+                    i++;
+
+                    if (i < tokens.size() && tokens.get(i).is(")")) {
+                        i++;
+                        break;
+                    }
+
+                    if (i >= tokens.size() || !tokens.get(i).is(",")) {
+                        throw new GlslException(i < tokens.size() ? tokens.get(i) : name, "Expected ',' or ')' in macro parameter list");
+                    }
+
+                    i++;
+                }
+            }
+
+            body = i;
+        }
+
+        Macro macro = new Macro(name.getText(), parameters, new ArrayList<GlslToken>(tokens.subList(body, tokens.size())));
+        Macro existing = mMacros.get(macro.mName);
+
+        if (existing != null && !existing.sameAs(macro)) {
+            throw new GlslException(name, "Macro " + macro.mName + " redefined");
+        }
+
+        mMacros.put(macro.mName, macro);
+    }
+
+    /**
+     * Expands the tokens collected since the last directive into the output.
+     */
+    private void flush() throws GlslException {
+        if (mPending.isEmpty()) {
+            return;
+        }
+
+        expand(mPending, mTokens, new HashSet<String>());
+        mPending.clear();
+    }
+
+    private void expand(final List<GlslToken> input, final List<GlslToken> output, final Set<String> disabled) throws GlslException {
+        int count = input.size();
+
+        for (int i = 0; i < count; i++) {
+            GlslToken token = input.get(i);
+
+            if (!token.isIdentifier() || disabled.contains(token.getText())) {
+                output.add(token);
+                continue;
+            }
+
+            String name = token.getText();
+
+            if (name.equals("__LINE__")) {
+                output.add(new GlslToken(GlslToken.Type.INT_CONSTANT, Integer.toString(token.getLine()), token.getFile(), token.getLine(), token.getColumn()));
+                continue;
+            }
+
+            if (isPredefined(name)) {
+                output.add(new GlslToken(GlslToken.Type.INT_CONSTANT, getPredefinedValue(name), token.getFile(), token.getLine(), token.getColumn()));
+                continue;
+            }
+
+            Macro macro = mMacros.get(name);
+
+            if (macro == null) {
+                output.add(token);
+                continue;
+            }
+
+            List<GlslToken> replacement = new ArrayList<GlslToken>();
+
+            if (!macro.isFunction()) {
+                for (final GlslToken bodyToken : macro.mBody) {
+                    replacement.add(bodyToken.at(token));
+                }
+            } else {
+                if (i + 1 >= count || !input.get(i + 1).is("(")) {
+                    // A function-like macro name without arguments is not an invocation
+                    output.add(token);
+                    continue;
+                }
+
+                List<List<GlslToken>> arguments = new ArrayList<List<GlslToken>>();
+                i = readArguments(input, i + 2, token, arguments);
+
+                int parameterCount = macro.mParameters.size();
+
+                if (arguments.size() != parameterCount && !(parameterCount == 0 && arguments.size() == 1 && arguments.get(0).isEmpty())) {
+                    throw new GlslException(token, "Macro " + name + " expects " + parameterCount + " arguments, got " + arguments.size());
+                }
+
+                List<List<GlslToken>> expanded = new ArrayList<List<GlslToken>>();
+
+                for (final List<GlslToken> argument : arguments) {
+                    List<GlslToken> expandedArgument = new ArrayList<GlslToken>();
+                    expand(argument, expandedArgument, disabled);
+                    expanded.add(expandedArgument);
+                }
+
+                for (final GlslToken bodyToken : macro.mBody) {
+                    int parameter = bodyToken.isIdentifier() ? macro.mParameters.indexOf(bodyToken.getText()) : -1;
+
+                    if (parameter >= 0) {
+                        replacement.addAll(expanded.get(parameter));
+                    } else {
+                        replacement.add(bodyToken.at(token));
+                    }
+                }
+            }
+
+            disabled.add(name);
+            expand(replacement, output, disabled);
+            disabled.remove(name);
+        }
+    }
+
+    /**
+     * Splits the arguments of a macro invocation at top-level commas. Returns the index of the closing
+     * parenthesis.
+     */
+    private static int readArguments(final List<GlslToken> input, int start, final GlslToken macro, final List<List<GlslToken>> arguments) throws GlslException {
+        List<GlslToken> argument = new ArrayList<GlslToken>();
+        int depth = 0;
+
+        for (int i = start; i < input.size(); i++) {
+            GlslToken token = input.get(i);
+
+            if (token.is("(")) {
+                depth++;
+            } else if (token.is(")")) {
+                if (depth == 0) {
+                    arguments.add(argument);
+                    return i;
+                }
+
+                depth--;
+            } else if (token.is(",") && depth == 0) {
+                arguments.add(argument);
+                argument = new ArrayList<GlslToken>();
+                continue;
+            }
+
+            argument.add(token);
+        }
+
+        throw new GlslException(macro, "Unterminated invocation of macro " + macro.getText());
+    }
+
+    private int evaluate(final List<GlslToken> arguments, final GlslToken directive) throws GlslException {
+        List<GlslToken> resolved = new ArrayList<GlslToken>();
+
+        for (int i = 0; i < arguments.size(); i++) {
+            GlslToken token = arguments.get(i);
+
+            if (!token.is("defined")) {
+                resolved.add(token);
+                continue;
+            }
+
+            boolean parenthesized = i + 1 < arguments.size() && arguments.get(i + 1).is("(");
+            int nameIndex = parenthesized ? i + 2 : i + 1;
+
+            if (nameIndex >= arguments.size() || !arguments.get(nameIndex).isIdentifier() || (parenthesized && (nameIndex + 1 >= arguments.size() || !arguments.get(nameIndex + 1).is(")")))) {
+                throw new GlslException(token, "Malformed defined operator");
+            }
+
+            String name = arguments.get(nameIndex).getText();
+            boolean defined = mMacros.containsKey(name) || isPredefined(name) || name.equals("__LINE__");
+            resolved.add(new GlslToken(GlslToken.Type.INT_CONSTANT, defined ? "1" : "0", token.getFile(), token.getLine(), token.getColumn()));
+            i = parenthesized ? nameIndex + 1 : nameIndex;
+        }
+
+        List<GlslToken> expanded = new ArrayList<GlslToken>();
+        expand(resolved, expanded, new HashSet<String>());
+
+        if (expanded.isEmpty()) {
+            throw new GlslException(directive, "Missing expression");
+        }
+
+        return new GlslExpression(expanded, directive).evaluate();
+    }
+
+    private void pushConditional(boolean condition) {
+        mConditionals.add(new Conditional(isActive(), condition));
+    }
+
+    private Conditional getConditional(final GlslToken directive) throws GlslException {
+        if (mConditionals.isEmpty()) {
+            throw new GlslException(directive, "#" + directive.getText() + " without #if");
+        }
+
+        return mConditionals.get(mConditionals.size() - 1);
+    }
+
+    private boolean isActive() {
+        return mConditionals.isEmpty() || mConditionals.get(mConditionals.size() - 1).mActive;
+    }
+
+    private boolean isPredefined(final String name) {
+        return name.equals("__FILE__") || name.equals("__VERSION__") || name.equals("GL_ES") || (mPrecisionHigh && name.equals("GL_FRAGMENT_PRECISION_HIGH"));
+    }
+
+    private static String getPredefinedValue(final String name) {
+        if (name.equals("__FILE__")) {
+            return "0";
+        }
+
+        if (name.equals("__VERSION__")) {
+            return "100";
+        }
+
+        return "1";
+    }
+
+    private static String getMacroName(final List<GlslToken> arguments, final GlslToken directive) throws GlslException {
+        if (arguments.size() != 1 || !arguments.get(0).isIdentifier()) {
+            throw new GlslException(directive, "#" + directive.getText() + " expects a macro name");
+        }
+
+        return arguments.get(0).getText();
+    }
+
+    private static void checkMacroName(final String name, final GlslToken token) throws GlslException {
+        if (name.startsWith("GL_") || name.contains("__") || name.equals("defined")) {
+            throw new GlslException(token, "Reserved macro name " + name);
+        }
+    }
+
+    private static String getIncludeName(final String text, final GlslToken directive) throws GlslException {
+        int length = text.length();
+
+        if (length >= 2 && ((text.charAt(0) == '"' && text.charAt(length - 1) == '"') || (text.charAt(0) == '<' && text.charAt(length - 1) == '>'))) {
+            return text.substring(1, length - 1);
+        }
+
+        throw new GlslException(directive, "Malformed #include directive");
+    }
+
+    /**
+     * Replaces comments by a space, keeping the line breaks of block comments so line numbers stay intact.
+     */
+    private static String stripComments(final String source, final String file) throws GlslException {
+        StringBuilder output = new StringBuilder(source.length());
+        int length = source.length();
+        int line = 1;
+        int i = 0;
+
+        while (i < length) {
+            char c = source.charAt(i);
+
+            if (c == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+                while (i < length && source.charAt(i) != '\n') {
+                    i++;
+                }
+
+                output.append(' ');
+            } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+                int end = source.indexOf("*/", i + 2);
+
+                if (end < 0) {
+                    throw new GlslException(file, line, 0, "Unterminated comment");
+                }
+
+                output.append(' ');
+
+                for (int j = i; j < end; j++) {
+                    if (source.charAt(j) == '\n') {
+                        output.append('\n');
+                        line++;
+                    }
+                }
+
+                i = end + 2;
+            } else {
+                if (c == '\n') {
+                    line++;
+                }
+
+                output.append(c);
+                i++;
+            }
+        }
+
+        return output.toString();
+    }
+}
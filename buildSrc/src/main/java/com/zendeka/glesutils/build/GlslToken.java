@@ -0,0 +1,68 @@
+package com.zendeka.glesutils.build;
+
+/**
+ * A GLSL token with the position it was read from.
+ */
+public final class GlslToken {
+    public enum Type {
+        IDENTIFIER,
+        INT_CONSTANT,
+        FLOAT_CONSTANT,
+        OPERATOR,
+        END
+    }
+
+    private final Type mType;
+    private final String mText;
+    private final String mFile;
+    private final int mLine;
+    private final int mColumn;
+
+    public GlslToken(final Type type, final String text, final String file, int line, int column) {
+        mType = type;
+        mText = text;
+        mFile = file;
+        mLine = line;
+        mColumn = column;
+    }
+
+    public Type getType() {
+        return mType;
+    }
+
+    public String getText() {
+        return mText;
+    }
+
+    public String getFile() {
+        return mFile;
+    }
+
+    public int getLine() {
+        return mLine;
+    }
+
+    public int getColumn() {
+        return mColumn;
+    }
+
+    public boolean is(final String text) {
+        return mType != Type.END && mText.equals(text);
+    }
+
+    public boolean isIdentifier() {
+        return mType == Type.IDENTIFIER;
+    }
+
+    /**
+     * Copy of this token at the position of another, for tokens produced by macro expansion.
+     */
+    public GlslToken at(final GlslToken position) {
+        return new GlslToken(mType, mText, position.mFile, position.mLine, position.mColumn);
+    }
+
+    @Override
+    public String toString() {
+        return mType == Type.END ? "end of file" : "'" + mText + "'";
+    }
+}
@@ -0,0 +1,254 @@
+package com.zendeka.glesutils.build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles a directory of GLSL ES 1.00 shaders at build time. Every name.vert is paired with a
+ * name.frag to form the program "name"; .glsl files are only included by others. Each shader is
+ * preprocessed, parsed and minified, and the uniforms and attributes of each program are collected
+ * into a generated Java table, see ShaderTableWriter. Struct uniforms are listed member by member.
+ *
+ * Conditional code is checked as it is compiled with no defines beyond the predefined macros. All
+ * errors are collected, so one run reports every broken shader.
+ */
+public final class ShaderCompiler {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String VERTEX_SUFFIX = ".vert";
+    private static final String FRAGMENT_SUFFIX = ".frag";
+
+    private final File mSourceDirectory;
+    private final List<String> mErrors = new ArrayList<String>();
+    private final GlslMinifier mMinifier = new GlslMinifier();
+
+    private final GlslPreprocessor.SourceProvider mProvider = new GlslPreprocessor.SourceProvider() {
+        @Override
+        public String getSource(String name) {
+            File file = new File(mSourceDirectory, name);
+
+            if (!file.isFile()) {
+                return null;
+            }
+
+            try {
+                return read(file);
+            } catch (IOException e) {
+                mErrors.add(name + ": " + e.getMessage());
+                return null;
+            }
+        }
+    };
+
+    public ShaderCompiler(final File sourceDirectory) throws IllegalArgumentException {
+        if (sourceDirectory == null) {
+            throw new IllegalArgumentException("Shader source directory must not be null");
+        }
+
+        mSourceDirectory = sourceDirectory;
+    }
+
+    /**
+     * Compiles every program, writes the minified shaders to minifiedDirectory and the table to
+     * javaDirectory as packageName.className. Returns the errors found; nothing is written if there are any.
+     */
+    public List<String> compile(final File minifiedDirectory, final File javaDirectory, final String packageName, final String className) throws IOException {
+        mErrors.clear();
+
+        String[] files = mSourceDirectory.list();
+
+        if (files == null) {
+            throw new IOException("Failed to list " + mSourceDirectory);
+        }
+
+        Arrays.sort(files);
+
+        ShaderTableWriter table = new ShaderTableWriter(packageName, className);
+        List<String> outputs = new ArrayList<String>();
+
+        for (final String file : files) {
+            if (file.endsWith(FRAGMENT_SUFFIX)) {
+                String name = file.substring(0, file.length() - FRAGMENT_SUFFIX.length());
+
+                if (!new File(mSourceDirectory, name + VERTEX_SUFFIX).isFile()) {
+                    mErrors.add(file + ": No vertex shader " + name + VERTEX_SUFFIX + " for fragment shader");
+                }
+
+                continue;
+            }
+
+            if (!file.endsWith(VERTEX_SUFFIX)) {
+                continue;
+            }
+
+            String name = file.substring(0, file.length() - VERTEX_SUFFIX.length());
+
+            if (!new File(mSourceDirectory, name + FRAGMENT_SUFFIX).isFile()) {
+                mErrors.add(file + ": No fragment shader " + name + FRAGMENT_SUFFIX + " for vertex shader");
+                continue;
+            }
+
+            List<GlslParser.Variable> vertexVariables = new ArrayList<GlslParser.Variable>();
+            List<GlslParser.Variable> fragmentVariables = new ArrayList<GlslParser.Variable>();
+            String vertexSource = compileShader(name + VERTEX_SUFFIX, false, vertexVariables);
+            String fragmentSource = compileShader(name + FRAGMENT_SUFFIX, true, fragmentVariables);
+
+            if (vertexSource == null || fragmentSource == null) {
+                continue;
+            }
+
+            List<String> uniforms = new ArrayList<String>();
+            List<String> attributes = new ArrayList<String>();
+            collect(vertexVariables, "uniform", uniforms);
+            collect(fragmentVariables, "uniform", uniforms);
+            collect(vertexVariables, "attribute", attributes);
+
+            try {
+                ShaderTableWriter.toClassName(name);
+            } catch (IllegalArgumentException e) {
+                mErrors.add(file + ": " + e.getMessage());
+                continue;
+            }
+
+            table.addProgram(new ShaderTableWriter.Program(name, vertexSource, fragmentSource, uniforms, attributes));
+
+            outputs.add(name + VERTEX_SUFFIX);
+            outputs.add(vertexSource);
+            outputs.add(name + FRAGMENT_SUFFIX);
+            outputs.add(fragmentSource);
+        }
+
+        String java = null;
+
+        if (mErrors.isEmpty()) {
+            try {
+                java = table.write();
+            } catch (IllegalArgumentException e) {
+                mErrors.add(e.getMessage());
+            }
+        }
+
+        if (!mErrors.isEmpty()) {
+            return new ArrayList<String>(mErrors);
+        }
+
+        for (int i = 0; i < outputs.size(); i += 2) {
+            write(new File(minifiedDirectory, outputs.get(i)), outputs.get(i + 1));
+        }
+
+        File packageDirectory = new File(javaDirectory, packageName.replace('.', File.separatorChar));
+        write(new File(packageDirectory, className + ".java"), java);
+
+        return new ArrayList<String>(mErrors);
+    }
+
+    /**
+     * Returns the minified source of the shader, or null after recording its error. Fragment shaders
+     * are checked with and without GL_FRAGMENT_PRECISION_HIGH.
+     */
+    private String compileShader(final String file, boolean fragment, final List<GlslParser.Variable> variables) {
+        try {
+            GlslPreprocessor preprocessor = parse(file, fragment, fragment, variables);
+            GlslPreprocessor precisionLow = fragment ? parse(file, true, false, variables) : null;
+
+            return mMinifier.minify(preprocessor, precisionLow);
+        } catch (GlslException e) {
+            mErrors.add(e.getMessage());
+            return null;
+        }
+    }
+
+    private GlslPreprocessor parse(final String file, boolean fragment, boolean precisionHigh, final List<GlslParser.Variable> variables) throws GlslException {
+        GlslPreprocessor preprocessor = new GlslPreprocessor(mProvider, precisionHigh);
+        preprocessor.process(file);
+
+        GlslParser parser = new GlslParser(preprocessor.getTokens(), !fragment);
+        parser.parse();
+
+        variables.addAll(parser.getVariables("uniform"));
+        variables.addAll(parser.getVariables("attribute"));
+
+        return preprocessor;
+    }
+
+    /**
+     * Adds the names of the variables with qualifier to names, once each. Struct uniforms have no
+     * location of their own; the driver enumerates their members, e.g. "s.a" or "s[1].a", which are
+     * added instead. Arrays of structs are only expanded if their size is an integer literal.
+     */
+    private static void collect(final List<GlslParser.Variable> variables, final String qualifier, final List<String> names) {
+        for (final GlslParser.Variable variable : variables) {
+            if (variable.getQualifier().equals(qualifier)) {
+                collect(variable.getName(), variable, names);
+            }
+        }
+    }
+
+    private static void collect(final String name, final GlslParser.Variable variable, final List<String> names) {
+        List<GlslParser.Variable> members = variable.getMembers();
+
+        if (members == null) {
+            if (GlslParser.isBasicType(variable.getType()) && !names.contains(name)) {
+                names.add(name);
+            }
+
+            return;
+        }
+
+        if (!variable.isArray()) {
+            for (final GlslParser.Variable member : members) {
+                collect(name + "." + member.getName(), member, names);
+            }
+
+            return;
+        }
+
+        for (int element = 0; element < variable.getArraySize(); element++) {
+            for (final GlslParser.Variable member : members) {
+                collect(name + "[" + element + "]." + member.getName(), member, names);
+            }
+        }
+    }
+
+    private static String read(final File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+
+            while ((count = input.read(buffer)) > 0) {
+                bytes.write(buffer, 0, count);
+            }
+
+            return new String(bytes.toByteArray(), UTF_8);
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void write(final File file, final String text) throws IOException {
+        File directory = file.getParentFile();
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create " + directory);
+        }
+
+        OutputStream output = new FileOutputStream(file);
+
+        try {
+            output.write(text.getBytes(UTF_8));
+        } finally {
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.zendeka.glesutils.build;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates the Java table of compiled shader programs. Each program becomes a nested class holding
+ * its minified sources, an int constant per uniform and attribute with the handle ShaderProgram will
+ * assign to it, and a createProgram() that declares those handles before the program is built.
+ *
+ * Constant names are the GLSL names in upper snake case, without a leading u or a prefix:
+ * uModelViewProjection becomes U_MODEL_VIEW_PROJECTION. Struct uniforms get a constant per member,
+ * uLights[1].color becomes U_LIGHTS_1_COLOR.
+ */
+final class ShaderTableWriter {
+    static final class Program {
+        private final String mName;
+        private final String mVertexSource;
+        private final String mFragmentSource;
+        private final List<String> mUniforms;
+        private final List<String> mAttributes;
+
+        Program(final String name, final String vertexSource, final String fragmentSource, final List<String> uniforms, final List<String> attributes) {
+            mName = name;
+            mVertexSource = vertexSource;
+            mFragmentSource = fragmentSource;
+            mUniforms = uniforms;
+            mAttributes = attributes;
+        }
+
+        String getName() {
+            return mName;
+        }
+    }
+
+    private static final String RUNTIME_PACKAGE = "com.zendeka.glesutils.gles20.shader";
+
+    private final String mPackageName;
+    private final String mClassName;
+    private final List<Program> mPrograms = new ArrayList<Program>();
+
+    ShaderTableWriter(final String packageName, final String className) {
+        mPackageName = packageName;
+        mClassName = className;
+    }
+
+    void addProgram(final Program program) {
+        mPrograms.add(program);
+    }
+
+    String write() throws IllegalArgumentException {
+        StringBuilder out = new StringBuilder();
+
+        out.append("// Generated by the compileShaders task, do not edit.\n");
+        out.append("// Struct uniforms have a handle per member; arrays of structs only if sized by an integer literal.\n");
+        out.append("package ").append(mPackageName).append(";\n\n");
+
+        if (!mPackageName.equals(RUNTIME_PACKAGE)) {
+            out.append("import ").append(RUNTIME_PACKAGE).append(".Shader;\n");
+            out.append("import ").append(RUNTIME_PACKAGE).append(".ShaderProgram;\n");
+            out.append("import ").append(RUNTIME_PACKAGE).append(".ShaderRegistry;\n\n");
+        }
+
+        out.append("public final class ").append(mClassName).append(" {\n");
+
+        for (final Program program : mPrograms) {
+            writeProgram(program, out);
+        }
+
+        out.append("    private ").append(mClassName).append("() {\n");
+        out.append("    }\n");
+        out.append("}\n");
+
+        return out.toString();
+    }
+
+    private static void writeProgram(final Program program, final StringBuilder out) throws IllegalArgumentException {
+        String className = toClassName(program.mName);
+
+        out.append("    public static final class ").append(className).append(" {\n");
+        out.append("        public static final String VERTEX_SOURCE = ").append(quote(program.mVertexSource)).append(";\n");
+        out.append("        public static final String FRAGMENT_SOURCE = ").append(quote(program.mFragmentSource)).append(";\n\n");
+
+        writeHandles("U_", program.mUniforms, out);
+        writeHandles("A_", program.mAttributes, out);
+
+        writeNames("UNIFORMS", program.mUniforms, out);
+        writeNames("ATTRIBUTES", program.mAttributes, out);
+        out.append('\n');
+
+        out.append("        private ").append(className).append("() {\n");
+        out.append("        }\n\n");
+
+        out.append("        /**\n");
+        out.append("         * Creates the program with its uniform and attribute handles declared. It still has to be built.\n");
+        out.append("         */\n");
+        out.append("        public static ShaderProgram createProgram(final String tag) {\n");
+        out.append("            ShaderProgram program = new ShaderProgram();\n");
+        out.append("            program.setTag(tag);\n");
+        out.append("            program.addShader(new Shader(Shader.Type.VERTEX, VERTEX_SOURCE, tag));\n");
+        out.append("            program.addShader(new Shader(Shader.Type.FRAGMENT, FRAGMENT_SOURCE, tag));\n");
+        out.append("            program.declareUniforms(UNIFORMS);\n");
+        out.append("            program.declareAttributes(ATTRIBUTES);\n");
+        out.append("            return program;\n");
+        out.append("        }\n\n");
+
+        out.append("        /**\n");
+        out.append("         * Creates the program with shaders shared through registry.\n");
+        out.append("         */\n");
+        out.append("        public static ShaderProgram createProgram(final ShaderRegistry registry, final String tag) {\n");
+        out.append("            ShaderProgram program = new ShaderProgram();\n");
+        out.append("            program.setTag(tag);\n");
+        out.append("            program.addShader(registry, Shader.Type.VERTEX, VERTEX_SOURCE);\n");
+        out.append("            program.addShader(registry, Shader.Type.FRAGMENT, FRAGMENT_SOURCE);\n");
+        out.append("            program.declareUniforms(UNIFORMS);\n");
+        out.append("            program.declareAttributes(ATTRIBUTES);\n");
+        out.append("            return program;\n");
+        out.append("        }\n");
+        out.append("    }\n\n");
+    }
+
+    private static void writeHandles(final String prefix, final List<String> names, final StringBuilder out) throws IllegalArgumentException {
+        List<String> constants = new ArrayList<String>();
+
+        for (int i = 0; i < names.size(); i++) {
+            String constant = prefix + toConstantName(names.get(i));
+
+            if (constants.contains(constant)) {
+                throw new IllegalArgumentException("Shader variables " + names.get(constants.indexOf(constant)) + " and " + names.get(i) + " map to the same constant " + constant);
+            }
+
+            constants.add(constant);
+            out.append("        public static final int ").append(constant).append(" = ").append(i).append(";\n");
+        }
+
+        if (!names.isEmpty()) {
+            out.append('\n');
+        }
+    }
+
+    private static void writeNames(final String field, final List<String> names, final StringBuilder out) {
+        out.append("        private static final String[] ").append(field).append(" = {");
+
+        for (int i = 0; i < names.size(); i++) {
+            out.append(i == 0 ? " " : ", ").append(quote(names.get(i)));
+        }
+
+        out.append(names.isEmpty() ? "};\n" : " };\n");
+    }
+
+    /**
+     * "quad_textured" and "quad-textured" become QuadTextured.
+     */
+    static String toClassName(final String name) throws IllegalArgumentException {
+        StringBuilder className = new StringBuilder();
+        boolean upper = true;
+
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+
+            if (!Character.isLetterOrDigit(c)) {
+                upper = true;
+                continue;
+            }
+
+            className.append(upper ? Character.toUpperCase(c) : c);
+            upper = false;
+        }
+
+        if (className.length() == 0 || !Character.isJavaIdentifierStart(className.charAt(0))) {
+            throw new IllegalArgumentException("Cannot derive a class name from shader program name \"" + name + "\"");
+        }
+
+        return className.toString();
+    }
+
+    static String toConstantName(final String name) {
+        int start = 0;
+
+        // Hungarian u and a prefixes
+        if (name.length() > 1 && (name.charAt(0) == 'u' || name.charAt(0) == 'a') && Character.isUpperCase(name.charAt(1))) {
+            start = 1;
+        }
+
+        StringBuilder constant = new StringBuilder();
+
+        for (int i = start; i < name.length(); i++) {
+            char c = name.charAt(i);
+
+            // Struct members and array elements, "uLights[1].color" becomes LIGHTS_1_COLOR
+            if (!Character.isLetterOrDigit(c) && c != '_') {
+                if (constant.length() > 0 && constant.charAt(constant.length() - 1) != '_') {
+                    constant.append('_');
+                }
+
+                continue;
+            }
+
+            if (i > start && Character.isUpperCase(c) && !Character.isUpperCase(name.charAt(i - 1)) && name.charAt(i - 1) != '_' && constant.charAt(constant.length() - 1) != '_') {
+                constant.append('_');
+            }
+
+            constant.append(Character.toUpperCase(c));
+        }
+
+        if (constant.length() > 0 && constant.charAt(constant.length() - 1) == '_' && name.charAt(name.length() - 1) != '_') {
+            constant.setLength(constant.length() - 1);
+        }
+
+        return constant.toString();
+    }
+
+    private static String quote(final String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 16);
+        quoted.append('"');
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                default:
+                    quoted.append(c);
+                    break;
+            }
+        }
+
+        return quoted.append('"').toString();
+    }
+}